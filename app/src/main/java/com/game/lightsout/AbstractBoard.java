@@ -2,10 +2,16 @@ package com.game.lightsout;
 
 import android.content.Intent;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.util.Log;
 
 import androidx.appcompat.app.AppCompatActivity;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
 /**
  * Basic, non-UI functionality for all game boards of any size. Provides a buffer between the UI
  * elements of BoardUI and the abstract, backend elements in GameBoard.
@@ -25,6 +31,32 @@ public abstract class AbstractBoard extends AppCompatActivity {
      * Is the user playing in on lights only mode?
      */
     private boolean onOnlyMode;
+    /**
+     * Hands out the seeds of each new scramble
+     */
+    private SplitMix64 seeds;
+    /**
+     * Picks between the best solutions for hints. Kept apart from the seeds so that hints don't
+     * change the scrambles that follow.
+     */
+    private SplitMix64 hints;
+    /**
+     * The time (in SystemClock.elapsedRealtime() milliseconds) the current scramble was shown
+     */
+    private long scrambleStartTime;
+    /**
+     * Records the presses of the current solve so that its time can be verified later
+     */
+    private Replay.Recorder replay;
+    /**
+     * Did the current board come from a seeded scramble, so that its replay can be verified?
+     */
+    private boolean replayable;
+    /**
+     * Is the board square with hard edges and plus shaped clicks? Only these boards have replays
+     * and distance tables.
+     */
+    private boolean standardShape;
 
 
     @Override
@@ -39,8 +71,97 @@ public abstract class AbstractBoard extends AppCompatActivity {
         this.onOnlyMode = getIntent().getBooleanExtra("onLightsOnly", false);
         Log.i("AbstractBoard", "USER CHOICE: On Lights Only Mode: "+this.onOnlyMode);
 
+        int states = intent.getIntExtra("states", 2);
+        Log.i("AbstractBoard", "USER CHOICE: States: "+states);
+
         int boardSize = intent.getIntExtra("boardSize", -1);
-        gb = new GameBoard(boardSize, onOnlyMode);
+        int rows = intent.getIntExtra("rows", boardSize);
+        int cols = intent.getIntExtra("cols", boardSize);
+        Topology topology = intent.getBooleanExtra("wrap", false) ? Topology.TORUS : Topology.PLANE;
+        Neighborhood neighborhood = neighborhood(intent);
+        Log.i("AbstractBoard", "USER CHOICE: Shape: "+rows+"x"+cols+" "+topology+" "+neighborhood);
+
+        gb = new GameBoard(rows, cols, topology, neighborhood, onOnlyMode, states);
+        gb.setMinClicksListener(new GameBoard.MinClicksListener() {
+            @Override
+            public void minClicksImproved() {
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        onMinClicksImproved();
+                    }
+                });
+            }
+        });
+        this.standardShape = rows == cols && topology == Topology.PLANE && neighborhood.equals(Neighborhood.PLUS);
+        if (standardShape && states == 2 && rows <= DistanceTable.MAX_SIZE) { //Small boards can look up their min clicks
+            DistanceTable.prepare(new File(getFilesDir(), "distances"), rows, onOnlyMode);
+        }
+        if (standardShape && states == 2 && rows <= MinClickAnalysis.PREPARE_MAX_SIZE) { //And compare them with the rest
+            MinClickAnalysis.prepare(rows);
+        }
+
+        //A shared seed gives the same sequence of scrambles on every device
+        long seed = intent.hasExtra("scrambleSeed") ? intent.getLongExtra("scrambleSeed", 0)
+                : SplitMix64.mix64(System.nanoTime() ^ System.currentTimeMillis());
+        this.seeds = new SplitMix64(seed);
+        this.hints = new SplitMix64(SplitMix64.mix64(seed + 1));
+        this.replay = new Replay.Recorder();
+    }
+
+
+    /**
+     * Shows the board passed in the "lights" extra, if there is one, once the UI board has made its
+     * buttons. The extra holds the lights row by row, like an imported puzzle or one made in an
+     * editor, and goes through loadBoard() so that boards that can't be solved never reach the UI.
+     */
+    @Override
+    protected void onPostCreate(Bundle savedInstanceState) {
+        super.onPostCreate(savedInstanceState);
+
+        boolean[] lights = getIntent().getBooleanArrayExtra("lights");
+        if (lights == null) {
+            return;
+        }
+
+        int rows = gb.getRows(), cols = gb.getCols();
+        if (lights.length != rows * cols) {
+            Log.w("AbstractBoard", "Rejected a board with "+lights.length+" lights for a "+rows+"x"+cols+" board");
+            return;
+        }
+        boolean[][] board = new boolean[rows][cols];
+        for (int r = 0; r < rows; r++) {
+            System.arraycopy(lights, r * cols, board[r], 0, cols);
+        }
+        loadBoard(board);
+    }
+
+
+    /**
+     * Reads which lights a click toggles from the intent, either as the name of a built in
+     * neighborhood or as custom row, column offsets. Boards use the plus shape if neither is given,
+     * or if the offsets aren't a valid neighborhood.
+     */
+    private static Neighborhood neighborhood(Intent intent) {
+        int[] offsets = intent.getIntArrayExtra("offsets");
+        if (offsets != null) {
+            try {
+                return Neighborhood.of(offsets);
+            } catch (IllegalArgumentException e) {
+                Log.w("AbstractBoard", "Invalid neighborhood offsets, using the plus shape", e);
+                return Neighborhood.PLUS;
+            }
+        }
+
+        String name = intent.getStringExtra("neighborhood");
+        if ("x".equals(name)) {
+            return Neighborhood.X;
+        } else if ("block".equals(name)) {
+            return Neighborhood.BLOCK;
+        } else if ("knight".equals(name)) {
+            return Neighborhood.KNIGHT;
+        }
+        return Neighborhood.PLUS;
     }
 
 
@@ -70,11 +191,63 @@ public abstract class AbstractBoard extends AppCompatActivity {
     }
 
 
+    /**
+     * Are the min clicks known to be the fewest? While they aren't, a search keeps looking for
+     * fewer in the background, and onMinClicksImproved() is called whenever it finds them.
+     *
+     * @return true if getMinClicks() can't go down, else false.
+     */
+    public boolean isMinClicksOptimal() {
+        return gb.isMinClicksOptimal();
+    }
+
+
+    /**
+     * Compares the current scramble with every other board of its size, once MinClickAnalysis has
+     * counted them. Only small, standard boards with known min clicks are compared.
+     *
+     * @return the percent of solvable boards that need fewer clicks than this one, or -1 if that
+     * isn't known.
+     */
+    public int getPercentEasier() {
+        long[] histogram = standardShape && gb.getStates() == 2 ? MinClickAnalysis.cached(gb.getRows()) : null;
+        int minClicks = gb.getMinClicks();
+        if (histogram == null || minClicks <= 0 || !gb.isMinClicksOptimal()) {
+            return -1;
+        }
+
+        return MinClickAnalysis.percentEasier(histogram, minClicks);
+    }
+
+
+    /**
+     * Picks a button to click next that is part of one of the solutions with the fewest clicks.
+     *
+     * @return the button as row * getCols() + col, or -1 if there is no hint.
+     */
+    public int getHint() {
+        int hint = gb.hint(hints);
+        Log.i("AbstractBoard", "Hint: "+hint);
+
+        return hint;
+    }
+
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        Log.i("AbstractBoard", "Stopping the search for min clicks and releasing the board");
+
+        gb.release();
+    }
+
+
     public void click(int btnRow, int btnCol) {
         Log.v("AbstractBoard","Detected click for button "+btnRow+"-"+btnCol);
 
         this.clicks++;
         gb.click(btnRow, btnCol);
+        replay.press(btnRow, btnCol, SystemClock.elapsedRealtime() - scrambleStartTime);
     }
 
 
@@ -89,17 +262,121 @@ public abstract class AbstractBoard extends AppCompatActivity {
     protected void newScramble() {
         Log.i("AbstractBoard","Creating a new scramble");
 
-        gb.newScramble();
+        long seed = seeds.nextLong();
+        gb.newScramble(seed);
         setButtons(gb.getBoard());
+
+        replay.reset(seed, gb.getBoardSize(), onOnlyMode);
+        this.replayable = standardShape && gb.getStates() == 2; //Replays only record the board size
+        this.scrambleStartTime = SystemClock.elapsedRealtime();
+    }
+
+
+    /**
+     * Shows a board that did not come from a scramble, like an imported puzzle or one made in an
+     * editor. Boards that are the wrong shape or cannot be solved are rejected before they reach
+     * the UI.
+     *
+     * @param lights a 2D boolean array of lights (true=on & false=off).
+     * @return true if the board is now shown, false if it was rejected.
+     */
+    protected boolean loadBoard(boolean[][] lights) {
+        Log.i("AbstractBoard", "Loading a board");
+        try {
+            gb.setBoard(lights); //Checks the board can be solved before changing anything
+        } catch (IllegalArgumentException e) {
+            Log.w("AbstractBoard", "Rejected a board that cannot be solved", e);
+            return false;
+        }
+        setButtons(gb.getBoard());
+
+        this.replayable = false; //There's no seed to recreate this board from
+        this.scrambleStartTime = SystemClock.elapsedRealtime();
+        return true;
+    }
+
+
+    /**
+     * The time the current scramble was shown to the user. Timers should count from here so that
+     * they agree with the recorded replay.
+     *
+     * @return the start time of the current scramble in SystemClock.elapsedRealtime() milliseconds.
+     */
+    protected long getScrambleStartTime() {
+        return this.scrambleStartTime;
+    }
+
+
+    /**
+     * Saves the replay of the current solve to the app's replays folder, named after the seed of
+     * the scramble. The time in the replay can later be checked with ReplayVerifier.
+     */
+    protected void saveReplay() {
+        if (!replayable) {
+            Log.i("AbstractBoard", "The current board has no replay to save");
+            return;
+        }
+
+        Replay solve = replay.toReplay();
+        File dir = new File(getFilesDir(), "replays");
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            Log.e("AbstractBoard", "Could not create replays folder");
+            return;
+        }
+
+        File file = new File(dir, Long.toHexString(solve.getSeed()) + ".lor");
+        try (OutputStream out = new FileOutputStream(file)) {
+            solve.writeTo(out);
+            Log.i("AbstractBoard", "Saved replay of "+solve.getSolveTime()+"ms solve to "+file);
+        } catch (IOException e) {
+            Log.e("AbstractBoard", "Could not save replay", e);
+        }
     }
 
 
     public boolean isOnOnlyMode() { return this.onOnlyMode; }
 
+    /**
+     * Returns the number of states each light cycles through.
+     *
+     * @return 2 for lights that are on or off, or more for multi-state boards.
+     */
+    public int getStates() { return gb.getStates(); }
+
+    /**
+     * Returns the state of a light, from 0 (off) to getStates() - 1.
+     *
+     * @param btnRow the row index of the light.
+     * @param btnCol the column index of the light.
+     * @return the state of the light.
+     */
+    public int getState(int btnRow, int btnCol) { return gb.getState(btnRow, btnCol); }
+
+    public int getRows() { return gb.getRows(); }
+
+    public int getCols() { return gb.getCols(); }
+
+    /**
+     * Returns the lights changed by clicking a button, which depends on the shape of the board.
+     *
+     * @param btnRow the row index of the click.
+     * @param btnCol the column index of the click.
+     * @return the lights, as btnRow * getCols() + btnCol.
+     */
+    public int[] getToggled(int btnRow, int btnCol) { return gb.getToggled(btnRow, btnCol); }
+
     public void initSolution(){
         gb.updateSolution();
     }
 
+    /**
+     * Called on the UI thread when a search in the background finds fewer min clicks, or proves
+     * that the min clicks are the fewest. UI boards can show the new min clicks here.
+     */
+    protected void onMinClicksImproved() {
+        Log.v("AbstractBoard", "Min clicks improved: "+gb.getMinClicks());
+    }
+
     /**
      * All UI boards must have a way to set the values of the buttons for scrambling.
      *
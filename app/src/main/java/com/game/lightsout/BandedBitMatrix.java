@@ -0,0 +1,401 @@
+package com.game.lightsout;
+
+import java.util.Arrays;
+
+/**
+ * A square matrix over GF(2) whose non-zero entries all lie within a band around the diagonal,
+ * like the toggle matrix of a board, whose only non-zero diagonals are d, d &plusmn; 1, and d &plusmn; n.
+ * Only a window of each row around the band is stored, packed 64 entries to a long, so an n^2 x n^2
+ * toggle matrix takes O(n^3 / 64) longs instead of the O(n^4) of a dense matrix, and elimination
+ * takes O(n^4 / 64) word operations instead of O(n^6).
+ * <p>
+ * Row swaps during elimination widen the band to the right. With lower bandwidth l and upper
+ * bandwidth u, a row that starts at index q only ever has non-zero entries in columns
+ * [q - l, q + l + u + k], where k is the number of columns without a pivot (the nullity). The
+ * window of each row is sized for this, so the matrix must be told the largest nullity to expect.
+ * Not thread-safe.
+ *
+ * @author William Boyles
+ */
+final class BandedBitMatrix {
+    /**
+     * The number of rows and columns in this matrix
+     */
+    private final int size;
+    /**
+     * The number of non-zero diagonals below the main diagonal
+     */
+    private final int lowerBandwidth;
+    /**
+     * The largest number of columns without a pivot that the row windows have room for
+     */
+    private final int maxNullity;
+    /**
+     * The number of longs in the window of each row
+     */
+    private final int windowWords;
+    /**
+     * The window of every row, one after another. Rows keep their window when they are swapped.
+     */
+    private final long[] windows;
+    /**
+     * The index (in longs) of the first column in the window of each row
+     */
+    private final int[] windowStart;
+    /**
+     * The row stored at each position of the matrix. Swapping rows only swaps these.
+     */
+    private final int[] rowAt;
+    /**
+     * The pivot column of each of the first rank() rows, once in row echelon form
+     */
+    private final int[] pivotCols;
+    /**
+     * The number of pivots, or -1 if the matrix has not been put in row echelon form
+     */
+    private int rank = -1;
+
+
+    /**
+     * Constructs a banded matrix of all zeroes.
+     *
+     * @param size           the number of rows and columns in this matrix
+     * @param lowerBandwidth the number of non-zero diagonals below the main diagonal
+     * @param upperBandwidth the number of non-zero diagonals above the main diagonal
+     * @param maxNullity     the largest nullity the matrix may turn out to have
+     * @throws IllegalArgumentException if any argument is out of range
+     */
+    BandedBitMatrix(int size, int lowerBandwidth, int upperBandwidth, int maxNullity) {
+        if (size <= 0 || lowerBandwidth < 0 || upperBandwidth < 0 || maxNullity < 0) {
+            throw new IllegalArgumentException("Invalid matrix size or bandwidth");
+        }
+        this.size = size;
+        this.lowerBandwidth = lowerBandwidth;
+        this.maxNullity = Math.min(maxNullity, size);
+        this.windowWords = (2 * lowerBandwidth + upperBandwidth + this.maxNullity + 127) >>> 6;
+        this.windows = new long[size * windowWords];
+        this.windowStart = new int[size];
+        this.rowAt = new int[size];
+        this.pivotCols = new int[size];
+        for (int q = 0; q < size; q++) {
+            windowStart[q] = (q - lowerBandwidth) >> 6; //Rounds down, even when negative
+            rowAt[q] = q;
+        }
+    }
+
+
+    /**
+     * Builds the n^2 x n^2 toggle matrix of an n x n board, whose column r * n + c holds the lights
+     * toggled by clicking button (r, c). Its bandwidth is n on both sides, and its nullity is known
+     * ahead of time from NullSpace.
+     *
+     * @param boardSize the number of buttons per side of the board.
+     * @return the toggle matrix of the board.
+     */
+    static BandedBitMatrix toggleMatrix(int boardSize) {
+        int n = boardSize * boardSize;
+        BandedBitMatrix toggles = new BandedBitMatrix(n, boardSize, boardSize, NullSpace.nullity(boardSize));
+        for (int d = 0; d < n; d++) {
+            toggles.set(d, d, true);
+            if (d % boardSize != 0) {
+                toggles.set(d, d - 1, true);
+                toggles.set(d - 1, d, true);
+            }
+            if (d >= boardSize) {
+                toggles.set(d, d - boardSize, true);
+                toggles.set(d - boardSize, d, true);
+            }
+        }
+
+        return toggles;
+    }
+
+
+    /**
+     * Finds the clicks that turn off all of the lights of a board.
+     *
+     * @param lights the board to solve.
+     * @return the clicks of a solution, or null if the board cannot be solved.
+     */
+    static BitBoard solve(BitBoard lights) {
+        int boardSize = lights.size();
+        BandedBitMatrix toggles = toggleMatrix(boardSize);
+        long[] rhs = new long[toggles.size];
+        for (int r = 0; r < boardSize; r++) {
+            for (int c = 0; c < boardSize; c++) {
+                rhs[r * boardSize + c] = lights.get(r, c) ? 1 : 0;
+            }
+        }
+
+        toggles.rowEchelonForm(rhs);
+        long[] x = new long[(toggles.size + 63) >>> 6];
+        if (!toggles.backSubstitute(rhs, 0, x)) {
+            return null;
+        }
+
+        return unflatten(boardSize, x);
+    }
+
+
+    /**
+     * Finds a basis of the null patterns of a square board.
+     *
+     * @param boardSize the number of buttons per side of the board.
+     * @return an array of linearly independent null patterns, as many as the nullity of the board.
+     */
+    static BitBoard[] nullPatterns(int boardSize) {
+        BandedBitMatrix toggles = toggleMatrix(boardSize);
+        toggles.rowEchelonForm(null);
+        long[][] basis = toggles.nullSpaceBasis();
+
+        BitBoard[] patterns = new BitBoard[basis.length];
+        for (int i = 0; i < basis.length; i++) {
+            patterns[i] = unflatten(boardSize, basis[i]);
+        }
+
+        return patterns;
+    }
+
+
+    int size() {
+        return this.size;
+    }
+
+
+    /**
+     * Returns the entry at the specified location in this matrix. Entries outside of the stored
+     * window of a row are always 0.
+     *
+     * @param row the row to read from (0-based indexing)
+     * @param col the column to read from (0-based indexing)
+     * @return true if the entry is 1, false if it is 0
+     * @throws IndexOutOfBoundsException if the specified row or column exceeds the bounds of the matrix
+     */
+    boolean get(int row, int col) {
+        checkIndex(row, col);
+        return testBit(rowAt[row], col);
+    }
+
+
+    /**
+     * Stores the specified entry at the specified location in this matrix.
+     *
+     * @param row the row to write to (0-based indexing)
+     * @param col the column to write to (0-based indexing)
+     * @param val true for 1, false for 0
+     * @throws IndexOutOfBoundsException if the specified row or column exceeds the bounds of the
+     *                                   matrix, or a non-zero entry is outside of the band
+     */
+    void set(int row, int col, boolean val) {
+        checkIndex(row, col);
+        int q = rowAt[row];
+        int word = (col >>> 6) - windowStart[q];
+        if (word < 0 || word >= windowWords || (val && rank < 0 && q - col > lowerBandwidth)) {
+            throw new IndexOutOfBoundsException("Entry is outside of the band");
+        }
+        if (val) {
+            windows[q * windowWords + word] |= 1L << col;
+        } else {
+            windows[q * windowWords + word] &= ~(1L << col);
+        }
+    }
+
+
+    /**
+     * Converts this matrix to row echelon form (REF) using Gaussian elimination with partial
+     * pivoting, applying the same row operations to the right-hand sides. Each column only has to
+     * be cleared from the few rows that reach it, and each row operation only touches the window
+     * of the row. The time complexity of this operation is
+     * <var>O</var>(size &times; (lowerBandwidth + nullity) &times; (bandwidth + nullity) / 64).
+     *
+     * @param rhs the right-hand sides, where bit b of rhs[i] is row i of the b-th right-hand side.
+     *            Up to 64 systems can be solved at once. May be null.
+     * @return the rank of this matrix
+     * @throws IllegalStateException if the nullity is larger than the one given when the matrix
+     *                               was constructed, or the matrix is already in row echelon form
+     */
+    int rowEchelonForm(long[] rhs) {
+        if (rank >= 0) {
+            throw new IllegalStateException("Matrix is already in row echelon form");
+        }
+
+        int numPivots = 0;
+        for (int j = 0; j < size; j++) {  // For each column
+            //Rows past j + lowerBandwidth have never been touched, so they have nothing in column j
+            int lastCandidate = Math.min(size - 1, j + lowerBandwidth);
+            int pivotRow = numPivots;
+            while (pivotRow <= lastCandidate && !testBit(rowAt[pivotRow], j)) {
+                pivotRow++;
+            }
+            if (pivotRow > lastCandidate) {
+                if (j + 1 - numPivots > maxNullity) {
+                    throw new IllegalStateException("Nullity is larger than " + maxNullity);
+                }
+                continue;  // Cannot eliminate on this column
+            }
+            swapRows(numPivots, pivotRow, rhs);
+            pivotRow = numPivots;
+            pivotCols[numPivots++] = j;
+
+            // Eliminate rows below
+            int pivot = rowAt[pivotRow];
+            for (int i = pivotRow + 1; i <= lastCandidate; i++) {
+                int q = rowAt[i];
+                if (testBit(q, j)) {
+                    xorRow(pivot, q, j >>> 6);
+                    if (rhs != null) {
+                        rhs[i] ^= rhs[pivotRow];
+                    }
+                }
+            }
+        }
+
+        rank = numPivots;
+        return numPivots;
+    }
+
+
+    /**
+     * Finds a solution of one of the systems given to rowEchelonForm(), with every variable that
+     * has no pivot set to 0.
+     *
+     * @param rhs    the right-hand sides, as transformed by rowEchelonForm().
+     * @param rhsBit which of the (up to 64) right-hand sides to solve.
+     * @param x      the solution, packed 64 variables to a long. Its previous value is lost.
+     * @return true if the system has a solution, false if it does not.
+     * @throws IllegalStateException if the matrix is not in row echelon form
+     */
+    boolean backSubstitute(long[] rhs, int rhsBit, long[] x) {
+        checkReduced();
+        for (int i = rank; i < size; i++) {
+            if ((rhs[i] >>> rhsBit & 1) != 0) {
+                return false; //0 = 1
+            }
+        }
+
+        Arrays.fill(x, 0);
+        for (int i = rank - 1; i >= 0; i--) {
+            if (((rhs[i] >>> rhsBit & 1) ^ rowDotProduct(rowAt[i], x)) != 0) {
+                x[pivotCols[i] >>> 6] |= 1L << pivotCols[i];
+            }
+        }
+
+        return true;
+    }
+
+
+    /**
+     * Finds a basis of the null space of this matrix, one vector for each column without a pivot.
+     *
+     * @return the basis vectors, each packed 64 entries to a long.
+     * @throws IllegalStateException if the matrix is not in row echelon form
+     */
+    long[][] nullSpaceBasis() {
+        checkReduced();
+        long[][] basis = new long[size - rank][];
+        int free = 0;
+        for (int j = 0, p = 0; j < size; j++) {
+            if (p < rank && pivotCols[p] == j) {
+                p++;
+                continue;
+            }
+
+            //Set this free variable to 1 and the others to 0, then solve for the pivot variables
+            long[] x = new long[(size + 63) >>> 6];
+            x[j >>> 6] |= 1L << j;
+            for (int i = p - 1; i >= 0; i--) {
+                if (rowDotProduct(rowAt[i], x) != 0) {
+                    x[pivotCols[i] >>> 6] |= 1L << pivotCols[i];
+                }
+            }
+            basis[free++] = x;
+        }
+
+        return basis;
+    }
+
+
+    // The dot product of a stored row and a packed vector, which is 0 or 1
+    private int rowDotProduct(int q, long[] x) {
+        int parity = 0;
+        int row = q * windowWords;
+        int first = Math.max(0, windowStart[q]);
+        int last = Math.min(x.length, windowStart[q] + windowWords);
+        for (int w = first; w < last; w++) {
+            parity ^= Long.bitCount(windows[row + w - windowStart[q]] & x[w]);
+        }
+
+        return parity & 1;
+    }
+
+
+    // Adds the stored row src to the stored row dest, skipping the words before startWord
+    private void xorRow(int src, int dest, int startWord) {
+        int srcRow = src * windowWords - windowStart[src];
+        int destRow = dest * windowWords - windowStart[dest];
+        int last = Math.min(windowStart[src], windowStart[dest]) + windowWords;
+        if (windowStart[src] > windowStart[dest] && !isZero(src, last - windowStart[src])) {
+            throw new IllegalStateException("Row outgrew its window; nullity is larger than " + maxNullity);
+        }
+        for (int w = startWord; w < last; w++) {
+            windows[destRow + w] ^= windows[srcRow + w];
+        }
+    }
+
+
+    // Are all words of the window of a stored row from the given offset on zero?
+    private boolean isZero(int q, int fromWord) {
+        for (int w = fromWord; w < windowWords; w++) {
+            if (windows[q * windowWords + w] != 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+
+    private boolean testBit(int q, int col) {
+        int word = (col >>> 6) - windowStart[q];
+        return word >= 0 && word < windowWords && (windows[q * windowWords + word] & (1L << col)) != 0;
+    }
+
+
+    private void swapRows(int row0, int row1, long[] rhs) {
+        int temp = rowAt[row0];
+        rowAt[row0] = rowAt[row1];
+        rowAt[row1] = temp;
+        if (rhs != null) {
+            long tempRhs = rhs[row0];
+            rhs[row0] = rhs[row1];
+            rhs[row1] = tempRhs;
+        }
+    }
+
+
+    private void checkReduced() {
+        if (rank < 0) {
+            throw new IllegalStateException("Matrix is not in row echelon form");
+        }
+    }
+
+
+    private void checkIndex(int row, int col) {
+        if (row < 0 || row >= size || col < 0 || col >= size) {
+            throw new IndexOutOfBoundsException("Row or column index out of bounds");
+        }
+    }
+
+
+    // Copies a vector of n^2 packed variables, in row-major order, into an n x n board
+    private static BitBoard unflatten(int boardSize, long[] x) {
+        BitBoard board = new BitBoard(boardSize);
+        for (int i = 0; i < boardSize * boardSize; i++) {
+            if ((x[i >>> 6] & (1L << i)) != 0) {
+                board.toggle(i / boardSize, i % boardSize);
+            }
+        }
+
+        return board;
+    }
+}
\ No newline at end of file
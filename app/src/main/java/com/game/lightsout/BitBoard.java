@@ -0,0 +1,275 @@
+package com.game.lightsout;
+
+import java.util.Arrays;
+
+/**
+ * A compact version of a board where every light is a single bit. Each row of the board starts on
+ * a new long, so a board of up to 64 columns uses one long per row. This is what the engine uses
+ * when it has to simulate lots of boards quickly, like when verifying replays. Boards are usually
+ * square, but can have any number of rows and columns.
+ *
+ * @author William Boyles
+ */
+final class BitBoard {
+    /**
+     * The number of rows of the board
+     */
+    private final int rows;
+    /**
+     * The number of columns of the board
+     */
+    private final int cols;
+    /**
+     * The number of longs used to store each row
+     */
+    private final int rowWords;
+    /**
+     * The lights of the board. Bit c of row r is bit (c % 64) of bits[r * rowWords + c / 64].
+     */
+    private final long[] bits;
+
+
+    /**
+     * Creates a new square board with all of the lights off.
+     *
+     * @param size the number of buttons per side of the board.
+     */
+    BitBoard(int size) {
+        this(size, size);
+    }
+
+
+    /**
+     * Creates a new board with all of the lights off.
+     *
+     * @param rows the number of rows of the board.
+     * @param cols the number of columns of the board.
+     */
+    BitBoard(int rows, int cols) {
+        if (rows <= 0 || cols <= 0) {
+            throw new IllegalArgumentException("Invalid board shape: " + rows + "x" + cols);
+        }
+
+        this.rows = rows;
+        this.cols = cols;
+        this.rowWords = (cols + 63) >>> 6;
+        this.bits = new long[rows * rowWords];
+    }
+
+
+    /**
+     * Creates a compact copy of a board.
+     *
+     * @param board a rectangular 2D boolean array of lights (true=on & false=off).
+     * @return a new bit board with the same lights on.
+     */
+    static BitBoard fromArray(boolean[][] board) {
+        BitBoard bitBoard = new BitBoard(board.length, board[0].length);
+        for (int r = 0; r < bitBoard.rows; r++) {
+            for (int c = 0; c < bitBoard.cols; c++) {
+                if (board[r][c]) {
+                    bitBoard.toggle(r, c);
+                }
+            }
+        }
+
+        return bitBoard;
+    }
+
+
+    /**
+     * Copies the lights of this board into a 2D boolean array.
+     *
+     * @param board a 2D boolean array at least as big as this board.
+     */
+    void toArray(boolean[][] board) {
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < cols; c++) {
+                board[r][c] = get(r, c);
+            }
+        }
+    }
+
+
+    /**
+     * Gets the number of buttons per side of a square board.
+     *
+     * @return the number of rows, which is also the number of columns.
+     * @throws IllegalStateException if the board isn't square.
+     */
+    int size() {
+        if (rows != cols) {
+            throw new IllegalStateException("Board is not square: " + rows + "x" + cols);
+        }
+        return this.rows;
+    }
+
+
+    int rows() {
+        return this.rows;
+    }
+
+
+    int cols() {
+        return this.cols;
+    }
+
+
+    int rowWords() {
+        return this.rowWords;
+    }
+
+
+    /**
+     * Gives the engine direct access to the packed lights. Bit c of row r is bit (c % 64) of
+     * word r * rowWords() + c / 64, and the unused bits at the end of each row are always 0.
+     * Changes to the array change the board.
+     *
+     * @return the backing array of this board.
+     */
+    long[] words() {
+        return this.bits;
+    }
+
+
+    boolean get(int row, int col) {
+        return (bits[row * rowWords + (col >>> 6)] & (1L << col)) != 0;
+    }
+
+
+    /**
+     * Flips a single light, without touching its neighbors.
+     *
+     * @param row the row of the light.
+     * @param col the column of the light.
+     */
+    void toggle(int row, int col) {
+        bits[row * rowWords + (col >>> 6)] ^= 1L << col;
+    }
+
+
+    /**
+     * Flips a light and the lights directly above, below, left, and right of it, on a flat board.
+     *
+     * @param row the row of the click.
+     * @param col the column of the click.
+     */
+    void click(int row, int col) {
+        toggle(row, col);
+        if (col != 0) {
+            toggle(row, col - 1);
+        }
+        if (col != cols - 1) {
+            toggle(row, col + 1);
+        }
+        if (row != 0) {
+            toggle(row - 1, col);
+        }
+        if (row != rows - 1) {
+            toggle(row + 1, col);
+        }
+    }
+
+
+    /**
+     * Flips the lights toggled by a button, as worked out ahead of time for the board's shape.
+     * Edges that wrap around are already in the masks, so this never checks for them.
+     *
+     * @param masks the toggles of a board of this shape.
+     * @param row   the row of the click.
+     * @param col   the column of the click.
+     */
+    void click(ToggleMasks masks, int row, int col) {
+        if (masks.rows() != rows || masks.cols() != cols) {
+            throw new IllegalArgumentException("Masks are for a "+masks.rows()+"x"+masks.cols()+" board");
+        }
+        masks.click(bits, row, col);
+    }
+
+
+    /**
+     * Are all of the lights off?
+     *
+     * @return true if no lights are on, else false.
+     */
+    boolean isSolved() {
+        for (long word : bits) {
+            if (word != 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+
+    /**
+     * Counts the lights that are on.
+     *
+     * @return the number of lights on.
+     */
+    int popCount() {
+        int count = 0;
+        for (long word : bits) {
+            count += Long.bitCount(word);
+        }
+
+        return count;
+    }
+
+
+    /**
+     * Turns all of the lights off.
+     */
+    void clear() {
+        Arrays.fill(bits, 0);
+    }
+
+
+    /**
+     * Makes this board a copy of another board of the same shape.
+     *
+     * @param other the board to copy.
+     */
+    void copyFrom(BitBoard other) {
+        checkSize(other);
+        System.arraycopy(other.bits, 0, bits, 0, bits.length);
+    }
+
+
+    /**
+     * Flips every light of this board that is on in another board of the same shape.
+     *
+     * @param other the board to xor into this one.
+     */
+    void xor(BitBoard other) {
+        checkSize(other);
+        for (int i = 0; i < bits.length; i++) {
+            bits[i] ^= other.bits[i];
+        }
+    }
+
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof BitBoard)) {
+            return false;
+        }
+        BitBoard other = (BitBoard) o;
+        return other.rows == rows && other.cols == cols && Arrays.equals(other.bits, bits);
+    }
+
+
+    @Override
+    public int hashCode() {
+        return (31 * rows + cols) * 31 + Arrays.hashCode(bits);
+    }
+
+
+    private void checkSize(BitBoard other) {
+        if (other.rows != rows || other.cols != cols) {
+            throw new IllegalArgumentException("Board sizes do not match: " + other.rows + "x" + other.cols
+                    + " vs " + rows + "x" + cols);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,936 @@
+package com.game.lightsout;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * A mutable matrix over GF(2), where each entry is a single bit. Rows are packed 64 entries to a
+ * long and stored one after another in a single array, so adding two rows is a loop of XORs. This
+ * is the packed counterpart of Matrix&lt;Integer&gt; with PrimeField(2), which stores every entry
+ * as a boxed Integer.
+ * <p>
+ * Big matrices can keep their rows outside the Java heap in a direct buffer, which the garbage
+ * collector never has to move or scan, so a big elimination doesn't push the app against its
+ * heap limit or cause long pauses mid-game. Every operation works on both kinds of matrix. A
+ * matrix outside the heap should be given back with release() once it is no longer needed, so
+ * the next big matrix can reuse its memory. The biggest memory given back is kept until
+ * releaseSpare() is called when the system runs low. Not thread-safe.
+ *
+ * @author William Boyles
+ */
+final class BitMatrix implements Cloneable {
+    /**
+     * The largest number of rows combined into a single Four Russians table
+     */
+    private static final int MAX_M4RI_K = 8;
+    /**
+     * The number of words of each table row kept in cache at once during Four Russians elimination
+     */
+    private static final int M4RI_BLOCK_WORDS = 256;
+    /**
+     * Matrices with fewer rows than this are not worth splitting between threads
+     */
+    private static final int PARALLEL_MIN_ROWS = 512;
+    /**
+     * Matrices of at least this many bytes are kept outside the heap by allocate()
+     */
+    static final int DIRECT_MIN_BYTES = 1 << 20;
+    /**
+     * The buffer of the last matrix released, kept for the next matrix outside the heap. Guarded
+     * by BitMatrix.class.
+     */
+    private static ByteBuffer spare;
+    /**
+     * The number of rows in this matrix
+     */
+    private final int rows;
+    /**
+     * The number of columns in this matrix
+     */
+    private final int cols;
+    /**
+     * The number of longs used to store each row
+     */
+    private final int stride;
+    /**
+     * The entries of the matrix. Entry (r, c) is bit (c % 64) of bits[r * stride + c / 64]. Null if
+     * the matrix is outside the heap.
+     */
+    private long[] bits;
+    /**
+     * The entries of a matrix outside the heap, laid out like bits, or null
+     */
+    private LongBuffer direct;
+    /**
+     * The memory behind direct
+     */
+    private ByteBuffer buffer;
+
+
+    /**
+     * Constructs a matrix of all zeroes with the specified number of rows and columns.
+     *
+     * @param rows the number of rows in this matrix
+     * @param cols the number of columns in this matrix
+     * @throws IllegalArgumentException if {@code rows} &le; 0 or {@code cols} &le; 0
+     */
+    BitMatrix(int rows, int cols) {
+        if (rows <= 0 || cols <= 0) {
+            throw new IllegalArgumentException("Invalid number of rows or columns");
+        }
+        this.rows = rows;
+        this.cols = cols;
+        this.stride = (cols + 63) >>> 6;
+        this.bits = new long[rows * stride];
+    }
+
+
+    /**
+     * Constructs a matrix of all zeroes whose rows are kept outside the heap, in a direct buffer.
+     * Give it back with release() when done.
+     *
+     * @param rows the number of rows in the matrix
+     * @param cols the number of columns in the matrix
+     * @return the new matrix
+     * @throws IllegalArgumentException if {@code rows} &le; 0 or {@code cols} &le; 0, or the
+     *                                  matrix is too big for a buffer
+     */
+    static BitMatrix direct(int rows, int cols) {
+        if (rows <= 0 || cols <= 0) {
+            throw new IllegalArgumentException("Invalid number of rows or columns");
+        }
+        long bytes = 8L * rows * ((cols + 63) >>> 6);
+        if (bytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Matrix is too big: "+rows+"x"+cols);
+        }
+
+        return new BitMatrix(rows, cols, takeBuffer((int) bytes));
+    }
+
+
+    /**
+     * Constructs a matrix of all zeroes, outside the heap if it takes at least DIRECT_MIN_BYTES.
+     * Give it back with release() when done, which does nothing to a matrix on the heap.
+     *
+     * @param rows the number of rows in the matrix
+     * @param cols the number of columns in the matrix
+     * @return the new matrix
+     * @throws IllegalArgumentException if {@code rows} &le; 0 or {@code cols} &le; 0
+     */
+    static BitMatrix allocate(int rows, int cols) {
+        boolean big = rows > 0 && cols > 0 && 8L * rows * ((cols + 63) >>> 6) >= DIRECT_MIN_BYTES;
+        return big ? direct(rows, cols) : new BitMatrix(rows, cols);
+    }
+
+
+    private BitMatrix(int rows, int cols, ByteBuffer buffer) {
+        this.rows = rows;
+        this.cols = cols;
+        this.stride = (cols + 63) >>> 6;
+        this.buffer = buffer;
+        this.direct = buffer.asLongBuffer();
+    }
+
+
+    /**
+     * Builds the n^2 x n^2 matrix whose column r * n + c holds the lights toggled by clicking
+     * button (r, c) of an n x n board. Since clicking is symmetric, so is the matrix.
+     *
+     * @param boardSize the number of buttons per side of the board.
+     * @return the toggle matrix of the board.
+     */
+    static BitMatrix toggleMatrix(int boardSize) {
+        int n = boardSize * boardSize;
+        BitMatrix toggles = new BitMatrix(n, n);
+        for (int d = 0; d < n; d++) {
+            toggles.set(d, d, true);
+            if (d % boardSize != 0) {
+                toggles.set(d, d - 1, true);
+                toggles.set(d - 1, d, true);
+            }
+            if (d >= boardSize) {
+                toggles.set(d, d - boardSize, true);
+                toggles.set(d - boardSize, d, true);
+            }
+        }
+
+        return toggles;
+    }
+
+
+    /**
+     * Builds the identity matrix of a given size.
+     *
+     * @param size the number of rows and columns
+     * @return a matrix with 1s on the main diagonal and 0s everywhere else
+     * @throws IllegalArgumentException if {@code size} &le; 0
+     */
+    static BitMatrix identity(int size) {
+        BitMatrix result = new BitMatrix(size, size);
+        for (int d = 0; d < size; d++) {
+            result.bits[d * result.stride + (d >>> 6)] |= 1L << d;
+        }
+
+        return result;
+    }
+
+
+    /**
+     * Returns the number of rows in this matrix, which is positive.
+     *
+     * @return the number of rows in this matrix
+     */
+    int rowCount() {
+        return this.rows;
+    }
+
+
+    /**
+     * Returns the number of columns in this matrix, which is positive.
+     *
+     * @return the number of columns in this matrix
+     */
+    int columnCount() {
+        return this.cols;
+    }
+
+
+    /**
+     * Is this matrix kept outside the heap?
+     *
+     * @return true if the rows are in a direct buffer, false if they are in a long array
+     */
+    boolean isDirect() {
+        return buffer != null;
+    }
+
+
+    /**
+     * Gives back the memory of a matrix outside the heap, so the next one can reuse it without
+     * waiting for the garbage collector. The matrix must not be used afterwards. Does nothing to a
+     * matrix on the heap.
+     */
+    void release() {
+        if (buffer == null) {
+            return;
+        }
+
+        synchronized (BitMatrix.class) {
+            if (spare == null || spare.capacity() < buffer.capacity()) {
+                spare = buffer;
+            }
+        }
+        buffer = null;
+        direct = null;
+    }
+
+
+    /**
+     * Drops the memory kept from matrices given back with release(), so the garbage collector can
+     * free it. The next big matrix allocates new memory. This is called when the system is low on
+     * memory.
+     */
+    static void releaseSpare() {
+        synchronized (BitMatrix.class) {
+            spare = null;
+        }
+    }
+
+
+    /**
+     * Returns the entry at the specified location in this matrix.
+     *
+     * @param row the row to read from (0-based indexing)
+     * @param col the column to read from (0-based indexing)
+     * @return true if the entry is 1, false if it is 0
+     * @throws IndexOutOfBoundsException if the specified row or column exceeds the bounds of the matrix
+     */
+    boolean get(int row, int col) {
+        checkIndex(row, col);
+        return testBit(row, col);
+    }
+
+
+    /**
+     * Stores the specified entry at the specified location in this matrix.
+     *
+     * @param row the row to write to (0-based indexing)
+     * @param col the column to write to (0-based indexing)
+     * @param val true for 1, false for 0
+     * @throws IndexOutOfBoundsException if the specified row or column exceeds the bounds of the matrix
+     */
+    void set(int row, int col, boolean val) {
+        checkIndex(row, col);
+        int index = row * stride + (col >>> 6);
+        setWord(index, val ? word(index) | 1L << col : word(index) & ~(1L << col));
+    }
+
+
+    /**
+     * Swaps the two specified rows of this matrix. If the two row indices are the same, the swap is a no-op.
+     *
+     * @param row0 one row to swap (0-based indexing)
+     * @param row1 the other row to swap (0-based indexing)
+     * @throws IndexOutOfBoundsException if a specified row exceeds the bounds of the matrix
+     */
+    void swapRows(int row0, int row1) {
+        if (row0 < 0 || row0 >= rows || row1 < 0 || row1 >= rows) {
+            throw new IndexOutOfBoundsException("Row index out of bounds");
+        }
+        swapRowsUnchecked(row0, row1);
+    }
+
+
+    /**
+     * Adds the first specified row in this matrix to the second specified row. In other words,
+     * destRow += srcRow. Over GF(2) this is the only row operation needed.
+     *
+     * @param srcRow  the index of the row to read (0-based indexing)
+     * @param destRow the index of the row to accumulate to (0-based indexing)
+     * @throws IndexOutOfBoundsException if a specified row exceeds the bounds of the matrix
+     */
+    void addRows(int srcRow, int destRow) {
+        if (srcRow < 0 || srcRow >= rows || destRow < 0 || destRow >= rows) {
+            throw new IndexOutOfBoundsException("Row index out of bounds");
+        }
+        xorRow(srcRow, destRow, 0);
+    }
+
+
+    /**
+     * Converts this matrix to reduced row echelon form (RREF) using Gauss-Jordan elimination,
+     * one column at a time. The time complexity of this operation is
+     * <var>O</var>(rows &times; cols &times; min(rows, cols) / 64).
+     *
+     * @return the rank of this matrix, which is the number of non-zero rows left
+     */
+    int reducedRowEchelonForm() {
+        int numPivots = 0;
+        for (int j = 0; j < cols && numPivots < rows; j++) {  // For each column
+            // Find a pivot row for this column
+            int pivotRow = numPivots;
+            while (pivotRow < rows && !testBit(pivotRow, j)) {
+                pivotRow++;
+            }
+            if (pivotRow == rows) {
+                continue;  // Cannot eliminate on this column
+            }
+            swapRowsUnchecked(numPivots, pivotRow);
+            pivotRow = numPivots;
+            numPivots++;
+
+            // Eliminate rows above and below. Columns before j are already 0 in the pivot row.
+            int startWord = j >>> 6;
+            for (int i = 0; i < rows; i++) {
+                if (i != pivotRow && testBit(i, j)) {
+                    xorRow(pivotRow, i, startWord);
+                }
+            }
+        }
+
+        return numPivots;
+    }
+
+
+    /**
+     * Converts this matrix to reduced row echelon form (RREF) with the Method of Four Russians
+     * (M4RI). Instead of eliminating one pivot at a time, up to k pivots are found at once, every
+     * combination of those k pivot rows is put in a table (built in Gray code order, so each entry
+     * costs a single row XOR), and every other row is then cleared in all k columns with one table
+     * lookup. This saves a factor of about k over reducedRowEchelonForm(). The table is applied to
+     * a block of columns at a time so that it stays in cache no matter how wide the matrix is.
+     * <p>
+     * The result is exactly the same matrix as reducedRowEchelonForm(), since the RREF is unique.
+     *
+     * @return the rank of this matrix, which is the number of non-zero rows left
+     */
+    int reducedRowEchelonFormM4ri() {
+        //k around log2(rows) - 2 balances the 2^k table size against the k-fold savings
+        int k = 31 - Integer.numberOfLeadingZeros(Math.max(rows, 1)) - 2;
+        return reducedRowEchelonFormM4ri(Math.max(1, Math.min(MAX_M4RI_K, k)));
+    }
+
+
+    /**
+     * Converts this matrix to reduced row echelon form (RREF) with the Method of Four Russians,
+     * using tables of up to 2^k rows.
+     *
+     * @param k the number of pivots to eliminate at once, from 1 to 8
+     * @return the rank of this matrix, which is the number of non-zero rows left
+     * @throws IllegalArgumentException if k is out of range
+     */
+    int reducedRowEchelonFormM4ri(int k) {
+        if (k < 1 || k > MAX_M4RI_K) {
+            throw new IllegalArgumentException("Invalid number of columns per table: " + k);
+        }
+
+        try {
+            return reduceM4ri(k, false);
+        } catch (InterruptedException e) { //Can't happen when not interruptible
+            throw new IllegalStateException(e);
+        }
+    }
+
+
+    // M4RI on the calling thread, optionally stopping between steps if the thread is interrupted
+    private int reduceM4ri(int k, boolean interruptible) throws InterruptedException {
+        int[] pivotCols = new int[k];
+        int[] tableIndex = new int[rows];
+        long[] table = new long[(1 << k) * Math.min(stride, M4RI_BLOCK_WORDS)];
+
+        int numPivots = 0;
+        for (int j = 0; j < cols && numPivots < rows; ) {
+            if (interruptible && Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+
+            int found = findPivots(numPivots, j, k, pivotCols);
+            if (found == 0) {
+                break;  // No pivots in any of the remaining columns
+            }
+            j = pivotCols[found - 1] + 1;
+
+            gatherTableIndexes(tableIndex, 0, rows, numPivots, found, pivotCols);
+
+            //Every column before the first pivot column is already 0 in the pivot rows
+            for (int blockStart = pivotCols[0] >>> 6; blockStart < stride; blockStart += M4RI_BLOCK_WORDS) {
+                int blockWords = Math.min(M4RI_BLOCK_WORDS, stride - blockStart);
+                buildGrayCodeTable(table, 0, numPivots, found, blockStart, blockWords);
+                applyTable(table, 0, tableIndex, 0, rows, blockStart, blockWords);
+            }
+            numPivots += found;
+        }
+
+        return numPivots;
+    }
+
+
+    /**
+     * Converts this matrix to reduced row echelon form (RREF) with the Method of Four Russians,
+     * spreading the work over the shared worker threads. See
+     * reducedRowEchelonFormParallel(ExecutorService, int).
+     *
+     * @return the rank of this matrix, which is the number of non-zero rows left
+     * @throws InterruptedException if the thread is interrupted. The matrix is left partially
+     *                              reduced, and no worker is still writing to it.
+     */
+    int reducedRowEchelonFormParallel() throws InterruptedException {
+        return reducedRowEchelonFormParallel(Workers.pool(), Workers.parallelism());
+    }
+
+
+    /**
+     * Converts this matrix to reduced row echelon form (RREF) with the Method of Four Russians,
+     * spreading the work over several threads. Pivots are still found on the calling thread, 8 at
+     * a time, but building the table of pivot row combinations is split between threads by
+     * column, and clearing the other rows is split between threads by row. The threads only wait
+     * for each other twice for every 8 pivots.
+     * <p>
+     * The result is exactly the same matrix as reducedRowEchelonForm(), since the RREF is unique.
+     * Small matrices are reduced on the calling thread. Big matrices check for interruption every
+     * 8 pivots, even with only one thread, so a cancelled solver stops quickly.
+     *
+     * @param pool        the threads to run on
+     * @param parallelism the number of tasks to split each step into, usually the number of threads
+     * @return the rank of this matrix, which is the number of non-zero rows left
+     * @throws InterruptedException if the thread is interrupted. The matrix is left partially
+     *                              reduced, and no worker is still writing to it.
+     */
+    int reducedRowEchelonFormParallel(ExecutorService pool, int parallelism) throws InterruptedException {
+        if (rows < PARALLEL_MIN_ROWS) {
+            return reducedRowEchelonFormM4ri(MAX_M4RI_K);
+        }
+        if (parallelism <= 1) {
+            return reduceM4ri(MAX_M4RI_K, true);
+        }
+
+        final int[] pivotCols = new int[MAX_M4RI_K];
+        long[] table = new long[0];
+        List<Callable<Void>> tasks = new ArrayList<>();
+
+        int numPivots = 0;
+        for (int j = 0; j < cols && numPivots < rows; ) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+
+            final int found = findPivots(numPivots, j, MAX_M4RI_K, pivotCols);
+            if (found == 0) {
+                break;  // No pivots in any of the remaining columns
+            }
+            j = pivotCols[found - 1] + 1;
+
+            //The table for each block of words is stored after the tables of the blocks before it
+            final int startWord = pivotCols[0] >>> 6;
+            if (table.length < (stride - startWord) << found) {
+                table = new long[(stride - startWord) << found];
+            }
+            final long[] blockTables = table;
+            final int firstPivotRow = numPivots;
+
+            tasks.clear();
+            int blocksPerTask = Math.max(1, ((stride - startWord) / M4RI_BLOCK_WORDS + 1) / parallelism);
+            for (int taskStart = startWord; taskStart < stride; taskStart += blocksPerTask * M4RI_BLOCK_WORDS) {
+                final int from = taskStart;
+                final int to = Math.min(stride, taskStart + blocksPerTask * M4RI_BLOCK_WORDS);
+                tasks.add(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        for (int blockStart = from; blockStart < to; blockStart += M4RI_BLOCK_WORDS) {
+                            int blockWords = Math.min(M4RI_BLOCK_WORDS, to - blockStart);
+                            buildGrayCodeTable(blockTables, (blockStart - startWord) << found, firstPivotRow, found, blockStart, blockWords);
+                        }
+                        return null;
+                    }
+                });
+            }
+            Workers.runAllOrStop(pool, tasks);
+
+            tasks.clear();
+            int rowsPerTask = Math.max(PARALLEL_MIN_ROWS / 4, (rows + parallelism - 1) / parallelism);
+            for (int taskStart = 0; taskStart < rows; taskStart += rowsPerTask) {
+                final int from = taskStart;
+                final int to = Math.min(rows, taskStart + rowsPerTask);
+                tasks.add(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        int[] tableIndex = new int[to - from];
+                        gatherTableIndexes(tableIndex, from, to, firstPivotRow, found, pivotCols);
+                        for (int blockStart = startWord; blockStart < stride; blockStart += M4RI_BLOCK_WORDS) {
+                            int blockWords = Math.min(M4RI_BLOCK_WORDS, stride - blockStart);
+                            applyTable(blockTables, (blockStart - startWord) << found, tableIndex, from, to, blockStart, blockWords);
+                        }
+                        return null;
+                    }
+                });
+            }
+            Workers.runAllOrStop(pool, tasks);
+
+            numPivots += found;
+        }
+
+        return numPivots;
+    }
+
+
+    /**
+     * Returns a new matrix representing this matrix multiplied by the specified matrix, with the
+     * Method of Four Russians (M4RM). The rows of the other matrix are taken 8 at a time, every
+     * combination of those 8 rows is put in a table (built in Gray code order, so each entry costs
+     * a single row XOR), and each row of the result then adds in one table entry, picked by 8 bits
+     * of the matching row of this matrix. The time complexity of this operation is
+     * <var>O</var>(this.rows &times; this.cols &times; other.cols / (64 &times; 8)). Like a matrix
+     * from allocate(), a big product is kept outside the heap.
+     *
+     * @param other the second matrix multiplicand
+     * @return the product of this matrix with the specified matrix. Give it back with release()
+     * when done.
+     * @throws IllegalArgumentException if the specified matrix has incompatible dimensions for multiplication
+     */
+    BitMatrix multiply(BitMatrix other) {
+        if (cols != other.rows) {
+            throw new IllegalArgumentException("Incompatible matrix sizes for multiplication");
+        }
+
+        BitMatrix result = allocate(rows, other.cols);
+        long[] table = new long[(1 << MAX_M4RI_K) * Math.min(other.stride, M4RI_BLOCK_WORDS)];
+        for (int blockStart = 0; blockStart < other.stride; blockStart += M4RI_BLOCK_WORDS) {
+            int blockWords = Math.min(M4RI_BLOCK_WORDS, other.stride - blockStart);
+            //Groups of 8 start on a multiple of 8, so they never straddle two words
+            for (int first = 0; first < cols; first += MAX_M4RI_K) {
+                int count = Math.min(MAX_M4RI_K, cols - first);
+                other.buildGrayCodeTable(table, 0, first, count, blockStart, blockWords);
+
+                int word = first >>> 6, shift = first & 63;
+                for (int i = 0; i < rows; i++) {
+                    //Bits past the last column are always 0, so there is no need to mask them off
+                    int index = (int) (word(i * stride + word) >>> shift) & 0xff;
+                    if (index != 0) {
+                        int row = i * result.stride + blockStart;
+                        int entry = index * blockWords;
+                        for (int w = 0; w < blockWords; w++) {
+                            result.setWord(row + w, result.word(row + w) ^ table[entry + w]);
+                        }
+                    }
+                }
+            }
+        }
+
+        return result;
+    }
+
+
+    /**
+     * Replaces the values of this matrix with the inverse of this matrix. Requires the matrix to be square.
+     * This reduces [this | identity] with the Method of Four Russians, with the identity starting on
+     * a word boundary so the inverse can be copied out a word at a time. [this | identity] is made
+     * with allocate(), so it is outside the heap when this matrix is big. If an exception is thrown,
+     * this matrix is unchanged.
+     *
+     * @throws IllegalStateException if this matrix is not square
+     * @throws IllegalStateException if this matrix has no inverse
+     */
+    void invert() {
+        if (rows != cols) {
+            throw new IllegalStateException("Matrix dimensions are not square");
+        }
+
+        //The columns between cols and the identity are all 0, so they never get a pivot
+        int offset = stride << 6;
+        BitMatrix temp = allocate(rows, offset + cols);
+        try {
+            for (int i = 0; i < rows; i++) {
+                for (int w = 0; w < stride; w++) {
+                    temp.setWord(i * temp.stride + w, word(i * stride + w));
+                }
+                temp.setWord(i * temp.stride + stride + (i >>> 6), 1L << i);
+            }
+
+            temp.reducedRowEchelonFormM4ri();
+
+            //The RREF of the left half is the identity exactly when every row has its pivot on the diagonal
+            for (int i = 0; i < rows; i++) {
+                if (!temp.testBit(i, i)) {
+                    throw new IllegalStateException("Matrix is not invertible");
+                }
+            }
+
+            for (int i = 0; i < rows; i++) {
+                for (int w = 0; w < stride; w++) {
+                    setWord(i * stride + w, temp.word(i * temp.stride + stride + w));
+                }
+            }
+        } finally {
+            temp.release();
+        }
+    }
+
+
+    /**
+     * Returns the rank of this matrix, which is the number of linearly independent rows. This
+     * only brings a copy of the matrix to row echelon form, with the Method of Four Russians, and
+     * never clears the rows above each pivot, so it does about half the work of
+     * reducedRowEchelonFormM4ri(). This matrix is unchanged.
+     *
+     * @return the rank of this matrix
+     */
+    int rank() {
+        BitMatrix temp = clone();
+        try {
+            return temp.rowEchelonRank();
+        } finally {
+            temp.release();
+        }
+    }
+
+
+    // Brings this matrix to row echelon form and returns its rank, for rank()
+    private int rowEchelonRank() {
+        int[] pivotCols = new int[MAX_M4RI_K];
+        int[] tableIndex = new int[rows];
+        long[] table = new long[(1 << MAX_M4RI_K) * Math.min(stride, M4RI_BLOCK_WORDS)];
+
+        int numPivots = 0;
+        for (int j = 0; j < cols && numPivots < rows; ) {
+            int found = findPivots(numPivots, j, MAX_M4RI_K, pivotCols);
+            if (found == 0) {
+                break;  // No pivots in any of the remaining columns
+            }
+            j = pivotCols[found - 1] + 1;
+
+            // Only clear the rows below the pivots
+            int from = numPivots + found;
+            gatherTableIndexes(tableIndex, from, rows, numPivots, found, pivotCols);
+            for (int blockStart = pivotCols[0] >>> 6; blockStart < stride; blockStart += M4RI_BLOCK_WORDS) {
+                int blockWords = Math.min(M4RI_BLOCK_WORDS, stride - blockStart);
+                buildGrayCodeTable(table, 0, numPivots, found, blockStart, blockWords);
+                applyTable(table, 0, tableIndex, from, rows, blockStart, blockWords);
+            }
+            numPivots += found;
+        }
+
+        return numPivots;
+    }
+
+
+    /**
+     * Finds up to k pivots at or after row firstRow, looking at columns in order starting at
+     * firstCol. The pivot rows are moved to rows firstRow, firstRow + 1, ..., and are reduced
+     * against each other, so pivot row p has a 1 in pivotCols[p] and a 0 in every other pivot
+     * column. Other rows below firstRow may have pivot rows added to them.
+     *
+     * @return the number of pivots found
+     */
+    private int findPivots(int firstRow, int firstCol, int k, int[] pivotCols) {
+        int found = 0;
+        for (int j = firstCol; j < cols && found < k && firstRow + found < rows; j++) {
+            int startWord = pivotColsStartWord(pivotCols, found, j);
+            for (int i = firstRow + found; i < rows; i++) {
+                //Clear the pivots found so far from the candidate before looking at column j
+                for (int p = 0; p < found; p++) {
+                    if (testBit(i, pivotCols[p])) {
+                        xorRow(firstRow + p, i, startWord);
+                    }
+                }
+                if (!testBit(i, j)) {
+                    continue;
+                }
+
+                int pivotRow = firstRow + found;
+                swapRowsUnchecked(pivotRow, i);
+                for (int p = 0; p < found; p++) {
+                    if (testBit(firstRow + p, j)) {
+                        xorRow(pivotRow, firstRow + p, startWord);
+                    }
+                }
+                pivotCols[found++] = j;
+                break;
+            }
+        }
+
+        return found;
+    }
+
+
+    // The first word any of the current pivot rows can have a non-zero entry in
+    private static int pivotColsStartWord(int[] pivotCols, int found, int col) {
+        return (found == 0 ? col : pivotCols[0]) >>> 6;
+    }
+
+
+    /**
+     * Fills part of the table with every combination of the given pivot rows, restricted to a block
+     * of words. Entry i (blockWords longs starting at tableOffset + i * blockWords) is the sum of
+     * the pivot rows firstRow + p for every bit p set in i. Walking i in Gray code order changes a
+     * single bit at every step, so each entry is the previous entry plus one row.
+     */
+    private void buildGrayCodeTable(long[] table, int tableOffset, int firstRow, int count, int blockStart, int blockWords) {
+        Arrays.fill(table, tableOffset, tableOffset + blockWords, 0);
+        int previous = 0;
+        for (int g = 1; g < (1 << count); g++) {
+            int gray = g ^ (g >>> 1);
+            int row = (firstRow + Integer.numberOfTrailingZeros(g)) * stride + blockStart;
+            int from = tableOffset + previous * blockWords, to = tableOffset + gray * blockWords;
+            if (direct != null) {
+                for (int w = 0; w < blockWords; w++) {
+                    table[to + w] = table[from + w] ^ direct.get(row + w);
+                }
+            } else {
+                for (int w = 0; w < blockWords; w++) {
+                    table[to + w] = table[from + w] ^ bits[row + w];
+                }
+            }
+            previous = gray;
+        }
+    }
+
+
+    /**
+     * Finds the table entry to add to each row in [rowFrom, rowTo): bit p of tableIndex[i - rowFrom]
+     * is set if row i has a 1 in pivotCols[p]. The pivot rows themselves get entry 0.
+     */
+    private void gatherTableIndexes(int[] tableIndex, int rowFrom, int rowTo, int firstPivotRow, int found, int[] pivotCols) {
+        for (int i = rowFrom; i < rowTo; i++) {
+            int index = 0;
+            if (i < firstPivotRow || i >= firstPivotRow + found) {
+                for (int p = 0; p < found; p++) {
+                    if (testBit(i, pivotCols[p])) {
+                        index |= 1 << p;
+                    }
+                }
+            }
+            tableIndex[i - rowFrom] = index;
+        }
+    }
+
+
+    // Adds the gathered table entries to the rows in [rowFrom, rowTo), for a single block of words
+    private void applyTable(long[] table, int tableOffset, int[] tableIndex, int rowFrom, int rowTo, int blockStart, int blockWords) {
+        for (int i = rowFrom; i < rowTo; i++) {
+            int index = tableIndex[i - rowFrom];
+            if (index != 0) {
+                int row = i * stride + blockStart;
+                int entry = tableOffset + index * blockWords;
+                if (direct != null) {
+                    for (int w = 0; w < blockWords; w++) {
+                        direct.put(row + w, direct.get(row + w) ^ table[entry + w]);
+                    }
+                } else {
+                    for (int w = 0; w < blockWords; w++) {
+                        bits[row + w] ^= table[entry + w];
+                    }
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Returns a clone of this matrix, kept outside the heap if this matrix is.
+     *
+     * @return a clone of this matrix
+     */
+    @Override
+    public BitMatrix clone() {
+        if (direct != null) {
+            BitMatrix result = direct(rows, cols);
+            for (int i = 0; i < rows * stride; i++) {
+                result.direct.put(i, direct.get(i));
+            }
+            return result;
+        }
+
+        try {
+            BitMatrix result = (BitMatrix) super.clone();
+            result.bits = result.bits.clone();
+            return result;
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof BitMatrix)) {
+            return false;
+        }
+        BitMatrix other = (BitMatrix) o;
+        if (other.rows != rows || other.cols != cols) {
+            return false;
+        }
+        for (int i = 0; i < rows * stride; i++) {
+            if (other.word(i) != word(i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+
+    @Override
+    public int hashCode() {
+        int hash = 1;
+        for (int i = 0; i < rows * stride; i++) {
+            long word = word(i);
+            hash = 31 * hash + (int) (word ^ (word >>> 32));
+        }
+
+        return (31 * rows + cols) * 31 + hash;
+    }
+
+
+    /**
+     * Returns a string representation of this matrix, one row of 0s and 1s per line. The format
+     * is subject to change.
+     *
+     * @return a string representation of this matrix
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder((cols + 1) * rows);
+        for (int i = 0; i < rows; i++) {
+            if (i > 0) {
+                sb.append('\n');
+            }
+            for (int j = 0; j < cols; j++) {
+                sb.append(testBit(i, j) ? '1' : '0');
+            }
+        }
+
+        return sb.toString();
+    }
+
+
+    private boolean testBit(int row, int col) {
+        return (word(row * stride + (col >>> 6)) & (1L << col)) != 0;
+    }
+
+
+    // The word at the given index of the entries, wherever they are kept
+    private long word(int index) {
+        return direct != null ? direct.get(index) : bits[index];
+    }
+
+
+    // Replaces the word at the given index of the entries, wherever they are kept
+    private void setWord(int index, long word) {
+        if (direct != null) {
+            direct.put(index, word);
+        } else {
+            bits[index] = word;
+        }
+    }
+
+
+    // destRow += srcRow, skipping the words before startWord, which must be 0 in srcRow
+    private void xorRow(int srcRow, int destRow, int startWord) {
+        int src = srcRow * stride, dest = destRow * stride;
+        if (direct == null) {
+            for (int w = startWord; w < stride; w++) {
+                bits[dest + w] ^= bits[src + w];
+            }
+            return;
+        }
+
+        for (int w = startWord; w < stride; w++) {
+            direct.put(dest + w, direct.get(dest + w) ^ direct.get(src + w));
+        }
+    }
+
+
+    private void swapRowsUnchecked(int row0, int row1) {
+        if (row0 == row1) {
+            return;
+        }
+        int a = row0 * stride, b = row1 * stride;
+        if (direct != null) {
+            for (int w = 0; w < stride; w++) {
+                long temp = direct.get(a + w);
+                direct.put(a + w, direct.get(b + w));
+                direct.put(b + w, temp);
+            }
+            return;
+        }
+        for (int w = 0; w < stride; w++) {
+            long temp = bits[a + w];
+            bits[a + w] = bits[b + w];
+            bits[b + w] = temp;
+        }
+    }
+
+
+    // Takes the spare buffer if it is big enough, else allocates a new one, zeroed either way
+    private static ByteBuffer takeBuffer(int bytes) {
+        ByteBuffer taken = null;
+        synchronized (BitMatrix.class) {
+            if (spare != null && spare.capacity() >= bytes) {
+                taken = spare;
+                spare = null;
+            }
+        }
+        if (taken == null) {
+            return ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+        }
+
+        LongBuffer words = taken.asLongBuffer();
+        for (int i = 0; i < bytes >>> 3; i++) {
+            words.put(i, 0);
+        }
+        return taken;
+    }
+
+
+    private void checkIndex(int row, int col) {
+        if (row < 0 || row >= rows || col < 0 || col >= cols) {
+            throw new IndexOutOfBoundsException("Row or column index out of bounds");
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,728 @@
+package com.game.lightsout;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Solves lights out on a graph with Montgomery's block Lanczos algorithm, for graphs far too big
+ * for dense elimination. The toggle matrix A is only ever multiplied by blocks of 64 vectors
+ * through the graph, so memory is a few longs per vertex on top of the graph itself, and the time
+ * is about vertices / 63 multiplies plus the same number of passes over the vectors.
+ * <p>
+ * Each run starts from a block whose first vector is the board and whose other 63 are A times
+ * random vectors, and builds up a block X with AX close to the start. Lanczos over GF(2) often
+ * stops a little short, so the run ends by combining the columns of X, the random vectors, the
+ * last block and A times the last block so that A times the combination is exactly the board or
+ * exactly 0. This check is exact, so everything returned is right; an unlucky run just finds
+ * less, and is retried with new random vectors.
+ * <p>
+ * The same runs find null patterns, which are the kernel of A. Since A is symmetric, a board can
+ * be solved exactly when it has an even number of lights in common with every null pattern. A run
+ * can only find about 64 null patterns at once, so later runs multiply by A with the known null
+ * patterns deflated out, and graphs with hundreds of them take a few runs. Graphs with up to
+ * DENSE_LIMIT vertices are too small for Lanczos to get going, so they are reduced with dense
+ * elimination instead.
+ * <p>
+ * Blocks of 64 vectors are stored one long per vertex, with entry v of vector j in bit j of
+ * block[v]. 64x64 matrices are stored one long per row. Sets of lights and clicks are packed as in
+ * ToggleGraph. Not thread safe.
+ *
+ * @author William Boyles
+ */
+final class BlockLanczos {
+    /**
+     * Graphs up to this many vertices are solved with dense elimination
+     */
+    static final int DENSE_LIMIT = 1024;
+    /**
+     * How many runs in a row may find nothing new before we give up
+     */
+    private static final int MAX_ATTEMPTS = 8;
+
+    /**
+     * The graph being solved
+     */
+    private final ToggleGraph graph;
+    /**
+     * Draws the random starting vectors
+     */
+    private final SplitMix64 random;
+    /**
+     * The null patterns found so far, packed, with the pivot vertex of each in pivots
+     */
+    private final List<long[]> kernel = new ArrayList<>();
+    /**
+     * The vertex of each null pattern that no other null pattern has
+     */
+    private final List<Integer> pivots = new ArrayList<>();
+    /**
+     * Has the whole kernel been found?
+     */
+    private boolean kernelComplete;
+    /**
+     * The pivots of the null patterns known when the current run started. The run multiplies by A
+     * plus 1 on the diagonal at these vertices, which turns the known null patterns into
+     * non-null ones and leaves the rest of the kernel alone.
+     */
+    private int[] deflated = new int[0];
+
+
+    /**
+     * Creates a solver for a graph.
+     *
+     * @param graph the graph to solve.
+     * @param seed  seeds the random starting vectors, so runs can be repeated.
+     */
+    BlockLanczos(ToggleGraph graph, long seed) {
+        this.graph = graph;
+        this.random = new SplitMix64(seed);
+    }
+
+
+    /**
+     * Finds some clicks that turn off every light.
+     *
+     * @param lights the packed lights of the graph.
+     * @return the packed clicks of one solution. Other solutions differ from it by null patterns.
+     * @throws IllegalArgumentException if the lights can't be turned off.
+     * @throws IllegalStateException    if no solution was found after several runs, which should
+     *                                  only happen on a solvable graph by extreme bad luck.
+     */
+    long[] solve(long[] lights) {
+        if (lights.length != graph.words()) {
+            throw new IllegalArgumentException("Lights are not "+graph.words()+" words long");
+        }
+
+        int failures = 0;
+        while (failures < MAX_ATTEMPTS) {
+            int before = kernel.size();
+            long[] solution = graph.vertexCount() <= DENSE_LIMIT ? solveDense(lights) : run(lights);
+            if (solution != null) {
+                //A solution of the deflated matrix only solves A if the lights can be turned off
+                if (!Arrays.equals(graph.apply(solution), lights)) {
+                    throw new IllegalArgumentException("Lights cannot be turned off");
+                }
+                return solution;
+            }
+            for (long[] pattern : kernel) { //Any null pattern proves it has no solution
+                if (dot(pattern, lights) != 0) {
+                    throw new IllegalArgumentException("Lights cannot be turned off");
+                }
+            }
+            if (kernel.size() == before) { //Else the next run is deflated further, so it isn't a failure
+                failures++;
+            }
+            Log.w("BlockLanczos", "Run found no solution, trying again");
+        }
+
+        throw new IllegalStateException("No solution found after "+MAX_ATTEMPTS+" runs");
+    }
+
+
+    /**
+     * Finds a basis of the null patterns: sets of clicks that change no lights. Runs are repeated
+     * until one of them finds no new null pattern, so on big graphs a basis is only certain with
+     * very high probability.
+     *
+     * @return linearly independent packed null patterns.
+     */
+    long[][] kernel() {
+        if (graph.vertexCount() <= DENSE_LIMIT) {
+            if (!kernelComplete) {
+                solveDense(new long[graph.words()]);
+            }
+        } else {
+            while (!kernelComplete) {
+                int before = kernel.size();
+                run(null);
+                kernelComplete = kernel.size() == before;
+            }
+            Log.v("BlockLanczos", "Found "+kernel.size()+" null patterns");
+        }
+
+        return kernel.toArray(new long[kernel.size()][]);
+    }
+
+
+    // Reduces [A | lights] densely. Also fills in the whole kernel.
+    private long[] solveDense(long[] lights) {
+        int n = graph.vertexCount();
+        BitMatrix augmented = new BitMatrix(n, n + 1);
+        BitMatrix toggles = graph.toggleMatrix();
+        for (int r = 0; r < n; r++) {
+            for (int c = 0; c < n; c++) {
+                if (toggles.get(r, c)) {
+                    augmented.set(r, c, true);
+                }
+            }
+            augmented.set(r, n, (lights[r >>> 6] >>> r & 1) != 0);
+        }
+        int rank = augmented.reducedRowEchelonFormM4ri();
+
+        int[] pivotCols = new int[rank];
+        boolean[] isPivot = new boolean[n + 1];
+        for (int i = 0, col = 0; i < rank; i++) {
+            while (!augmented.get(i, col)) {
+                col++;
+            }
+            pivotCols[i] = col;
+            isPivot[col] = true;
+        }
+
+        if (!kernelComplete) {
+            for (int free = 0; free < n; free++) {
+                if (!isPivot[free]) {
+                    long[] pattern = new long[graph.words()];
+                    pattern[free >>> 6] |= 1L << free;
+                    for (int i = 0; i < rank && pivotCols[i] < n; i++) {
+                        if (augmented.get(i, free)) {
+                            pattern[pivotCols[i] >>> 6] ^= 1L << pivotCols[i];
+                        }
+                    }
+                    addToKernel(pattern);
+                }
+            }
+            kernelComplete = true;
+        }
+
+        if (isPivot[n]) { //0 = 1, so there is no solution
+            return null;
+        }
+        long[] solution = new long[graph.words()];
+        for (int i = 0; i < rank; i++) {
+            if (augmented.get(i, n)) {
+                solution[pivotCols[i] >>> 6] |= 1L << pivotCols[i];
+            }
+        }
+
+        return solution;
+    }
+
+
+    /**
+     * Runs block Lanczos once, adding any null patterns it finds to the kernel. The run works on A
+     * deflated by the null patterns already known, so it only has to find the rest of them.
+     *
+     * @param lights the packed lights to solve for, or null to only look for null patterns.
+     * @return the packed clicks of a solution of the deflated matrix, or null if none was found.
+     */
+    private long[] run(long[] lights) {
+        int n = graph.vertexCount();
+        deflated = new int[pivots.size()];
+        for (int i = 0; i < deflated.length; i++) {
+            deflated[i] = pivots.get(i);
+        }
+
+        //Start from V_0 = [lights | A y_1 ... A y_63], so that X = [a solution | about y_j]
+        long[] y = new long[n];
+        long keep = lights == null ? -1L : ~1L;
+        for (int v = 0; v < n; v++) {
+            y[v] = random.nextLong() & keep;
+        }
+        long[] start = new long[n];
+        multiply(y, start);
+        if (lights != null) {
+            for (int v = 0; v < n; v++) {
+                start[v] |= lights[v >>> 6] >>> v & 1;
+            }
+        }
+
+        long[] x = new long[n];
+        long[] last = iterate(start, x);
+
+        //Z = [X + Y | V_m | A V_m]. When A has a big kernel, V_m holds vectors that A^2 takes to
+        //0, so A V_m is where most of the null patterns end up.
+        long[] aLast = new long[n];
+        multiply(last, aLast);
+        for (int v = 0; v < n; v++) {
+            x[v] ^= y[v];
+        }
+        return combine(new long[][]{x, last, aLast}, lights);
+    }
+
+
+    /**
+     * The block Lanczos iteration. Adds V_i W_i^-1 V_i^T V_0 to x for every block V_i until
+     * V_i^T A V_i = 0, or until too little of it can be inverted to go on, which also happens near
+     * the end.
+     *
+     * @param start the starting block V_0.
+     * @param x     where to build the solution block X.
+     * @return the last block V_m, which is often but not always 0.
+     */
+    private long[] iterate(long[] start, long[] x) {
+        int n = graph.vertexCount();
+        long[] v0 = start.clone(), v1 = new long[n], v2 = new long[n], av = new long[n];
+        long[] winv0 = new long[64], winv1 = new long[64], winv2 = new long[64];
+        long[] vtav0 = new long[64], vtav1 = new long[64];
+        long[] vta2v0 = new long[64], vta2v1 = new long[64];
+        long[] d = new long[64], e = new long[64], f = new long[64], scratch = new long[64];
+        long[] tables = new long[3 * 8 * 256];
+        long mask0, mask1 = -1L; //All columns count as used before the first step
+
+        int steps = 0;
+        while (true) {
+            multiply(v0, av);
+            innerProducts(v0, av, vtav0, vta2v0);
+            if (isZero(vtav0)) {
+                break;
+            }
+
+            mask0 = chooseColumns(vtav0, mask1, winv0);
+            if (mask0 == 0 || (mask0 | mask1) != -1L) { //The recurrence needs every column
+                Log.v("BlockLanczos", "Broke down after "+steps+" steps");
+                break;
+            }
+
+            //X += V_i W_i^-1 (V_i^T V_0)
+            innerProduct(v0, start, scratch);
+            multiply(winv0, scratch, d);
+            multiplyAdd(v0, d, null, null, null, null, x, tables);
+
+            //D = I + W_i^-1 (V_i^T A^2 V_i S_i S_i^T + V_i^T A V_i)
+            for (int i = 0; i < 64; i++) {
+                scratch[i] = vta2v0[i] & mask0 ^ vtav0[i];
+            }
+            multiply(winv0, scratch, d);
+            addIdentity(d);
+
+            //E = W_(i-1)^-1 V_i^T A V_i S_i S_i^T
+            for (int i = 0; i < 64; i++) {
+                scratch[i] = vtav0[i] & mask0;
+            }
+            multiply(winv1, scratch, e);
+
+            //F = W_(i-2)^-1 (I + V_(i-1)^T A V_(i-1) W_(i-1)^-1)
+            //      (V_(i-1)^T A^2 V_(i-1) S_(i-1) S_(i-1)^T + V_(i-1)^T A V_(i-1)) S_i S_i^T
+            multiply(vtav1, winv1, f);
+            addIdentity(f);
+            multiply(winv2, f, scratch);
+            for (int i = 0; i < 64; i++) {
+                f[i] = vta2v1[i] & mask1 ^ vtav1[i];
+            }
+            multiply(scratch, f, f);
+            for (int i = 0; i < 64; i++) {
+                f[i] &= mask0;
+            }
+
+            //V_(i+1) = A V_i S_i S_i^T + V_i D + V_(i-1) E + V_(i-2) F, written over V_(i-2)
+            for (int v = 0; v < n; v++) {
+                av[v] &= mask0;
+            }
+            multiplyAdd(v0, d, v1, e, v2, f, av, tables);
+            long[] swap = v2;
+            v2 = v1;
+            v1 = v0;
+            v0 = av;
+            av = swap;
+
+            swap = winv2;
+            winv2 = winv1;
+            winv1 = winv0;
+            winv0 = swap;
+            swap = vtav1;
+            vtav1 = vtav0;
+            vtav0 = swap;
+            swap = vta2v1;
+            vta2v1 = vta2v0;
+            vta2v0 = swap;
+            mask1 = mask0;
+            steps++;
+        }
+
+        Log.v("BlockLanczos", "Stopped after "+steps+" steps");
+        return v0;
+    }
+
+
+    /**
+     * Finds the combinations of the columns of z that A takes to exactly the lights (for the first
+     * column of x) or exactly 0, by eliminating the columns of AZ. Null patterns go into the
+     * kernel.
+     *
+     * @param z      the blocks of columns to combine. The first column of z[0] aims at the
+     *               lights, and the rest at 0.
+     * @param lights the packed lights, or null if there are none.
+     * @return the packed clicks of a solution, or null if no combination gives the lights.
+     */
+    private long[] combine(long[][] z, long[] lights) {
+        int n = graph.vertexCount();
+        int blocks = z.length;
+
+        //r[b][v] is bit v of AZ - [lights | 0 ...], column by column
+        long[][] r = new long[blocks][n];
+        for (int b = 0; b < blocks; b++) {
+            multiply(z[b], r[b]);
+        }
+        if (lights != null) {
+            for (int v = 0; v < n; v++) {
+                r[0][v] ^= lights[v >>> 6] >>> v & 1;
+            }
+        }
+
+        //combos[c] is the set of columns of Z that make up column c, two longs per block
+        int columns = 64 * blocks;
+        long[][] combos = new long[columns][blocks];
+        for (int c = 0; c < columns; c++) {
+            combos[c][c >>> 6] = 1L << c;
+        }
+
+        //Clear the rows of R one at a time, retiring a pivot column for each row that isn't 0
+        long[] active = new long[blocks];
+        Arrays.fill(active, -1L);
+        long[] flip = new long[blocks];
+        for (int v = 0; v < n; v++) {
+            int pivot = -1;
+            for (int b = 0; b < blocks && pivot < 0; b++) {
+                long row = r[b][v] & active[b];
+                if (row != 0) {
+                    pivot = 64 * b + Long.numberOfTrailingZeros(row);
+                }
+            }
+            if (pivot < 0) {
+                continue;
+            }
+
+            //Add the pivot column to every other active column with a 1 in this row
+            boolean any = false;
+            for (int b = 0; b < blocks; b++) {
+                flip[b] = r[b][v] & active[b];
+                if (b == pivot >>> 6) {
+                    flip[b] &= ~(1L << pivot);
+                }
+                any |= flip[b] != 0;
+            }
+            active[pivot >>> 6] &= ~(1L << pivot);
+            if (!any) {
+                continue;
+            }
+
+            long[] pivotBlock = r[pivot >>> 6];
+            for (int w = v; w < n; w++) {
+                if ((pivotBlock[w] >>> pivot & 1) != 0) {
+                    for (int b = 0; b < blocks; b++) {
+                        r[b][w] ^= flip[b];
+                    }
+                }
+            }
+            for (int c = 0; c < columns; c++) {
+                if ((flip[c >>> 6] >>> c & 1) != 0) {
+                    for (int b = 0; b < blocks; b++) {
+                        combos[c][b] ^= combos[pivot][b];
+                    }
+                }
+            }
+        }
+
+        //The active columns are 0: each is a solution if it uses the first column, else a null
+        //pattern. Two solutions differ by a null pattern, so only the first is kept.
+        long[] solution = null;
+        long[] solutionCombo = null;
+        for (int c = 0; c < columns; c++) {
+            if ((active[c >>> 6] >>> c & 1) == 0) {
+                continue;
+            }
+
+            long[] combo = combos[c];
+            if (lights != null && (combo[0] & 1) != 0) {
+                if (solutionCombo == null) {
+                    solutionCombo = combo;
+                    solution = pack(z, combo);
+                    continue;
+                }
+                for (int b = 0; b < blocks; b++) {
+                    combo[b] ^= solutionCombo[b];
+                }
+            }
+            addToKernel(pack(z, combo));
+        }
+
+        return solution;
+    }
+
+
+    /**
+     * Multiplies the deflated toggle matrix A + C C^T by a block, where column i of C picks out the
+     * pivot of null pattern i. Since each pivot is in exactly one null pattern, C^T K = I for the
+     * known null patterns K, so a block the deflated matrix takes to 0 is also taken to 0 by A and
+     * has none of the pivots: it is made of new null patterns. A block it takes to the lights also
+     * solves A whenever the lights can be turned off.
+     */
+    private void multiply(long[] block, long[] result) {
+        graph.multiply(block, result);
+        for (int pivot : deflated) {
+            result[pivot] ^= block[pivot];
+        }
+    }
+
+
+    // Adds a null pattern to the kernel if it is independent of the ones already there
+    private void addToKernel(long[] pattern) {
+        for (int i = 0; i < kernel.size(); i++) {
+            int pivot = pivots.get(i);
+            if ((pattern[pivot >>> 6] >>> pivot & 1) != 0) {
+                xor(pattern, kernel.get(i));
+            }
+        }
+
+        int pivot = -1;
+        for (int w = 0; w < pattern.length && pivot < 0; w++) {
+            if (pattern[w] != 0) {
+                pivot = 64 * w + Long.numberOfTrailingZeros(pattern[w]);
+            }
+        }
+        if (pivot < 0) {
+            return;
+        }
+
+        //Keep the pivots unique to their patterns
+        for (long[] other : kernel) {
+            if ((other[pivot >>> 6] >>> pivot & 1) != 0) {
+                xor(other, pattern);
+            }
+        }
+        kernel.add(pattern);
+        pivots.add(pivot);
+    }
+
+
+    // Packs the sum of some columns of z, one bit per vertex
+    private long[] pack(long[][] z, long[] combo) {
+        int n = graph.vertexCount();
+        long[] packed = new long[graph.words()];
+        for (int v = 0; v < n; v++) {
+            long parity = 0;
+            for (int b = 0; b < z.length; b++) {
+                parity ^= z[b][v] & combo[b];
+            }
+            packed[v >>> 6] |= (long) (Long.bitCount(parity) & 1) << v;
+        }
+
+        return packed;
+    }
+
+
+    /**
+     * Chooses the columns S_i of V_i to keep, and W_i^-1 = S_i (S_i^T T S_i)^-1 S_i^T, by
+     * inverting as much of T = V_i^T A V_i as possible. Columns that weren't kept last step are
+     * tried first, since the recurrence needs every column kept in one of two steps in a row.
+     *
+     * @param t        V_i^T A V_i.
+     * @param lastMask the columns kept last step.
+     * @param winv     where to store W_i^-1.
+     * @return the columns kept.
+     */
+    private static long chooseColumns(long[] t, long lastMask, long[] winv) {
+        long[] left = new long[64];
+        long[] right = new long[64];
+        int[] order = new int[64];
+        int count = 0;
+        for (int c = 0; c < 64; c++) {
+            left[c] = t[c];
+            right[c] = 1L << c;
+            if ((lastMask >>> c & 1) == 0) {
+                order[count++] = c;
+            }
+        }
+        for (int c = 0; c < 64; c++) {
+            if ((lastMask >>> c & 1) != 0) {
+                order[count++] = c;
+            }
+        }
+
+        //Gauss-Jordan on [T | I], rows and columns both in the chosen order
+        long mask = 0;
+        for (int i = 0; i < 64; i++) {
+            int col = order[i];
+            long bit = 1L << col;
+            int found = -1;
+            for (int j = i; j < 64 && found < 0; j++) {
+                if ((left[order[j]] & bit) != 0) {
+                    found = j;
+                }
+            }
+
+            if (found >= 0) {
+                swap(left, right, order[i], order[found]);
+                for (int j = 0; j < 64; j++) {
+                    if (j != col && (left[j] & bit) != 0) {
+                        left[j] ^= left[col];
+                        right[j] ^= right[col];
+                    }
+                }
+                mask |= bit;
+                continue;
+            }
+
+            //No pivot in T, so use the identity half to drop this column
+            for (int j = i; j < 64 && found < 0; j++) {
+                if ((right[order[j]] & bit) != 0) {
+                    found = j;
+                }
+            }
+            if (found < 0) {
+                return 0;
+            }
+            swap(left, right, order[i], order[found]);
+            for (int j = 0; j < 64; j++) {
+                if (j != col && (right[j] & bit) != 0) {
+                    left[j] ^= left[col];
+                    right[j] ^= right[col];
+                }
+            }
+            left[col] = 0;
+            right[col] = 0;
+        }
+
+        System.arraycopy(right, 0, winv, 0, 64);
+        return mask;
+    }
+
+
+    private static void swap(long[] left, long[] right, int row0, int row1) {
+        long swap = left[row0];
+        left[row0] = left[row1];
+        left[row1] = swap;
+        swap = right[row0];
+        right[row0] = right[row1];
+        right[row1] = swap;
+    }
+
+
+    // Computes a^T b, the 64x64 matrix of inner products of the columns of a and b
+    private static void innerProduct(long[] a, long[] b, long[] result) {
+        long[] tables = new long[8 * 256];
+        for (int v = 0; v < a.length; v++) {
+            long word = a[v], add = b[v];
+            for (int k = 0; k < 8; k++) {
+                tables[k << 8 | (int) (word >>> 8 * k) & 0xff] ^= add;
+            }
+        }
+        collect(tables, 0, result);
+    }
+
+
+    // Computes v^T av and av^T av in one pass, which are V^T A V and V^T A^2 V since A is symmetric
+    private static void innerProducts(long[] v, long[] av, long[] vtav, long[] vta2v) {
+        long[] tables = new long[2 * 8 * 256];
+        for (int i = 0; i < v.length; i++) {
+            long word = v[i], aword = av[i];
+            for (int k = 0; k < 8; k++) {
+                tables[k << 8 | (int) (word >>> 8 * k) & 0xff] ^= aword;
+                tables[2048 + (k << 8) | (int) (aword >>> 8 * k) & 0xff] ^= aword;
+            }
+        }
+        collect(tables, 0, vtav);
+        collect(tables, 2048, vta2v);
+    }
+
+
+    // Turns 8 tables of the sums for each byte value into the rows of a 64x64 matrix
+    private static void collect(long[] tables, int offset, long[] result) {
+        for (int k = 0; k < 8; k++) {
+            for (int bit = 0; bit < 8; bit++) {
+                long sum = 0;
+                for (int value = 1 << bit; value < 256; value = (value + 1) | 1 << bit) {
+                    sum ^= tables[offset + (k << 8) + value];
+                }
+                result[8 * k + bit] = sum;
+            }
+        }
+    }
+
+
+    /**
+     * Adds a M + b N + c P to out, row by row, where a, b and c are blocks of vectors and M, N and
+     * P are 64x64. b and c may be null to leave them out.
+     */
+    private static void multiplyAdd(long[] a, long[] m, long[] b, long[] nMatrix, long[] c, long[] p, long[] out,
+                                    long[] tables) {
+        buildTables(m, tables, 0);
+        if (b != null) {
+            buildTables(nMatrix, tables, 2048);
+            buildTables(p, tables, 4096);
+        }
+
+        for (int v = 0; v < out.length; v++) {
+            long sum = out[v];
+            long word = a[v];
+            for (int k = 0; k < 8; k++) {
+                sum ^= tables[k << 8 | (int) (word >>> 8 * k) & 0xff];
+            }
+            if (b != null) {
+                long bword = b[v], cword = c[v];
+                for (int k = 0; k < 8; k++) {
+                    sum ^= tables[2048 + (k << 8) | (int) (bword >>> 8 * k) & 0xff]
+                            ^ tables[4096 + (k << 8) | (int) (cword >>> 8 * k) & 0xff];
+                }
+            }
+            out[v] = sum;
+        }
+    }
+
+
+    // For each byte k of a row vector, the sum of the rows of m picked out by each byte value
+    private static void buildTables(long[] m, long[] tables, int offset) {
+        for (int k = 0; k < 8; k++) {
+            int base = offset + (k << 8);
+            tables[base] = 0;
+            for (int value = 1; value < 256; value++) {
+                int low = Integer.numberOfTrailingZeros(value);
+                tables[base + value] = tables[base + (value & value - 1)] ^ m[8 * k + low];
+            }
+        }
+    }
+
+
+    // result = a b for 64x64 matrices. result may be a or b.
+    private static void multiply(long[] a, long[] b, long[] result) {
+        long[] product = new long[64];
+        for (int i = 0; i < 64; i++) {
+            long row = a[i], sum = 0;
+            while (row != 0) {
+                sum ^= b[Long.numberOfTrailingZeros(row)];
+                row &= row - 1;
+            }
+            product[i] = sum;
+        }
+        System.arraycopy(product, 0, result, 0, 64);
+    }
+
+
+    private static void addIdentity(long[] m) {
+        for (int i = 0; i < 64; i++) {
+            m[i] ^= 1L << i;
+        }
+    }
+
+
+    private static boolean isZero(long[] m) {
+        for (long row : m) {
+            if (row != 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+
+    private static int dot(long[] a, long[] b) {
+        int common = 0;
+        for (int w = 0; w < a.length; w++) {
+            common += Long.bitCount(a[w] & b[w]);
+        }
+
+        return common & 1;
+    }
+
+
+    private static void xor(long[] into, long[] from) {
+        for (int w = 0; w < into.length; w++) {
+            into[w] ^= from[w];
+        }
+    }
+}
\ No newline at end of file
@@ -3,9 +3,7 @@ package com.game.lightsout;
 import android.content.pm.ActivityInfo;
 import android.graphics.Color;
 import android.graphics.Point;
-import android.graphics.drawable.ColorDrawable;
 import android.os.Bundle;
-import android.os.SystemClock;
 import android.util.Log;
 import android.view.Gravity;
 import android.view.View;
@@ -60,13 +58,21 @@ public class BoardUI extends AbstractBoard {
      */
     private Button[][] buttons;
     /**
-     * The number of buttons in each row/col of the board. Used in UI mostly for measuring.
+     * The number of rows of buttons on the board. Used in UI mostly for measuring.
      */
-    private int boardSize;
+    private int rows;
+    /**
+     * The number of columns of buttons on the board. Used in UI mostly for measuring.
+     */
+    private int cols;
     /**
      * Is the game in timer mode?
      */
     private boolean timerMode;
+    /**
+     * The button marked by the last hint, as row * cols + col, or -1 if no button is marked
+     */
+    private int hintedButton;
 
     /**
      * What happens when this activity screen is created. We create some objects that we will need
@@ -82,15 +88,17 @@ public class BoardUI extends AbstractBoard {
 
         super.onCreate(savedInstanceState);
 
-        this.boardSize = getIntent().getIntExtra("boardSize", -1); //Get board size
+        this.rows = super.getRows(); //Get board shape
+        this.cols = super.getCols();
         this.timerMode = getIntent().getBooleanExtra("timerMode", false);
+        this.hintedButton = -1;
 
-        Log.i("BoardUI", "USER CHOICE: Board Size: " + this.boardSize);
+        Log.i("BoardUI", "USER CHOICE: Board Size: " + this.rows + "x" + this.cols);
         Log.i("BoardUI", "USER CHOICE: Timer Mode: " + this.timerMode);
 
         buttonOnColor = getResources().getColor(R.color.colorAccent);
 
-        addButtons(boardSize); //Create a buttons in the array
+        addButtons(rows, cols); //Create a buttons in the array
         createBoardView(); //Create and show view that we will manipulate
     }
 
@@ -98,20 +106,22 @@ public class BoardUI extends AbstractBoard {
      * Adds the buttons in the board to our array of buttons. Does not make them visible. Visibility
      * happens in createBoardView().
      *
-     * @param squareSize the number of horizontal rows and vertical columns in the grid of buttons.
+     * @param rows the number of horizontal rows in the grid of buttons.
+     * @param cols the number of vertical columns in the grid of buttons.
      */
-    private void addButtons(int squareSize) { //We use two params in case we ever want non-rectangular boards
+    private void addButtons(int rows, int cols) {
         Log.i("BoardUI", "Adding buttons");
 
-        this.buttons = new Button[squareSize][squareSize];
+        this.buttons = new Button[rows][cols];
 
         Point size = getScreenDimensions(); //Point where xy coordinates are screen size in pixels
         int borderSize = 15; //the size of the border on each size of the button array
         int minDimen = Math.min(size.x, size.y) - (2 * borderSize);
-        ViewGroup.LayoutParams buttonLayoutParams = new TableRow.LayoutParams(minDimen / boardSize, minDimen / boardSize, 3f);
+        int buttonSize = minDimen / Math.max(rows, cols); //The longer side fills the screen
+        ViewGroup.LayoutParams buttonLayoutParams = new TableRow.LayoutParams(buttonSize, buttonSize, 3f);
 
-        for (int r = 0; r < squareSize; r++) {
-            for (int c = 0; c < squareSize; c++) {
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < cols; c++) {
                 buttons[r][c] = new Button(this);
                 buttons[r][c].setEnabled(false);
                 buttons[r][c].setBackgroundColor(Color.LTGRAY);
@@ -173,10 +183,10 @@ public class BoardUI extends AbstractBoard {
 
                 if (timerMode) { //Reset & Start timer/stopwatch if needed
                     Log.i("BoardUI", "Starting timer");
-                    timer.setBase(SystemClock.elapsedRealtime()); //So the clock starts at 0
+                    timer.setBase(BoardUI.super.getScrambleStartTime()); //So the clock starts at 0 and agrees with the replay
                     timer.start();
                 } else{
-                    String title = getResources().getString(R.string.boardTitle, boardSize);
+                    String title = getResources().getString(R.string.boardTitle, rows, cols);
                     boardTitle.setText(title);
                 }
             }
@@ -204,10 +214,10 @@ public class BoardUI extends AbstractBoard {
         ViewGroup.LayoutParams statsRowLayoutParams = new LinearLayout.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT, 1);
 
         Log.v("BoardUI", "Creating title text box");
-        String title = getResources().getString(R.string.boardTitle, boardSize);
+        String title = getResources().getString(R.string.boardTitle, rows, cols);
         if (timerMode) {
             this.timer = new Chronometer(this);
-            timer.setText(getResources().getString(R.string.timerZero, boardSize));
+            timer.setText(getResources().getString(R.string.timerZero, rows, cols));
             timer.setFormat(title + " - %s");
             timer.setGravity(Gravity.CENTER_HORIZONTAL);
             timer.setTextColor(buttonOnColor);
@@ -244,6 +254,12 @@ public class BoardUI extends AbstractBoard {
         minClicks.setTextSize(smallFontSize);
         minClicks.setTextColor(buttonOnColor);
         minClicks.setLayoutParams(statsRowLayoutParams);
+        minClicks.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View view) {
+                showHint();
+            }
+        });
         statsRow2.addView(minClicks);
 
         //Add row to table and table to view
@@ -262,9 +278,9 @@ public class BoardUI extends AbstractBoard {
         Log.v("BoardUI", "Putting buttons in grid");
 
         TableLayout buttonGrid = new TableLayout(this);
-        for (int r = 0; r < boardSize; r++) {
+        for (int r = 0; r < rows; r++) {
             TableRow tableRow = new TableRow(this);
-            for (int c = 0; c < boardSize; c++) {
+            for (int c = 0; c < cols; c++) {
                 tableRow.addView(buttons[r][c]);
             }
             buttonGrid.addView(tableRow);
@@ -292,16 +308,17 @@ public class BoardUI extends AbstractBoard {
             super.initSolution();
         }
 
-        int minRows = Math.min(boardSize, btnStates.length);
-        int minCols = Math.min(boardSize, btnStates[0].length);
+        int minRows = Math.min(rows, btnStates.length);
+        int minCols = Math.min(cols, btnStates[0].length);
         for (int r = 0; r < minRows; r++) {
             for (int c = 0; c < minCols; c++) {
-                int btnColor = btnStates[r][c] ? buttonOnColor : Color.LTGRAY;
+                int btnColor = btnStates[r][c] ? stateColor(super.getState(r, c)) : Color.LTGRAY;
                 buttons[r][c].setBackgroundColor(btnColor);
                 buttons[r][c].setEnabled(!(isOnOnlyMode() && btnColor == Color.LTGRAY));
             }
         }
 
+        clearHint();
         super.resetClicks();
         updateClickCount();
 
@@ -320,20 +337,78 @@ public class BoardUI extends AbstractBoard {
     }
 
     /**
-     * Updates the min clicks counter. This only happens immediately after a new scramble is
-     * created, like when the user hits "New Scramble"
+     * Updates the min clicks counter. This happens immediately after a new scramble is created,
+     * like when the user hits "New Scramble", and again each time a search in the background finds
+     * fewer min clicks. Until the search is done, the count is shown as an upper bound.
      */
     private void updateMinClicks() {
         Log.v("BoardUI", "Updating min clicks");
 
         int minClicksCount = super.getMinClicks();
         if(minClicksCount > 0) {
-            minClicks.setText(getResources().getString(R.string.minText, Integer.toString(minClicksCount)));
+            String count = super.isMinClicksOptimal() ? Integer.toString(minClicksCount) : "\u2264" + minClicksCount;
+            minClicks.setText(getResources().getString(R.string.minText, count));
         } else{
             minClicks.setText(getResources().getString(R.string.minText, "?"));
         }
     }
 
+    /**
+     * Marks a button that is part of one of the solutions with the fewest clicks. This happens when
+     * the user taps the min clicks counter, and the mark goes away with the next click.
+     */
+    private void showHint() {
+        clearHint();
+
+        int hint = super.getHint();
+        if (hint >= 0) {
+            buttons[hint / cols][hint % cols].setText(getResources().getString(R.string.hintMark));
+            this.hintedButton = hint;
+        }
+    }
+
+
+    /**
+     * Removes the mark of the last hint, if there is one.
+     */
+    private void clearHint() {
+        if (hintedButton >= 0) {
+            buttons[hintedButton / cols][hintedButton % cols].setText("");
+            this.hintedButton = -1;
+        }
+    }
+
+    @Override
+    protected void onMinClicksImproved() {
+        super.onMinClicksImproved();
+
+        updateMinClicks();
+    }
+
+    /**
+     * Gets the color of a light in a given state. Lights that are off are gray and lights in the
+     * last state are the accent color. On boards with more than 2 states, the states in between
+     * fade from gray to the accent color.
+     *
+     * @param state the state of the light, from 0 to getStates() - 1.
+     * @return the color of the light.
+     */
+    private int stateColor(int state) {
+        int states = super.getStates();
+        if (state == 0) {
+            return Color.LTGRAY;
+        }
+        if (state == states - 1) {
+            return buttonOnColor;
+        }
+
+        float fade = (float) state / (states - 1);
+        return Color.rgb(
+                Math.round(Color.red(Color.LTGRAY) + fade * (Color.red(buttonOnColor) - Color.red(Color.LTGRAY))),
+                Math.round(Color.green(Color.LTGRAY) + fade * (Color.green(buttonOnColor) - Color.green(Color.LTGRAY))),
+                Math.round(Color.blue(Color.LTGRAY) + fade * (Color.blue(buttonOnColor) - Color.blue(Color.LTGRAY))));
+    }
+
     /**
      * Gets the size of the screen as a Point object. Point.x is the screen width, and Point.y is
      * the screen height.
@@ -359,6 +434,7 @@ public class BoardUI extends AbstractBoard {
         if (timerMode) { //Stop timer/stopwatch
             timer.stop();
             Log.i("BoardUI", "Stopping Timer");
+            super.saveReplay();
         } else {
             boardTitle.setText(getResources().getString(R.string.youWon));
             Log.v("BoardUI", "Changed top text to \"You Won!\"");
@@ -368,9 +444,14 @@ public class BoardUI extends AbstractBoard {
         newScrambleBtn.setBackgroundColor(getResources().getColor(R.color.colorAccent));
         Log.i("BoardUI", "Enabled new scramble button and changed button color");
 
-        if (super.getMinClicks() > super.getClicks()) {
+        if (super.isMinClicksOptimal() && super.getMinClicks() > super.getClicks()) { //A bound can be beaten
             Log.e("BoardUI", "Board was solved in fewer than minimal clicks");
         }
+
+        int percentEasier = super.getPercentEasier();
+        if (percentEasier >= 0) { //Small boards can say how hard the scramble was
+            minClicks.setText(getResources().getString(R.string.minTextHarder, super.getMinClicks(), percentEasier));
+        }
     }
 
 
@@ -416,32 +497,25 @@ public class BoardUI extends AbstractBoard {
         }
 
         /**
-         * When a button is clicked in a certain row/column, that button flips state (color), and so
-         * do the adjacent buttons.
+         * When a button is clicked in a certain row/column, that button moves on to its next state
+         * (color), and so do the adjacent buttons. On boards that wrap around, buttons on opposite
+         * edges are adjacent too.
          *
          * @param btnRow the row number (0-indexed) of the pressed button.
          * @param btnCol the column number (0-indexed) of the pressed button.
          */
         private void buttonClick(int btnRow, int btnCol) {
-            //Flip button colors
-            flipColor(BoardUI.this.buttons[btnRow][btnCol]); //Flip the button itself
-            if (btnCol != 0) { //Flip the left button, if not in left column
-                flipColor(BoardUI.this.buttons[btnRow][btnCol - 1]);
-            }
-            if (btnCol != BoardUI.this.boardSize - 1) { //Flip the right button, if not in right column
-                flipColor(BoardUI.this.buttons[btnRow][btnCol + 1]);
-            }
-            if (btnRow != 0) { //Flip the upper button, if not in top row
-                flipColor(BoardUI.this.buttons[btnRow - 1][btnCol]);
-            }
-            if (btnRow != BoardUI.this.boardSize - 1) { //Flip the lower button, if not in bottom row
-                flipColor(BoardUI.this.buttons[btnRow + 1][btnCol]);
-            }
-            Log.v("BoardUI", "Flipped button colors");
+            BoardUI.this.clearHint();
 
             //Let AbstractBoard know there was a click
             BoardUI.super.click(btnRow, btnCol);
 
+            //Update button colors to the new states. The backend knows which buttons the click reached.
+            for (int light : BoardUI.super.getToggled(btnRow, btnCol)) {
+                updateColor(light / cols, light % cols);
+            }
+            Log.v("BoardUI", "Updated button colors");
+
             //Update click count and min clicks
             Log.v("BoardUI", "Updating clicks count and min clicks");
             BoardUI.this.updateClickCount();
@@ -455,18 +529,19 @@ public class BoardUI extends AbstractBoard {
         }
 
         /**
-         * Flips the color of a button to/from gray and the accent color and updates if the button
-         * is enabled based on color if on only mode is enabled.
+         * Colors a button by the state of its light and updates if the button is enabled based on
+         * its state if on only mode is enabled.
          *
-         * @param btn the button whose state to flip.
+         * @param btnRow the row number (0-indexed) of the button.
+         * @param btnCol the column number (0-indexed) of the button.
          */
-        private void flipColor(Button btn) {
-            int currentColor = ((ColorDrawable) btn.getBackground()).getColor();
-            int newColor = currentColor == Color.LTGRAY ? buttonOnColor : Color.LTGRAY;
-            btn.setBackgroundColor(newColor);
+        private void updateColor(int btnRow, int btnCol) {
+            int state = getState(btnRow, btnCol);
+            Button btn = BoardUI.this.buttons[btnRow][btnCol];
+            btn.setBackgroundColor(stateColor(state));
 
             if (isOnOnlyMode()) {
-                btn.setEnabled(newColor == buttonOnColor);
+                btn.setEnabled(state != 0);
             }
         }
     }
@@ -0,0 +1,31 @@
+package com.game.lightsout;
+
+/**
+ * Asks a long running search to stop. The thread that started the search keeps the token and
+ * cancels it when the result is no longer wanted, like when a new board is scrambled, and the
+ * search checks it between steps and returns the best it has found so far.
+ * <p>
+ * Unlike interrupting the thread, this works when the search runs on a shared pool thread, and
+ * doesn't disturb anything else running there. A token can't be reset once cancelled.
+ *
+ * @author William Boyles
+ */
+final class CancellationToken {
+    /**
+     * Has the search been asked to stop?
+     */
+    private volatile boolean cancelled;
+
+
+    /**
+     * Asks every search using this token to stop as soon as it can.
+     */
+    void cancel() {
+        this.cancelled = true;
+    }
+
+
+    boolean isCancelled() {
+        return this.cancelled;
+    }
+}
\ No newline at end of file
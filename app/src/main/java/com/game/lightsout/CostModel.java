@@ -0,0 +1,448 @@
+package com.game.lightsout;
+
+import android.util.Log;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Estimates how long and how much memory each way of solving a board takes, so SolverStrategy can
+ * pick the fastest one for a size. Each estimate counts the word operations of its algorithm and
+ * multiplies them by the time one of those operations takes on this device.
+ * <p>
+ * The algorithms don't spend their operations the same way (chasing shifts rows that fit in the
+ * cache, elimination streams a big matrix through memory, a table lookup is a random read), so
+ * each has its own time, measured by a short benchmark that runs the algorithm itself on a small
+ * board. It is run in the background when the app starts and saved, so that later starts only read
+ * the times back. Until the benchmark is done, the estimates use the times of a slow phone.
+ *
+ * @author William Boyles
+ */
+final class CostModel {
+    /**
+     * The times of a slow phone, used until the device is calibrated
+     */
+    static final CostModel DEFAULT = new CostModel(6.0, 3.0, 2.0, 4.0, 3.0);
+
+    /**
+     * The version of the saved file format
+     */
+    private static final int VERSION = 2;
+    /**
+     * How long to time each algorithm for, in ns
+     */
+    private static final long CALIBRATION_NANOS = 20000000;
+    /**
+     * The size of the flat board that chasing is timed on, big enough for the timer to see
+     */
+    private static final int CHASE_SIZE = 128;
+    /**
+     * The size of the board that the banded matrix is timed on
+     */
+    private static final int BANDED_SIZE = 16;
+    /**
+     * The size of the torus that full elimination is timed on
+     */
+    private static final int ELIMINATION_SIZE = 12;
+    /**
+     * The size of the board that distance table walks are timed on
+     */
+    private static final int TABLE_SIZE = 3;
+    /**
+     * The size of the board that the search is timed on, with 16 null patterns
+     */
+    private static final int SEARCH_SIZE = 19;
+    /**
+     * The word operations of one distance table lookup, for working out its index
+     */
+    private static final int LOOKUP_WORDS = 4;
+    /**
+     * The word operations of setting up a search, for the arrays it allocates and converts
+     */
+    private static final int SEARCH_SETUP_WORDS = 2048;
+
+    /**
+     * The model of this device, once calibrated
+     */
+    private static volatile CostModel calibrated;
+    /**
+     * Is the device being calibrated in the background? Guarded by CostModel.class.
+     */
+    private static boolean calibrating;
+
+    /**
+     * The time of one word operation of chasing, in ns
+     */
+    private final double chaseNanos;
+    /**
+     * The time of one word operation of reducing the banded matrix, in ns
+     */
+    private final double bandedNanos;
+    /**
+     * The time of one word operation of reducing the whole toggle matrix, in ns
+     */
+    private final double eliminationNanos;
+    /**
+     * The time of one word operation of walking a distance table, in ns
+     */
+    private final double tableNanos;
+    /**
+     * The time of one word operation of the search, in ns
+     */
+    private final double searchNanos;
+
+
+    /**
+     * Creates a model from the time of one word operation of each algorithm, in ns.
+     */
+    CostModel(double chaseNanos, double bandedNanos, double eliminationNanos, double tableNanos, double searchNanos) {
+        this.chaseNanos = chaseNanos;
+        this.bandedNanos = bandedNanos;
+        this.eliminationNanos = eliminationNanos;
+        this.tableNanos = tableNanos;
+        this.searchNanos = searchNanos;
+    }
+
+
+    /**
+     * Gets the model of this device, or DEFAULT if it hasn't been calibrated yet.
+     *
+     * @return the model to pick strategies with.
+     */
+    static CostModel get() {
+        CostModel model = calibrated;
+        return model == null ? DEFAULT : model;
+    }
+
+
+    /**
+     * Makes the model of this device ready for get() in the background. It is loaded from the
+     * given file if it was saved there before, otherwise the device is calibrated and the result
+     * is saved there.
+     *
+     * @param file where the model is saved.
+     */
+    static void prepare(final File file) {
+        synchronized (CostModel.class) {
+            if (calibrated != null || calibrating) {
+                return;
+            }
+            calibrating = true;
+        }
+
+        //Not a background priority thread, since that would time the algorithms on a slow core
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    calibrated = loadOrCalibrate(file);
+                } finally {
+                    synchronized (CostModel.class) {
+                        calibrating = false;
+                    }
+                }
+            }
+        }, "LightsOut-calibration");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+
+    /**
+     * Times each algorithm on a small board on this device. This takes about 200 ms.
+     *
+     * @return the model of this device.
+     */
+    static CostModel calibrate() {
+        SplitMix64 random = new SplitMix64(System.nanoTime());
+
+        final BitBoard flat = new BitBoard(CHASE_SIZE);
+        Scrambler.scramble(random.nextLong(), flat, null);
+        final BitBoard square = new BitBoard(BANDED_SIZE);
+        Scrambler.scramble(random.nextLong(), square, null);
+        final ToggleMasks masks = new ToggleMasks(ELIMINATION_SIZE, ELIMINATION_SIZE, Topology.TORUS);
+        final BitBoard torus = new BitBoard(ELIMINATION_SIZE);
+        Scrambler.scramble(random.nextLong(), masks, torus, null);
+        final GameBoardSolver solver = new GameBoardSolver(SEARCH_SIZE);
+        BitBoard presses = new BitBoard(SEARCH_SIZE);
+        Scrambler.scramble(random.nextLong(), new BitBoard(SEARCH_SIZE), presses);
+        final boolean[][] clicks = new boolean[SEARCH_SIZE][SEARCH_SIZE];
+        presses.toArray(clicks);
+        final DistanceTable table;
+        try {
+            table = DistanceTable.build(TABLE_SIZE, false, null, 1);
+        } catch (InterruptedException e) { //Can't happen on one thread
+            throw new IllegalStateException(e);
+        }
+        final int[] states = new int[64];
+        for (int i = 0; i < states.length; i++) {
+            states[i] = random.nextInt(1 << TABLE_SIZE * TABLE_SIZE);
+        }
+
+        Timed[] algorithms = {
+                new Timed() {
+                    @Override
+                    int run() {
+                        return NullSpace.solve(flat).popCount();
+                    }
+                },
+                new Timed() {
+                    @Override
+                    int run() {
+                        return BandedBitMatrix.solve(square).popCount();
+                    }
+                },
+                new Timed() {
+                    @Override
+                    int run() {
+                        return masks.solve(torus).popCount();
+                    }
+                },
+                new Timed() {
+                    @Override
+                    int run() {
+                        int sink = 0;
+                        for (int state : states) {
+                            sink += table.solution(state);
+                        }
+                        return sink;
+                    }
+                },
+                new Timed() {
+                    @Override
+                    int run() {
+                        return solver.findBestSolution(clicks).length;
+                    }
+                }
+        };
+
+        //A first round lets the JIT compile the algorithms before they are timed
+        double[] nanos = new double[algorithms.length];
+        Arrays.fill(nanos, Double.MAX_VALUE);
+        int sink = 0;
+        for (int round = 0; round < 2; round++) {
+            for (int i = 0; i < algorithms.length; i++) {
+                nanos[i] = Math.min(nanos[i], algorithms[i].fastest());
+                sink += algorithms[i].sink;
+            }
+        }
+
+        int nullity = NullSpace.nullity(BANDED_SIZE);
+        CostModel model = new CostModel(nanos[0] / chaseWords(CHASE_SIZE, CHASE_SIZE),
+                nanos[1] / bandedWords(BANDED_SIZE, nullity),
+                nanos[2] / eliminationWords(ELIMINATION_SIZE, ELIMINATION_SIZE),
+                nanos[3] / (states.length * tableWords(TABLE_SIZE)),
+                nanos[4] / searchWords(SEARCH_SIZE, SEARCH_SIZE, solver.getNullity()));
+        Log.i("CostModel", "Calibrated "+model+" ("+(sink & 1)+")");
+        return model;
+    }
+
+
+    /**
+     * Loads a model saved by writeTo().
+     *
+     * @param file the saved model.
+     * @return the loaded model.
+     * @throws IOException if the file can't be read or holds a different version.
+     */
+    static CostModel load(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            if (in.readInt() != VERSION) {
+                throw new IOException("Not a cost model: "+file);
+            }
+
+            return new CostModel(in.readDouble(), in.readDouble(), in.readDouble(), in.readDouble(), in.readDouble());
+        }
+    }
+
+
+    /**
+     * Saves the model so that it can be loaded again with load().
+     *
+     * @param file the file to write to. It is replaced if it exists.
+     * @throws IOException if the file can't be written.
+     */
+    void writeTo(File file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+            out.writeInt(VERSION);
+            out.writeDouble(chaseNanos);
+            out.writeDouble(bandedNanos);
+            out.writeDouble(eliminationNanos);
+            out.writeDouble(tableNanos);
+            out.writeDouble(searchNanos);
+        }
+    }
+
+
+    /**
+     * Estimates the time to solve a flat board with the plus neighborhood by chasing the lights
+     * down it twice (NullSpace.solve()).
+     */
+    long chaseNanos(int rows, int cols) {
+        return nanos(chaseNanos, chaseWords(rows, cols));
+    }
+
+
+    long chaseBytes(int rows, int cols) {
+        return (rows + 8L) * ((cols + 63) >>> 6) * 8;
+    }
+
+
+    /**
+     * Estimates the time to solve a square board by reducing its banded toggle matrix
+     * (BandedBitMatrix.solve()).
+     */
+    long bandedNanos(int boardSize, int nullity) {
+        return nanos(bandedNanos, bandedWords(boardSize, nullity));
+    }
+
+
+    long bandedBytes(int boardSize, int nullity) {
+        return (long) boardSize * boardSize * bandWords(boardSize, nullity) * 8;
+    }
+
+
+    /**
+     * Estimates the time to solve a board of any shape by reducing its whole toggle matrix
+     * (ToggleMasks.solve()).
+     */
+    long eliminationNanos(int rows, int cols) {
+        return nanos(eliminationNanos, eliminationWords(rows, cols));
+    }
+
+
+    long eliminationBytes(int rows, int cols) {
+        long buttons = (long) rows * cols;
+        return buttons * ((buttons + 64) >>> 6) * 8;
+    }
+
+
+    /**
+     * Estimates the time to walk a distance table down from a board to the solved board.
+     */
+    long tableNanos(int boardSize) {
+        return nanos(tableNanos, tableWords(boardSize));
+    }
+
+
+    /**
+     * Estimates the time GameBoardSolver takes to search every sum of the null patterns for the
+     * solution with the fewest clicks.
+     */
+    long searchNanos(int rows, int cols, int nullity) {
+        return nanos(searchNanos, searchWords(rows, cols, nullity));
+    }
+
+
+    @Override
+    public String toString() {
+        return String.format("%.2f ns per word chasing, %.2f banded, %.2f eliminating, %.2f walking a table, %.2f searching",
+                chaseNanos, bandedNanos, eliminationNanos, tableNanos, searchNanos);
+    }
+
+
+    // Loads a saved model, or calibrates the device and saves it if it can't be loaded
+    private static CostModel loadOrCalibrate(File file) {
+        if (file.isFile()) {
+            try {
+                CostModel model = load(file);
+                Log.i("CostModel", "Loaded "+model);
+                return model;
+            } catch (IOException e) {
+                Log.w("CostModel", "Could not load model, calibrating again", e);
+            }
+        }
+
+        CostModel model = calibrate();
+        try {
+            model.writeTo(file);
+        } catch (IOException e) {
+            Log.e("CostModel", "Could not save model", e);
+        }
+
+        return model;
+    }
+
+
+    // Chasing shifts and XORs every row 4 times, twice per chase, and solving the last row takes a
+    // few passes of Euclid's algorithm over rows
+    private static double chaseWords(int rows, int cols) {
+        return (4.0 * rows + 3.0 * cols) * ((cols + 63) >>> 6);
+    }
+
+
+    // Each button's row is XORed into the rows below it within the band
+    private static double bandedWords(int boardSize, int nullity) {
+        double buttons = (double) boardSize * boardSize;
+        return buttons * boardSize * bandWords(boardSize, nullity);
+    }
+
+
+    // Each row is XORed into about half of the others
+    private static double eliminationWords(int rows, int cols) {
+        double buttons = (double) rows * cols;
+        return buttons * buttons / 2 * Math.ceil((buttons + 1) / 64);
+    }
+
+
+    // Each click of the walk looks up every button to find the next one
+    private static double tableWords(int boardSize) {
+        double buttons = (double) boardSize * boardSize;
+        return buttons * buttons * LOOKUP_WORDS;
+    }
+
+
+    // On a scrambled board the best solution has so many clicks that nearly every second half sum
+    // is close enough in weight to be paired with each first half sum, so the whole table is counted
+    private static double searchWords(int rows, int cols, int nullity) {
+        int secondHalf = Math.min(nullity / 2, GameBoardSolver.MAX_TABLE_BITS);
+        int firstHalf = nullity - secondHalf;
+        double words = (double) rows * ((cols + 63) >>> 6);
+        double sums = Math.pow(2, firstHalf) * (words * (1 + (1 << secondHalf)) + (double) rows * cols);
+        return SEARCH_SETUP_WORDS + 8.0 * rows * cols + sums;
+    }
+
+
+    // The longs in the window of a row of a banded toggle matrix, as sized by BandedBitMatrix
+    private static long bandWords(int boardSize, int nullity) {
+        return (3L * boardSize + nullity + 127) >>> 6;
+    }
+
+
+    // Multiplies a number of word operations by the time of each, capped at Long.MAX_VALUE
+    private static long nanos(double nanosPerWord, double words) {
+        return (long) Math.min(nanosPerWord * words, Long.MAX_VALUE);
+    }
+
+
+    // An algorithm timed by calibrate()
+    private abstract static class Timed {
+        /**
+         * Something computed from the results, so the JIT can't drop the work
+         */
+        int sink;
+
+
+        abstract int run();
+
+
+        // Runs the algorithm over and over for CALIBRATION_NANOS. The fastest pass is kept, since
+        // anything else running can only slow a pass down.
+        double fastest() {
+            long fastest = Long.MAX_VALUE;
+            long start = System.nanoTime();
+            do {
+                long passStart = System.nanoTime();
+                sink += run();
+                fastest = Math.min(fastest, System.nanoTime() - passStart);
+            } while (System.nanoTime() - start < CALIBRATION_NANOS);
+
+            return fastest;
+        }
+    }
+}
\ No newline at end of file
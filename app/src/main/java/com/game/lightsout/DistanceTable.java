@@ -0,0 +1,676 @@
+package com.game.lightsout;
+
+import android.os.Process;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * The number of clicks needed to solve every solvable board of a small size, found by a breadth
+ * first search out from the solved board. Once built, looking up a board in on lights only mode is
+ * a single read. In the normal mode it takes up to n^2 reads per click of the solution, since the
+ * table only stores distances mod 3. Either way this is a fast way to show the minimum clicks of
+ * small boards and a check on the answers of GameBoardSolver. It also covers on lights only mode,
+ * which the linear algebra can't handle.
+ * <p>
+ * Only solvable boards are stored. For those, the lights on the pivot buttons of the null space
+ * basis are fixed by the other lights, so a board is stored at the index made of its other lights.
+ * Normally, each board takes 2 bits holding its distance mod 3. Clicks can be undone, so the boards
+ * next to one at distance d are at d - 1, d, or d + 1, and the mod 3 distance is enough to walk
+ * down to the solved board. In on lights only mode clicks can't always be undone, so each board
+ * takes a full byte holding its distance.
+ * <p>
+ * The distances live outside the Java heap in a direct buffer, or a memory mapped file once saved.
+ * 5x5 boards take 2 MB, or 8 MB in on lights only mode.
+ *
+ * @author William Boyles
+ */
+final class DistanceTable {
+    /**
+     * The largest board size a table can be built for
+     */
+    static final int MAX_SIZE = 5;
+    /**
+     * The distance of a board that can't be solved
+     */
+    static final int UNREACHABLE = -1;
+    /**
+     * The first bytes of a saved table, "LOD"
+     */
+    private static final int MAGIC = 0x4c4f44;
+    /**
+     * The version of the saved table format
+     */
+    private static final int VERSION = 1;
+    /**
+     * The number of bytes before the distances in a saved table
+     */
+    private static final int HEADER_BYTES = 6;
+    /**
+     * The number of boards in each parallel task of the search. This is a multiple of 64, so no
+     * two tasks write to the same long of the frontier or byte of the table.
+     */
+    private static final int CHUNK = 1 << 16;
+    /**
+     * The tables that have been loaded or built, by key(). Guarded by itself.
+     */
+    private static final Map<Integer, DistanceTable> tables = new HashMap<>();
+    /**
+     * The tables being loaded or built in the background, by key(). Guarded by tables.
+     */
+    private static final Map<Integer, Thread> preparing = new HashMap<>();
+    /**
+     * The tasks to run once the tables being prepared are ready, by key(). Guarded by tables.
+     */
+    private static final Map<Integer, List<Runnable>> waiting = new HashMap<>();
+
+    /**
+     * The number of buttons per side of the board
+     */
+    private final int boardSize;
+    /**
+     * Is the table for on lights only mode?
+     */
+    private final boolean onLightsOnly;
+    /**
+     * The lights toggled by clicking each button
+     */
+    private final int[] clickMasks;
+    /**
+     * The pivot buttons of the null space basis, from lowest to highest
+     */
+    private final int[] pivots;
+    /**
+     * The null space basis in reduced row echelon form. Pattern j is the only one with pivot j.
+     */
+    private final int[] nullPatterns;
+    /**
+     * The number of solvable boards
+     */
+    private final int boards;
+    /**
+     * The distances. Normally 2 bits per board holding the distance mod 3, otherwise a byte per
+     * board holding the distance. The all ones value means the board hasn't been reached.
+     */
+    private final ByteBuffer distances;
+
+
+    private DistanceTable(int boardSize, boolean onLightsOnly, ByteBuffer distances) {
+        if (boardSize <= 0 || boardSize > MAX_SIZE) {
+            throw new IllegalArgumentException("Invalid board size: " + boardSize);
+        }
+
+        this.boardSize = boardSize;
+        this.onLightsOnly = onLightsOnly;
+
+        int buttons = boardSize * boardSize;
+        this.clickMasks = new int[buttons];
+        for (int b = 0; b < buttons; b++) {
+            int r = b / boardSize, c = b % boardSize;
+            int mask = 1 << b;
+            mask |= c > 0 ? 1 << (b - 1) : 0;
+            mask |= c < boardSize - 1 ? 1 << (b + 1) : 0;
+            mask |= r > 0 ? 1 << (b - boardSize) : 0;
+            mask |= r < boardSize - 1 ? 1 << (b + boardSize) : 0;
+            clickMasks[b] = mask;
+        }
+
+        //Put the null patterns in reduced row echelon form
+        BitBoard[] basis = NullSpace.basis(boardSize);
+        this.nullPatterns = new int[basis.length];
+        for (int j = 0; j < basis.length; j++) {
+            for (int r = 0; r < boardSize; r++) {
+                nullPatterns[j] |= (int) basis[j].words()[r] << (r * boardSize);
+            }
+        }
+        this.pivots = new int[basis.length];
+        int rank = 0;
+        for (int bit = 0; bit < buttons && rank < nullPatterns.length; bit++) {
+            for (int row = rank; row < nullPatterns.length; row++) {
+                if ((nullPatterns[row] >>> bit & 1) != 0) {
+                    int swap = nullPatterns[row];
+                    nullPatterns[row] = nullPatterns[rank];
+                    nullPatterns[rank] = swap;
+                    for (int other = 0; other < nullPatterns.length; other++) {
+                        if (other != rank && (nullPatterns[other] >>> bit & 1) != 0) {
+                            nullPatterns[other] ^= nullPatterns[rank];
+                        }
+                    }
+                    pivots[rank++] = bit;
+                    break;
+                }
+            }
+        }
+
+        this.boards = 1 << (buttons - pivots.length);
+        int bytes = onLightsOnly ? boards : (boards + 3) >>> 2;
+        if (distances == null) {
+            distances = ByteBuffer.allocateDirect(bytes);
+            for (int i = 0; i < bytes; i++) {
+                distances.put(i, (byte) -1);
+            }
+        } else if (distances.capacity() != bytes) {
+            throw new IllegalArgumentException("Table has "+distances.capacity()+" bytes, expected "+bytes);
+        }
+        this.distances = distances;
+    }
+
+
+    /**
+     * Builds the table for a board size with the shared worker threads.
+     *
+     * @param boardSize    the number of buttons per side of the board, at most MAX_SIZE.
+     * @param onLightsOnly should the table only allow clicks on lights that are on?
+     * @return the finished table.
+     * @throws InterruptedException if the thread is interrupted while waiting for the workers.
+     */
+    static DistanceTable build(int boardSize, boolean onLightsOnly) throws InterruptedException {
+        return build(boardSize, onLightsOnly, Workers.pool(), Workers.parallelism());
+    }
+
+
+    /**
+     * Builds the table for a board size. Each level of the search either pushes out from the new
+     * boards of the last level, when there are few of them, or has every unreached board look for
+     * a neighbor in the last level, split between threads.
+     *
+     * @param boardSize    the number of buttons per side of the board, at most MAX_SIZE.
+     * @param onLightsOnly should the table only allow clicks on lights that are on?
+     * @param pool         the threads to run on.
+     * @param parallelism  the number of threads in the pool.
+     * @return the finished table.
+     * @throws InterruptedException if the thread is interrupted while waiting for the workers.
+     */
+    static DistanceTable build(int boardSize, boolean onLightsOnly, ExecutorService pool, int parallelism)
+            throws InterruptedException {
+        Log.i("DistanceTable", "Building "+boardSize+"x"+boardSize+" table, on lights only: "+onLightsOnly);
+
+        final DistanceTable table = new DistanceTable(boardSize, onLightsOnly, null);
+        int words = (table.boards + 63) >>> 6;
+        long[] frontier = new long[words], next = new long[words];
+        table.setDistance(0, 0);
+        frontier[0] = 1;
+        long frontierSize = 1, unreached = table.boards - 1;
+        int buttons = boardSize * boardSize;
+
+        for (int d = 0; frontierSize > 0; d++) {
+            Arrays.fill(next, 0);
+            if (frontierSize * buttons < unreached || parallelism <= 1) {
+                frontierSize = table.push(frontier, next, d);
+            } else {
+                frontierSize = table.pull(frontier, next, d, pool);
+            }
+            unreached -= frontierSize;
+
+            long[] swap = frontier;
+            frontier = next;
+            next = swap;
+            Log.v("DistanceTable", frontierSize+" boards at distance "+(d + 1));
+        }
+
+        return table;
+    }
+
+
+    /**
+     * Loads a table saved by writeTo(). The file is memory mapped rather than read.
+     *
+     * @param file         the saved table.
+     * @param boardSize    the board size the table should be for.
+     * @param onLightsOnly should the table be for on lights only mode?
+     * @return the loaded table.
+     * @throws IOException if the file can't be read or holds a different table.
+     */
+    static DistanceTable load(File file, int boardSize, boolean onLightsOnly) throws IOException {
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            int magic = in.readUnsignedByte() << 16 | in.readUnsignedByte() << 8 | in.readUnsignedByte();
+            int version = in.readUnsignedByte();
+            int size = in.readUnsignedByte();
+            boolean lightsOnly = in.readUnsignedByte() != 0;
+            if (magic != MAGIC || version != VERSION) {
+                throw new IOException("Not a distance table: " + file);
+            }
+            if (size != boardSize || lightsOnly != onLightsOnly) {
+                throw new IOException("Table is for a different board: " + file);
+            }
+
+            FileChannel channel = in.getChannel();
+            ByteBuffer distances = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES, channel.size() - HEADER_BYTES);
+            try {
+                return new DistanceTable(boardSize, onLightsOnly, distances);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Distance table is corrupt: " + file, e);
+            }
+        }
+    }
+
+
+    /**
+     * Saves the table so that it can be loaded again with load().
+     *
+     * @param file the file to write to. It is replaced if it exists.
+     * @throws IOException if the file can't be written.
+     */
+    void writeTo(File file) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(new byte[]{(byte) (MAGIC >>> 16), (byte) (MAGIC >>> 8), (byte) MAGIC,
+                    (byte) VERSION, (byte) boardSize, (byte) (onLightsOnly ? 1 : 0)});
+
+            FileChannel channel = out.getChannel();
+            ByteBuffer data = distances.duplicate();
+            data.clear();
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+        }
+    }
+
+
+    /**
+     * Gets a table that has already been loaded or built.
+     *
+     * @param boardSize    the number of buttons per side of the board.
+     * @param onLightsOnly should the table be for on lights only mode?
+     * @return the table, or null if it isn't ready.
+     */
+    static DistanceTable cached(int boardSize, boolean onLightsOnly) {
+        synchronized (tables) {
+            return tables.get(key(boardSize, onLightsOnly));
+        }
+    }
+
+
+    /**
+     * Makes a table ready for cached() in the background. The table is loaded from the given
+     * folder if it was saved there before, otherwise it is built and saved there.
+     *
+     * @param dir          the folder tables are saved in.
+     * @param boardSize    the number of buttons per side of the board, at most MAX_SIZE.
+     * @param onLightsOnly should the table be for on lights only mode?
+     */
+    static void prepare(final File dir, final int boardSize, final boolean onLightsOnly) {
+        final int key = key(boardSize, onLightsOnly);
+        synchronized (tables) {
+            if (tables.containsKey(key) || preparing.containsKey(key)) {
+                return;
+            }
+
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    DistanceTable table = null;
+                    List<Runnable> tasks;
+                    try {
+                        table = loadOrBuild(dir, boardSize, onLightsOnly);
+                    } catch (InterruptedException e) {
+                        Log.w("DistanceTable", "Interrupted while building table");
+                    } finally {
+                        synchronized (tables) {
+                            preparing.remove(key);
+                            if (table != null) {
+                                tables.put(key, table);
+                            }
+                            tasks = waiting.remove(key);
+                        }
+                    }
+
+                    if (table != null && tasks != null) {
+                        for (Runnable task : tasks) {
+                            task.run();
+                        }
+                    }
+                }
+            }, "LightsOut-distances");
+            thread.setDaemon(true);
+            preparing.put(key, thread);
+            thread.start();
+        }
+    }
+
+
+    /**
+     * Waits a short time for a table that is being prepared in the background.
+     *
+     * @param boardSize     the number of buttons per side of the board.
+     * @param onLightsOnly  should the table be for on lights only mode?
+     * @param timeoutMillis the longest to wait, in ms.
+     * @return the table, or null if it still isn't ready.
+     * @throws InterruptedException if the thread is interrupted while waiting.
+     */
+    static DistanceTable await(int boardSize, boolean onLightsOnly, long timeoutMillis) throws InterruptedException {
+        Thread thread;
+        synchronized (tables) {
+            int key = key(boardSize, onLightsOnly);
+            DistanceTable table = tables.get(key);
+            if (table != null) {
+                return table;
+            }
+            thread = preparing.get(key);
+        }
+
+        //The table is cached before the thread that prepares it ends
+        if (thread != null) {
+            thread.join(timeoutMillis);
+        }
+        return cached(boardSize, onLightsOnly);
+    }
+
+
+    /**
+     * Runs a task once a table that is being prepared in the background is ready for cached(). It
+     * runs on the thread that prepared the table.
+     *
+     * @param boardSize    the number of buttons per side of the board.
+     * @param onLightsOnly should the table be for on lights only mode?
+     * @param task         the task to run.
+     * @return true if the task will run, or false if the table is already ready or isn't being
+     * prepared.
+     */
+    static boolean whenReady(int boardSize, boolean onLightsOnly, Runnable task) {
+        int key = key(boardSize, onLightsOnly);
+        synchronized (tables) {
+            if (!preparing.containsKey(key)) {
+                return false;
+            }
+
+            List<Runnable> tasks = waiting.get(key);
+            if (tasks == null) {
+                tasks = new ArrayList<>();
+                waiting.put(key, tasks);
+            }
+            tasks.add(task);
+            return true;
+        }
+    }
+
+
+    // Loads a saved table, or builds and saves it if it can't be loaded
+    private static DistanceTable loadOrBuild(File dir, int boardSize, boolean onLightsOnly) throws InterruptedException {
+        File file = new File(dir, boardSize + (onLightsOnly ? "-on.lod" : ".lod"));
+        if (file.isFile()) {
+            try {
+                DistanceTable table = load(file, boardSize, onLightsOnly);
+                Log.i("DistanceTable", "Loaded table from "+file);
+                return table;
+            } catch (IOException e) {
+                Log.w("DistanceTable", "Could not load table, building it again", e);
+            }
+        }
+
+        DistanceTable table = build(boardSize, onLightsOnly);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            Log.e("DistanceTable", "Could not create tables folder");
+            return table;
+        }
+        try {
+            table.writeTo(file);
+            Log.i("DistanceTable", "Saved table to "+file);
+        } catch (IOException e) {
+            Log.e("DistanceTable", "Could not save table", e);
+        }
+
+        return table;
+    }
+
+
+    /**
+     * Packs a board into the int used by the table, with button (r, c) in bit r * boardSize + c.
+     *
+     * @param lights a square 2D boolean array of lights (true=on & false=off).
+     * @return the packed board.
+     */
+    static int state(boolean[][] lights) {
+        int state = 0;
+        for (int r = 0; r < lights.length; r++) {
+            for (int c = 0; c < lights.length; c++) {
+                state |= lights[r][c] ? 1 << (r * lights.length + c) : 0;
+            }
+        }
+
+        return state;
+    }
+
+
+    /**
+     * Finds the fewest clicks needed to solve a board. In on lights only mode this is a single
+     * lookup. Otherwise it walks down to the solved board, which takes O(d n^2) lookups for a board
+     * d clicks from solved.
+     *
+     * @param state a board packed with state().
+     * @return the fewest clicks, or UNREACHABLE if the board can't be solved.
+     */
+    int distance(int state) {
+        if (!isSolvable(state) || getDistance(index(state)) < 0) {
+            return UNREACHABLE;
+        }
+        if (onLightsOnly) {
+            return getDistance(index(state));
+        }
+
+        int clicks = 0;
+        while (state != 0) {
+            state ^= clickMasks[nextClick(state)];
+            clicks++;
+        }
+        return clicks;
+    }
+
+
+    /**
+     * Finds a click that starts one of the shortest solutions of a board.
+     *
+     * @param state a board packed with state().
+     * @return the button (row * boardSize + column) to click, or -1 if the board is solved or
+     * can't be solved.
+     */
+    int nextClick(int state) {
+        if (state == 0 || !isSolvable(state)) {
+            return -1;
+        }
+        int d = getDistance(index(state));
+        if (d < 0) {
+            return -1;
+        }
+
+        int want = onLightsOnly ? d - 1 : (d + 2) % 3;
+        for (int b = 0; b < clickMasks.length; b++) {
+            if (onLightsOnly && (state >>> b & 1) == 0) {
+                continue;
+            }
+            if (getDistance(index(state ^ clickMasks[b])) == want) {
+                return b;
+            }
+        }
+
+        throw new IllegalStateException("Distance table is corrupt");
+    }
+
+
+    /**
+     * Finds one of the shortest solutions of a board by walking down to the solved board. Only
+     * for tables that aren't for on lights only mode, where no button is ever clicked twice.
+     *
+     * @param state a board packed with state().
+     * @return the buttons to click, packed like state(), or UNREACHABLE if the board can't be
+     * solved.
+     */
+    int solution(int state) {
+        if (onLightsOnly) {
+            throw new IllegalStateException("On lights only solutions can click a button twice");
+        }
+        if (!isSolvable(state) || getDistance(index(state)) < 0) {
+            return UNREACHABLE;
+        }
+
+        int clicks = 0;
+        while (state != 0) {
+            int b = nextClick(state);
+            state ^= clickMasks[b];
+            clicks ^= 1 << b;
+        }
+        return clicks;
+    }
+
+
+    int getBoardSize() {
+        return this.boardSize;
+    }
+
+
+    boolean isOnLightsOnly() {
+        return this.onLightsOnly;
+    }
+
+
+    // One level of the search done on this thread, for when there are few new boards
+    private long push(long[] frontier, long[] next, int d) {
+        long found = 0;
+        for (int w = 0; w < frontier.length; w++) {
+            for (long bits = frontier[w]; bits != 0; bits &= bits - 1) {
+                int state = expand((w << 6) + Long.numberOfTrailingZeros(bits));
+
+                //The boards one click away. In on lights only mode, that click must be on a light
+                //that is off here, since it was on before the click.
+                for (int b = 0; b < clickMasks.length; b++) {
+                    if (onLightsOnly && (state >>> b & 1) != 0) {
+                        continue;
+                    }
+
+                    int index = index(state ^ clickMasks[b]);
+                    if (getDistance(index) < 0) {
+                        setDistance(index, d + 1);
+                        next[index >>> 6] |= 1L << index;
+                        found++;
+                    }
+                }
+            }
+        }
+
+        return found;
+    }
+
+
+    // One level of the search split between threads, for when there are many new boards
+    private long pull(final long[] frontier, final long[] next, final int d, ExecutorService pool)
+            throws InterruptedException {
+        final long[] found = new long[(boards + CHUNK - 1) / CHUNK];
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int chunk = 0; chunk < found.length; chunk++) {
+            final int task = chunk;
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    int end = Math.min(boards, (task + 1) * CHUNK);
+                    for (int index = task * CHUNK; index < end; index++) {
+                        if (getDistance(index) >= 0) {
+                            continue;
+                        }
+
+                        int state = expand(index);
+                        for (int b = 0; b < clickMasks.length; b++) {
+                            if (onLightsOnly && (state >>> b & 1) == 0) {
+                                continue;
+                            }
+
+                            int neighbor = index(state ^ clickMasks[b]);
+                            if ((frontier[neighbor >>> 6] >>> neighbor & 1) != 0) {
+                                setDistance(index, d + 1);
+                                next[index >>> 6] |= 1L << index;
+                                found[task]++;
+                                break;
+                            }
+                        }
+                    }
+                    return null;
+                }
+            });
+        }
+        Workers.runAll(pool, tasks);
+
+        long total = 0;
+        for (long count : found) {
+            total += count;
+        }
+        return total;
+    }
+
+
+    // Is the board orthogonal to every null pattern?
+    private boolean isSolvable(int state) {
+        for (int pattern : nullPatterns) {
+            if ((Integer.bitCount(state & pattern) & 1) != 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+
+    // The index of a solvable board: its lights with the pivot buttons taken out
+    private int index(int state) {
+        for (int j = pivots.length - 1; j >= 0; j--) {
+            int p = pivots[j];
+            state = (state & ((1 << p) - 1)) | ((state >>> (p + 1)) << p);
+        }
+
+        return state;
+    }
+
+
+    // The solvable board at an index. The pivot lights are whatever makes it solvable.
+    private int expand(int index) {
+        int state = index;
+        for (int p : pivots) {
+            state = (state & ((1 << p) - 1)) | ((state >>> p) << (p + 1));
+        }
+        for (int j = 0; j < pivots.length; j++) {
+            state |= (Integer.bitCount(state & nullPatterns[j]) & 1) << pivots[j];
+        }
+
+        return state;
+    }
+
+
+    // The stored distance (mod 3 unless on lights only) of a board, or -1 if not yet reached
+    private int getDistance(int index) {
+        if (onLightsOnly) {
+            int d = distances.get(index) & 0xff;
+            return d == 0xff ? -1 : d;
+        }
+
+        int d = distances.get(index >>> 2) >>> ((index & 3) << 1) & 3;
+        return d == 3 ? -1 : d;
+    }
+
+
+    // Stores the distance of a board. Only the thread that owns the board's byte may call this.
+    private void setDistance(int index, int d) {
+        if (onLightsOnly) {
+            distances.put(index, (byte) Math.min(d, 0xfe));
+            return;
+        }
+
+        int shift = (index & 3) << 1;
+        int b = distances.get(index >>> 2);
+        distances.put(index >>> 2, (byte) ((b & ~(3 << shift)) | (d % 3) << shift));
+    }
+
+
+    private static int key(int boardSize, boolean onLightsOnly) {
+        return boardSize * 2 + (onLightsOnly ? 1 : 0);
+    }
+}
\ No newline at end of file
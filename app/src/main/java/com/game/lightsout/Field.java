@@ -36,12 +36,12 @@ public abstract class Field<T> {
     public abstract T zero();
 
 
-//    /**
-//     * Returns the multiplicative identity constant of this field.
-//     *
-//     * @return the multiplicative identity constant of this field
-//     */
-//    public abstract T one();
+    /**
+     * Returns the multiplicative identity constant of this field.
+     *
+     * @return the multiplicative identity constant of this field
+     */
+    public abstract T one();
 
 
     /**
@@ -1,26 +1,98 @@
 package com.game.lightsout;
 
+import android.os.Process;
 import android.util.Log;
 
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Random;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * The backend of the game. This class represents a board of any size. It stores both the state of
- * the board that the user sees, but also the net clicks used to achieve this state.
+ * the board that the user sees, but also the net clicks used to achieve this state. Boards are
+ * usually square and flat, but can have any number of rows and columns, can wrap around at the
+ * edges, and can toggle any neighborhood of lights when clicked.
  *
  * @author William Boyles
  */
 class GameBoard {
     /**
-     * The number of buttons per side of the board
+     * How long to look for the best solution before settling for a good one, in ms
      */
-    private int boardSize;
+    private static final long SOLVE_TIMEOUT = 250;
     /**
-     * The state of the board as shown to the user
+     * How often a search in the background reports better min clicks, in ms
+     */
+    private static final long REFINE_INTERVAL = 100;
+    /**
+     * How long a new board in on lights only mode waits for its distance table, in ms. If the
+     * table isn't ready by then, the min clicks are looked up once it is.
+     */
+    private static final long TABLE_WAIT = 100;
+    /**
+     * The most best solutions a hint picks from. Some boards have thousands, and any of them
+     * makes a good hint.
+     */
+    private static final int HINT_SOLUTIONS = 1024;
+    /**
+     * The most buttons of a board whose loaded boards are solved with the inverse toggle matrix.
+     * The inverse of this many buttons takes 2 MB.
+     */
+    private static final int INVERSE_MAX_BUTTONS = 4096;
+    /**
+     * The number of loaded boards solved by elimination before the inverse toggle matrix is made.
+     * Making it costs about four eliminations, so boards that are only loaded once never make it.
+     */
+    private static final int INVERSE_AFTER = 2;
+    /**
+     * Seeds the random Zobrist keys. Every board of a shape gets the same keys so that hashes can
+     * be shared between boards.
+     */
+    private static final long ZOBRIST_SEED = 0x4c696768747f4f75L;
+    /**
+     * The number of rows of the board
+     */
+    private final int rows;
+    /**
+     * The number of columns of the board
+     */
+    private final int cols;
+    /**
+     * How the edges of the board are connected
+     */
+    private final Topology topology;
+    /**
+     * The lights a click toggles, relative to the clicked button
+     */
+    private final Neighborhood neighborhood;
+    /**
+     * The lights toggled by each button, worked out once for the board's shape and neighborhood
+     */
+    private final ToggleMasks masks;
+    /**
+     * Holds the lights toggled by a click
+     */
+    private final int[] toggled;
+    /**
+     * Which lights of the board are on, as shown to the user
      */
     private boolean[][] board;
+    /**
+     * The number of states each light cycles through. 2 is the classic on and off.
+     */
+    private final int states;
+    /**
+     * The state of each light, row by row, when there are more than 2 states. A light is on in
+     * board whenever its state isn't 0.
+     */
+    private final byte[] cells;
+    /**
+     * Finds the min clicks of boards with more than 2 states
+     */
+    private MultiStateSolver multiStateSolver;
     /**
      * The clicks the user would need to do to solve the board most efficiently
      */
@@ -37,28 +109,156 @@ class GameBoard {
      * Updates the optimal solution of the board
      */
     private GameBoardSolver solver;
+    /**
+     * How clicks that solve a board that didn't come from a scramble are found
+     */
+    private final SolverStrategy solveStrategy;
+    /**
+     * The inverse toggle matrix, made once INVERSE_AFTER loaded boards were solved by
+     * elimination, or null if it hasn't been made
+     */
+    private BitMatrix inverseToggles;
+    /**
+     * The number of loaded boards solved by elimination
+     */
+    private int eliminations;
+    /**
+     * How the min clicks were last found, or null if they haven't been
+     */
+    private SolverStrategy minClicksStrategy;
+    /**
+     * Are the min clicks known to be the fewest that solve the board?
+     */
+    private boolean minClicksOptimal;
+    /**
+     * The search still looking for the min clicks in the background, or null if there is none
+     */
+    private GameBoardSolver.Search refinement;
+    /**
+     * Stops the search in the background
+     */
+    private CancellationToken refinementToken;
+    /**
+     * The solution of the background search that the board solution was last built from
+     */
+    private BitBoard refinedFrom;
+    /**
+     * The cache key of the board the background search is solving
+     */
+    private long refinementKey;
+    /**
+     * The transform that turns the board the background search is solving into its cache key
+     */
+    private int refinementTransform;
+    /**
+     * The board whose min clicks wait for its distance table, packed with DistanceTable.state(),
+     * or -1 if there is none
+     */
+    private int pendingState = -1;
+    /**
+     * Hears when the search in the background finds better min clicks, or null
+     */
+    private volatile MinClicksListener minClicksListener;
+    /**
+     * Runs the searches in the background, one at a time, for every board. Created on first use.
+     */
+    private static ExecutorService refiner;
+    /**
+     * A random key for each button, row by row, in each Symmetry transform of the board. The hash
+     * of a transform of a board is the XOR of the keys of its lights that are on, which is the
+     * same as the hash of the transformed board. Only standard boards have more than the identity.
+     */
+    private final long[][] zobristKeys;
+    /**
+     * The Zobrist hash of each transform of the board as shown to the user. Only kept for boards
+     * with 2 states.
+     */
+    private final long[] hashes;
+    /**
+     * Turns solutions between boards and their mirror images in the cache. Created on first use.
+     */
+    private Symmetry symmetry;
 
 
     /**
-     * Creates a new square board with a given number of buttons per side.
+     * Creates a new square board with a given number of buttons per side, whose lights are either
+     * on or off.
      *
      * @param boardSize the number of buttons per side of the board.
      */
     GameBoard(int boardSize, boolean onLightsOnly) {
-        Log.i("GameBoard", "Creating Game Board");
+        this(boardSize, onLightsOnly, 2);
+    }
+
+
+    /**
+     * Creates a new square board with a given number of buttons per side, whose lights cycle
+     * through a number of states. Each click moves a light on to its next state, and a light is
+     * out in state 0.
+     *
+     * @param boardSize the number of buttons per side of the board.
+     * @param states    the number of states of each light. Must be a prime below 256.
+     */
+    GameBoard(int boardSize, boolean onLightsOnly, int states) {
+        this(boardSize, boardSize, Topology.PLANE, Neighborhood.PLUS, onLightsOnly, states);
+    }
+
 
-        this.boardSize = boardSize;
-        this.board = new boolean[boardSize][boardSize];
+    /**
+     * Creates a new board of any shape, whose lights are either on or off.
+     *
+     * @param rows     the number of rows of the board.
+     * @param cols     the number of columns of the board.
+     * @param topology how the edges of the board are connected.
+     */
+    GameBoard(int rows, int cols, Topology topology, boolean onLightsOnly) {
+        this(rows, cols, topology, Neighborhood.PLUS, onLightsOnly, 2);
+    }
+
+
+    /**
+     * Creates a new board of any shape and neighborhood, whose lights cycle through a number of
+     * states.
+     *
+     * @param rows         the number of rows of the board.
+     * @param cols         the number of columns of the board.
+     * @param topology     how the edges of the board are connected.
+     * @param neighborhood the lights a click toggles, relative to the clicked button.
+     * @param states       the number of states of each light. Must be 2 or a prime below 256.
+     */
+    GameBoard(int rows, int cols, Topology topology, Neighborhood neighborhood, boolean onLightsOnly, int states) {
+        Log.i("GameBoard", "Creating "+rows+"x"+cols+" "+topology+" "+neighborhood+" Game Board with "+states+" states");
+
+        this.rows = rows;
+        this.cols = cols;
+        this.topology = topology;
+        this.neighborhood = neighborhood;
+        this.masks = new ToggleMasks(rows, cols, topology, neighborhood);
+        this.toggled = new int[masks.maxToggled()];
+        this.board = new boolean[rows][cols];
+        this.states = states;
+        this.cells = states > 2 ? new byte[rows * cols] : null;
+        this.zobristKeys = zobristKeys(rows, cols, isStandard() ? Symmetry.COUNT : 1);
+        this.hashes = new long[zobristKeys.length]; //No lights on
+        this.minClicksOptimal = true;
 
         this.onLightsOnly = onLightsOnly;
-        if (!onLightsOnly) {
+        if (states > 2) {
+            this.minClicks = onLightsOnly ? -1 : 0;
+            this.boardSolution = null;
+            this.solver = null;
+            this.multiStateSolver = onLightsOnly ? null : new MultiStateSolver(masks, states);
+            this.solveStrategy = null;
+        } else if (!onLightsOnly) {
             this.minClicks = 0;
-            this.boardSolution = new boolean[boardSize][boardSize];
-            this.solver = new GameBoardSolver();
+            this.boardSolution = new boolean[rows][cols];
+            this.solver = SolverCache.get(rows, cols, topology, neighborhood);
+            this.solveStrategy = SolverStrategy.forSolving(rows, cols, topology, neighborhood, CostModel.get());
         } else {
             this.minClicks = -1; //We can't find out right now the min clicks number
             this.boardSolution = null;
             this.solver = null;
+            this.solveStrategy = null;
         }
     }
 
@@ -73,19 +273,21 @@ class GameBoard {
     void click(int btnRow, int btnCol) {
         Log.v("GameBoard", "Click on button "+btnRow+"-"+btnCol);
 
-        //Flip the 3, 4, or 5 button colors that the user sees
-        board[btnRow][btnCol] = !board[btnRow][btnCol];
-        if (btnCol != 0) { //Flip the left button, if not in left column
-            board[btnRow][btnCol - 1] = !board[btnRow][btnCol - 1];
-        }
-        if (btnCol != this.boardSize - 1) { //Flip the right button, if not in right column
-            board[btnRow][btnCol + 1] = !board[btnRow][btnCol + 1];
-        }
-        if (btnRow != 0) { //Flip the upper button, if not in top row
-            board[btnRow - 1][btnCol] = !board[btnRow - 1][btnCol];
+        if (states > 2) { //Move the lights on to their next state
+            masks.click(cells, states, btnRow, btnCol);
+            syncBoard();
+            return;
         }
-        if (btnRow != this.boardSize - 1) { //Flip the lower button, if not in bottom row
-            board[btnRow + 1][btnCol] = !board[btnRow + 1][btnCol];
+
+        //Flip the button colors that the user sees, and their keys in the hash. The neighborhood
+        //and any edges that wrap around are already worked into the masks.
+        int count = masks.toggledBy(btnRow, btnCol, toggled);
+        for (int i = 0; i < count; i++) {
+            int r = toggled[i] / cols, c = toggled[i] % cols;
+            board[r][c] = !board[r][c];
+            for (int t = 0; t < hashes.length; t++) {
+                hashes[t] ^= zobristKeys[t][toggled[i]];
+            }
         }
 
         //Flip the single location in the solution
@@ -97,24 +299,258 @@ class GameBoard {
 
     void updateSolution() { //Assumes you can click all lights
         Log.i("GameBoard","Updating solution");
-        if(boardSize == 9){
-            Log.w("GameBoard","A 9x9 performs very slowly and uses lots of memory. The application may respond slowly");
+        cancelRefinement();
+        this.minClicksOptimal = true;
+
+        if (states > 2) {
+            this.minClicks = multiStateSolver.findBestSolution(cells, null);
+            this.minClicksOptimal = multiStateSolver.isExhaustive(); //Too many solutions to try them all
+            Log.v("GameBoard", "New min clicks: "+minClicks);
+            return;
+        }
+
+        //The best solution only depends on the lights, so we may have solved this board, or one of
+        //its mirror images, before. The caches are per size, so only standard boards use them.
+        TranspositionCache cache = isStandard() ? TranspositionCache.forSize(rows) : null;
+        int transform = cacheTransform();
+        BitBoard cachedSolution = new BitBoard(rows, cols);
+        int cachedClicks = cache == null ? -1 : cache.get(hashes[transform], cachedSolution.words());
+        if (cachedClicks >= 0) {
+            Log.v("GameBoard", "Found solution in cache, min clicks: "+cachedClicks);
+            transform(Symmetry.inverse(transform), cachedSolution).toArray(this.boardSolution);
+            this.minClicks = cachedClicks;
+            return;
         }
 
-        this.boardSolution = solver.findBestSolution(this.boardSolution);
+        DistanceTable table = isStandard() ? DistanceTable.cached(rows, false) : null;
+        SolverStrategy strategy = SolverStrategy.forMinClicks(rows, cols, solver.getNullity(), table,
+                CostModel.get(), TimeUnit.MILLISECONDS.toNanos(SOLVE_TIMEOUT));
+        if (strategy != this.minClicksStrategy) {
+            Log.i("GameBoard", "Finding min clicks with "+strategy);
+            this.minClicksStrategy = strategy;
+        }
+        long start = System.nanoTime();
+        if (strategy == SolverStrategy.TABLE) {
+            int clicks = table.solution(DistanceTable.state(this.board));
+            for (int r = 0; r < this.rows; r++) {
+                for (int c = 0; c < this.cols; c++) {
+                    this.boardSolution[r][c] = (clicks >>> (r * cols + c) & 1) != 0;
+                }
+            }
+        } else if (strategy == SolverStrategy.EXACT_SEARCH) {
+            this.boardSolution = solver.findBestSolution(this.boardSolution);
+        } else { //Too many null patterns to always find the best in time, so show a good one and keep looking
+            GameBoardSolver.Search search = solver.startSearch(this.boardSolution);
+            boolean finished = search.run(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(SOLVE_TIMEOUT), null);
+            this.boardSolution = search.getSolution();
+            if (!finished) {
+                Log.w("GameBoard", "Ran out of time for the best solution, looking in the background");
+                refine(search);
+            }
+        }
+        strategy.record(System.nanoTime() - start);
         //this.boardSolution = solver.execute(this.boardSolution); //solver.findBestSolution(boardSolution);
         int newMinClicks = 0;
-        for (int r = 0; r < this.boardSize; r++) {
-            for (int c = 0; c < this.boardSize; c++) {
+        for (int r = 0; r < this.rows; r++) {
+            for (int c = 0; c < this.cols; c++) {
                 newMinClicks += this.boardSolution[r][c] ? 1 : 0;
             }
         }
 
         Log.v("GameBoard", "New min clicks: "+newMinClicks);
         this.minClicks = newMinClicks;
+        if (minClicksOptimal && cache != null) { //A good solution would stop us from ever finding the best one
+            BitBoard solution = transform(transform, BitBoard.fromArray(this.boardSolution));
+            cache.put(hashes[transform], newMinClicks, solution.words());
+        }
+
+        if (strategy != SolverStrategy.TABLE && table != null
+                && table.distance(DistanceTable.state(board)) != newMinClicks) {
+            Log.e("GameBoard", "Solver disagrees with distance table: "+newMinClicks+" clicks");
+        }
+    }
+
+
+    /**
+     * Gets how the min clicks were last found, so that it can be shown with them.
+     *
+     * @return the strategy used by the last updateSolution(), or null if it hasn't been called.
+     */
+    SolverStrategy getMinClicksStrategy() {
+        return this.minClicksStrategy;
     }
 
+
+    /**
+     * Are the min clicks known to be the fewest that solve the board? They may not be while a
+     * search is still looking for them in the background.
+     *
+     * @return true if getMinClicks() is the fewest clicks, false if it may go down.
+     */
+    boolean isMinClicksOptimal() {
+        applyRefinement();
+
+        return this.minClicksOptimal;
+    }
+
+
+    /**
+     * Picks a button to click next that is part of a solution with the fewest clicks. Boards often
+     * have several of these, so a hint picks one of them at random and asking again can point
+     * somewhere else. Sizes with too many null patterns to walk the best solutions in time use the
+     * current solution instead.
+     *
+     * @param random picks between the best solutions.
+     * @return the button as row * getCols() + col, or -1 if there is no hint because the board is
+     * solved, in on lights only mode or has more than 2 states.
+     */
+    int hint(SplitMix64 random) {
+        if (boardSolution == null) {
+            return -1;
+        }
+        applyRefinement();
+
+        BitBoard chosen = BitBoard.fromArray(this.boardSolution);
+        long searchNanos = CostModel.get().searchNanos(rows, cols, solver.getNullity());
+        if (searchNanos <= TimeUnit.MILLISECONDS.toNanos(SOLVE_TIMEOUT)) { //Walking them costs about one search
+            GameBoardSolver.OptimalSolutions solutions = solver.optimalSolutions(this.boardSolution);
+            int seen = 0;
+            while (seen < HINT_SOLUTIONS && solutions.hasNext()) { //Reservoir sampling keeps one at a time
+                BitBoard solution = solutions.next();
+                if (random.nextInt(++seen) == 0) {
+                    System.arraycopy(solution.words(), 0, chosen.words(), 0, chosen.words().length);
+                }
+            }
+            Log.v("GameBoard", "Picked a hint from "+seen+" best solutions");
+        }
+
+        int clicks = chosen.popCount();
+        if (clicks == 0) {
+            return -1;
+        }
+        int pick = random.nextInt(clicks);
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < cols; c++) {
+                if (chosen.get(r, c) && pick-- == 0) {
+                    return r * cols + c;
+                }
+            }
+        }
+        return -1;
+    }
+
+
+    /**
+     * Sets who hears when a search in the background finds better min clicks.
+     *
+     * @param listener the listener, or null for none.
+     */
+    void setMinClicksListener(MinClicksListener listener) {
+        this.minClicksListener = listener;
+    }
+
+
+    /**
+     * Stops looking for better min clicks in the background. The min clicks stay the best found
+     * so far. Boards do this themselves when their lights change, but a screen that is going away
+     * should call it too.
+     */
+    void cancelRefinement() {
+        if (refinementToken != null) {
+            refinementToken.cancel();
+        }
+        this.refinement = null;
+        this.refinementToken = null;
+        this.refinedFrom = null;
+    }
+
+
+    /**
+     * Stops looking for better min clicks and gives back the inverse toggle matrix, which is kept
+     * outside the heap. A screen that is going away should call this. The board still works
+     * afterwards, solving loaded boards by elimination until it makes a new inverse.
+     */
+    void release() {
+        cancelRefinement();
+        if (inverseToggles != null) {
+            inverseToggles.release();
+            this.inverseToggles = null;
+            this.eliminations = 0;
+        }
+    }
+
+    /**
+     * Gets the number of buttons per side of the board.
+     *
+     * @return the number of rows, which is also the number of columns of a square board.
+     */
+    int getBoardSize() {
+        return this.rows;
+    }
+
+
+    int getRows() {
+        return this.rows;
+    }
+
+
+    int getCols() {
+        return this.cols;
+    }
+
+
+    Topology getTopology() {
+        return this.topology;
+    }
+
+
+    Neighborhood getNeighborhood() {
+        return this.neighborhood;
+    }
+
+
+    /**
+     * Lists the lights toggled by clicking a button, so the UI doesn't need to know the shape of
+     * the board.
+     *
+     * @param row the row of the click.
+     * @param col the column of the click.
+     * @return the lights, as row * getCols() + col, in increasing order.
+     */
+    int[] getToggled(int row, int col) {
+        int[] lights = new int[masks.maxToggled()];
+        return Arrays.copyOf(lights, masks.toggledBy(row, col, lights));
+    }
+
+
+    /**
+     * Returns the number of states each light cycles through.
+     *
+     * @return 2 for lights that are on or off, or more for multi-state boards.
+     */
+    int getStates() {
+        return this.states;
+    }
+
+
+    /**
+     * Returns the state of a light, from 0 (off) to getStates() - 1.
+     *
+     * @param row the row of the light.
+     * @param col the column of the light.
+     * @return the state of the light.
+     */
+    int getState(int row, int col) {
+        if (states > 2) {
+            return cells[row * cols + col] & 0xff;
+        }
+        return board[row][col] ? 1 : 0;
+    }
+
+
     int getMinClicks() {
+        applyRefinement();
+        applyPendingDistance();
         Log.v("GameBoard", "Min clicks: "+this.minClicks);
 
         return this.minClicks;
@@ -127,8 +563,8 @@ class GameBoard {
      * @return true if all of the lights are out, else false.
      */
     boolean isSolved() {
-        for (int r = 0; r < boardSize; r++) {
-            for (int c = 0; c < boardSize; c++) {
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < cols; c++) {
                 //If any lights are on, or there are still clicks needed to solve
                 if (board[r][c]) {
                     Log.v("GameBoard", "The board is solved: false");
@@ -142,6 +578,86 @@ class GameBoard {
     }
 
 
+    /**
+     * Can a board be solved on this game board? Boards of the wrong shape can't.
+     *
+     * @param lights a 2D boolean array of lights (true=on & false=off).
+     * @return true if the board is the right size and some set of clicks turns off all of its
+     * lights, else false.
+     */
+    boolean isSolvable(boolean[][] lights) {
+        if (lights.length != rows) {
+            return false;
+        }
+        for (boolean[] row : lights) {
+            if (row.length != cols) {
+                return false;
+            }
+        }
+
+        if (states > 2) { //Lights that are on are in state 1
+            if (this.multiStateSolver == null) {
+                this.multiStateSolver = new MultiStateSolver(masks, states);
+            }
+            return multiStateSolver.isSolvable(toCells(lights));
+        }
+
+        if (this.solver == null) { //On lights only mode doesn't need a solver until now
+            this.solver = SolverCache.get(rows, cols, topology, neighborhood);
+        }
+        return solver.isSolvable(lights);
+    }
+
+
+    /**
+     * Replaces the board with one that did not come from a scramble, like an imported puzzle or
+     * one made in an editor. On boards with more than 2 states, lights that are on start in state 1.
+     *
+     * @param lights a 2D boolean array of lights (true=on & false=off), the same shape as the board.
+     * @throws IllegalArgumentException if the board is the wrong shape or cannot be solved.
+     */
+    void setBoard(boolean[][] lights) {
+        Log.i("GameBoard", "Setting the board from a boolean array");
+        cancelRefinement();
+        this.minClicksOptimal = true; //Until updateSolution() starts a search in the background
+        if (!isSolvable(lights)) {
+            throw new IllegalArgumentException("Board cannot be solved");
+        }
+
+        if (states > 2) {
+            System.arraycopy(toCells(lights), 0, cells, 0, cells.length);
+            syncBoard();
+            this.minClicks = lightsOnlyMinClicks();
+            return;
+        }
+
+        for (int r = 0; r < rows; r++) {
+            System.arraycopy(lights[r], 0, this.board[r], 0, cols);
+        }
+        rehash();
+        if (!this.onLightsOnly) { //We didn't see the clicks that made this board, so find some
+            BitBoard presses;
+            long start = System.nanoTime();
+            if (solveStrategy == SolverStrategy.CHASE) {
+                presses = NullSpace.solve(BitBoard.fromArray(lights));
+            } else if (solveStrategy == SolverStrategy.BANDED) {
+                presses = BandedBitMatrix.solve(BitBoard.fromArray(lights));
+            } else if (inverseToggles != null) {
+                presses = masks.solve(inverseToggles, BitBoard.fromArray(lights));
+            } else {
+                presses = masks.solve(BitBoard.fromArray(lights));
+                if (++eliminations == INVERSE_AFTER && rows * cols <= INVERSE_MAX_BUTTONS && solver.getNullity() == 0) {
+                    Log.i("GameBoard", "Inverting the toggle matrix for the boards loaded next");
+                    this.inverseToggles = masks.inverseToggleMatrix(); //Later boards are one product each
+                }
+            }
+            solveStrategy.record(System.nanoTime() - start);
+            presses.toArray(this.boardSolution);
+        }
+        this.minClicks = lightsOnlyMinClicks();
+    }
+
+
     /**
      * Returns the current state of the board that the user sees.
      *
@@ -154,231 +670,305 @@ class GameBoard {
 
 
     /**
-     * Clicks randomly a number of times equal to the amount of lights on the board.
-     * All lights out puzzles can be solved in at most the number of buttons on the board.
+     * Clicks randomly a number of times close to the amount of lights on the board. The clicks
+     * are drawn from a generator seeded with the given seed, so the same seed always creates the
+     * same scramble. All lights out puzzles can be solved in at most the number of buttons on the
+     * board.
+     *
+     * @param seed the seed of the scramble.
      */
-    void newScramble() {
-        Log.i("GameBoard", "Creating a new scramble with at least "+(boardSize*boardSize)+" clicks");
+    void newScramble(long seed) {
+        Log.i("GameBoard", "Creating a new scramble from seed "+Long.toHexString(seed));
+        cancelRefinement();
+        this.minClicksOptimal = true; //Until updateSolution() starts a search in the background
+
+        if (states > 2) {
+            Scrambler.scramble(seed, masks, states, cells);
+            syncBoard();
+            this.minClicks = lightsOnlyMinClicks();
+            return;
+        }
+
+        BitBoard scrambled = new BitBoard(rows, cols);
+        BitBoard presses = this.onLightsOnly ? null : new BitBoard(rows, cols);
+        Scrambler.scramble(seed, masks, scrambled, presses);
 
-        newScramble(boardSize * boardSize);
+        scrambled.toArray(this.board);
+        rehash();
+        if (!this.onLightsOnly) {
+            presses.toArray(this.boardSolution);
+        }
+        this.minClicks = lightsOnlyMinClicks();
     }
 
 
     /**
-     * Scrambles the current board by clearing its current state and clicking a given
-     * number of times. It is possible for clicks to happen multiple times on the same
-     * light, possible resulting in no net change to the tile.
+     * Looks up the min clicks of the board in on lights only mode, where the solver can't help.
+     * In the normal mode, the solver fills in the min clicks later in updateSolution().
      *
-     * @param scrambleClicksMax the maximum number of times to randomly click the board. The number
-     *                          of actual clicks is always at most this value. Although higher
-     *                          values are legal arguments, there is no reason for this value to be
-     *                          greater than the number of buttons on the board.
-     */
-    private void newScramble(int scrambleClicksMax) {
-        Log.i("GameBoard", "Creating a new scramble with at least "+scrambleClicksMax+" clicks");
-
-        //Clear the board
-        for (int r = 0; r < boardSize; r++) {
-            for (int c = 0; c < boardSize; c++) {
-                this.board[r][c] = false;
-                if (!this.onLightsOnly) {
-                    this.boardSolution[r][c] = false;
+     * @return the min clicks if this is on lights only mode and its distance table is ready
+     * within TABLE_WAIT, -1 if it is on lights only mode without a table, or 0 otherwise. There are
+     * only tables for standard boards with 2 states. If a table is still being prepared, the
+     * listener is told once the min clicks can be looked up.
+     */
+    private int lightsOnlyMinClicks() {
+        this.pendingState = -1;
+        if (!this.onLightsOnly) {
+            return 0;
+        }
+        if (states > 2 || !isStandard()) {
+            return -1;
+        }
+
+        DistanceTable table;
+        try {
+            table = DistanceTable.await(rows, true, TABLE_WAIT);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            table = null;
+        }
+        if (table != null) {
+            return table.distance(DistanceTable.state(board));
+        }
+
+        //The lights will have changed by the time the table is ready, so keep the ones to look up
+        Log.i("GameBoard", "Distance table isn't ready, looking up min clicks later");
+        this.pendingState = DistanceTable.state(board);
+        DistanceTable.whenReady(rows, true, new Runnable() {
+            @Override
+            public void run() {
+                MinClicksListener listener = minClicksListener;
+                if (listener != null) {
+                    listener.minClicksImproved();
                 }
             }
-        }
-        this.minClicks = 0;
-        Log.v("GameBoard", "Cleared the board");
+        });
+        return -1;
+    }
+
 
-        //Click randomly scramble clicks times
-        Random r = new Random();
-        int scrambleClicks = scrambleClicksMax - r.nextInt(scrambleClicksMax / boardSize); //click a random number of times
-        Log.i("GameBoard", "Clicking randomly "+scrambleClicks+" times");
-        for (int i = 0; i < scrambleClicks; i++) {
-            click(r.nextInt(boardSize), r.nextInt(boardSize));
+    // Looks up the min clicks left for later by lightsOnlyMinClicks(), if the table is now ready
+    private void applyPendingDistance() {
+        if (pendingState < 0) {
+            return;
         }
 
-        if (isSolved()) { //In the unlikely chance that the board is solved after scrambling once, which can happen on 2x2, try again.
-            Log.i("GameBoard", "Random clicking kept board solved... Trying again");
-            
-            newScramble(scrambleClicksMax);
+        DistanceTable table = DistanceTable.cached(rows, true);
+        if (table != null) {
+            this.minClicks = table.distance(pendingState);
+            this.pendingState = -1;
+            Log.v("GameBoard", "Min clicks from the distance table: "+minClicks);
         }
     }
 
 
     /**
-     * Uses basis patterns to find the best solution for the board.
+     * Gets the Zobrist hash of the board the user sees. Boards with the same lights on have the
+     * same hash. It is kept up to date with one XOR per light flipped by a click.
      *
-     * @author William Boyles
+     * @return the 64-bit hash of the board.
      */
-    private class GameBoardSolver {
-        /**
-         * List of null patterns
-         */
-        private List<boolean[][]> nullPatterns; //This should only be computed once upon construction
-
-//        //Takes a solution, finds best solution
-//        protected boolean[][] doInBackground(boolean[][]... boards){ //should only pass one argument.
-//            if(nullPatterns == null) { //This really shouldn't ever happen
-//                Log.e("GameBoardSolver", "NullPatterns not initialized");
-//                findNullPatterns();
-//            }
-//
-//            return findBestSolution(boards[0]);
-//        }
+    long getHash() {
+        return this.hashes[Symmetry.IDENTITY];
+    }
 
-        /**
-         * Creates a new solver for a given board size. This will call the linear algebra library
-         * to find the null patterns.
-         */
-        private GameBoardSolver() {
-            this.nullPatterns = new LinkedList<>();
-            findNullPatterns();
-        }
 
+    // Keeps a search running in the background, telling the listener each time it finds fewer
+    // clicks. The board picks up what it found in applyRefinement().
+    private void refine(final GameBoardSolver.Search search) {
+        final CancellationToken token = new CancellationToken();
+        this.refinement = search;
+        this.refinementToken = token;
+        this.refinedFrom = BitBoard.fromArray(this.boardSolution);
+        this.refinementTransform = cacheTransform();
+        this.refinementKey = hashes[refinementTransform];
+        this.minClicksOptimal = false;
+
+        refiner().execute(new Runnable() {
+            @Override
+            public void run() {
+                int clicks = search.getClicks();
+                boolean finished = false;
+                while (!finished && !token.isCancelled()) {
+                    finished = search.run(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(REFINE_INTERVAL), token);
+
+                    MinClicksListener listener = minClicksListener;
+                    if ((finished || search.getClicks() < clicks) && !token.isCancelled() && listener != null) {
+                        listener.minClicksImproved();
+                    }
+                    clicks = search.getClicks();
+                }
+            }
+        });
+    }
 
-        /**
-         * Given a possible sub-optimal solution for a board, this method finds the best equivalent
-         * solution
-         *
-         * @param currentSolution a possibly sub-optimal solution to a board
-         * @return the equivalent solution to the given solution that uses the lest number of clicks.
-         */
-        private boolean[][] findBestSolution(boolean[][] currentSolution) {
-            Log.i("GameBoardSolver", "Finding the best solution for the current board");
 
-            boolean[][] bestSolution = currentSolution;
-            for (boolean[][] nullPattern : nullPatterns) {
-                bestSolution = betterSolution(bestSolution, getSolution(currentSolution, nullPattern));
-            }
+    // Takes the best solution found in the background so far. The board solution is the solution
+    // it was last built from plus the clicks made since, so the clicks are kept.
+    private void applyRefinement() {
+        if (refinement == null) {
+            return;
+        }
 
-            Log.v("GameBoardSolver", "Found the best solution");
-            return bestSolution;
+        boolean optimal = refinement.isOptimal(); //Before the solution, which can't change once optimal
+        BitBoard refined = BitBoard.fromArray(refinement.getSolution());
+        int clicks = refined.popCount();
+        if (clicks < minClicks) {
+            BitBoard solution = BitBoard.fromArray(this.boardSolution);
+            solution.xor(refinedFrom);
+            solution.xor(refined);
+            solution.toArray(this.boardSolution);
+            this.refinedFrom = refined;
+            this.minClicks = clicks;
+            Log.v("GameBoard", "Better min clicks from the background: "+clicks);
         }
 
+        if (optimal) {
+            Log.i("GameBoard", "Found the best solution in the background, min clicks: "+minClicks);
+            this.minClicksOptimal = true;
+            TranspositionCache cache = isStandard() ? TranspositionCache.forSize(rows) : null;
+            if (cache != null) {
+                cache.put(refinementKey, minClicks, transform(refinementTransform, refinedFrom).words());
+            }
+            this.refinement = null;
+            this.refinementToken = null;
+            this.refinedFrom = null;
+        }
+    }
 
-        private void findNullPatterns() {
-            Log.i("GameBoardSolver", "Beginning Calculation of null patterns");
-            //Generate the matrix that gives us the null forms
-            Matrix<Integer> nullsMatrix = new Matrix<>(boardSize * boardSize, boardSize * boardSize, new PrimeField(2));
-            nullsMatrix.setAll(0);
 
-            for (int d = 0; d < boardSize * boardSize; d++) {
-                nullsMatrix.set(d, d, 1);             //center diagonals
-                if (d > 0 && d % boardSize != 0) {                              //bordering diagonals
-                    nullsMatrix.set(d - 1, d, 1);  //left
-                    nullsMatrix.set(d, d - 1, 1);   //above
-                }
-                if (d < boardSize * (boardSize - 1)) {        //diagonals along sides
-                    nullsMatrix.set(boardSize + d, d, 1); //bottom side diagonal
-                    nullsMatrix.set(d, boardSize + d, 1); //top side diagonal
+    // The single low priority thread that refines min clicks
+    private static synchronized ExecutorService refiner() {
+        if (refiner == null) {
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable runnable) {
+                    Thread thread = new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                            runnable.run();
+                        }
+                    }, "LightsOut-refine");
+                    thread.setDaemon(true);
+                    return thread;
                 }
-            }
-            Log.v("GameBoardSolver","Created big matrix");
+            });
+            pool.allowCoreThreadTimeOut(true);
+            refiner = pool;
+        }
 
-            nullsMatrix.reducedRowEchelonForm();
-            Log.v("GameBoardSolver", "Reduced big matrix");
+        return refiner;
+    }
 
-            //We have to manually fill in the last few columns ourselves to get the nulls
-            int numBasisPatterns = findNumBasisPatterns(nullsMatrix);
-            for (int c = nullsMatrix.columnCount() - numBasisPatterns; c < nullsMatrix.columnCount(); c++) {
-                for (int r = 0; r < nullsMatrix.rowCount(); r++) {
-                    if (r == c) {
-                        nullsMatrix.set(r, c, 1);
-                    }
-                }
-            }
 
-            //Each column of the last columns of the matrix are a basis pattern
-            Log.v("GameBoardSolver", "Generating basis patterns");
-            for (int c = nullsMatrix.columnCount()-numBasisPatterns; c < nullsMatrix.columnCount(); c++) {
-                boolean[][] basisPattern = new boolean[boardSize][boardSize];
-                for (int r = 0; r < nullsMatrix.rowCount(); r++) {
-                    basisPattern[r / boardSize][r % boardSize] = nullsMatrix.get(r, c) != 0;
-                }
+    // Is this the usual square board with hard edges and plus shaped clicks, which the per-size
+    // tables and caches are for?
+    private boolean isStandard() {
+        return rows == cols && topology == Topology.PLANE && neighborhood.equals(Neighborhood.PLUS);
+    }
 
-                nullPatterns.add(basisPattern);
-            }
-            Log.i("GameBoardSolver", "Generated "+ nullPatterns.size()+" basis patterns"
-            );
 
-            getAllPermutations(nullPatterns);
+    // Turns on the lights of the board whose states aren't 0
+    private void syncBoard() {
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < cols; c++) {
+                board[r][c] = cells[r * cols + c] != 0;
+            }
         }
+    }
 
-        /**
-         * Guaranteed to get all unique patterns of lights. Since the basis null patterns are
-         * orthogonal to each other, we only need to consider combinations of at most 2 basis
-         * patterns to generate all unique null patterns.
-         *
-         * @param basisPatterns a list of basis patterns
-         */
-        private void getAllPermutations(List<boolean[][]> basisPatterns){
-            int max1 =  basisPatterns.size();
-            for(int i = 0; i < max1; i++){
-                int max2 = basisPatterns.size();
-                for(int j = i+1; j < max2; j++){
-                    basisPatterns.add(getSolution(basisPatterns.get(i),basisPatterns.get(j)));
-                }
-            }
 
-            Log.i("GameBoardSolver","Got "+basisPatterns.size()+" total patterns.");
+    // Puts every light that is on in state 1
+    private byte[] toCells(boolean[][] lights) {
+        byte[] result = new byte[rows * cols];
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < cols; c++) {
+                result[r * cols + c] = (byte) (lights[r][c] ? 1 : 0);
+            }
         }
 
+        return result;
+    }
 
-        /**
-         * Finds the number of basis patterns in a given n^2 x n^2 reduced row echelon form matrix.
-         * These "basis patterns" are the number of linearly independent, orthogonal vectors of
-         * dimension n^2.
-         *
-         * @param nullsMatrix a n^2 x n^2 reduced row echelon form matrix
-         * @return the number of basis patterns in the board represented by the given solved matrix.
-         */
-        private int findNumBasisPatterns(Matrix<Integer> nullsMatrix) {
-            Log.v("GameBoardSolved", "Finding the number of basis patterns");
-
-            int basisPatternsCount = 0;
-            for (int r = nullsMatrix.rowCount() - 1; r >= 0; r--) {
-                boolean allZeroes = true;
-                for (int c = 0; c < nullsMatrix.columnCount(); c++) {
-                    if (nullsMatrix.get(r, c) != 0) {
-                        allZeroes = false;
-                        break;
-                    }
-                }
 
-                if (allZeroes) {
-                    basisPatternsCount++;
-                } else {
-                    break;
+    // Hashes each transform of the board from scratch
+    private void rehash() {
+        for (int t = 0; t < hashes.length; t++) {
+            long h = 0;
+            for (int r = 0; r < rows; r++) {
+                for (int c = 0; c < cols; c++) {
+                    h ^= board[r][c] ? zobristKeys[t][r * cols + c] : 0;
                 }
             }
-
-            Log.v("GameBoardSolver", "Found "+basisPatternsCount+" basis patterns");
-            return basisPatternsCount;
+            hashes[t] = h;
         }
+    }
 
 
-        private boolean[][] getSolution(boolean[][] currentSolution, boolean[][] nullPattern) {
-            boolean[][] resultantState = new boolean[boardSize][boardSize];
-            for (int r = 0; r < boardSize; r++) {
-                for (int c = 0; c < boardSize; c++) {
-                    resultantState[r][c] = currentSolution[r][c] ^ nullPattern[r][c]; //xor
-                }
+    // The transform of the board whose hash is the cache key. Mirror images of a board have the
+    // same set of hashes, so they all pick the same smallest one, which is the hash of the same
+    // transformed board.
+    private int cacheTransform() {
+        int best = Symmetry.IDENTITY;
+        for (int t = 1; t < hashes.length; t++) {
+            if (hashes[t] < hashes[best]) {
+                best = t;
             }
+        }
 
-            return resultantState;
+        return best;
+    }
+
+
+    // Transforms a solution, or a board, of a standard board
+    private BitBoard transform(int transform, BitBoard board) {
+        if (transform == Symmetry.IDENTITY) {
+            return board;
         }
 
+        if (symmetry == null) {
+            symmetry = new Symmetry(rows);
+        }
+        BitBoard result = new BitBoard(rows);
+        symmetry.apply(transform, board, result);
+        return result;
+    }
 
-        private boolean[][] betterSolution(boolean[][] currentSolution, boolean[][] newSolution) {
-            int currentSolutionClicks = 0, newSolutionClicks = 0;
-            for (int r = 0; r < boardSize; r++) {
-                for (int c = 0; c < boardSize; c++) {
-                    currentSolutionClicks += currentSolution[r][c] ? 1 : 0;
-                    newSolutionClicks += newSolution[r][c] ? 1 : 0;
-                }
-            }
 
-            return currentSolutionClicks <= newSolutionClicks ? currentSolution : newSolution;
+    // The random keys of each button of a board shape, in the first given number of transforms
+    private static long[][] zobristKeys(int rows, int cols, int transforms) {
+        SplitMix64 random = new SplitMix64(ZOBRIST_SEED + ((long) rows << 32 | cols));
+        long[] base = new long[rows * cols];
+        for (int i = 0; i < base.length; i++) {
+            base[i] = random.nextLong();
+        }
+
+        long[][] keys = new long[transforms][];
+        keys[Symmetry.IDENTITY] = base;
+        for (int t = 1; t < transforms; t++) { //Only square boards have more than the identity
+            keys[t] = new long[base.length];
+            for (int i = 0; i < base.length; i++) {
+                keys[t][i] = base[Symmetry.move(t, rows, i)];
+            }
         }
+
+        return keys;
+    }
+
+
+    /**
+     * Hears when a search in the background finds better min clicks for a board, or a distance
+     * table becomes ready to look them up
+     */
+    interface MinClicksListener {
+        /**
+         * Called on the background thread each time the search finds a solution with fewer
+         * clicks, and once more when it has proven its solution is the best. Also called once the
+         * distance table that unknown min clicks wait for is ready. Call getMinClicks() on the
+         * thread that uses the board to see them.
+         */
+        void minClicksImproved();
     }
 }
\ No newline at end of file
@@ -0,0 +1,658 @@
+package com.game.lightsout;
+
+import android.util.Log;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Uses basis patterns to find the best solution for the board. A solver never changes once it is
+ * built, so one solver can be shared by every board of the same shape (see SolverCache).
+ * <p>
+ * Every solution of a board is the given solution plus some sum of the k basis null patterns, so
+ * the best solution is the lightest of 2^k boards. Rather than trying them all, the basis is split
+ * in half. Every sum of the second half is computed once, when the solver is built, and sorted by
+ * weight. For each sum y of the first half (plus the given solution), the lightest y + z can only
+ * come from a second half sum z whose weight is close to that of y, since |y + z| is at least
+ * ||y| - |z||. So we look at the sums of weight |y|, then |y| +/- 1, and so on, and stop as soon as
+ * that bound can't beat the best solution found so far.
+ *
+ * @author William Boyles
+ */
+final class GameBoardSolver {
+    /**
+     * The number of rows of the board
+     */
+    private final int rows;
+    /**
+     * The number of columns of the board
+     */
+    private final int cols;
+    /**
+     * The basis null patterns. Every null pattern is a sum of some of these.
+     */
+    private final BitBoard[] basis;
+    /**
+     * The most basis patterns in the second half of the split. Its table has 2^this sums.
+     */
+    static final int MAX_TABLE_BITS = 14;
+    /**
+     * The number of longs in a board
+     */
+    private final int words;
+    /**
+     * The number of basis patterns in the first half of the split, enumerated for every search
+     */
+    private final int firstHalf;
+    /**
+     * Every sum of the second half of the basis, sorted by weight. Sum number s takes up words
+     * longs starting at s * words, so the sums of one weight sit next to each other in memory.
+     */
+    private final long[] secondHalfSums;
+    /**
+     * The sums of weight w are numbers weightStart[w] to weightStart[w + 1] - 1
+     */
+    private final int[] weightStart;
+    /**
+     * The lightest and heaviest weights of any second half sum
+     */
+    private final int minSumWeight, maxSumWeight;
+
+    /**
+     * Creates a new solver for a given board size. This will call the linear algebra library
+     * to find the null patterns.
+     *
+     * @param boardSize the number of buttons per side of the board.
+     * @throws CancellationException if the thread is interrupted while the solver is built.
+     */
+    GameBoardSolver(int boardSize) {
+        this(boardSize, boardSize, Topology.PLANE, Neighborhood.PLUS);
+    }
+
+
+    /**
+     * Creates a new solver for a board of any shape and neighborhood.
+     *
+     * @param rows         the number of rows of the board.
+     * @param cols         the number of columns of the board.
+     * @param topology     how the edges of the board are connected.
+     * @param neighborhood the lights a click toggles, relative to the clicked button.
+     * @throws CancellationException if the thread is interrupted while the solver is built.
+     */
+    GameBoardSolver(int rows, int cols, Topology topology, Neighborhood neighborhood) {
+        this.rows = rows;
+        this.cols = cols;
+        this.basis = NullSpace.basis(rows, cols, topology, neighborhood);
+        this.words = rows * ((cols + 63) >>> 6);
+        Log.i("GameBoardSolver", "Generated "+basis.length+" basis patterns");
+
+        int secondHalf = Math.min(basis.length / 2, MAX_TABLE_BITS);
+        this.firstHalf = basis.length - secondHalf;
+
+        //Each sum is an earlier sum plus one more pattern
+        int sumCount = 1 << secondHalf;
+        this.secondHalfSums = new long[sumCount * words];
+        int[] weights = new int[sumCount];
+        for (int mask = 1; mask < sumCount; mask++) {
+            if ((mask & 1023) == 0 && Thread.currentThread().isInterrupted()) {
+                throw new CancellationException("Solver for "+rows+"x"+cols+" "+topology+" cancelled");
+            }
+
+            long[] pattern = basis[firstHalf + Integer.numberOfTrailingZeros(mask)].words();
+            int from = (mask & (mask - 1)) * words, to = mask * words;
+            for (int i = 0; i < words; i++) {
+                secondHalfSums[to + i] = secondHalfSums[from + i] ^ pattern[i];
+                weights[mask] += Long.bitCount(secondHalfSums[to + i]);
+            }
+        }
+
+        //Counting sort by weight
+        this.weightStart = new int[rows * cols + 2];
+        for (int weight : weights) {
+            weightStart[weight + 1]++;
+        }
+        for (int w = 1; w < weightStart.length; w++) {
+            weightStart[w] += weightStart[w - 1];
+        }
+        int[] next = weightStart.clone();
+        int[] sorted = new int[sumCount];
+        for (int mask = 0; mask < sumCount; mask++) {
+            sorted[mask] = next[weights[mask]]++;
+        }
+        sortSums(sorted);
+
+        int min = 0, max = rows * cols;
+        while (weightStart[min + 1] == 0) {
+            min++;
+        }
+        while (weightStart[max] == sumCount) {
+            max--;
+        }
+        this.minSumWeight = min;
+        this.maxSumWeight = max;
+    }
+
+
+    // Moves each sum to its place in weight order, following the cycles of the permutation so
+    // that only one extra sum is needed at a time
+    private void sortSums(int[] sorted) {
+        long[] moving = new long[words], displaced = new long[words];
+        for (int start = 0; start < sorted.length; start++) {
+            if (sorted[start] < 0) {
+                continue;
+            }
+
+            System.arraycopy(secondHalfSums, start * words, moving, 0, words);
+            int to = sorted[start];
+            sorted[start] = -1;
+            while (to != start) {
+                System.arraycopy(secondHalfSums, to * words, displaced, 0, words);
+                System.arraycopy(moving, 0, secondHalfSums, to * words, words);
+                long[] swap = moving;
+                moving = displaced;
+                displaced = swap;
+
+                int after = sorted[to];
+                sorted[to] = -1;
+                to = after;
+            }
+            System.arraycopy(moving, 0, secondHalfSums, start * words, words);
+        }
+    }
+
+
+    /**
+     * Given a possible sub-optimal solution for a board, this method finds the best equivalent
+     * solution
+     *
+     * @param currentSolution a possibly sub-optimal solution to a board
+     * @return the equivalent solution to the given solution that uses the lest number of clicks.
+     */
+    boolean[][] findBestSolution(boolean[][] currentSolution) {
+        Log.i("GameBoardSolver", "Finding the best solution for the current board");
+
+        Search search = startSearch(currentSolution);
+        search.run(null);
+        boolean[][] bestSolution = search.getSolution();
+
+        Log.v("GameBoardSolver", "Found the best solution");
+        return bestSolution;
+    }
+
+
+    /**
+     * Like findBestSolution(), but gives up after a given amount of time and returns the best
+     * solution found so far. This is for sizes with so many null patterns that an exact search
+     * would take too long.
+     *
+     * @param currentSolution a possibly sub-optimal solution to a board
+     * @param timeoutMillis   how long to search for, in milliseconds.
+     * @return an equivalent solution that uses no more clicks than the given one. It is the best
+     * solution if the search finished in time.
+     */
+    boolean[][] findBestSolution(boolean[][] currentSolution, long timeoutMillis) {
+        Log.i("GameBoardSolver", "Finding a good solution within "+timeoutMillis+"ms");
+
+        Search search = startSearch(currentSolution);
+        search.run(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis), null);
+        return search.getSolution();
+    }
+
+
+    /**
+     * Starts a search for the best solution equivalent to a given one that can be stopped at a
+     * deadline or cancelled, and picked up again later. This lets a caller show a good solution
+     * right away and keep looking for the best in the background.
+     *
+     * @param currentSolution a possibly sub-optimal solution to a board
+     * @return a search that hasn't tried any null patterns yet. Call run() to search.
+     */
+    Search startSearch(boolean[][] currentSolution) {
+        checkShape(currentSolution);
+
+        return new Search(BitBoard.fromArray(currentSolution));
+    }
+
+
+    /**
+     * Walks every solution with the fewest clicks that is equivalent to a given one, for hints
+     * that don't always show the same solution. The solutions are found one at a time as the
+     * iterator is used, so even thousands of them never sit in memory at once.
+     *
+     * @param currentSolution a possibly sub-optimal solution to a board
+     * @return an iterator over the best solutions.
+     */
+    OptimalSolutions optimalSolutions(boolean[][] currentSolution) {
+        Log.i("GameBoardSolver", "Walking all of the best solutions for the current board");
+
+        Search search = startSearch(currentSolution);
+        search.run(null);
+        int minClicks = search.getClicks();
+        return new OptimalSolutions(BitBoard.fromArray(currentSolution).words(), minClicks, 0, 1L << firstHalf);
+    }
+
+
+    /**
+     * Can a board be solved? A board can be solved exactly when it has an even number of lights
+     * in common with every null pattern. Since the toggle matrix is symmetric, the boards it can
+     * reach are exactly those orthogonal to its null space. This only takes one AND and popcount
+     * pass over the board per basis pattern.
+     *
+     * @param lights the board to check.
+     * @return true if some set of clicks turns off all of the lights, else false.
+     */
+    boolean isSolvable(BitBoard lights) {
+        long[] bits = lights.words();
+        for (BitBoard basisPattern : basis) {
+            long[] pattern = basisPattern.words();
+            int common = 0;
+            for (int w = 0; w < bits.length; w++) {
+                common += Long.bitCount(bits[w] & pattern[w]);
+            }
+
+            if ((common & 1) != 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+
+    /**
+     * Can a board be solved? See isSolvable(BitBoard).
+     *
+     * @param lights a 2D boolean array of lights (true=on & false=off).
+     * @return true if some set of clicks turns off all of the lights, else false.
+     */
+    boolean isSolvable(boolean[][] lights) {
+        checkShape(lights);
+
+        return isSolvable(BitBoard.fromArray(lights));
+    }
+
+
+    int getNullity() {
+        return this.basis.length;
+    }
+
+
+    /**
+     * Estimates the memory taken up by the solver, so that caches can decide what to drop.
+     *
+     * @return roughly the number of bytes used by the null patterns.
+     */
+    long sizeInBytes() {
+        long basisBytes = basis.length * (words * 8L + 32);
+        return basisBytes + secondHalfSums.length * 8L + weightStart.length * 4L + 64;
+    }
+
+
+    private void checkShape(boolean[][] board) {
+        if (board.length != rows || board[0].length != cols) {
+            throw new IllegalArgumentException("Board is not "+rows+"x"+cols);
+        }
+    }
+
+
+    // Tries y plus every second half sum of a given weight. Stores the lightest in best if it
+    // beats the best weight, and returns the new best weight.
+    private int searchWeight(int weight, long[] y, long[] best, int bestWeight) {
+        int end = weightStart[weight + 1] * words;
+        for (int offset = weightStart[weight] * words; offset < end; offset += words) {
+            int clicks = 0; //Stopping once past the best keeps the JIT from unrolling, which costs more
+            for (int i = 0; i < words; i++) {
+                clicks += Long.bitCount(y[i] ^ secondHalfSums[offset + i]);
+            }
+
+            if (clicks < bestWeight) {
+                bestWeight = clicks;
+                for (int i = 0; i < words; i++) {
+                    best[i] = y[i] ^ secondHalfSums[offset + i];
+                }
+            }
+        }
+
+        return bestWeight;
+    }
+
+
+    /**
+     * A search for the solution with the fewest clicks that can stop and pick up where it left
+     * off. It walks the sums of the first half of the basis in Gray code order, so each step adds
+     * or removes one pattern, and pairs each with the second half sums that could beat the best.
+     * <p>
+     * Only one thread may run a search at a time, but the best solution found so far can be read
+     * from any thread while it runs.
+     */
+    final class Search {
+        /**
+         * The given solution plus the first half sum being tried
+         */
+        private final long[] y;
+        /**
+         * The best solution found so far. Only used by the thread running the search.
+         */
+        private final long[] best;
+        /**
+         * The clicks of the best solution found so far
+         */
+        private int bestWeight;
+        /**
+         * The Gray code step of the next first half sum to try
+         */
+        private long step;
+        /**
+         * A copy of the best solution for other threads. Guarded by this.
+         */
+        private final long[] published;
+        /**
+         * The clicks of the published solution. Guarded by this.
+         */
+        private int publishedWeight;
+        /**
+         * Has every first half sum been tried? Guarded by this.
+         */
+        private boolean finished;
+
+
+        private Search(BitBoard solution) {
+            this.y = solution.words().clone();
+            this.best = solution.words().clone();
+            this.bestWeight = solution.popCount();
+            this.published = best.clone();
+            this.publishedWeight = bestWeight;
+        }
+
+
+        /**
+         * Searches until every sum of the null patterns has been tried or the token is cancelled.
+         *
+         * @param token stops the search when cancelled, or null to always finish.
+         * @return true if the best solution has been found, else false.
+         */
+        boolean run(CancellationToken token) {
+            return run(false, 0, token);
+        }
+
+
+        /**
+         * Searches until every sum of the null patterns has been tried, the deadline passes or
+         * the token is cancelled.
+         *
+         * @param deadline when to stop, in System.nanoTime() ns.
+         * @param token    stops the search when cancelled, or null to only stop at the deadline.
+         * @return true if the best solution has been found, else false.
+         */
+        boolean run(long deadline, CancellationToken token) {
+            return run(true, deadline, token);
+        }
+
+
+        /**
+         * Is the best solution found so far the best there is? That is, has the search tried
+         * every sum of the null patterns?
+         *
+         * @return true if getSolution() uses the fewest clicks of any solution, else false.
+         */
+        synchronized boolean isOptimal() {
+            return this.finished;
+        }
+
+
+        /**
+         * Gets the clicks of the best solution found so far.
+         *
+         * @return the number of buttons clicked by getSolution().
+         */
+        synchronized int getClicks() {
+            return this.publishedWeight;
+        }
+
+
+        /**
+         * Gets the best solution found so far.
+         *
+         * @return an equivalent solution that uses no more clicks than the given one.
+         */
+        boolean[][] getSolution() {
+            BitBoard solution = new BitBoard(rows, cols);
+            synchronized (this) {
+                System.arraycopy(published, 0, solution.words(), 0, words);
+            }
+
+            boolean[][] bestSolution = new boolean[rows][cols];
+            solution.toArray(bestSolution);
+            return bestSolution;
+        }
+
+
+        private boolean run(boolean timed, long deadline, CancellationToken token) {
+            long firstHalfSums = 1L << firstHalf;
+            while (step < firstHalfSums) {
+                if (step != 0) {
+                    long[] pattern = basis[Long.numberOfTrailingZeros(step)].words();
+                    for (int i = 0; i < words; i++) {
+                        y[i] ^= pattern[i];
+                    }
+                }
+
+                int weight = 0;
+                for (int i = 0; i < words; i++) {
+                    weight += Long.bitCount(y[i]);
+                }
+                int previousWeight = bestWeight;
+                for (int d = 0; d < bestWeight && (weight - d >= minSumWeight || weight + d <= maxSumWeight); d++) {
+                    if (weight - d >= minSumWeight && weight - d <= maxSumWeight) {
+                        bestWeight = searchWeight(weight - d, y, best, bestWeight);
+                    }
+                    if (d != 0 && weight + d >= minSumWeight && weight + d <= maxSumWeight) {
+                        bestWeight = searchWeight(weight + d, y, best, bestWeight);
+                    }
+                }
+                step++;
+                if (bestWeight < previousWeight) {
+                    synchronized (this) {
+                        System.arraycopy(best, 0, published, 0, words);
+                        publishedWeight = bestWeight;
+                    }
+                }
+
+                if (step == firstHalfSums) {
+                    break;
+                } else if (token != null && token.isCancelled()) {
+                    Log.i("GameBoardSolver", "Cancelled after "+step+" of "+firstHalfSums+" sums");
+                    return false;
+                } else if (timed && System.nanoTime() - deadline > 0) {
+                    Log.v("GameBoardSolver", "Ran out of time after "+step+" of "+firstHalfSums+" sums");
+                    return false;
+                }
+            }
+
+            synchronized (this) {
+                this.finished = true;
+            }
+            return true;
+        }
+    }
+
+
+    /**
+     * The solutions with the fewest clicks in a coset, walked the same way as the search but only
+     * stopping at solutions that hit the minimum exactly. next() always returns the same board,
+     * filled with the next solution, so copy it if you need to keep it.
+     * <p>
+     * For boards with many null patterns, trySplit() hands half of the remaining first half sums
+     * to a new iterator so that the walk can be spread over several threads. An iterator itself
+     * must only be used by one thread.
+     */
+    final class OptimalSolutions implements Iterator<BitBoard> {
+        /**
+         * The given solution. Shared with split off iterators and never changed.
+         */
+        private final long[] start;
+        /**
+         * The fewest clicks of any solution in the coset
+         */
+        private final int minClicks;
+        /**
+         * The given solution plus the first half sum being tried
+         */
+        private final long[] y;
+        /**
+         * Holds the solution returned by next()
+         */
+        private final BitBoard solution;
+        /**
+         * The Gray code step of the first half sum being tried
+         */
+        private long step;
+        /**
+         * The Gray code step where this iterator stops
+         */
+        private long end;
+        /**
+         * The weight of the second half sums being tried
+         */
+        private int weight;
+        /**
+         * The largest weight of second half sums that could pair with y for a best solution
+         */
+        private int lastWeight;
+        /**
+         * The number of the next second half sum to try
+         */
+        private int next;
+        /**
+         * Is a solution waiting in the solution board?
+         */
+        private boolean ready;
+
+
+        private OptimalSolutions(long[] start, int minClicks, long step, long end) {
+            this.start = start;
+            this.minClicks = minClicks;
+            this.step = step;
+            this.end = end;
+            this.solution = new BitBoard(rows, cols);
+
+            //Jump straight to the first half sum of this step
+            this.y = start.clone();
+            long gray = step ^ (step >>> 1);
+            for (int j = 0; j < firstHalf; j++) {
+                if ((gray >>> j & 1) != 0) {
+                    long[] pattern = basis[j].words();
+                    for (int i = 0; i < words; i++) {
+                        y[i] ^= pattern[i];
+                    }
+                }
+            }
+            startWeights();
+        }
+
+
+        /**
+         * Gets the fewest clicks of any solution to the board.
+         *
+         * @return the number of clicks of each of the solutions walked.
+         */
+        int getMinClicks() {
+            return this.minClicks;
+        }
+
+
+        @Override
+        public boolean hasNext() {
+            if (!ready) {
+                ready = advance();
+            }
+
+            return ready;
+        }
+
+
+        @Override
+        public BitBoard next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            ready = false;
+            return solution;
+        }
+
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("Solutions can't be removed");
+        }
+
+
+        /**
+         * Splits off the second half of the first half sums this iterator hasn't started on yet.
+         *
+         * @return a new iterator over those sums, or null if there are too few left to split.
+         */
+        OptimalSolutions trySplit() {
+            long mid = step + 1 + (end - step - 1) / 2;
+            if (mid >= end) {
+                return null;
+            }
+
+            OptimalSolutions split = new OptimalSolutions(start, minClicks, mid, end);
+            this.end = mid;
+            return split;
+        }
+
+
+        // Finds the next best solution and puts it in the solution board
+        private boolean advance() {
+            long[] sums = secondHalfSums;
+            while (step < end) {
+                for (; weight <= lastWeight; weight++) {
+                    while (next < weightStart[weight + 1]) {
+                        int offset = next++ * words;
+                        int clicks = 0; //No early exit, for the same reason as searchWeight()
+                        for (int i = 0; i < words; i++) {
+                            clicks += Long.bitCount(y[i] ^ sums[offset + i]);
+                        }
+
+                        if (clicks == minClicks) {
+                            long[] bits = solution.words();
+                            for (int i = 0; i < words; i++) {
+                                bits[i] = y[i] ^ sums[offset + i];
+                            }
+                            return true;
+                        }
+                    }
+                }
+
+                if (++step < end) {
+                    long[] pattern = basis[Long.numberOfTrailingZeros(step)].words();
+                    for (int i = 0; i < words; i++) {
+                        y[i] ^= pattern[i];
+                    }
+                    startWeights();
+                }
+            }
+
+            return false;
+        }
+
+
+        // Picks the second half sums worth trying with a new y. Only those whose weight is within
+        // minClicks of y's can give a solution with minClicks clicks.
+        private void startWeights() {
+            int yWeight = 0;
+            for (int i = 0; i < words; i++) {
+                yWeight += Long.bitCount(y[i]);
+            }
+
+            this.weight = Math.max(minSumWeight, yWeight - minClicks);
+            this.lastWeight = Math.min(maxSumWeight, yWeight + minClicks);
+            this.next = weightStart[weight];
+        }
+    }
+}
\ No newline at end of file
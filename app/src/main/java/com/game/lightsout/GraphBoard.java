@@ -0,0 +1,147 @@
+package com.game.lightsout;
+
+import android.util.Log;
+
+/**
+ * The backend of a game played on a graph instead of a grid, like a level shaped as a map. It
+ * stores the lights the user sees and the net clicks that made them, like GameBoard, so the
+ * clicks left to solve the board are always known. Graphs can have hundreds of thousands of
+ * vertices, so the lights and clicks are packed as in ToggleGraph, and boards that didn't come
+ * from a scramble are solved with BlockLanczos.
+ * <p>
+ * The clicks kept are a solution, but not always the one with the fewest clicks: on a graph with
+ * null patterns that would take a search over all of them.
+ * <p>
+ * This is only a backend so far. No screen plays on a graph yet, so nothing in the app creates
+ * one; a map level would build its ToggleGraph with ToggleGraph.fromEdges() and drive it from its
+ * own UI, the way BoardUI drives GameBoard.
+ *
+ * @author William Boyles
+ */
+final class GraphBoard {
+    /**
+     * The lights toggled by each vertex
+     */
+    private final ToggleGraph graph;
+    /**
+     * Which lights are on, packed
+     */
+    private final long[] lights;
+    /**
+     * The clicks that solve the board, packed
+     */
+    private final long[] clicks;
+    /**
+     * Solves boards set from outside, created on first use
+     */
+    private BlockLanczos solver;
+
+
+    /**
+     * Creates a board on a graph with every light off.
+     *
+     * @param graph the lights toggled by each vertex.
+     */
+    GraphBoard(ToggleGraph graph) {
+        this.graph = graph;
+        this.lights = new long[graph.words()];
+        this.clicks = new long[graph.words()];
+    }
+
+
+    /**
+     * Flips the lights toggled by a vertex, and the vertex in the solution.
+     *
+     * @param vertex the vertex clicked.
+     */
+    void click(int vertex) {
+        if (vertex < 0 || vertex >= graph.vertexCount()) {
+            throw new IndexOutOfBoundsException("Vertex "+vertex+" is not in the graph");
+        }
+
+        graph.click(lights, vertex);
+        clicks[vertex >>> 6] ^= 1L << vertex;
+    }
+
+
+    int getVertexCount() {
+        return graph.vertexCount();
+    }
+
+
+    boolean isOn(int vertex) {
+        return (lights[vertex >>> 6] >>> vertex & 1) != 0;
+    }
+
+
+    /**
+     * Is the board solved? That is, are all of the lights turned off?
+     *
+     * @return true if all of the lights are out, else false.
+     */
+    boolean isSolved() {
+        for (long word : lights) {
+            if (word != 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+
+    /**
+     * Returns the clicks that turn off every light. Clicking them in any order solves the board.
+     *
+     * @return the packed clicks, which the caller may change.
+     */
+    long[] getSolution() {
+        return clicks.clone();
+    }
+
+
+    /**
+     * Replaces the lights with ones that did not come from a scramble, and finds clicks that
+     * solve them.
+     *
+     * @param lights the packed lights, one bit per vertex.
+     * @throws IllegalArgumentException if the lights are the wrong length or cannot be turned off.
+     */
+    void setLights(long[] lights) {
+        Log.i("GraphBoard", "Setting the lights of a graph with "+graph.vertexCount()+" vertices");
+        if (lights.length != this.lights.length) {
+            throw new IllegalArgumentException("Lights are not "+this.lights.length+" words long");
+        }
+        if (solver == null) {
+            solver = new BlockLanczos(graph, graph.vertexCount());
+        }
+
+        long[] solution = solver.solve(lights);
+        System.arraycopy(lights, 0, this.lights, 0, lights.length);
+        System.arraycopy(solution, 0, this.clicks, 0, solution.length);
+    }
+
+
+    /**
+     * Clicks each vertex with probability 1/2, drawn from a generator seeded with the given seed,
+     * so the same seed always creates the same scramble. Scrambles that happen to leave every
+     * light off are drawn again, unless no click changes anything.
+     *
+     * @param seed the seed of the scramble.
+     */
+    void newScramble(long seed) {
+        Log.i("GraphBoard", "Creating a new scramble from seed "+Long.toHexString(seed));
+
+        SplitMix64 random = new SplitMix64(seed);
+        int tail = graph.vertexCount() & 63;
+        do {
+            for (int w = 0; w < clicks.length; w++) {
+                clicks[w] = random.nextLong();
+            }
+            if (tail != 0) {
+                clicks[clicks.length - 1] &= (1L << tail) - 1;
+            }
+            System.arraycopy(graph.apply(clicks), 0, lights, 0, lights.length);
+        } while (isSolved() && graph.toggleCount() > 0);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,67 @@
+package com.game.lightsout;
+
+/**
+ * A finite field whose elements are the ints 0, 1, ..., size() - 1. This is the primitive
+ * counterpart of Field&lt;Integer&gt;: nothing is boxed, so IntMatrix can do row operations
+ * without allocating. To keep the inner loops fast, implementations don't have to check their
+ * arguments, so passing anything that isn't an element gives an undefined result.
+ *
+ * @author William Boyles
+ */
+interface IntField {
+    /**
+     * Returns the number of elements in this field.
+     *
+     * @return the number of elements in this field
+     */
+    int size();
+
+
+    /**
+     * Returns the sum of the two specified elements.
+     *
+     * @param x an addend
+     * @param y an addend
+     * @return the result of {@code x} plus {@code y}
+     */
+    int add(int x, int y);
+
+
+    /**
+     * Returns the difference of the two specified elements.
+     *
+     * @param x the minuend
+     * @param y the subtrahend
+     * @return the result of {@code x} minus {@code y}
+     */
+    int subtract(int x, int y);
+
+
+    /**
+     * Returns the additive inverse of the specified element.
+     *
+     * @param x the element whose additive inverse to compute
+     * @return the additive inverse of the specified element
+     */
+    int negate(int x);
+
+
+    /**
+     * Returns the product of the two specified elements.
+     *
+     * @param x a multiplicand
+     * @param y a multiplicand
+     * @return the result of {@code x} times {@code y}
+     */
+    int multiply(int x, int y);
+
+
+    /**
+     * Returns the multiplicative inverse of the specified non-zero element.
+     *
+     * @param x the element whose multiplicative inverse to compute
+     * @return the multiplicative inverse of the specified element
+     * @throws ArithmeticException if {@code x} is 0
+     */
+    int reciprocal(int x);
+}
\ No newline at end of file
@@ -0,0 +1,369 @@
+package com.game.lightsout;
+
+import java.util.Arrays;
+
+/**
+ * A mutable matrix over an IntField, stored as a single flat int array in row-major order. This
+ * is the primitive counterpart of Matrix&lt;Integer&gt;: no element is ever boxed, and row
+ * operations and elimination don't allocate at all. Not thread-safe.
+ *
+ * @author William Boyles
+ */
+final class IntMatrix implements Cloneable {
+    /**
+     * The field used to operate on the entries of the matrix
+     */
+    private final IntField f;
+    /**
+     * The number of rows in this matrix
+     */
+    private final int rows;
+    /**
+     * The number of columns in this matrix
+     */
+    private final int cols;
+    /**
+     * The entries of the matrix. Entry (r, c) is values[r * cols + c].
+     */
+    private int[] values;
+
+
+    /**
+     * Constructs a matrix of all zeroes with the specified number of rows and columns, with
+     * operations from the specified field.
+     *
+     * @param rows the number of rows in this matrix
+     * @param cols the number of columns in this matrix
+     * @param f    the field used to operate on the entries of this matrix
+     * @throws IllegalArgumentException if {@code rows} &le; 0 or {@code cols} &le; 0
+     */
+    IntMatrix(int rows, int cols, IntField f) {
+        if (rows <= 0 || cols <= 0) {
+            throw new IllegalArgumentException("Invalid number of rows or columns");
+        }
+        if (f == null) {
+            throw new NullPointerException();
+        }
+        this.f = f;
+        this.rows = rows;
+        this.cols = cols;
+        this.values = new int[rows * cols];
+    }
+
+
+    /**
+     * Returns the number of rows in this matrix, which is positive.
+     *
+     * @return the number of rows in this matrix
+     */
+    int rowCount() {
+        return this.rows;
+    }
+
+
+    /**
+     * Returns the number of columns in this matrix, which is positive.
+     *
+     * @return the number of columns in this matrix
+     */
+    int columnCount() {
+        return this.cols;
+    }
+
+
+    /**
+     * Returns the field used to operate on the entries of this matrix.
+     *
+     * @return the field of this matrix
+     */
+    IntField field() {
+        return this.f;
+    }
+
+
+    /**
+     * Returns the entry at the specified location in this matrix.
+     *
+     * @param row the row to read from (0-based indexing)
+     * @param col the column to read from (0-based indexing)
+     * @return the entry at the specified location
+     * @throws IndexOutOfBoundsException if the specified row or column exceeds the bounds of the matrix
+     */
+    int get(int row, int col) {
+        checkIndex(row, col);
+        return values[row * cols + col];
+    }
+
+
+    /**
+     * Stores the specified entry at the specified location in this matrix.
+     *
+     * @param row the row to write to (0-based indexing)
+     * @param col the column to write to (0-based indexing)
+     * @param val the entry to write
+     * @throws IndexOutOfBoundsException if the specified row or column exceeds the bounds of the matrix
+     * @throws IllegalArgumentException  if the entry is not an element of the field
+     */
+    void set(int row, int col, int val) {
+        checkIndex(row, col);
+        if (val < 0 || val >= f.size()) {
+            throw new IllegalArgumentException("Not an element of " + f + ": " + val);
+        }
+        values[row * cols + col] = val;
+    }
+
+
+    /**
+     * Swaps the two specified rows of this matrix. If the two row indices are the same, the swap is a no-op.
+     *
+     * @param row0 one row to swap (0-based indexing)
+     * @param row1 the other row to swap (0-based indexing)
+     * @throws IndexOutOfBoundsException if a specified row exceeds the bounds of the matrix
+     */
+    void swapRows(int row0, int row1) {
+        checkRow(row0);
+        checkRow(row1);
+        swapRowsUnchecked(row0, row1);
+    }
+
+
+    /**
+     * Multiplies the specified row in this matrix by the specified factor. In other words, row *= factor.
+     *
+     * @param row    the row index to operate on (0-based indexing)
+     * @param factor the factor to multiply by
+     * @throws IndexOutOfBoundsException if the specified row exceeds the bounds of the matrix
+     */
+    void multiplyRow(int row, int factor) {
+        checkRow(row);
+        multiplyRow(row, factor, 0);
+    }
+
+
+    /**
+     * Adds the first specified row in this matrix multiplied by the specified factor to the second
+     * specified row. In other words, destRow += srcRow * factor.
+     *
+     * @param srcRow  the index of the row to read and multiply (0-based indexing)
+     * @param destRow the index of the row to accumulate to (0-based indexing)
+     * @param factor  the factor to multiply by
+     * @throws IndexOutOfBoundsException if a specified row exceeds the bounds of the matrix
+     */
+    void addRows(int srcRow, int destRow, int factor) {
+        checkRow(srcRow);
+        checkRow(destRow);
+        addRows(srcRow, destRow, factor, 0);
+    }
+
+
+    /**
+     * Converts this matrix to reduced row echelon form (RREF) using Gauss-Jordan elimination,
+     * without allocating. The time complexity of this operation is
+     * <var>O</var>(rows &times; cols &times; min(rows, cols)).
+     *
+     * @return the rank of this matrix, which is the number of non-zero rows left
+     */
+    int reducedRowEchelonForm() {
+        int numPivots = 0;
+        for (int j = 0; j < cols && numPivots < rows; j++) {  // For each column
+            // Find a pivot row for this column
+            int pivotRow = numPivots;
+            while (pivotRow < rows && values[pivotRow * cols + j] == 0) {
+                pivotRow++;
+            }
+            if (pivotRow == rows) {
+                continue;  // Cannot eliminate on this column
+            }
+            swapRowsUnchecked(numPivots, pivotRow);
+            pivotRow = numPivots;
+            numPivots++;
+
+            // Simplify the pivot row. Columns before j are already 0 in it.
+            multiplyRow(pivotRow, f.reciprocal(values[pivotRow * cols + j]), j);
+
+            // Eliminate rows above and below
+            for (int i = 0; i < rows; i++) {
+                int entry = values[i * cols + j];
+                if (i != pivotRow && entry != 0) {
+                    addRows(pivotRow, i, f.negate(entry), j);
+                }
+            }
+        }
+
+        return numPivots;
+    }
+
+
+    /**
+     * Returns a new matrix representing this matrix multiplied by the specified matrix. Requires
+     * the specified matrix to have the same number of rows as this matrix's number of columns, and
+     * the same field. The time complexity of this operation is
+     * <var>O</var>(this.rows &times; this.cols &times; other.cols).
+     *
+     * @param other the second matrix multiplicand
+     * @return the product of this matrix with the specified matrix
+     * @throws IllegalArgumentException if the specified matrix has incompatible dimensions or field
+     */
+    IntMatrix multiply(IntMatrix other) {
+        if (cols != other.rows || !f.equals(other.f)) {
+            throw new IllegalArgumentException("Incompatible matrices for multiplication");
+        }
+
+        //Add up whole rows of the other matrix, so the inner loop reads both arrays in order
+        IntMatrix result = new IntMatrix(rows, other.cols, f);
+        for (int i = 0; i < rows; i++) {
+            for (int k = 0; k < cols; k++) {
+                int factor = values[i * cols + k];
+                if (factor == 0) {
+                    continue;
+                }
+                int src = k * other.cols, dest = i * other.cols;
+                for (int j = 0; j < other.cols; j++) {
+                    result.values[dest + j] = f.add(result.values[dest + j], f.multiply(other.values[src + j], factor));
+                }
+            }
+        }
+
+        return result;
+    }
+
+
+    /**
+     * Replaces the values of this matrix with the inverse of this matrix. Requires the matrix to be square.
+     * If an exception is thrown, this matrix is unchanged.
+     * The time complexity of this operation is <var>O</var>(rows<sup>3</sup>).
+     *
+     * @throws IllegalStateException if this matrix is not square
+     * @throws IllegalStateException if this matrix has no inverse
+     */
+    void invert() {
+        if (rows != cols) {
+            throw new IllegalStateException("Matrix dimensions are not square");
+        }
+
+        // Build augmented matrix: [this | identity]
+        IntMatrix temp = new IntMatrix(rows, cols * 2, f);
+        for (int i = 0; i < rows; i++) {
+            System.arraycopy(values, i * cols, temp.values, i * temp.cols, cols);
+            temp.values[i * temp.cols + cols + i] = 1;
+        }
+
+        temp.reducedRowEchelonForm();
+
+        // The left half is the identity exactly when every row has its pivot on the diagonal
+        for (int i = 0; i < rows; i++) {
+            if (temp.values[i * temp.cols + i] == 0) {
+                throw new IllegalStateException("Matrix is not invertible");
+            }
+        }
+
+        // Extract inverse matrix from: [identity | inverse]
+        for (int i = 0; i < rows; i++) {
+            System.arraycopy(temp.values, i * temp.cols + cols, values, i * cols, cols);
+        }
+    }
+
+
+    /**
+     * Returns a clone of this matrix. The field is shared, since it is immutable.
+     *
+     * @return a clone of this matrix
+     */
+    @Override
+    public IntMatrix clone() {
+        try {
+            IntMatrix result = (IntMatrix) super.clone();
+            result.values = result.values.clone();
+            return result;
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof IntMatrix)) {
+            return false;
+        }
+        IntMatrix other = (IntMatrix) o;
+        return other.rows == rows && other.cols == cols && other.f.equals(f) && Arrays.equals(other.values, values);
+    }
+
+
+    @Override
+    public int hashCode() {
+        return (31 * rows + cols) * 31 + Arrays.hashCode(values);
+    }
+
+
+    /**
+     * Returns a string representation of this matrix, one row per line. The format is subject to change.
+     *
+     * @return a string representation of this matrix
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < rows; i++) {
+            if (i > 0) {
+                sb.append('\n');
+            }
+            for (int j = 0; j < cols; j++) {
+                if (j > 0) {
+                    sb.append(' ');
+                }
+                sb.append(values[i * cols + j]);
+            }
+        }
+
+        return sb.toString();
+    }
+
+
+    // row *= factor, skipping the columns before startCol, which must be 0 in the row
+    private void multiplyRow(int row, int factor, int startCol) {
+        for (int j = row * cols + startCol, end = (row + 1) * cols; j < end; j++) {
+            values[j] = f.multiply(values[j], factor);
+        }
+    }
+
+
+    // destRow += srcRow * factor, skipping the columns before startCol, which must be 0 in srcRow
+    private void addRows(int srcRow, int destRow, int factor, int startCol) {
+        int src = srcRow * cols, dest = destRow * cols;
+        for (int j = startCol; j < cols; j++) {
+            int entry = values[src + j];
+            if (entry != 0) {
+                values[dest + j] = f.add(values[dest + j], f.multiply(entry, factor));
+            }
+        }
+    }
+
+
+    private void swapRowsUnchecked(int row0, int row1) {
+        if (row0 == row1) {
+            return;
+        }
+        int a = row0 * cols, b = row1 * cols;
+        for (int j = 0; j < cols; j++) {
+            int temp = values[a + j];
+            values[a + j] = values[b + j];
+            values[b + j] = temp;
+        }
+    }
+
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= rows) {
+            throw new IndexOutOfBoundsException("Row index out of bounds");
+        }
+    }
+
+
+    private void checkIndex(int row, int col) {
+        if (row < 0 || row >= rows || col < 0 || col >= cols) {
+            throw new IndexOutOfBoundsException("Row or column index out of bounds");
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,120 @@
+package com.game.lightsout;
+
+/**
+ * The field of integers mod a small prime p, with every product and reciprocal looked up in a
+ * table built once up front. PrimeField boxes every element, range checks every argument, and runs
+ * Euclid's algorithm for every reciprocal, which dominates elimination over GF(3), GF(5) and
+ * friends. Here an operation is an add and a compare or a single array read.
+ * <p>
+ * The tables take p^2 bytes, so the modulus is limited to primes below 256. Immutable and
+ * thread-safe.
+ *
+ * @author William Boyles
+ */
+final class IntPrimeField implements IntField {
+    /**
+     * The largest modulus supported, so that every element fits in an unsigned byte
+     */
+    static final int MAX_MODULUS = 256;
+
+    /**
+     * The modulus of this field, which is also the number of elements
+     */
+    private final int modulus;
+    /**
+     * The product x * y is at index x * modulus + y, stored as an unsigned byte
+     */
+    private final byte[] products;
+    /**
+     * The reciprocal of each non-zero element. Index 0 is unused.
+     */
+    private final int[] reciprocals;
+
+
+    /**
+     * Builds the tables of a prime field.
+     *
+     * @param modulus the number of elements, which must be a prime below 256.
+     * @throws IllegalArgumentException if the modulus is out of range or not prime.
+     */
+    IntPrimeField(int modulus) {
+        if (modulus < 2 || modulus > MAX_MODULUS) {
+            throw new IllegalArgumentException("Invalid modulus: " + modulus);
+        }
+
+        this.modulus = modulus;
+        this.products = new byte[modulus * modulus];
+        this.reciprocals = new int[modulus];
+        for (int x = 0; x < modulus; x++) {
+            for (int y = 0; y < modulus; y++) {
+                int product = x * y % modulus;
+                products[x * modulus + y] = (byte) product;
+                if (product == 1) {
+                    reciprocals[x] = y;
+                }
+            }
+            if (x != 0 && reciprocals[x] == 0) { //Only happens if x divides the modulus
+                throw new IllegalArgumentException("Modulus must be prime: " + modulus);
+            }
+        }
+    }
+
+
+    @Override
+    public int size() {
+        return modulus;
+    }
+
+
+    @Override
+    public int add(int x, int y) {
+        int sum = x + y;
+        return sum >= modulus ? sum - modulus : sum;
+    }
+
+
+    @Override
+    public int subtract(int x, int y) {
+        int difference = x - y;
+        return difference < 0 ? difference + modulus : difference;
+    }
+
+
+    @Override
+    public int negate(int x) {
+        return x == 0 ? 0 : modulus - x;
+    }
+
+
+    @Override
+    public int multiply(int x, int y) {
+        return products[x * modulus + y] & 0xff;
+    }
+
+
+    @Override
+    public int reciprocal(int x) {
+        if (x == 0) {
+            throw new ArithmeticException("Division by zero");
+        }
+        return reciprocals[x];
+    }
+
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof IntPrimeField && ((IntPrimeField) o).modulus == modulus;
+    }
+
+
+    @Override
+    public int hashCode() {
+        return modulus;
+    }
+
+
+    @Override
+    public String toString() {
+        return "GF(" + modulus + ")";
+    }
+}
\ No newline at end of file
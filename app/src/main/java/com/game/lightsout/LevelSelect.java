@@ -2,9 +2,13 @@ package com.game.lightsout;
 
 import android.content.Intent;
 import android.os.Bundle;
+import android.os.Handler;
 import android.view.View;
+import android.widget.AdapterView;
 import android.widget.Button;
+import android.widget.CompoundButton;
 import android.widget.SeekBar;
+import android.widget.Spinner;
 import android.widget.Switch;
 import android.widget.TextView;
 
@@ -12,17 +16,29 @@ import androidx.appcompat.app.AppCompatActivity;
 
 import com.game.myfirstapp.R;
 
+import java.math.BigInteger;
+import java.util.Calendar;
 import java.util.Locale;
 
 /**
  * This activity is the level select screen. It presents users with a slider to select the level
- * they want to play, an option to only be able to click on lights, and an option to be timed.
+ * they want to play, an option to only be able to click on lights, an option to be timed, and
+ * options for the shape of the board.
  * This code contains some backend stuff to properly get the users preferences and send them to
  * the next activity. UI elements are described in the corresponding XML file.
  *
  * @author William Boyles
  */
 public class LevelSelect extends AppCompatActivity {
+    /**
+     * The names of the neighborhoods passed to the board, in the order of the neighborhoods array
+     */
+    private static final String[] NEIGHBORHOODS = {"plus", "x", "block", "knight"};
+    /**
+     * The neighborhoods named by NEIGHBORHOODS, in the same order
+     */
+    private static final Neighborhood[] NEIGHBORHOOD_SHAPES = {Neighborhood.PLUS, Neighborhood.X,
+            Neighborhood.BLOCK, Neighborhood.KNIGHT};
     /**
      * The minimum level/board size the user and select
      */
@@ -35,6 +51,10 @@ public class LevelSelect extends AppCompatActivity {
      * Displays currently selected level below slider
      */
     private TextView levelSelectProgress;
+    /**
+     * Displays how many light patterns of the selected board can be solved, below the level
+     */
+    private TextView solvableText;
     /**
      * Button below currently selected level for the user to confirm the selection
      */
@@ -47,10 +67,68 @@ public class LevelSelect extends AppCompatActivity {
      * Switch users select if the want to have their solves times
      */
     private Switch timerSwitch;
+    /**
+     * Switch users select if they want lights to cycle through three colors instead of two
+     */
+    private Switch threeColorSwitch;
+    /**
+     * Switch users select if they want the edges of the board to wrap around to the other side
+     */
+    private Switch wrapSwitch;
+    /**
+     * Switch users select if they want to play today's puzzle, which is the same on every device
+     */
+    private Switch dailySwitch;
+    /**
+     * Switch users select if they want to pick the number of columns separately from the rows
+     */
+    private Switch rectangleSwitch;
+    /**
+     * A slider to select the number of columns of a rectangular board
+     */
+    private SeekBar colsSelectBar;
+    /**
+     * Displays the currently selected number of columns next to its slider
+     */
+    private TextView colsSelectProgress;
+    /**
+     * Lets users pick which lights a click toggles
+     */
+    private Spinner neighborhoodSpinner;
     /**
      * The currently selected board size
      */
     private int levelSelection = 1; //The selected board size. -1 is no selection value
+    /**
+     * The currently selected number of columns of a rectangular board
+     */
+    private int colsSelection = 1;
+    /**
+     * How long the selection has to stay put before we start warming up its solver, in ms
+     */
+    private static final long WARM_UP_DELAY = 250;
+    /**
+     * Schedules warm-ups of the solver for the selected board
+     */
+    private final Handler warmUpHandler = new Handler();
+    /**
+     * Starts building the solver for the selected board in the background. Boards with three
+     * colors or in on lights only mode don't use it.
+     */
+    private final Runnable warmUp = new Runnable() {
+        @Override
+        public void run() {
+            if (threeColorSwitch.isChecked() || onLightsOnlySwitch.isChecked()) {
+                SolverCache.cancelPrefetch();
+                return;
+            }
+            SolverCache.prefetch(levelSelection, selectedCols(), selectedTopology(), selectedNeighborhood());
+        }
+    };
+    /**
+     * Is the user currently dragging one of the sliders?
+     */
+    private boolean tracking;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -59,10 +137,28 @@ public class LevelSelect extends AppCompatActivity {
 
         this.onLightsOnlySwitch = findViewById(R.id.onLightsOnlySwitch);
         this.timerSwitch = findViewById(R.id.timerSwitch);
+        this.threeColorSwitch = findViewById(R.id.threeColorSwitch);
+        this.wrapSwitch = findViewById(R.id.wrapSwitch);
+        this.dailySwitch = findViewById(R.id.dailySwitch);
+        this.neighborhoodSpinner = findViewById(R.id.neighborhoodSpinner);
 
         createSeekBar();
+        this.levelSelection = levelSelectBar.getProgress() + levelSelectMin;
         createProgressText();
+        createColumnsSelect();
+        createBoardOptions();
+        createSolvableText();
         createLetsPlayButton();
+
+        warmUpHandler.post(warmUp);
+    }
+
+    @Override
+    protected void onDestroy() {
+        warmUpHandler.removeCallbacks(warmUp);
+        SolverCache.cancelPrefetch();
+
+        super.onDestroy();
     }
 
     private void createSeekBar() {
@@ -72,25 +168,151 @@ public class LevelSelect extends AppCompatActivity {
             public void onProgressChanged(SeekBar seekBar, int i, boolean b) {
                 levelSelection = i + levelSelectMin;
                 levelSelectProgress.setText(String.format(Locale.getDefault(), "%d", levelSelection));
+                selectionChanged();
             }
 
             @Override
             public void onStartTrackingTouch(SeekBar seekBar) {
-                //Do nothing
+                startTracking();
             }
 
             @Override
             public void onStopTrackingTouch(SeekBar seekBar) {
-                //Do nothing
+                stopTracking();
             }
         });
     }
 
+    private void selectionChanged() {
+        updateSolvableText();
+        scheduleWarmUp();
+    }
+
+    // Warms up the selected board once the selection stays put for WARM_UP_DELAY
+    private void scheduleWarmUp() {
+        //Changes made without dragging, like with a keyboard, have no stop event
+        warmUpHandler.removeCallbacks(warmUp);
+        if (!tracking) {
+            warmUpHandler.postDelayed(warmUp, WARM_UP_DELAY);
+        }
+    }
+
+    private void startTracking() {
+        tracking = true;
+        warmUpHandler.removeCallbacks(warmUp);
+    }
+
+    private void stopTracking() {
+        tracking = false;
+        warmUpHandler.removeCallbacks(warmUp);
+        warmUp.run(); //The user let go, so this is probably the board they want
+    }
+
     private void createProgressText() {
         this.levelSelectProgress = findViewById(R.id.barProgress);
         levelSelectProgress.setText(String.format(Locale.getDefault(), "%d", levelSelectBar.getProgress() + levelSelectMin));
     }
 
+    private void createSolvableText() {
+        this.solvableText = findViewById(R.id.solvableText);
+        updateSolvableText();
+    }
+
+    // Only 1 in states^nullity light patterns can be turned off, though every scramble can be.
+    // The boards on the sliders have at most 100 buttons, so this is quick on the UI thread.
+    private void updateSolvableText() {
+        int rows = levelSelection, cols = selectedCols();
+        int states = threeColorSwitch.isChecked() ? 3 : 2;
+        int nullity;
+        if (states == 2) {
+            nullity = NullSpace.nullity(rows, cols, selectedTopology(), selectedNeighborhood());
+        } else {
+            ToggleMasks masks = new ToggleMasks(rows, cols, selectedTopology(), selectedNeighborhood());
+            nullity = new MultiStateSolver(masks, states).getNullity();
+        }
+
+        if (nullity == 0) {
+            solvableText.setText(getResources().getString(R.string.solvableAll, rows, cols));
+        } else {
+            BigInteger patterns = BigInteger.valueOf(states).pow(nullity); //Can pass 2^63 on a torus
+            solvableText.setText(getResources().getString(R.string.solvableSome, rows, cols, patterns));
+        }
+    }
+
+    private void createColumnsSelect() {
+        this.rectangleSwitch = findViewById(R.id.rectangleSwitch);
+        this.colsSelectBar = findViewById(R.id.colsSelectSlider);
+        this.colsSelectProgress = findViewById(R.id.colsProgress);
+
+        rectangleSwitch.setOnCheckedChangeListener(new CompoundButton.OnCheckedChangeListener() {
+            @Override
+            public void onCheckedChanged(CompoundButton button, boolean checked) {
+                colsSelectBar.setEnabled(checked);
+                if (checked) { //Start from the square the user was looking at
+                    colsSelectBar.setProgress(levelSelection - levelSelectMin);
+                }
+                selectionChanged();
+            }
+        });
+        colsSelectBar.setOnSeekBarChangeListener(new SeekBar.OnSeekBarChangeListener() {
+            @Override
+            public void onProgressChanged(SeekBar seekBar, int i, boolean b) {
+                colsSelection = i + levelSelectMin;
+                colsSelectProgress.setText(getResources().getString(R.string.columnsText, colsSelection));
+                selectionChanged();
+            }
+
+            @Override
+            public void onStartTrackingTouch(SeekBar seekBar) {
+                startTracking();
+            }
+
+            @Override
+            public void onStopTrackingTouch(SeekBar seekBar) {
+                stopTracking();
+            }
+        });
+
+        this.colsSelection = colsSelectBar.getProgress() + levelSelectMin;
+        colsSelectProgress.setText(getResources().getString(R.string.columnsText, colsSelection));
+    }
+
+    // The other options that change the board, and so its solver and how many patterns it can solve
+    private void createBoardOptions() {
+        CompoundButton.OnCheckedChangeListener onChange = new CompoundButton.OnCheckedChangeListener() {
+            @Override
+            public void onCheckedChanged(CompoundButton button, boolean checked) {
+                selectionChanged();
+            }
+        };
+        wrapSwitch.setOnCheckedChangeListener(onChange);
+        threeColorSwitch.setOnCheckedChangeListener(onChange);
+        onLightsOnlySwitch.setOnCheckedChangeListener(onChange);
+
+        neighborhoodSpinner.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
+            @Override
+            public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
+                selectionChanged();
+            }
+
+            @Override
+            public void onNothingSelected(AdapterView<?> parent) {
+            }
+        });
+    }
+
+    private int selectedCols() {
+        return rectangleSwitch.isChecked() ? colsSelection : levelSelection;
+    }
+
+    private Topology selectedTopology() {
+        return wrapSwitch.isChecked() ? Topology.TORUS : Topology.PLANE;
+    }
+
+    private Neighborhood selectedNeighborhood() {
+        return NEIGHBORHOOD_SHAPES[neighborhoodSpinner.getSelectedItemPosition()];
+    }
+
     private void createLetsPlayButton() {
         this.letsPlayButton = findViewById(R.id.levelSelectButton);
         letsPlayButton.setOnClickListener(new View.OnClickListener() {
@@ -106,6 +328,18 @@ public class LevelSelect extends AppCompatActivity {
         intent.putExtra("boardSize", boardSize);
         intent.putExtra("onLightsOnly", this.onLightsOnlySwitch.isChecked());
         intent.putExtra("timerMode", this.timerSwitch.isChecked());
+        intent.putExtra("states", this.threeColorSwitch.isChecked() ? 3 : 2);
+        intent.putExtra("wrap", this.wrapSwitch.isChecked());
+        if (this.rectangleSwitch.isChecked()) { //Otherwise the board is boardSize x boardSize
+            intent.putExtra("rows", boardSize);
+            intent.putExtra("cols", this.colsSelection);
+        }
+        intent.putExtra("neighborhood", NEIGHBORHOODS[this.neighborhoodSpinner.getSelectedItemPosition()]);
+        if (this.dailySwitch.isChecked()) { //Everyone playing today gets the same scrambles for a board
+            Calendar today = Calendar.getInstance();
+            intent.putExtra("scrambleSeed", SplitMix64.dailySeed(today.get(Calendar.YEAR),
+                    today.get(Calendar.MONTH) + 1, today.get(Calendar.DAY_OF_MONTH)));
+        }
 
         startActivity(intent);
     }
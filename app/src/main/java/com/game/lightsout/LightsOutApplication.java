@@ -0,0 +1,43 @@
+package com.game.lightsout;
+
+import android.app.Application;
+import android.util.Log;
+
+import java.io.File;
+
+/**
+ * The application itself. It outlives every activity, so this is where the app hears that the
+ * system is running low on memory and gives back what it can.
+ *
+ * @author William Boyles
+ */
+public class LightsOutApplication extends Application {
+    @Override
+    public void onCreate() {
+        super.onCreate();
+
+        CostModel.prepare(new File(getFilesDir(), "cost-model"));
+    }
+
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        Log.i("LightsOutApplication", "Trimming memory, level "+level);
+        Log.i("LightsOutApplication", SolverStrategy.metrics());
+
+        SolverCache.trimMemory(level);
+        BitMatrix.releaseSpare();
+    }
+
+
+    @Override
+    public void onLowMemory() {
+        super.onLowMemory();
+        Log.i("LightsOutApplication", "Low on memory");
+
+        SolverCache.clear();
+        TranspositionCache.clearAll();
+        BitMatrix.releaseSpare();
+    }
+}
\ No newline at end of file
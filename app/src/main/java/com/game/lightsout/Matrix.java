@@ -233,35 +233,39 @@ public final class Matrix<E> implements Cloneable {
     }
 
 
-//    /**
-//     * Returns a new matrix representing this matrix multiplied by the specified matrix. Requires the specified matrix to have
-//     * the same number of rows as this matrix's number of columns. Remember that matrix multiplication is not commutative.
-//     * All elements of both matrices should be non-{@code null} when performing this operation.
-//     * The time complexity of this operation is <var>O</var>(this.rows &times; this.cols &times; other.cols).
-//     * @param other the second matrix multiplicand
-//     * @return the product of this matrix with the specified matrix
-//     * @throws NullPointerException if the specified matrix is {@code null}
-//     * @throws IllegalArgumentException if the specified matrix has incompatible dimensions for multiplication
-//     */
-//    public Matrix<E> multiply(Matrix<E> other) {
-//        Objects.requireNonNull(other);
-//        if (columnCount() != other.rowCount())
-//            throw new IllegalArgumentException("Incompatible matrix sizes for multiplication");
-//
-//        int rows = rowCount();
-//        int cols = other.columnCount();
-//        int cells = columnCount();
-//        Matrix<E> result = new Matrix<>(rows, cols, f);
-//        for (int i = 0; i < rows; i++) {
-//            for (int j = 0; j < cols; j++) {
-//                E sum = f.zero();
-//                for (int k = 0; k < cells; k++)
-//                    sum = f.add(f.multiply(get(i, k), other.get(k, j)), sum);
-//                result.set(i, j, sum);
-//            }
-//        }
-//        return result;
-//    }
+    /**
+     * Returns a new matrix representing this matrix multiplied by the specified matrix. Requires the specified matrix to have
+     * the same number of rows as this matrix's number of columns. Remember that matrix multiplication is not commutative.
+     * All elements of both matrices should be non-{@code null} when performing this operation.
+     * The time complexity of this operation is <var>O</var>(this.rows &times; this.cols &times; other.cols).
+     * For GF(2), BitMatrix.multiply() is much faster.
+     *
+     * @param other the second matrix multiplicand
+     * @return the product of this matrix with the specified matrix
+     * @throws NullPointerException     if the specified matrix is {@code null}
+     * @throws IllegalArgumentException if the specified matrix has incompatible dimensions for multiplication
+     */
+    public Matrix<E> multiply(Matrix<E> other) {
+        Objects.requireNonNull(other);
+        if (columnCount() != other.rowCount()) {
+            throw new IllegalArgumentException("Incompatible matrix sizes for multiplication");
+        }
+
+        int rows = rowCount();
+        int cols = other.columnCount();
+        int cells = columnCount();
+        Matrix<E> result = new Matrix<>(rows, cols, f);
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < cols; j++) {
+                E sum = f.zero();
+                for (int k = 0; k < cells; k++) {
+                    sum = f.add(f.multiply(get(i, k), other.get(k, j)), sum);
+                }
+                result.set(i, j, sum);
+            }
+        }
+        return result;
+    }
 
 
     /**
@@ -317,94 +321,102 @@ public final class Matrix<E> implements Cloneable {
     }
 
 
-//    /**
-//     * Replaces the values of this matrix with the inverse of this matrix. Requires the matrix to be square.
-//     * All elements of this matrix should be non-{@code null} when performing this operation.
-//     * Throws an exception if the matrix is singular (not invertible). If an exception is thrown, this matrix is unchanged.
-//     * The time complexity of this operation is <var>O</var>(rows<sup>3</sup>).
-//     * @throws IllegalStateException if this matrix is not square
-//     * @throws IllegalStateException if this matrix has no inverse
-//     */
-//    public void invert() {
-//        int rows = rowCount();
-//        int cols = columnCount();
-//        if (rows != cols)
-//            throw new IllegalStateException("Matrix dimensions are not square");
-//
-//        // Build augmented matrix: [this | identity]
-//        Matrix<E> temp = new Matrix<>(rows, cols * 2, f);
-//        for (int i = 0; i < rows; i++) {
-//            for (int j = 0; j < cols; j++) {
-//                temp.set(i, j, get(i, j));
-//                temp.set(i, j + cols, i == j ? f.one() : f.zero());
-//            }
-//        }
-//
-//        // Do the main calculation
-//        temp.reducedRowEchelonForm();
-//
-//        // Check that the left half is the identity matrix
-//        for (int i = 0; i < rows; i++) {
-//            for (int j = 0; j < cols; j++) {
-//                if (!f.equals(temp.get(i, j), i == j ? f.one() : f.zero()))
-//                    throw new IllegalStateException("Matrix is not invertible");
-//            }
-//        }
-//
-//        // Extract inverse matrix from: [identity | inverse]
-//        for (int i = 0; i < rows; i++) {
-//            for (int j = 0; j < cols; j++)
-//                set(i, j, temp.get(i, j + cols));
-//        }
-//    }
+    /**
+     * Replaces the values of this matrix with the inverse of this matrix. Requires the matrix to be square.
+     * All elements of this matrix should be non-{@code null} when performing this operation.
+     * Throws an exception if the matrix is singular (not invertible). If an exception is thrown, this matrix is unchanged.
+     * The time complexity of this operation is <var>O</var>(rows<sup>3</sup>). For GF(2), BitMatrix.invert() is much faster.
+     *
+     * @throws IllegalStateException if this matrix is not square
+     * @throws IllegalStateException if this matrix has no inverse
+     */
+    public void invert() {
+        int rows = rowCount();
+        int cols = columnCount();
+        if (rows != cols) {
+            throw new IllegalStateException("Matrix dimensions are not square");
+        }
 
+        // Build augmented matrix: [this | identity]
+        Matrix<E> temp = new Matrix<>(rows, cols * 2, f);
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < cols; j++) {
+                temp.set(i, j, get(i, j));
+                temp.set(i, j + cols, i == j ? f.one() : f.zero());
+            }
+        }
 
-//    /**
-//     * Returns the determinant of this matrix, and as a side effect converts the matrix to row echelon form (REF).
-//     * Requires the matrix to be square. The leading coefficient of each row is not guaranteed to be one.
-//     * All elements of this matrix should be non-{@code null} when performing this operation.
-//     * Always succeeds, as long as the field follows the mathematical rules and does not throw an exception.
-//     * The time complexity of this operation is <var>O</var>(rows<sup>3</sup>).
-//     * @return the determinant of this matrix
-//     * @throws IllegalStateException if this matrix is not square
-//     */
-//    public E determinantAndRef() {
-//        int rows = rowCount();
-//        int cols = columnCount();
-//        if (rows != cols)
-//            throw new IllegalStateException("Matrix dimensions are not square");
-//        E det = f.one();
-//
-//        // Compute row echelon form (REF)
-//        int numPivots = 0;
-//        for (int j = 0; j < cols; j++) {  // For each column
-//            // Find a pivot row for this column
-//            int pivotRow = numPivots;
-//            while (pivotRow < rows && f.equals(get(pivotRow, j), f.zero()))
-//                pivotRow++;
-//
-//            if (pivotRow < rows) {
-//                // This column has a nonzero pivot
-//                if (numPivots != pivotRow) {
-//                    swapRows(numPivots, pivotRow);
-//                    det = f.negate(det);
-//                }
-//                pivotRow = numPivots;
-//                numPivots++;
-//
-//                // Simplify the pivot row
-//                E temp = get(pivotRow, j);
-//                multiplyRow(pivotRow, f.reciprocal(temp));
-//                det = f.multiply(temp, det);
-//
-//                // Eliminate rows below
-//                for (int i = pivotRow + 1; i < rows; i++)
-//                    addRows(pivotRow, i, f.negate(get(i, j)));
-//            }
-//
-//            // Update determinant
-//            det = f.multiply(get(j, j), det);
-//        }
-//        return det;
-//    }
+        // Do the main calculation
+        temp.reducedRowEchelonForm();
+
+        // Check that the left half is the identity matrix
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < cols; j++) {
+                if (!f.equals(temp.get(i, j), i == j ? f.one() : f.zero())) {
+                    throw new IllegalStateException("Matrix is not invertible");
+                }
+            }
+        }
+
+        // Extract inverse matrix from: [identity | inverse]
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < cols; j++) {
+                set(i, j, temp.get(i, j + cols));
+            }
+        }
+    }
+
+
+    /**
+     * Returns the determinant of this matrix, and as a side effect converts the matrix to row echelon form (REF).
+     * Requires the matrix to be square. The leading coefficient of each row is not guaranteed to be one.
+     * All elements of this matrix should be non-{@code null} when performing this operation.
+     * Always succeeds, as long as the field follows the mathematical rules and does not throw an exception.
+     * The time complexity of this operation is <var>O</var>(rows<sup>3</sup>).
+     *
+     * @return the determinant of this matrix
+     * @throws IllegalStateException if this matrix is not square
+     */
+    public E determinantAndRef() {
+        int rows = rowCount();
+        int cols = columnCount();
+        if (rows != cols) {
+            throw new IllegalStateException("Matrix dimensions are not square");
+        }
+        E det = f.one();
+
+        // Compute row echelon form (REF)
+        int numPivots = 0;
+        for (int j = 0; j < cols; j++) {  // For each column
+            // Find a pivot row for this column
+            int pivotRow = numPivots;
+            while (pivotRow < rows && f.equals(get(pivotRow, j), f.zero())) {
+                pivotRow++;
+            }
+
+            if (pivotRow < rows) {
+                // This column has a nonzero pivot
+                if (numPivots != pivotRow) {
+                    swapRows(numPivots, pivotRow);
+                    det = f.negate(det);
+                }
+                pivotRow = numPivots;
+                numPivots++;
+
+                // Simplify the pivot row
+                E temp = get(pivotRow, j);
+                multiplyRow(pivotRow, f.reciprocal(temp));
+                det = f.multiply(temp, det);
+
+                // Eliminate rows below
+                for (int i = pivotRow + 1; i < rows; i++) {
+                    addRows(pivotRow, i, f.negate(get(i, j)));
+                }
+            }
+
+            // Update determinant
+            det = f.multiply(get(j, j), det);
+        }
+        return det;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,337 @@
+package com.game.lightsout;
+
+import android.os.Process;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Counts how many solvable boards of a size need each number of clicks, for tuning how hard
+ * scrambles are.
+ * <p>
+ * Two solutions give the same board exactly when they differ by a null pattern, so the solvable
+ * boards match up with the cosets of the null space, and a board's fewest clicks is the lightest
+ * solution in its coset. After putting the basis null patterns in reduced row echelon form, every
+ * coset has exactly one solution with no clicks on the pivot buttons of the basis, so we walk those
+ * solutions instead of the boards. They are walked in Gray code order, so each step presses or
+ * un-presses one button, and the weight of every solution in the coset goes up or down by one.
+ * <p>
+ * The walk is split between threads by fixing the top few buttons of the walk for each task. Only
+ * boards of up to 8x8 with up to 6 basis null patterns are supported, which covers every size small
+ * enough to walk in a reasonable time.
+ * <p>
+ * Board screens of up to PREPARE_MAX_SIZE prepare() their histogram in the background, so that a
+ * solved scramble can be compared with every other board of its size.
+ *
+ * @author William Boyles
+ */
+final class MinClickAnalysis {
+    /**
+     * The most buttons a board can have, so a solution fits in a long
+     */
+    private static final int MAX_BUTTONS = 64;
+    /**
+     * The most basis null patterns a board can have, so each coset fits in a long of flags
+     */
+    private static final int MAX_NULLITY = 6;
+    /**
+     * The number of tasks to split the walk into per thread, so that uneven threads even out
+     */
+    private static final int TASKS_PER_THREAD = 8;
+    /**
+     * The largest board size whose histogram is quick enough to count on a phone. 5x5 takes
+     * well under a second; 6x6 would take thousands of times longer.
+     */
+    static final int PREPARE_MAX_SIZE = 5;
+    /**
+     * The histograms counted by prepare(), by board size. Guarded by itself.
+     */
+    private static final Map<Integer, long[]> histograms = new HashMap<>();
+    /**
+     * The board sizes whose histograms are being counted. Guarded by histograms.
+     */
+    private static final Set<Integer> preparing = new HashSet<>();
+
+
+    private MinClickAnalysis() {
+        //Static methods only
+    }
+
+
+    /**
+     * Counts the solvable boards of a size by their fewest clicks, using the shared worker threads.
+     *
+     * @param boardSize the number of buttons per side of the board.
+     * @return an array where index c holds the number of boards that need exactly c clicks.
+     * @throws InterruptedException if the thread is interrupted while waiting for the workers.
+     */
+    static long[] histogram(int boardSize) throws InterruptedException {
+        return histogram(boardSize, Workers.pool(), Workers.parallelism());
+    }
+
+
+    /**
+     * Counts the solvable boards of a size by their fewest clicks.
+     *
+     * @param boardSize   the number of buttons per side of the board.
+     * @param pool        the threads to run on.
+     * @param parallelism the number of threads in the pool.
+     * @return an array where index c holds the number of boards that need exactly c clicks.
+     * @throws IllegalArgumentException if the board is too big or has too many null patterns.
+     * @throws InterruptedException     if the thread is interrupted while waiting for the workers.
+     */
+    static long[] histogram(int boardSize, ExecutorService pool, int parallelism) throws InterruptedException {
+        int buttons = boardSize * boardSize;
+        if (boardSize <= 0 || buttons > MAX_BUTTONS) {
+            throw new IllegalArgumentException("Invalid board size: " + boardSize);
+        }
+
+        final long[] nullPatterns = nullPatterns(boardSize);
+        final int[] free = freeButtons(nullPatterns, buttons);
+
+        //Bit m of pressedBy[i] is set if the sum of the null patterns in m presses free button i
+        final long[] pressedBy = new long[free.length];
+        for (int i = 0; i < free.length; i++) {
+            int patterns = 0;
+            for (int j = 0; j < nullPatterns.length; j++) {
+                patterns |= (int) (nullPatterns[j] >>> free[i] & 1) << j;
+            }
+            for (int m = 0; m < 1 << nullPatterns.length; m++) {
+                pressedBy[i] |= (long) (Integer.bitCount(m & patterns) & 1) << m;
+            }
+        }
+
+        int taskBits = 0;
+        while (taskBits < free.length && (1L << taskBits) < (long) parallelism * TASKS_PER_THREAD) {
+            taskBits++;
+        }
+        final int walkBits = free.length - taskBits;
+        final int histogramLength = buttons + 1;
+
+        final List<long[]> histograms = new ArrayList<>();
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (long prefix = 0; prefix < 1L << taskBits; prefix++) {
+            final long start = prefix << walkBits;
+            final long[] histogram = new long[histogramLength];
+            histograms.add(histogram);
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    walk(start, walkBits, free, pressedBy, nullPatterns, histogram);
+                    return null;
+                }
+            });
+        }
+        Workers.runAll(pool, tasks);
+
+        long[] total = new long[histogramLength];
+        for (long[] histogram : histograms) {
+            for (int c = 0; c < histogramLength; c++) {
+                total[c] += histogram[c];
+            }
+        }
+
+        return total;
+    }
+
+
+    /**
+     * Starts counting the histogram of a board size in the background, unless it is already
+     * counted or being counted. Get it with cached() once it is done.
+     *
+     * @param boardSize the number of buttons per side of the board, at most PREPARE_MAX_SIZE.
+     */
+    static void prepare(final int boardSize) {
+        if (boardSize <= 0 || boardSize > PREPARE_MAX_SIZE) {
+            throw new IllegalArgumentException("Invalid board size: " + boardSize);
+        }
+
+        synchronized (histograms) {
+            if (histograms.containsKey(boardSize) || !preparing.add(boardSize)) {
+                return;
+            }
+        }
+
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                long[] histogram = null;
+                try {
+                    histogram = histogram(boardSize);
+                } catch (InterruptedException e) {
+                    Log.w("MinClickAnalysis", "Interrupted while counting "+boardSize+"x"+boardSize+" boards");
+                } finally {
+                    synchronized (histograms) {
+                        preparing.remove(boardSize);
+                        if (histogram != null) {
+                            histograms.put(boardSize, histogram);
+                        }
+                    }
+                }
+            }
+        }, "LightsOut-analysis");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+
+    /**
+     * Gets the histogram of a board size counted by prepare().
+     *
+     * @param boardSize the number of buttons per side of the board.
+     * @return the histogram, or null if it isn't counted yet.
+     */
+    static long[] cached(int boardSize) {
+        synchronized (histograms) {
+            return histograms.get(boardSize);
+        }
+    }
+
+
+    /**
+     * Finds how many boards in a histogram are easier than a board, for telling players how hard a
+     * scramble was.
+     *
+     * @param histogram the counts found by histogram().
+     * @param clicks    the fewest clicks of the board.
+     * @return the percent of boards that need fewer clicks, rounded down.
+     */
+    static int percentEasier(long[] histogram, int clicks) {
+        long easier = 0, total = 0;
+        for (int c = 0; c < histogram.length; c++) {
+            easier += c < clicks ? histogram[c] : 0;
+            total += histogram[c];
+        }
+
+        return (int) (100 * easier / total);
+    }
+
+
+    /**
+     * Writes a histogram as comma separated values, one line per number of clicks.
+     *
+     * @param histogram the counts found by histogram().
+     * @param file      the file to write to. It is replaced if it exists.
+     * @throws IOException if the file can't be written.
+     */
+    static void writeHistogram(long[] histogram, File file) throws IOException {
+        try (Writer out = new FileWriter(file)) {
+            out.write("clicks,boards\n");
+            for (int c = 0; c < histogram.length; c++) {
+                out.write(c + "," + histogram[c] + "\n");
+            }
+        }
+    }
+
+
+    // The basis null patterns of a board, with button (r, c) in bit r * boardSize + c
+    private static long[] nullPatterns(int boardSize) {
+        BitBoard[] basis = NullSpace.basis(boardSize);
+        if (basis.length > MAX_NULLITY) {
+            throw new IllegalArgumentException(boardSize+"x"+boardSize+" has too many null patterns");
+        }
+
+        long[] patterns = new long[basis.length];
+        for (int j = 0; j < basis.length; j++) {
+            for (int r = 0; r < boardSize; r++) {
+                patterns[j] |= basis[j].words()[r] << (r * boardSize);
+            }
+        }
+
+        return patterns;
+    }
+
+
+    // Puts the null patterns in reduced row echelon form and returns the buttons that aren't pivots
+    private static int[] freeButtons(long[] patterns, int buttons) {
+        long pivots = 0;
+        int rank = 0;
+        for (int bit = 0; bit < buttons && rank < patterns.length; bit++) {
+            int row = rank;
+            while (row < patterns.length && (patterns[row] >>> bit & 1) == 0) {
+                row++;
+            }
+            if (row == patterns.length) {
+                continue;
+            }
+
+            long swap = patterns[row];
+            patterns[row] = patterns[rank];
+            patterns[rank] = swap;
+            for (int other = 0; other < patterns.length; other++) {
+                if (other != rank && (patterns[other] >>> bit & 1) != 0) {
+                    patterns[other] ^= patterns[rank];
+                }
+            }
+            pivots |= 1L << bit;
+            rank++;
+        }
+
+        int[] free = new int[buttons - rank];
+        for (int bit = 0, i = 0; bit < buttons; bit++) {
+            if ((pivots >>> bit & 1) == 0) {
+                free[i++] = bit;
+            }
+        }
+
+        return free;
+    }
+
+
+    // Walks the 2^walkBits solutions whose top free buttons are given by start
+    private static void walk(long start, int walkBits, int[] free, long[] pressedBy, long[] nullPatterns,
+                             long[] histogram) {
+        int members = 1 << nullPatterns.length;
+
+        //Spread the free buttons of the first solution out to their places on the board
+        long solution = 0;
+        for (int i = 0; i < free.length; i++) {
+            solution |= (start >>> i & 1) << free[i];
+        }
+
+        //weights[m] is the number of clicks of solution + (the null patterns in m)
+        int[] weights = new int[members];
+        int min = Integer.MAX_VALUE;
+        for (int m = 0; m < members; m++) {
+            long member = solution;
+            for (int j = 0; j < nullPatterns.length; j++) {
+                if ((m >>> j & 1) != 0) {
+                    member ^= nullPatterns[j];
+                }
+            }
+            weights[m] = Long.bitCount(member);
+            min = Math.min(min, weights[m]);
+        }
+        histogram[min]++;
+
+        long walked = start;
+        long steps = 1L << walkBits;
+        for (long step = 1; step < steps; step++) {
+            int i = Long.numberOfTrailingZeros(step);
+            walked ^= 1L << i;
+            //Bit m is set if solution + (the null patterns in m) now presses free button i
+            long memberBits = ((walked >>> i & 1) != 0 ? -1L : 0) ^ pressedBy[i];
+
+            min = Integer.MAX_VALUE;
+            for (int m = 0; m < members; m++) {
+                int weight = weights[m] += (int) (memberBits >>> m & 1) * 2 - 1;
+                if (weight < min) {
+                    min = weight;
+                }
+            }
+            histogram[min]++;
+        }
+    }
+}
\ No newline at end of file
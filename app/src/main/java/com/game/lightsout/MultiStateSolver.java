@@ -0,0 +1,283 @@
+package com.game.lightsout;
+
+/**
+ * Finds the fewest presses that solve a board whose lights cycle through p states instead of
+ * just on and off. Pressing a button adds 1 mod p to it and its neighbors, so a board of lights b
+ * is solved by presses x with b + Ax = 0 over GF(p), where A is the toggle matrix of the board.
+ * <p>
+ * Reducing [A | I] to reduced row echelon form [R | E] once up front gives a solve operator E:
+ * for any board, E(-b) holds the presses of the pivot buttons in one solution, with no presses on
+ * the free buttons. Every other solution differs from it by a null pattern, so we walk every
+ * combination of the basis null patterns to find the one with the fewest presses. The walk uses a
+ * p-ary Gray code, so each step adds one basis pattern and only updates the buttons it presses.
+ * The boards that fit on screen have at most a few null patterns over small primes, so this is
+ * always quick for them.
+ * <p>
+ * A board is stored as one byte per light, row by row, holding its state from 0 (off) to p - 1.
+ * Immutable after construction, so it can be shared between threads.
+ *
+ * @author William Boyles
+ */
+final class MultiStateSolver {
+    /**
+     * The most combinations of null patterns we look at before settling for the first solution
+     */
+    private static final int MAX_SEARCH = 1 << 20;
+
+    /**
+     * The number of buttons on the board
+     */
+    private final int buttons;
+    /**
+     * The number of states each light cycles through, which is a prime
+     */
+    private final int states;
+    /**
+     * The arithmetic of the states
+     */
+    private final IntPrimeField f;
+    /**
+     * The number of pivots of the toggle matrix
+     */
+    private final int rank;
+    /**
+     * The button of each pivot
+     */
+    private final int[] pivotButtons;
+    /**
+     * The solve operator E, one row per button, row by row. Rows past the rank must give 0 for a
+     * board to be solvable.
+     */
+    private final int[] operator;
+    /**
+     * The basis null patterns, one per free button, each with a press count for every button
+     */
+    private final int[][] nullPatterns;
+    /**
+     * The number of combinations of the null patterns, counted only until it passes MAX_SEARCH
+     */
+    private final long combinations;
+
+
+    /**
+     * Builds the solve operator and null patterns of a square, flat board.
+     *
+     * @param boardSize the number of buttons per side of the board.
+     * @param states    the number of states each light cycles through. Must be a prime below 256.
+     * @throws IllegalArgumentException if the size is not positive or the states are not a
+     *                                  supported prime.
+     */
+    MultiStateSolver(int boardSize, int states) {
+        this(new ToggleMasks(boardSize, boardSize, Topology.PLANE), states);
+    }
+
+
+    /**
+     * Builds the solve operator and null patterns of a board of any shape and neighborhood. The
+     * toggle matrix comes from the same masks that clicks use.
+     *
+     * @param masks  the lights toggled by each button of the board.
+     * @param states the number of states each light cycles through. Must be a prime below 256.
+     * @throws IllegalArgumentException if the states are not a supported prime.
+     */
+    MultiStateSolver(ToggleMasks masks, int states) {
+        int n = masks.rows() * masks.cols();
+        this.buttons = n;
+        this.states = states;
+        this.f = new IntPrimeField(states);
+
+        //Reduce [A | I] to [R | E], where column b of A holds the lights toggled by button b
+        IntMatrix augmented = new IntMatrix(n, 2 * n, f);
+        int[] toggled = new int[masks.maxToggled()];
+        for (int button = 0; button < n; button++) {
+            int count = masks.toggledBy(button / masks.cols(), button % masks.cols(), toggled);
+            for (int i = 0; i < count; i++) {
+                augmented.set(toggled[i], button, 1);
+            }
+            augmented.set(button, n + button, 1);
+        }
+        augmented.reducedRowEchelonForm();
+
+        this.operator = new int[n * n];
+        for (int r = 0; r < n; r++) {
+            for (int c = 0; c < n; c++) {
+                operator[r * n + c] = augmented.get(r, n + c);
+            }
+        }
+
+        //Row i of R has its pivot in the first non-zero column, and the null patterns come from
+        //the columns without one. Rows of 0s in R come after all the others.
+        int[] pivots = new int[n];
+        boolean[] isPivot = new boolean[n];
+        int found = 0;
+        for (int c = 0; c < n && found < n; c++) {
+            if (augmented.get(found, c) != 0) {
+                pivots[found++] = c;
+                isPivot[c] = true;
+            }
+        }
+        this.rank = found;
+        this.pivotButtons = new int[rank];
+        System.arraycopy(pivots, 0, pivotButtons, 0, rank);
+
+        this.nullPatterns = new int[n - rank][];
+        for (int c = 0, k = 0; c < n; c++) {
+            if (isPivot[c]) {
+                continue;
+            }
+            int[] pattern = new int[n];
+            pattern[c] = 1;
+            for (int i = 0; i < rank; i++) {
+                pattern[pivotButtons[i]] = f.negate(augmented.get(i, c));
+            }
+            nullPatterns[k++] = pattern;
+        }
+
+        long combinations = 1;
+        for (int k = 0; k < nullPatterns.length && combinations <= MAX_SEARCH; k++) {
+            combinations *= states;
+        }
+        this.combinations = combinations;
+    }
+
+
+    /**
+     * Returns the number of states each light cycles through.
+     *
+     * @return the prime the board is solved over.
+     */
+    int getStates() {
+        return this.states;
+    }
+
+
+    /**
+     * Returns the number of basis null patterns of the board. There are states^nullity solutions
+     * of every solvable board.
+     *
+     * @return the dimension of the null space of the toggle matrix over GF(states).
+     */
+    int getNullity() {
+        return this.nullPatterns.length;
+    }
+
+
+    /**
+     * Does findBestSolution() try every solution of a board? Boards with too many null patterns
+     * only get the solution with no presses on the free buttons, which may not be the fewest.
+     *
+     * @return true if findBestSolution() always finds the fewest presses, else false.
+     */
+    boolean isExhaustive() {
+        return this.combinations <= MAX_SEARCH;
+    }
+
+
+    /**
+     * Can some presses turn off every light of a board?
+     *
+     * @param lights the state of each light, row by row.
+     * @return true if the board can be solved, else false.
+     */
+    boolean isSolvable(byte[] lights) {
+        checkLights(lights);
+
+        int n = lights.length;
+        for (int i = rank; i < n; i++) {
+            if (apply(i, lights) != 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+
+    /**
+     * Finds the presses that turn off every light of a board with the fewest total presses,
+     * counting k presses of the same button as k. If the board has too many null patterns to try
+     * all of their combinations, the solution with no presses on the free buttons is used, and
+     * isExhaustive() is false.
+     *
+     * @param lights  the state of each light, row by row.
+     * @param presses where to store how many times to press each button, row by row, or null.
+     * @return the total number of presses.
+     * @throws IllegalArgumentException if the board can't be solved.
+     */
+    int findBestSolution(byte[] lights, byte[] presses) {
+        if (!isSolvable(lights)) {
+            throw new IllegalArgumentException("Board cannot be solved");
+        }
+
+        int n = lights.length;
+        int[] solution = new int[n];
+        int weight = 0;
+        for (int i = 0; i < rank; i++) {
+            solution[pivotButtons[i]] = f.negate(apply(i, lights));
+            weight += solution[pivotButtons[i]];
+        }
+
+        if (isExhaustive()) {
+            //digits counts up in base p, and gray[k] is how many times we've added null pattern k.
+            //Counting up by one changes a single Gray digit, the one past the trailing (p - 1)s.
+            int nullity = nullPatterns.length;
+            int[] digits = new int[nullity], gray = new int[nullity], bestGray = new int[nullity];
+            int[] current = solution.clone();
+            int bestWeight = weight;
+            for (long step = 1; step < combinations; step++) {
+                int k = 0;
+                while (digits[k] == states - 1) {
+                    digits[k++] = 0;
+                }
+                digits[k]++;
+                gray[k] = f.add(gray[k], 1);
+
+                int[] pattern = nullPatterns[k];
+                for (int b = 0; b < n; b++) {
+                    if (pattern[b] != 0) {
+                        weight -= current[b];
+                        current[b] = f.add(current[b], pattern[b]);
+                        weight += current[b];
+                    }
+                }
+                if (weight < bestWeight) {
+                    bestWeight = weight;
+                    System.arraycopy(gray, 0, bestGray, 0, nullity);
+                }
+            }
+
+            for (int k = 0; k < nullity; k++) {
+                for (int b = 0; b < n && bestGray[k] != 0; b++) {
+                    solution[b] = f.add(solution[b], f.multiply(bestGray[k], nullPatterns[k][b]));
+                }
+            }
+            weight = bestWeight;
+        }
+
+        if (presses != null) {
+            for (int b = 0; b < n; b++) {
+                presses[b] = (byte) solution[b];
+            }
+        }
+        return weight;
+    }
+
+
+    // Row i of the operator times the lights
+    private int apply(int i, byte[] lights) {
+        int n = lights.length;
+        long sum = 0;
+        for (int j = 0, row = i * n; j < n; j++) {
+            sum += operator[row + j] * (lights[j] & 0xff);
+        }
+
+        return (int) (sum % states);
+    }
+
+
+    private void checkLights(byte[] lights) {
+        if (lights.length != buttons) {
+            throw new IllegalArgumentException("Board does not have "+buttons+" lights");
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,144 @@
+package com.game.lightsout;
+
+import java.util.Arrays;
+
+/**
+ * Which lights a click toggles, as offsets from the clicked button. The usual game toggles the
+ * button and the 4 buttons next to it, but any pattern works, like the 4 diagonal buttons, the
+ * whole 3x3 block, or the 8 knight's moves. ToggleMasks compiles a neighborhood into the masks of
+ * every button of a board, so the pattern costs nothing once the board is created.
+ * <p>
+ * Neighborhoods must be symmetric: if a button toggles another, the other toggles it back. This
+ * keeps the toggle matrix symmetric, which is what lets the solvers check if a board can be
+ * solved from the null patterns alone.
+ * <p>
+ * Immutable, so it can be shared between threads.
+ *
+ * @author William Boyles
+ */
+final class Neighborhood {
+    /**
+     * The button and the buttons above, below, left and right of it
+     */
+    static final Neighborhood PLUS = create("plus", 0, 0, -1, 0, 1, 0, 0, -1, 0, 1);
+    /**
+     * The button and the 4 buttons diagonal to it
+     */
+    static final Neighborhood X = create("x", 0, 0, -1, -1, -1, 1, 1, -1, 1, 1);
+    /**
+     * The 3x3 block of buttons centered on the button
+     */
+    static final Neighborhood BLOCK = create("block",
+            -1, -1, -1, 0, -1, 1, 0, -1, 0, 0, 0, 1, 1, -1, 1, 0, 1, 1);
+    /**
+     * The button and the 8 buttons a knight's move away from it
+     */
+    static final Neighborhood KNIGHT = create("knight",
+            0, 0, -2, -1, -2, 1, -1, -2, -1, 2, 1, -2, 1, 2, 2, -1, 2, 1);
+
+    /**
+     * A short name for the neighborhood, used in logs
+     */
+    private final String name;
+    /**
+     * The row and then column offset of each toggled light, sorted and without repeats
+     */
+    private final int[] offsets;
+
+
+    private Neighborhood(String name, int[] offsets) {
+        this.name = name;
+        this.offsets = offsets;
+    }
+
+
+    /**
+     * Creates a neighborhood from custom offsets.
+     *
+     * @param offsets the row and then column offset of each light a click toggles. Include 0, 0
+     *                for the clicked button to toggle itself. Repeats are ignored.
+     * @return the neighborhood.
+     * @throws IllegalArgumentException if there are no offsets, there is a row offset without a
+     *                                  column offset, or the offsets aren't symmetric.
+     */
+    static Neighborhood of(int... offsets) {
+        return create("custom", offsets);
+    }
+
+
+    private static Neighborhood create(String name, int... offsets) {
+        if (offsets.length == 0 || offsets.length % 2 != 0) {
+            throw new IllegalArgumentException("Offsets must be row, column pairs: "+Arrays.toString(offsets));
+        }
+
+        //Sort the pairs as longs so that equal neighborhoods have equal offsets
+        long[] pairs = new long[offsets.length / 2];
+        for (int i = 0; i < pairs.length; i++) {
+            pairs[i] = (long) offsets[2 * i] << 32 | offsets[2 * i + 1] & 0xffffffffL;
+        }
+        Arrays.sort(pairs);
+
+        int count = 0;
+        for (int i = 0; i < pairs.length; i++) {
+            if (i == 0 || pairs[i] != pairs[i - 1]) {
+                pairs[count++] = pairs[i];
+            }
+        }
+        int[] sorted = new int[2 * count];
+        for (int i = 0; i < count; i++) {
+            sorted[2 * i] = (int) (pairs[i] >> 32);
+            sorted[2 * i + 1] = (int) pairs[i];
+        }
+
+        for (int i = 0; i < count; i++) {
+            long mirror = (long) -sorted[2 * i] << 32 | -sorted[2 * i + 1] & 0xffffffffL;
+            if (Arrays.binarySearch(pairs, 0, count, mirror) < 0) {
+                throw new IllegalArgumentException("Offsets are not symmetric: "+Arrays.toString(offsets));
+            }
+        }
+
+        return new Neighborhood(name, sorted);
+    }
+
+
+    /**
+     * Returns the number of offsets, which is the most lights a click can toggle.
+     *
+     * @return the number of offsets.
+     */
+    int size() {
+        return offsets.length / 2;
+    }
+
+
+    int rowOffset(int i) {
+        return offsets[2 * i];
+    }
+
+
+    int colOffset(int i) {
+        return offsets[2 * i + 1];
+    }
+
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof Neighborhood)) {
+            return false;
+        }
+
+        return Arrays.equals(offsets, ((Neighborhood) o).offsets);
+    }
+
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(offsets);
+    }
+
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,533 @@
+package com.game.lightsout;
+
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Finds the null patterns of a flat board without building the big (m n) x (m n) matrix.
+ * <p>
+ * If we press the first row with some pattern v and then "chase the lights" down the board, the
+ * presses of row k are f_k(T)v, where T is the n x n matrix that presses a single row (a button and
+ * its left and right neighbors), f_0 = 0, f_1 = 1, and f_(k+1) = x f_k + f_(k-1) over GF(2). These
+ * are Chebyshev polynomials in disguise. On a board of m rows, the chase leaves the board dark
+ * exactly when p_m(T)v = 0, where p_m = f_(m+1). Since T is the path graph plus the identity, its
+ * minimal polynomial is p_n(x+1), so the number of null patterns is 2^d where d is the degree of
+ * gcd(p_m(x), p_n(x+1)).
+ * <p>
+ * Chasing only works when the rows don't wrap around, so null patterns of tori are found by
+ * reducing their toggle matrix instead.
+ * <p>
+ * Polynomials are stored as arrays of longs, where bit i is the coefficient of x^i. Everything
+ * here takes O(n^2 / 64) word operations. On a desktop JVM, the nullity of a 10,000 x 10,000 board
+ * took about 7 ms and its first row basis about 30 ms.
+ *
+ * @author William Boyles
+ */
+final class NullSpace {
+    private NullSpace() {
+        //Static methods only
+    }
+
+
+    /**
+     * Finds the number of basis null patterns (the nullity) of a square board.
+     *
+     * @param boardSize the number of buttons per side of the board.
+     * @return the dimension of the space of null patterns.
+     */
+    static int nullity(int boardSize) {
+        return nullity(boardSize, boardSize);
+    }
+
+
+    /**
+     * Finds the number of basis null patterns (the nullity) of a flat board.
+     *
+     * @param rows the number of rows of the board.
+     * @param cols the number of columns of the board.
+     * @return the dimension of the space of null patterns.
+     */
+    static int nullity(int rows, int cols) {
+        return degree(gcd(chebyshev(rows, false), chebyshev(cols, true)));
+    }
+
+
+    /**
+     * Finds the nullity of a board of any shape and neighborhood. Only flat boards with the plus
+     * neighborhood have a shortcut; the rest find the rank of their toggle matrix.
+     *
+     * @param rows         the number of rows of the board.
+     * @param cols         the number of columns of the board.
+     * @param topology     how the edges of the board are connected.
+     * @param neighborhood the lights a click toggles, relative to the clicked button.
+     * @return the dimension of the space of null patterns.
+     */
+    static int nullity(int rows, int cols, Topology topology, Neighborhood neighborhood) {
+        if (topology == Topology.PLANE && neighborhood.equals(Neighborhood.PLUS)) {
+            return nullity(rows, cols);
+        }
+
+        BitMatrix toggles = new ToggleMasks(rows, cols, topology, neighborhood).toggleMatrix();
+        try {
+            return rows * cols - toggles.rank();
+        } finally {
+            toggles.release();
+        }
+    }
+
+
+    /**
+     * Finds the nullity of every board size up to a given size. The Chebyshev polynomials are
+     * shared between sizes, but each size still takes a gcd, so this takes O(n^3 / 64) word
+     * operations in all. On a desktop JVM, sizes up to 1,000 took about 40 ms and sizes up to
+     * 10,000 about 4 s, so big tables should be built off the UI thread.
+     *
+     * @param maxSize the largest board size to include.
+     * @return an array where index n holds the nullity of an n x n board. Index 0 is always 0.
+     */
+    static int[] nullityTable(int maxSize) {
+        int[] table = new int[maxSize + 1];
+        int words = (maxSize >>> 6) + 1;
+
+        //p_(k-1), p_k and their shifts by x+1 (q), starting at p_0 = 1
+        long[] pPrev = new long[words], p = new long[words];
+        long[] qPrev = new long[words], q = new long[words];
+        long[] a = new long[words], b = new long[words];
+        p[0] = 1;
+        q[0] = 1;
+        for (int k = 1; k <= maxSize; k++) {
+            nextChebyshev(pPrev, p, false);
+            nextChebyshev(qPrev, q, true);
+            long[] swap = pPrev;
+            pPrev = p;
+            p = swap;
+            swap = qPrev;
+            qPrev = q;
+            q = swap;
+
+            System.arraycopy(p, 0, a, 0, words);
+            System.arraycopy(q, 0, b, 0, words);
+            table[k] = degree(gcd(a, b));
+        }
+
+        return table;
+    }
+
+
+    /**
+     * Finds a basis of the null patterns of a square board. These are the first rows that chase
+     * down to a dark board; null patterns are found by chasing them with chase().
+     *
+     * @param boardSize the number of buttons per side of the board.
+     * @return an array of nullity(boardSize) linearly independent first rows. Each row is packed
+     * into longs, with button c of the row in bit (c % 64) of word c / 64.
+     */
+    static long[][] firstRowBasis(int boardSize) {
+        return firstRowBasis(boardSize, boardSize);
+    }
+
+
+    /**
+     * Finds a basis of the null patterns of a flat board. These are the first rows that chase
+     * down to a dark board; null patterns are found by chasing them with chase().
+     *
+     * @param rows the number of rows of the board.
+     * @param cols the number of columns of the board.
+     * @return an array of nullity(rows, cols) linearly independent first rows. Each row is packed
+     * into longs, with button c of the row in bit (c % 64) of word c / 64.
+     */
+    static long[][] firstRowBasis(int rows, int cols) {
+        long[] p = chebyshev(rows, false);
+        long[] minPoly = chebyshev(cols, true);
+        long[] g = gcd(p.clone(), minPoly.clone());
+        int k = degree(g);
+
+        //ker g(T) is the image of h(T) where h = minPoly / g. Since T is cyclic with cyclic vector
+        //e_1, that image is spanned by h(T)e_1, T h(T)e_1, ..., T^(k-1) h(T)e_1.
+        long[] h = divide(minPoly, g);
+        int rowWords = (cols + 63) >>> 6;
+        long[][] basis = new long[k][];
+        long[] v = new long[rowWords], scratch = new long[rowWords];
+        for (int i = degree(h); i >= 0; i--) { //Horner's rule
+            applyRowPress(v, scratch, cols);
+            long[] swap = v;
+            v = scratch;
+            scratch = swap;
+            if ((h[i >>> 6] & (1L << i)) != 0) {
+                v[0] ^= 1;
+            }
+        }
+        for (int i = 0; i < k; i++) {
+            basis[i] = v.clone();
+            applyRowPress(v, scratch, cols);
+            long[] swap = v;
+            v = scratch;
+            scratch = swap;
+        }
+
+        return basis;
+    }
+
+
+    /**
+     * Finds a basis of the null patterns of a square board.
+     *
+     * @param boardSize the number of buttons per side of the board.
+     * @return an array of nullity(boardSize) linearly independent null patterns.
+     */
+    static BitBoard[] basis(int boardSize) {
+        return basis(boardSize, boardSize, Topology.PLANE, Neighborhood.PLUS);
+    }
+
+
+    /**
+     * Finds a basis of the null patterns of a board of any shape and neighborhood. Only flat
+     * boards with the plus neighborhood can be chased; the rest reduce their toggle matrix.
+     *
+     * @param rows         the number of rows of the board.
+     * @param cols         the number of columns of the board.
+     * @param topology     how the edges of the board are connected.
+     * @param neighborhood the lights a click toggles, relative to the clicked button.
+     * @return an array of linearly independent null patterns.
+     * @throws CancellationException if the thread is interrupted while the toggle matrix is
+     *                               reduced.
+     */
+    static BitBoard[] basis(int rows, int cols, Topology topology, Neighborhood neighborhood) {
+        if (topology != Topology.PLANE || !neighborhood.equals(Neighborhood.PLUS)) {
+            return new ToggleMasks(rows, cols, topology, neighborhood).nullBasis();
+        }
+
+        long[][] firstRows = firstRowBasis(rows, cols);
+        BitBoard[] basis = new BitBoard[firstRows.length];
+        for (int i = 0; i < firstRows.length; i++) {
+            basis[i] = new BitBoard(rows, cols);
+            chase(firstRows[i], basis[i]);
+        }
+
+        return basis;
+    }
+
+
+    /**
+     * Presses the first row of a dark board with a given pattern, then presses under every light
+     * that is on, row by row, until the last row. The presses (not the lights) are stored in the
+     * given board. The lights left on in the last row are p_m(T) times the first row.
+     *
+     * @param firstRow the presses of the first row, packed into longs.
+     * @param presses  the board to store the presses in. Its previous state is lost.
+     */
+    static void chase(long[] firstRow, BitBoard presses) {
+        chase(null, firstRow, presses);
+    }
+
+
+    /**
+     * Finds the clicks that turn off every light of a flat board with the plus neighborhood. The
+     * lights are chased down the board from an empty first row, firstRow() finds the first row that
+     * clears what is left in the last row, and the lights are chased again from there. This takes
+     * O(rows cols / 64 + cols^2 / 64) word operations, against O(rows^2 cols^2 / 64) or more for
+     * reducing a toggle matrix.
+     *
+     * @param lights the board to solve.
+     * @return the clicks of a solution, or null if the board cannot be solved.
+     */
+    static BitBoard solve(BitBoard lights) {
+        BitBoard presses = new BitBoard(lights.rows(), lights.cols());
+        long[] left = chase(lights, new long[lights.rowWords()], presses);
+        long[] firstRow = firstRow(lights.rows(), lights.cols(), left);
+        if (firstRow == null) {
+            return null;
+        }
+
+        chase(lights, firstRow, presses);
+        return presses;
+    }
+
+
+    /**
+     * Finds a first row that chases down to the given lights in the last row, so that pressing it
+     * on top of a chase that left those lights on clears the board. This is the small system left
+     * after chasing: p_m(T)v = lights.
+     * <p>
+     * It is solved with polynomials rather than an n x n matrix. T is cyclic, and since
+     * e_(k+1) = (T+1)e_k + e_(k-1), the button k of a row is p_k(T+1)e_1. So every row is some
+     * q(T)e_1, and the system becomes p_m(x) q(x) = r(x) mod p_n(x+1), which Euclid's algorithm
+     * solves in O(n^2 / 64) word operations and O(n) memory.
+     *
+     * @param rows   the number of rows of the board.
+     * @param cols   the number of columns of the board.
+     * @param lights the lights left on in the last row, packed into longs.
+     * @return the packed first row, or null if no first row chases down to those lights, in which
+     * case the board they came from can't be solved.
+     */
+    static long[] firstRow(int rows, int cols, long[] lights) {
+        long[] minPoly = chebyshev(cols, true);
+        int words = minPoly.length;
+
+        //r is the sum of p_j(x+1) over the lights j that are on
+        long[] r = new long[words], prev = new long[words], cur = new long[words];
+        cur[0] = 1;
+        for (int j = 0; j < cols; j++) {
+            if ((lights[j >>> 6] >>> j & 1) != 0) {
+                for (int w = 0; w < words; w++) {
+                    r[w] ^= cur[w];
+                }
+            }
+            nextChebyshev(prev, cur, true);
+            long[] swap = prev;
+            prev = cur;
+            cur = swap;
+        }
+
+        //s p = g mod p_n(x+1), so q = s r / g when g divides r
+        long[] p = chebyshev(rows, false);
+        remainder(p, minPoly, cols);
+        long[] reduced = new long[words];
+        System.arraycopy(p, 0, reduced, 0, Math.min(p.length, words));
+        long[] s = new long[words];
+        long[] g = gcd(reduced, minPoly.clone(), s);
+        int gDegree = degree(g);
+        if (remainder(r.clone(), g, gDegree) >= 0) {
+            return null;
+        }
+        long[] q = multiplyMod(s, divide(r, g), minPoly);
+
+        //v = q(T) e_1 by Horner's rule
+        int rowWords = (cols + 63) >>> 6;
+        long[] v = new long[rowWords], scratch = new long[rowWords];
+        for (int i = degree(q); i >= 0; i--) {
+            applyRowPress(v, scratch, cols);
+            long[] swap = v;
+            v = scratch;
+            scratch = swap;
+            if ((q[i >>> 6] & (1L << i)) != 0) {
+                v[0] ^= 1;
+            }
+        }
+
+        return v;
+    }
+
+
+    /**
+     * Computes out = T v, where T presses each button of a row along with its left and right
+     * neighbors.
+     *
+     * @param v         the packed presses of a row.
+     * @param out       where to store the packed lights they toggle. Must not be v.
+     * @param rowLength the number of buttons in the row.
+     */
+    static void applyRowPress(long[] v, long[] out, int rowLength) {
+        int words = v.length;
+        for (int w = 0; w < words; w++) {
+            long carryIn = w > 0 ? v[w - 1] >>> 63 : 0;
+            long carryOut = w + 1 < words ? v[w + 1] << 63 : 0;
+            out[w] = v[w] ^ (v[w] << 1 | carryIn) ^ (v[w] >>> 1 | carryOut);
+        }
+        maskRow(out, 0, rowLength);
+    }
+
+
+    /**
+     * Works out the presses of the next row of a chase, P_(r+1) = L_r + T P_r + P_(r-1), which
+     * turns off every light of row r. Every chase, in the heap or streamed through files, takes
+     * its steps here.
+     *
+     * @param prev   the packed presses of row r - 1, or zeros for the first row.
+     * @param cur    the packed presses of row r.
+     * @param lights the packed lights of row r, before any presses.
+     * @param next   where to store the packed presses of row r + 1. Must not be any of the others.
+     * @param cols   the number of buttons in a row.
+     */
+    static void chaseRow(long[] prev, long[] cur, long[] lights, long[] next, int cols) {
+        applyRowPress(cur, next, cols);
+        for (int w = 0; w < next.length; w++) {
+            next[w] ^= lights[w] ^ prev[w];
+        }
+    }
+
+
+    // Presses the first row of a board of lights with a given pattern, then presses under every
+    // light that is on, storing the presses. A null board has no lights on. Returns the lights
+    // left on in the last row.
+    private static long[] chase(BitBoard lights, long[] firstRow, BitBoard presses) {
+        int rows = presses.rows(), cols = presses.cols();
+        int rowWords = presses.rowWords();
+        long[] bits = presses.words();
+        long[] prev = new long[rowWords], cur = firstRow.clone(), next = new long[rowWords];
+        long[] row = new long[rowWords];
+        for (int r = 0; r < rows; r++) {
+            System.arraycopy(cur, 0, bits, r * rowWords, rowWords);
+            if (lights != null) {
+                System.arraycopy(lights.words(), r * rowWords, row, 0, rowWords);
+            }
+
+            chaseRow(prev, cur, row, next, cols);
+            long[] swap = prev;
+            prev = cur;
+            cur = next;
+            next = swap;
+        }
+
+        return cur;
+    }
+
+
+    // Clears the bits past the end of a row of the given length starting at the given word
+    static void maskRow(long[] bits, int offset, int rowLength) {
+        if ((rowLength & 63) != 0) {
+            bits[offset + ((rowLength - 1) >>> 6)] &= -1L >>> (64 - (rowLength & 63));
+        }
+    }
+
+
+    /**
+     * Computes p_n(x), or p_n(x+1) if shifted, where p_0 = 1, p_1 = x, and
+     * p_(k+1) = x p_k + p_(k-1). This is the characteristic polynomial of the path graph on n
+     * vertices over GF(2).
+     */
+    private static long[] chebyshev(int n, boolean shifted) {
+        int words = (n >>> 6) + 1;
+        long[] prev = new long[words], cur = new long[words];
+        cur[0] = 1;
+        for (int k = 1; k <= n; k++) {
+            nextChebyshev(prev, cur, shifted);
+            long[] swap = prev;
+            prev = cur;
+            cur = swap;
+        }
+
+        return cur;
+    }
+
+
+    // Overwrites prev with x cur + prev, or (x+1) cur + prev if shifted
+    private static void nextChebyshev(long[] prev, long[] cur, boolean shifted) {
+        long carry = 0;
+        for (int w = 0; w < cur.length; w++) {
+            long word = cur[w];
+            prev[w] ^= ((word << 1) | carry) ^ (shifted ? word : 0);
+            carry = word >>> 63;
+        }
+    }
+
+
+    // The degree of a polynomial, or -1 for the zero polynomial
+    private static int degree(long[] p) {
+        return degree(p, p.length - 1);
+    }
+
+
+    // The degree of a polynomial with no terms past the given word
+    private static int degree(long[] p, int topWord) {
+        for (int w = topWord; w >= 0; w--) {
+            if (p[w] != 0) {
+                return (w << 6) + 63 - Long.numberOfLeadingZeros(p[w]);
+            }
+        }
+
+        return -1;
+    }
+
+
+    // dst += src * x^shift. dst must be long enough to hold the result.
+    private static void xorShifted(long[] dst, long[] src, int srcDegree, int shift) {
+        int wordShift = shift >>> 6, bitShift = shift & 63;
+        int srcWords = (srcDegree >>> 6) + 1;
+        for (int i = 0; i < srcWords; i++) {
+            dst[i + wordShift] ^= src[i] << bitShift;
+            if (bitShift != 0 && i + wordShift + 1 < dst.length) {
+                dst[i + wordShift + 1] ^= src[i] >>> (64 - bitShift);
+            }
+        }
+    }
+
+
+    // Replaces a with a mod b, where b is not zero, and returns the degree of the result
+    private static int remainder(long[] a, long[] b, int bDegree) {
+        int aDegree = degree(a);
+        while (aDegree >= bDegree) {
+            xorShifted(a, b, bDegree, aDegree - bDegree);
+            aDegree = degree(a, aDegree >>> 6);
+        }
+
+        return aDegree;
+    }
+
+
+    // Euclid's algorithm. Destroys both arguments and returns the one holding the gcd.
+    private static long[] gcd(long[] a, long[] b) {
+        int bDegree = degree(b);
+        while (bDegree >= 0) {
+            remainder(a, b, bDegree);
+            long[] swap = a;
+            a = b;
+            b = swap;
+            bDegree = degree(b);
+        }
+
+        return a;
+    }
+
+
+    // Euclid's algorithm on a and m, where a has lower degree, also finding s with s a = gcd mod m.
+    // Destroys both arguments, and s must be as long as m.
+    private static long[] gcd(long[] a, long[] m, long[] s) {
+        long[] r0 = m, r1 = a;
+        long[] s0 = new long[s.length], s1 = s;
+        Arrays.fill(s1, 0);
+        s1[0] = 1;
+        int r1Degree = degree(r1);
+        while (r1Degree >= 0) {
+            int s1Degree = degree(s1);
+            for (int r0Degree = degree(r0); r0Degree >= r1Degree; r0Degree = degree(r0, r0Degree >>> 6)) {
+                xorShifted(r0, r1, r1Degree, r0Degree - r1Degree);
+                xorShifted(s0, s1, s1Degree, r0Degree - r1Degree);
+            }
+            long[] swap = r0;
+            r0 = r1;
+            r1 = swap;
+            swap = s0;
+            s0 = s1;
+            s1 = swap;
+            r1Degree = degree(r1);
+        }
+
+        if (s0 != s) {
+            System.arraycopy(s0, 0, s, 0, s.length);
+        }
+        return r0;
+    }
+
+
+    // a b mod m
+    private static long[] multiplyMod(long[] a, long[] b, long[] m) {
+        int aDegree = degree(a), bDegree = degree(b);
+        long[] product = new long[((Math.max(aDegree, 0) + Math.max(bDegree, 0)) >>> 6) + 2];
+        for (int i = bDegree < 0 ? -1 : aDegree; i >= 0; i--) {
+            if ((a[i >>> 6] & (1L << i)) != 0) {
+                xorShifted(product, b, bDegree, i);
+            }
+        }
+        remainder(product, m, degree(m));
+
+        return product;
+    }
+
+
+    // The exact quotient a / b, where b divides a
+    private static long[] divide(long[] a, long[] b) {
+        long[] rem = a.clone();
+        int bDegree = degree(b);
+        int remDegree = degree(rem);
+        long[] quotient = new long[(Math.max(remDegree - bDegree, 0) >>> 6) + 1];
+        while (remDegree >= bDegree) {
+            int shift = remDegree - bDegree;
+            quotient[shift >>> 6] |= 1L << shift;
+            xorShifted(rem, b, bDegree, shift);
+            remDegree = degree(rem, remDegree >>> 6);
+        }
+
+        return quotient;
+    }
+}
\ No newline at end of file
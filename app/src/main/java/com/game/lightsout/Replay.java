@@ -0,0 +1,288 @@
+package com.game.lightsout;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * A record of a single solve: the seed and size of the scramble, the game mode, and every button
+ * press along with when it happened. Since the scramble can be recreated from its seed, this is
+ * everything needed to check a claimed time.
+ * <p>
+ * The file format is the magic bytes "LOR", a version byte, a flags byte, the board size, the
+ * 8-byte seed, the number of presses, and then a (time delta, button index) pair for each press.
+ * Everything except the seed is written as an unsigned variable-length integer, so most presses
+ * take 2 or 3 bytes.
+ *
+ * @author William Boyles
+ */
+final class Replay {
+    /**
+     * The file format version written by this class
+     */
+    private static final int VERSION = 1;
+    /**
+     * Flag set if the solve was in on lights only mode
+     */
+    private static final int FLAG_ON_LIGHTS_ONLY = 1;
+    /**
+     * The seed of the scramble that was solved
+     */
+    private final long seed;
+    /**
+     * The number of buttons per side of the board
+     */
+    private final int boardSize;
+    /**
+     * Was the solve in on lights only mode?
+     */
+    private final boolean onLightsOnly;
+    /**
+     * The button (row * boardSize + col) of each press, in order
+     */
+    private final int[] buttons;
+    /**
+     * The time of each press, in milliseconds since the scramble was shown. Never decreasing.
+     */
+    private final int[] times;
+
+
+    private Replay(long seed, int boardSize, boolean onLightsOnly, int[] buttons, int[] times) {
+        this.seed = seed;
+        this.boardSize = boardSize;
+        this.onLightsOnly = onLightsOnly;
+        this.buttons = buttons;
+        this.times = times;
+    }
+
+
+    long getSeed() {
+        return this.seed;
+    }
+
+
+    int getBoardSize() {
+        return this.boardSize;
+    }
+
+
+    boolean isOnLightsOnly() {
+        return this.onLightsOnly;
+    }
+
+
+    int pressCount() {
+        return this.buttons.length;
+    }
+
+
+    int getPressRow(int i) {
+        return buttons[i] / boardSize;
+    }
+
+
+    int getPressCol(int i) {
+        return buttons[i] % boardSize;
+    }
+
+
+    int getPressTime(int i) {
+        return times[i];
+    }
+
+
+    /**
+     * The claimed solve time, which is the time of the last press.
+     *
+     * @return the time in milliseconds of the last press, or 0 if there were no presses.
+     */
+    int getSolveTime() {
+        return times.length == 0 ? 0 : times[times.length - 1];
+    }
+
+
+    /**
+     * Writes this replay to a stream in the compact replay format. The stream is not closed.
+     *
+     * @param out the stream to write to.
+     * @throws IOException if the stream cannot be written to.
+     */
+    void writeTo(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeByte('L');
+        data.writeByte('O');
+        data.writeByte('R');
+        data.writeByte(VERSION);
+        data.writeByte(onLightsOnly ? FLAG_ON_LIGHTS_ONLY : 0);
+        writeVarInt(data, boardSize);
+        data.writeLong(seed);
+        writeVarInt(data, buttons.length);
+
+        int lastTime = 0;
+        for (int i = 0; i < buttons.length; i++) {
+            writeVarInt(data, times[i] - lastTime);
+            writeVarInt(data, buttons[i]);
+            lastTime = times[i];
+        }
+        data.flush();
+    }
+
+
+    /**
+     * Reads a replay written by writeTo().
+     *
+     * @param in the stream to read from. The stream is not closed.
+     * @return the replay that was read.
+     * @throws IOException if the stream cannot be read or does not hold a valid replay.
+     */
+    static Replay readFrom(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        if (data.readUnsignedByte() != 'L' || data.readUnsignedByte() != 'O' || data.readUnsignedByte() != 'R') {
+            throw new IOException("Not a replay file");
+        }
+        int version = data.readUnsignedByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported replay version: " + version);
+        }
+
+        int flags = data.readUnsignedByte();
+        int boardSize = readVarInt(data);
+        if (boardSize <= 0 || (long) boardSize * boardSize > Integer.MAX_VALUE) {
+            throw new IOException("Invalid board size: " + boardSize);
+        }
+        long seed = data.readLong();
+        int pressCount = readVarInt(data);
+
+        //Don't trust the count to size our arrays, a corrupt file could claim billions of presses
+        int[] buttons = new int[Math.min(pressCount, 1024)];
+        int[] times = new int[buttons.length];
+        int time = 0;
+        for (int i = 0; i < pressCount; i++) {
+            if (i == buttons.length) {
+                buttons = Arrays.copyOf(buttons, Math.min(pressCount, 2 * i));
+                times = Arrays.copyOf(times, buttons.length);
+            }
+
+            time += readVarInt(data);
+            if (time < 0) {
+                throw new IOException("Replay is too long");
+            }
+            times[i] = time;
+            buttons[i] = readVarInt(data);
+            if (buttons[i] >= boardSize * boardSize) {
+                throw new IOException("Press outside of the board: " + buttons[i]);
+            }
+        }
+
+        return new Replay(seed, boardSize, (flags & FLAG_ON_LIGHTS_ONLY) != 0, buttons, times);
+    }
+
+
+    byte[] toBytes() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(16 + 3 * buttons.length);
+        try {
+            writeTo(out);
+        } catch (IOException e) {
+            throw new AssertionError(e); //Byte array streams don't throw
+        }
+
+        return out.toByteArray();
+    }
+
+
+    static Replay fromBytes(byte[] bytes) throws IOException {
+        return readFrom(new ByteArrayInputStream(bytes));
+    }
+
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException("Replay ended early");
+            }
+            if (shift == 28 && (b & 0x78) != 0) { //Only 3 bits are left before the sign bit
+                throw new IOException("Value out of range");
+            }
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+
+        throw new IOException("Malformed variable-length integer");
+    }
+
+
+    /**
+     * Records the presses of a solve as they happen. The recorder can be reused for the next
+     * scramble by calling reset().
+     *
+     * @author William Boyles
+     */
+    static final class Recorder {
+        private long seed;
+        private int boardSize;
+        private boolean onLightsOnly;
+        private int[] buttons = new int[64];
+        private int[] times = new int[64];
+        private int pressCount;
+
+
+        /**
+         * Starts recording a new solve, forgetting any previously recorded presses.
+         *
+         * @param seed         the seed of the scramble being solved.
+         * @param boardSize    the number of buttons per side of the board.
+         * @param onLightsOnly is the solve in on lights only mode?
+         */
+        void reset(long seed, int boardSize, boolean onLightsOnly) {
+            this.seed = seed;
+            this.boardSize = boardSize;
+            this.onLightsOnly = onLightsOnly;
+            this.pressCount = 0;
+        }
+
+
+        /**
+         * Records a single press.
+         *
+         * @param row    the row of the press.
+         * @param col    the column of the press.
+         * @param millis the time of the press in milliseconds since the scramble was shown.
+         */
+        void press(int row, int col, long millis) {
+            if (pressCount == buttons.length) {
+                buttons = Arrays.copyOf(buttons, 2 * pressCount);
+                times = Arrays.copyOf(times, 2 * pressCount);
+            }
+
+            //Clocks can only be trusted to go forward
+            int lastTime = pressCount == 0 ? 0 : times[pressCount - 1];
+            buttons[pressCount] = row * boardSize + col;
+            times[pressCount] = (int) Math.max(lastTime, Math.min(millis, Integer.MAX_VALUE));
+            pressCount++;
+        }
+
+
+        Replay toReplay() {
+            return new Replay(seed, boardSize, onLightsOnly, Arrays.copyOf(buttons, pressCount), Arrays.copyOf(times, pressCount));
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,67 @@
+package com.game.lightsout;
+
+/**
+ * Checks replays by recreating their scramble from its seed and playing back every press on a bit
+ * board. A verifier keeps its boards between calls, so checking many replays of the same size does
+ * not allocate. Not thread-safe; use one verifier per thread.
+ *
+ * @author William Boyles
+ */
+final class ReplayVerifier {
+    /**
+     * Returned by verify() when a replay is not a valid solve
+     */
+    static final int INVALID = -1;
+    /**
+     * The board the presses are played back on
+     */
+    private BitBoard board;
+
+
+    /**
+     * Plays back a replay and checks that it is an honest solve. A replay is valid if the board is
+     * solved by its last press and not before, and, in on lights only mode, every press was on a
+     * light that was on.
+     *
+     * @param replay the replay to check.
+     * @return the verified solve time in milliseconds, or INVALID if the replay is not a valid solve.
+     */
+    int verify(Replay replay) {
+        int size = replay.getBoardSize();
+        if (board == null || board.size() != size) {
+            board = new BitBoard(size);
+        }
+        Scrambler.scramble(replay.getSeed(), board, null);
+
+        int presses = replay.pressCount();
+        if (presses == 0) {
+            return INVALID; //Scrambles are never solved to begin with
+        }
+        for (int i = 0; i < presses; i++) {
+            int r = replay.getPressRow(i), c = replay.getPressCol(i);
+            if (replay.isOnLightsOnly() && !board.get(r, c)) {
+                return INVALID;
+            }
+
+            board.click(r, c);
+            if (board.isSolved()) {
+                return i == presses - 1 ? replay.getPressTime(i) : INVALID;
+            }
+        }
+
+        return INVALID;
+    }
+
+
+    /**
+     * Checks that a replay is a valid solve in the time it claims.
+     *
+     * @param replay        the replay to check.
+     * @param claimedMillis the claimed solve time in milliseconds.
+     * @return true if the replay is valid and was solved in the claimed time, else false.
+     */
+    boolean verify(Replay replay, long claimedMillis) {
+        int time = verify(replay);
+        return time != INVALID && time == claimedMillis;
+    }
+}
\ No newline at end of file
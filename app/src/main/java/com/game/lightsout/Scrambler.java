@@ -0,0 +1,100 @@
+package com.game.lightsout;
+
+import java.util.Arrays;
+
+/**
+ * Creates scrambles from a 64-bit seed. The same seed and board size always produce the same
+ * scramble, on every device, which is what lets us share puzzles and verify replays.
+ *
+ * @author William Boyles
+ */
+final class Scrambler {
+    private Scrambler() {
+        //Static methods only
+    }
+
+
+    /**
+     * Clears a board and clicks it randomly a number of times close to the amount of lights on the
+     * board. All lights out puzzles can be solved in at most the number of buttons on the board.
+     * If the random clicks leave the board solved, which can happen on small boards, we keep
+     * drawing from the same generator until they don't.
+     *
+     * @param seed    the seed of the scramble.
+     * @param board   the board to scramble. Its previous state is lost.
+     * @param presses if not null, is set to the net clicks used to create the scramble.
+     */
+    static void scramble(long seed, BitBoard board, BitBoard presses) {
+        scramble(seed, null, board, presses);
+    }
+
+
+    /**
+     * Scrambles a board of any shape the same way as scramble(long, BitBoard, BitBoard). Square,
+     * flat boards get exactly the same scramble either way.
+     *
+     * @param seed    the seed of the scramble.
+     * @param masks   the lights toggled by each button, or null for a flat board.
+     * @param board   the board to scramble. Its previous state is lost.
+     * @param presses if not null, is set to the net clicks used to create the scramble.
+     */
+    static void scramble(long seed, ToggleMasks masks, BitBoard board, BitBoard presses) {
+        int rows = board.rows(), cols = board.cols();
+        int scrambleClicksMax = rows * cols;
+        SplitMix64 rng = new SplitMix64(seed);
+
+        do {
+            board.clear();
+            if (presses != null) {
+                presses.clear();
+            }
+
+            int scrambleClicks = scrambleClicksMax - rng.nextInt(scrambleClicksMax / Math.min(rows, cols)); //click a random number of times
+            for (int i = 0; i < scrambleClicks; i++) {
+                int r = rng.nextInt(rows), c = rng.nextInt(cols);
+                if (masks == null) {
+                    board.click(r, c);
+                } else {
+                    board.click(masks, r, c);
+                }
+                if (presses != null) {
+                    presses.toggle(r, c);
+                }
+            }
+        } while (board.isSolved());
+    }
+
+
+    /**
+     * Clears a board whose lights cycle through more than 2 states and clicks it randomly, the
+     * same way as scramble(long, ToggleMasks, BitBoard, BitBoard). Each click adds 1 to the state
+     * of the lights it toggles, wrapping back to 0 after the last state.
+     *
+     * @param seed   the seed of the scramble.
+     * @param masks  the lights toggled by each button.
+     * @param states the number of states each light cycles through.
+     * @param lights the board to scramble, with the state of each light row by row. Its previous
+     *               state is lost.
+     */
+    static void scramble(long seed, ToggleMasks masks, int states, byte[] lights) {
+        int rows = masks.rows(), cols = masks.cols();
+        int scrambleClicksMax = rows * cols;
+        SplitMix64 rng = new SplitMix64(seed);
+
+        boolean solved;
+        do {
+            Arrays.fill(lights, (byte) 0);
+
+            int scrambleClicks = scrambleClicksMax - rng.nextInt(scrambleClicksMax / Math.min(rows, cols)); //click a random number of times
+            for (int i = 0; i < scrambleClicks; i++) {
+                int r = rng.nextInt(rows), c = rng.nextInt(cols);
+                masks.click(lights, states, r, c);
+            }
+
+            solved = true;
+            for (byte light : lights) {
+                solved &= light == 0;
+            }
+        } while (solved);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,392 @@
+package com.game.lightsout;
+
+import android.content.ComponentCallbacks2;
+import android.os.Process;
+import android.util.Log;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The solvers shared by every screen of the app. Finding the null patterns of a board is the slow
+ * part of starting a game, and the result only depends on the shape of the board, so it is done at
+ * most once per shape and kept here until memory runs low.
+ * <p>
+ * Solvers are kept in least recently used order. Once the solvers take up more than the memory
+ * budget, the least recently used ones are dropped until they fit again, so one huge board can push
+ * out many small ones. If two threads ask for the same solver at the same time, only one of them
+ * builds it and the other waits for the result. Screens that know which board is likely to be
+ * played next can warm up its solver in the background with prefetch().
+ *
+ * @author William Boyles
+ */
+final class SolverCache {
+    /**
+     * The memory budget unless changed with setBudget(), an eighth of the heap up to 64 MB
+     */
+    static final long DEFAULT_BUDGET = Math.min(Runtime.getRuntime().maxMemory() / 8, 64L << 20);
+    /**
+     * The most memory we let the solvers take up, in bytes
+     */
+    private static volatile long budget = DEFAULT_BUDGET;
+    /**
+     * The solvers and solvers being built, from least to most recently used
+     */
+    private static final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    /**
+     * The memory taken up by the finished solvers, in bytes
+     */
+    private static long usedBytes;
+    /**
+     * Runs background warm-ups, created on first use. Guarded by entries.
+     */
+    private static ExecutorService prefetcher;
+    /**
+     * The running or queued warm-up, or null. Guarded by entries.
+     */
+    private static Future<?> prefetchTask;
+    /**
+     * The shape being warmed up by prefetchTask. Guarded by entries.
+     */
+    private static Key prefetchKey;
+
+
+    private SolverCache() {
+        //Static methods only
+    }
+
+
+    /**
+     * Gets the solver for a square board, building it if no one has yet. If another thread is
+     * already building it, this waits for that thread instead of doing the work again.
+     *
+     * @param boardSize the number of buttons per side of the board.
+     * @return the shared solver for the board.
+     * @throws CancellationException if this thread is interrupted while building the solver.
+     */
+    static GameBoardSolver get(int boardSize) {
+        return get(new Key(boardSize, boardSize, Topology.PLANE, Neighborhood.PLUS));
+    }
+
+
+    /**
+     * Gets the solver for a board of any shape, building it if no one has yet. Each shape,
+     * topology and neighborhood has its own solver, so a 5x5 torus doesn't share with a flat 5x5
+     * board.
+     *
+     * @param rows         the number of rows of the board.
+     * @param cols         the number of columns of the board.
+     * @param topology     how the edges of the board are connected.
+     * @param neighborhood the lights a click toggles, relative to the clicked button.
+     * @return the shared solver for the board.
+     * @throws CancellationException if this thread is interrupted while building the solver.
+     */
+    static GameBoardSolver get(int rows, int cols, Topology topology, Neighborhood neighborhood) {
+        return get(new Key(rows, cols, topology, neighborhood));
+    }
+
+
+    /**
+     * Drops some or all of the solvers depending on how badly the system needs memory back. This
+     * is called from the application's onTrimMemory().
+     *
+     * @param level the trim level given to onTrimMemory().
+     */
+    static void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            trimTo(0);
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            trimTo(budget / 4);
+        } else if (level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE) {
+            trimTo(budget / 2);
+        }
+    }
+
+
+    /**
+     * Changes how much memory the solvers may take up, dropping the least recently used ones until
+     * they fit.
+     *
+     * @param bytes the new budget, in bytes.
+     */
+    static void setBudget(long bytes) {
+        budget = bytes;
+        trimTo(bytes);
+    }
+
+
+    /**
+     * Drops every finished solver. Solvers still being built are kept.
+     */
+    static void clear() {
+        trimTo(0);
+    }
+
+
+    /**
+     * Starts building the solver for a board in the background at low priority, so it is ready by
+     * the time a board of that shape is opened. A warm-up of a different shape that is still
+     * running is cancelled, since only the latest shape is likely to be played.
+     *
+     * @param rows         the number of rows of the board.
+     * @param cols         the number of columns of the board.
+     * @param topology     how the edges of the board are connected.
+     * @param neighborhood the lights a click toggles, relative to the clicked button.
+     */
+    static void prefetch(int rows, int cols, Topology topology, Neighborhood neighborhood) {
+        final Key key = new Key(rows, cols, topology, neighborhood);
+        synchronized (entries) {
+            if (key.equals(prefetchKey) && !prefetchTask.isDone()) {
+                return;
+            }
+            cancelPrefetch();
+
+            if (entries.get(key) != null) { //Already built or being built. This also marks it used.
+                return;
+            }
+            Log.v("SolverCache", "Warming up solver for "+key);
+            prefetchKey = key;
+            prefetchTask = prefetcher().submit(new Runnable() {
+                @Override
+                public void run() {
+                    Entry entry;
+                    synchronized (entries) {
+                        if (entries.get(key) != null) {
+                            return;
+                        }
+                        entry = new Entry(key);
+                        entries.put(key, entry);
+                    }
+                    build(entry);
+                }
+            });
+        }
+    }
+
+
+    /**
+     * Stops the background warm-up started by prefetch(), if it is still running. Anyone waiting
+     * on the solver it was building will build it themselves.
+     */
+    static void cancelPrefetch() {
+        synchronized (entries) {
+            if (prefetchTask != null) {
+                prefetchTask.cancel(true);
+                prefetchTask = null;
+                prefetchKey = null;
+            }
+        }
+    }
+
+
+    private static GameBoardSolver get(Key key) {
+        while (true) {
+            Entry entry;
+            boolean builder = false;
+            synchronized (entries) {
+                entry = entries.get(key);
+                if (entry == null) {
+                    entry = new Entry(key);
+                    entries.put(key, entry);
+                    builder = true;
+                }
+            }
+
+            if (builder) {
+                build(entry);
+            }
+            try {
+                return waitFor(entry);
+            } catch (CancellationException e) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw e; //This thread's own build was cancelled, so building again would fail too
+                }
+                Log.v("SolverCache", "Build of "+key+" was cancelled elsewhere, building it again");
+            }
+        }
+    }
+
+
+    // Builds a solver on this thread. If it fails, the entry is dropped so the next caller retries.
+    private static void build(Entry entry) {
+        Log.i("SolverCache", "Building solver for "+entry.key);
+        entry.task.run();
+
+        GameBoardSolver solver = null;
+        try {
+            solver = entry.task.get(); //Already done, so this doesn't block
+        } catch (ExecutionException | InterruptedException | CancellationException e) {
+            //Whoever is waiting on the entry sees the failure
+        }
+
+        synchronized (entries) {
+            if (entries.get(entry.key) != entry) {
+                return;
+            }
+
+            if (solver == null) {
+                entries.remove(entry.key);
+            } else {
+                entry.bytes = Math.max(solver.sizeInBytes(), 1);
+                usedBytes += entry.bytes;
+                trimTo(budget);
+            }
+        }
+    }
+
+
+    // The single low priority thread used to warm up solvers
+    private static ExecutorService prefetcher() {
+        if (prefetcher == null) {
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable runnable) {
+                    Thread thread = new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                            runnable.run();
+                        }
+                    }, "LightsOut-prefetch");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            pool.allowCoreThreadTimeOut(true);
+            prefetcher = pool;
+        }
+
+        return prefetcher;
+    }
+
+
+    // Waits for a solver to be built without giving up if interrupted
+    private static GameBoardSolver waitFor(Entry entry) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return entry.task.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    }
+                    if (cause instanceof Error) {
+                        throw (Error) cause;
+                    }
+                    throw new IllegalStateException(cause);
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+
+    // Drops the least recently used finished solvers until they take up at most the given bytes
+    private static void trimTo(long bytes) {
+        synchronized (entries) {
+            Iterator<Map.Entry<Key, Entry>> it = entries.entrySet().iterator();
+            while (usedBytes > bytes && it.hasNext()) {
+                Entry entry = it.next().getValue();
+                if (entry.bytes > 0) {
+                    Log.v("SolverCache", "Dropping solver for "+entry.key);
+                    usedBytes -= entry.bytes;
+                    it.remove();
+                }
+            }
+        }
+    }
+
+
+    /**
+     * The shape of a board. Boards with the same shape share a solver.
+     */
+    private static final class Key {
+        private final int rows;
+        private final int cols;
+        private final Topology topology;
+        private final Neighborhood neighborhood;
+
+
+        Key(int rows, int cols, Topology topology, Neighborhood neighborhood) {
+            this.rows = rows;
+            this.cols = cols;
+            this.topology = topology;
+            this.neighborhood = neighborhood;
+        }
+
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+
+            Key other = (Key) o;
+            return rows == other.rows && cols == other.cols && topology == other.topology
+                    && neighborhood.equals(other.neighborhood);
+        }
+
+
+        @Override
+        public int hashCode() {
+            return ((rows * 31 + cols) * 31 + topology.hashCode()) * 31 + neighborhood.hashCode();
+        }
+
+
+        @Override
+        public String toString() {
+            return rows+"x"+cols+" "+topology+" "+neighborhood;
+        }
+    }
+
+
+    /**
+     * A solver, or one being built
+     */
+    private static final class Entry {
+        /**
+         * The shape of the board the solver is for
+         */
+        private final Key key;
+        /**
+         * Builds the solver. Anyone who wants the solver waits on this.
+         */
+        private final FutureTask<GameBoardSolver> task;
+        /**
+         * The memory taken up by the solver, or 0 if it isn't finished. Guarded by entries.
+         */
+        private long bytes;
+
+
+        Entry(final Key key) {
+            this.key = key;
+            this.task = new FutureTask<>(new Callable<GameBoardSolver>() {
+                @Override
+                public GameBoardSolver call() {
+                    return new GameBoardSolver(key.rows, key.cols, key.topology, key.neighborhood);
+                }
+            });
+        }
+    }
+}
\ No newline at end of file
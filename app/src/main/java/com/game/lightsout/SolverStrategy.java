@@ -0,0 +1,195 @@
+package com.game.lightsout;
+
+import android.util.Log;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The ways GameBoard can solve a board. The first three find some clicks that turn off the lights
+ * of a board that didn't come from a scramble. The rest start from those clicks and find the
+ * solution with the fewest clicks.
+ * <p>
+ * Which one is fastest depends on the shape of the board and how many null patterns it has. Chasing
+ * only works on flat boards with the plus neighborhood and the banded matrix only on square ones,
+ * while reducing the whole toggle matrix works on anything but grows with the cube of the buttons.
+ * The exact search doubles with every null pattern, and a distance table is only built for the
+ * smallest boards. So rather than fixing a cut-off for each, the strategies are picked from the
+ * estimates of CostModel. How often each one is used, and how long it takes, is recorded so that
+ * the estimates can be checked against the app.
+ *
+ * @author William Boyles
+ */
+enum SolverStrategy {
+    /**
+     * Chases the lights down the board twice (NullSpace.solve())
+     */
+    CHASE,
+    /**
+     * Reduces the banded toggle matrix of a square board (BandedBitMatrix.solve())
+     */
+    BANDED,
+    /**
+     * Reduces the whole toggle matrix (ToggleMasks.solve())
+     */
+    ELIMINATION,
+    /**
+     * Walks a distance table down to the solved board (DistanceTable.solution())
+     */
+    TABLE,
+    /**
+     * Searches every sum of the null patterns (GameBoardSolver.findBestSolution())
+     */
+    EXACT_SEARCH,
+    /**
+     * Searches the sums of the null patterns until a deadline, so the solution may not be the best
+     */
+    TIMED_SEARCH;
+
+    /**
+     * The number of times each strategy has been used, by ordinal
+     */
+    private static final AtomicLongArray uses = new AtomicLongArray(values().length);
+    /**
+     * The total time each strategy has taken, by ordinal, in ns
+     */
+    private static final AtomicLongArray usedNanos = new AtomicLongArray(values().length);
+
+
+    /**
+     * Does the strategy always find the solution with the fewest clicks?
+     *
+     * @return true for the table and the exact search, else false.
+     */
+    boolean isExact() {
+        return this == TABLE || this == EXACT_SEARCH;
+    }
+
+
+    /**
+     * Records one use of the strategy.
+     *
+     * @param nanos how long it took, in ns.
+     */
+    void record(long nanos) {
+        uses.incrementAndGet(ordinal());
+        usedNanos.addAndGet(ordinal(), nanos);
+    }
+
+
+    /**
+     * Gets the number of times the strategy has been used since the app started.
+     *
+     * @return the number of calls to record().
+     */
+    long getUses() {
+        return uses.get(ordinal());
+    }
+
+
+    /**
+     * Gets the total time the strategy has taken since the app started.
+     *
+     * @return the sum of the times given to record(), in ns.
+     */
+    long getUsedNanos() {
+        return usedNanos.get(ordinal());
+    }
+
+
+    /**
+     * Describes how often each strategy has been used and how long it took on average, for the
+     * log.
+     *
+     * @return a line for each strategy that has been used.
+     */
+    static String metrics() {
+        StringBuilder metrics = new StringBuilder();
+        for (SolverStrategy strategy : values()) {
+            long count = strategy.getUses();
+            if (count > 0) {
+                metrics.append('\n').append(strategy).append(": ").append(count).append(" uses, ")
+                        .append(strategy.getUsedNanos() / count / 1000).append(" us on average");
+            }
+        }
+
+        return metrics.length() == 0 ? "No solver strategies used" : metrics.substring(1);
+    }
+
+
+    /**
+     * Picks the fastest way to find some clicks that solve a board, out of those that fit in the
+     * free memory. If none of them fit, the one that takes the least memory is picked instead.
+     *
+     * @param rows         the number of rows of the board.
+     * @param cols         the number of columns of the board.
+     * @param topology     how the edges of the board are connected.
+     * @param neighborhood the lights a click toggles, relative to the clicked button.
+     * @param model        the cost model of the device.
+     * @return CHASE, BANDED or ELIMINATION.
+     */
+    static SolverStrategy forSolving(int rows, int cols, Topology topology, Neighborhood neighborhood, CostModel model) {
+        boolean flat = topology == Topology.PLANE && neighborhood.equals(Neighborhood.PLUS);
+        long budget = freeMemory();
+
+        SolverStrategy best = null;
+        long bestNanos = Long.MAX_VALUE, bestBytes = Long.MAX_VALUE;
+        for (SolverStrategy strategy : new SolverStrategy[]{CHASE, BANDED, ELIMINATION}) {
+            long nanos, bytes;
+            if (strategy == CHASE && flat) {
+                nanos = model.chaseNanos(rows, cols);
+                bytes = model.chaseBytes(rows, cols);
+            } else if (strategy == BANDED && flat && rows == cols) {
+                int nullity = NullSpace.nullity(rows);
+                nanos = model.bandedNanos(rows, nullity);
+                bytes = model.bandedBytes(rows, nullity);
+            } else if (strategy == ELIMINATION) {
+                nanos = model.eliminationNanos(rows, cols);
+                bytes = model.eliminationBytes(rows, cols);
+            } else {
+                continue;
+            }
+
+            //Anything that fits beats anything that doesn't
+            boolean fits = bytes <= budget, bestFits = bestBytes <= budget;
+            if (best == null || fits && (!bestFits || nanos < bestNanos) || !fits && !bestFits && bytes < bestBytes) {
+                best = strategy;
+                bestNanos = nanos;
+                bestBytes = bytes;
+            }
+        }
+
+        Log.i("SolverStrategy", "Solving "+rows+"x"+cols+" "+topology+" "+neighborhood+" boards with "+best
+                +", about "+bestNanos / 1000+" us and "+bestBytes / 1024+" KB of "+budget / 1024+" KB free");
+        return best;
+    }
+
+
+    /**
+     * Picks the fastest way to find the solution with the fewest clicks, if it can be found
+     * within a time budget. Otherwise, the search is cut short at the budget.
+     *
+     * @param rows        the number of rows of the board.
+     * @param cols        the number of columns of the board.
+     * @param nullity     the number of basis null patterns of the board.
+     * @param table       the distance table of the board, or null if it has none ready.
+     * @param model       the cost model of the device.
+     * @param budgetNanos the longest the search may take, in ns.
+     * @return TABLE, EXACT_SEARCH or TIMED_SEARCH.
+     */
+    static SolverStrategy forMinClicks(int rows, int cols, int nullity, DistanceTable table, CostModel model,
+                                       long budgetNanos) {
+        long searchNanos = model.searchNanos(rows, cols, nullity);
+        if (table != null && model.tableNanos(table.getBoardSize()) < searchNanos) {
+            return TABLE;
+        }
+
+        return searchNanos <= budgetNanos ? EXACT_SEARCH : TIMED_SEARCH;
+    }
+
+
+    // The heap the app can still use, in bytes
+    private static long freeMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+    }
+}
\ No newline at end of file
@@ -0,0 +1,93 @@
+package com.game.lightsout;
+
+/**
+ * A small pseudo-random number generator based on SplitMix64. The whole state is a single long, so
+ * drawing numbers never allocates and a scramble can always be recreated from the seed it started
+ * with. This is the same algorithm used by java.util.SplittableRandom, which is not available on
+ * all of the Android versions we support.
+ *
+ * @author William Boyles
+ */
+final class SplitMix64 {
+    /**
+     * The step between states, the odd integer closest to 2^64 divided by the golden ratio
+     */
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+    /**
+     * The current state of the generator
+     */
+    private long state;
+
+
+    /**
+     * Creates a new generator. Two generators created with the same seed produce the same sequence.
+     *
+     * @param seed the 64-bit seed of the generator.
+     */
+    SplitMix64(long seed) {
+        this.state = seed;
+    }
+
+
+    /**
+     * Returns the next pseudo-random long.
+     *
+     * @return a uniformly distributed 64-bit value.
+     */
+    long nextLong() {
+        return mix64(state += GOLDEN_GAMMA);
+    }
+
+
+    /**
+     * Returns a pseudo-random int in the range [0, bound).
+     *
+     * @param bound the exclusive upper bound. Must be positive.
+     * @return a uniformly distributed int between 0 (inclusive) and bound (exclusive).
+     */
+    int nextInt(int bound) {
+        if (bound <= 0) {
+            throw new IllegalArgumentException("Bound must be positive");
+        }
+
+        int r = (int) (nextLong() >>> 33);
+        int m = bound - 1;
+        if ((bound & m) == 0) { //Power of two, just take the high bits
+            return (int) ((bound * (long) r) >> 31);
+        }
+
+        //Reject the few values at the top of the range that would bias the result
+        for (int u = r; u - (r = u % bound) + m < 0; u = (int) (nextLong() >>> 33)) {
+            //Draw again
+        }
+        return r;
+    }
+
+
+    /**
+     * Derives the seed of the daily puzzle for a given date. Every device will get the same puzzle
+     * on the same date.
+     *
+     * @param year  the year of the puzzle, e.g. 2019.
+     * @param month the month of the puzzle, 1 through 12.
+     * @param day   the day of the month of the puzzle.
+     * @return the seed of that day's scramble.
+     */
+    static long dailySeed(int year, int month, int day) {
+        return mix64((year * 10000L + month * 100L + day) * GOLDEN_GAMMA);
+    }
+
+
+    /**
+     * Stafford's "variant 13" 64-bit finalizer. Every bit of the input affects every bit of the
+     * output.
+     *
+     * @param z the value to mix.
+     * @return the mixed value.
+     */
+    static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
\ No newline at end of file
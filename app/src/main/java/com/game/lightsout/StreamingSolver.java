@@ -0,0 +1,316 @@
+package com.game.lightsout;
+
+import android.util.Log;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Generates, solves and checks flat boards far too big for GameBoard, like 5000 x 5000, by
+ * streaming them through files one row at a time. Only a few packed rows are ever in the heap, so
+ * memory stays the same however many rows the board has.
+ * <p>
+ * Solving chases the lights down the board twice. The first pass presses under every light with
+ * nothing pressed in the first row, and only keeps the lights left on in the last row. Those give
+ * the first row that clears the board through NullSpace.firstRow(), and the second pass chases
+ * again from that first row, writing out the presses as it goes. Both passes read the lights in
+ * order from a memory mapped file, and the presses are written in order too.
+ * <p>
+ * A board file holds the rows of the board one after another, each packed into (cols + 63) / 64
+ * little endian longs, with button c in bit (c % 64) of long c / 64. Bits past the end of a row are
+ * ignored. Boards of presses use the same format. Only flat boards with the plus neighborhood can
+ * be chased.
+ *
+ * @author William Boyles
+ */
+final class StreamingSolver {
+    /**
+     * The most bytes of a board file mapped at once
+     */
+    private static final int WINDOW_BYTES = 1 << 24;
+    /**
+     * The size of the buffer presses are written through, in bytes
+     */
+    private static final int BUFFER_BYTES = 1 << 16;
+
+
+    private StreamingSolver() {
+        //Static methods only
+    }
+
+
+    /**
+     * Finds the presses that solve a board.
+     *
+     * @param lights  the file of the board to solve.
+     * @param presses the file to write the presses to. It is replaced if it exists.
+     * @param rows    the number of rows of the board.
+     * @param cols    the number of columns of the board.
+     * @throws IOException              if a file can't be read or written, or the board file is
+     *                                  the wrong size.
+     * @throws IllegalArgumentException if the board can't be solved.
+     */
+    static void solve(File lights, File presses, int rows, int cols) throws IOException {
+        Log.i("StreamingSolver", "Solving a "+rows+"x"+cols+" board from "+lights);
+        long[] left;
+        try (RowReader in = new RowReader(lights, rows, cols)) {
+            left = chase(in, new long[in.rowWords], null, cols);
+        }
+
+        long[] firstRow = NullSpace.firstRow(rows, cols, left);
+        if (firstRow == null) {
+            throw new IllegalArgumentException("Board cannot be solved");
+        }
+        try (RowReader in = new RowReader(lights, rows, cols);
+             RowWriter out = new RowWriter(presses, in.rowWords)) {
+            chase(in, firstRow, out, cols);
+        }
+    }
+
+
+    /**
+     * Creates a random board by pressing each button with probability 1/2. The presses are drawn
+     * from a generator seeded with the given seed, so the same seed always creates the same board.
+     *
+     * @param seed    the seed of the board.
+     * @param lights  the file to write the board to. It is replaced if it exists.
+     * @param presses the file to write the presses to, or null to not keep them.
+     * @param rows    the number of rows of the board.
+     * @param cols    the number of columns of the board.
+     * @throws IOException if a file can't be written.
+     */
+    static void scramble(long seed, File lights, File presses, int rows, int cols) throws IOException {
+        Log.i("StreamingSolver", "Creating a "+rows+"x"+cols+" board from seed "+Long.toHexString(seed));
+        SplitMix64 random = new SplitMix64(seed);
+        int rowWords = (cols + 63) >>> 6;
+        long[] prev = new long[rowWords], cur = new long[rowWords], next = new long[rowWords];
+        long[] row = new long[rowWords];
+        randomRow(random, cur, cols);
+
+        try (RowWriter lightsOut = new RowWriter(lights, rowWords);
+             RowWriter pressesOut = presses == null ? null : new RowWriter(presses, rowWords)) {
+            for (int r = 0; r < rows; r++) {
+                if (r + 1 < rows) {
+                    randomRow(random, next, cols);
+                } else {
+                    zero(next);
+                }
+
+                //L_r = P_(r-1) + T P_r + P_(r+1)
+                NullSpace.applyRowPress(cur, row, cols);
+                for (int w = 0; w < rowWords; w++) {
+                    row[w] ^= prev[w] ^ next[w];
+                }
+                lightsOut.write(row);
+                if (pressesOut != null) {
+                    pressesOut.write(cur);
+                }
+
+                long[] swap = prev;
+                prev = cur;
+                cur = next;
+                next = swap;
+            }
+        }
+    }
+
+
+    /**
+     * Checks that some presses solve a board.
+     *
+     * @param lights  the file of the board.
+     * @param presses the file of the presses.
+     * @param rows    the number of rows of the board.
+     * @param cols    the number of columns of the board.
+     * @return true if the presses turn off every light of the board, else false.
+     * @throws IOException if a file can't be read or is the wrong size.
+     */
+    static boolean verify(File lights, File presses, int rows, int cols) throws IOException {
+        try (RowReader lightsIn = new RowReader(lights, rows, cols);
+             RowReader pressesIn = new RowReader(presses, rows, cols)) {
+            int rowWords = lightsIn.rowWords;
+            long[] prev = new long[rowWords], cur = new long[rowWords], next = new long[rowWords];
+            long[] row = new long[rowWords], toggled = new long[rowWords];
+            pressesIn.next(cur);
+            for (int r = 0; r < rows; r++) {
+                if (r + 1 < rows) {
+                    pressesIn.next(next);
+                } else {
+                    zero(next);
+                }
+
+                //Row r is off when L_r = P_(r-1) + T P_r + P_(r+1)
+                lightsIn.next(row);
+                NullSpace.applyRowPress(cur, toggled, cols);
+                for (int w = 0; w < rowWords; w++) {
+                    if ((row[w] ^ toggled[w] ^ prev[w] ^ next[w]) != 0) {
+                        return false;
+                    }
+                }
+
+                long[] swap = prev;
+                prev = cur;
+                cur = next;
+                next = swap;
+            }
+        }
+
+        return true;
+    }
+
+
+    /**
+     * Chases the lights down a board from a given first row, pressing under every light that is
+     * on, with the same steps as NullSpace.chaseRow().
+     *
+     * @param in       the rows of the board.
+     * @param firstRow the presses of the first row. Used as a working row.
+     * @param out      where to write the presses, or null to not keep them.
+     * @param cols     the number of columns of the board.
+     * @return the lights left on in the last row.
+     */
+    private static long[] chase(RowReader in, long[] firstRow, RowWriter out, int cols) throws IOException {
+        int rowWords = in.rowWords;
+        long[] prev = new long[rowWords], cur = firstRow, next = new long[rowWords];
+        long[] row = new long[rowWords];
+        for (int r = 0; r < in.rows; r++) {
+            in.next(row);
+            if (out != null) {
+                out.write(cur);
+            }
+
+            NullSpace.chaseRow(prev, cur, row, next, cols);
+            long[] swap = prev;
+            prev = cur;
+            cur = next;
+            next = swap;
+        }
+
+        return cur;
+    }
+
+
+    private static void randomRow(SplitMix64 random, long[] row, int cols) {
+        for (int w = 0; w < row.length; w++) {
+            row[w] = random.nextLong();
+        }
+        NullSpace.maskRow(row, 0, cols);
+    }
+
+
+    private static void zero(long[] row) {
+        for (int w = 0; w < row.length; w++) {
+            row[w] = 0;
+        }
+    }
+
+
+    /**
+     * Reads the rows of a board file in order, mapping a window of the file at a time
+     */
+    private static final class RowReader implements Closeable {
+        private final RandomAccessFile file;
+        private final int rows;
+        private final int cols;
+        private final int rowWords;
+        /**
+         * The whole rows that fit in a window
+         */
+        private final int windowRows;
+        /**
+         * The rows mapped so far, including the current window
+         */
+        private int mappedRows;
+        private MappedByteBuffer window;
+
+
+        RowReader(File file, int rows, int cols) throws IOException {
+            this.rows = rows;
+            this.cols = cols;
+            this.rowWords = (cols + 63) >>> 6;
+            this.windowRows = Math.max(WINDOW_BYTES / (8 * rowWords), 1);
+            this.file = new RandomAccessFile(file, "r");
+            if (this.file.length() != (long) rows * rowWords * 8) {
+                this.file.close();
+                throw new IOException("Not a "+rows+"x"+cols+" board: "+file);
+            }
+        }
+
+
+        // Reads the next row into the given packed row
+        void next(long[] row) throws IOException {
+            if (window == null || !window.hasRemaining()) {
+                int count = Math.min(windowRows, rows - mappedRows);
+                window = file.getChannel().map(FileChannel.MapMode.READ_ONLY,
+                        (long) mappedRows * rowWords * 8, (long) count * rowWords * 8);
+                window.order(ByteOrder.LITTLE_ENDIAN);
+                mappedRows += count;
+            }
+
+            for (int w = 0; w < rowWords; w++) {
+                row[w] = window.getLong();
+            }
+            NullSpace.maskRow(row, 0, cols);
+        }
+
+
+        @Override
+        public void close() throws IOException {
+            file.close();
+        }
+    }
+
+
+    /**
+     * Writes the rows of a board file in order through a direct buffer
+     */
+    private static final class RowWriter implements Closeable {
+        private final FileOutputStream file;
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+
+
+        RowWriter(File file, int rowWords) throws IOException {
+            this.file = new FileOutputStream(file);
+            this.channel = this.file.getChannel();
+            this.buffer = ByteBuffer.allocateDirect(Math.max(BUFFER_BYTES, 8 * rowWords));
+            this.buffer.order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+
+        void write(long[] row) throws IOException {
+            if (buffer.remaining() < 8 * row.length) {
+                flush();
+            }
+            for (long word : row) {
+                buffer.putLong(word);
+            }
+        }
+
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+
+        @Override
+        public void close() throws IOException {
+            try {
+                flush();
+            } finally {
+                file.close();
+            }
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,271 @@
+package com.game.lightsout;
+
+/**
+ * The 8 rotations and reflections of a square board. Clicking commutes with all of them, so a board
+ * and its mirror images need the same number of clicks, and the solution of one is the mirror image
+ * of the solution of the other. Caches and tables only need to keep one board of each set of
+ * mirror images, the canonical one, which cuts them down by up to 8 times.
+ * <p>
+ * A transform is 3 bits. If TRANSPOSE is set, the board is first flipped across its main diagonal,
+ * then if FLIP_ROWS is set, it is flipped upside down, and then if FLIP_COLUMNS is set, it is
+ * flipped left to right. Transposes are done 64x64 bits at a time with bit-parallel swaps, and
+ * flips with Long.reverse(), so no transform looks at lights one at a time.
+ * <p>
+ * A Symmetry keeps its own scratch space so that it never allocates after it is created, which also
+ * means it must not be shared between threads.
+ *
+ * @author William Boyles
+ */
+final class Symmetry {
+    /**
+     * The transform that leaves a board as it is
+     */
+    static final int IDENTITY = 0;
+    /**
+     * Flips the board left to right
+     */
+    static final int FLIP_COLUMNS = 1;
+    /**
+     * Flips the board upside down
+     */
+    static final int FLIP_ROWS = 2;
+    /**
+     * Flips the board across its main diagonal. This happens before the other flips.
+     */
+    static final int TRANSPOSE = 4;
+    /**
+     * The number of transforms
+     */
+    static final int COUNT = 8;
+    /**
+     * For each round j = 1, 2, 4, ..., 32 of a transpose, the columns whose bit j is clear
+     */
+    private static final long[] SWAP_MASKS = {0x5555555555555555L, 0x3333333333333333L,
+            0x0f0f0f0f0f0f0f0fL, 0x00ff00ff00ff00ffL, 0x0000ffff0000ffffL, 0x00000000ffffffffL};
+
+    /**
+     * The number of buttons per side of the boards
+     */
+    private final int boardSize;
+    /**
+     * The number of longs used to store each row
+     */
+    private final int rowWords;
+    /**
+     * A 64x64 block of bits being transposed
+     */
+    private final long[] block = new long[64];
+    /**
+     * A row being flipped
+     */
+    private final long[] row;
+    /**
+     * The transpose of the board being canonicalized
+     */
+    private final BitBoard transposed;
+    /**
+     * The transform of the board being compared to the best so far
+     */
+    private final BitBoard candidate;
+
+
+    /**
+     * Creates the scratch space for transforming boards of a given size.
+     *
+     * @param boardSize the number of buttons per side of the boards.
+     */
+    Symmetry(int boardSize) {
+        this.boardSize = boardSize;
+        this.transposed = new BitBoard(boardSize);
+        this.candidate = new BitBoard(boardSize);
+        this.rowWords = transposed.rowWords();
+        this.row = new long[rowWords];
+    }
+
+
+    /**
+     * Finds the canonical board among the 8 transforms of a board. This is the transform whose
+     * longs are smallest, comparing the first long, then the second, and so on.
+     *
+     * @param board     the board to canonicalize.
+     * @param canonical the board to store the canonical board in. This may not be the given board.
+     * @return the transform that turns the given board into the canonical board.
+     */
+    int canonicalize(BitBoard board, BitBoard canonical) {
+        checkSize(board);
+        checkSize(canonical);
+        if (board == canonical) {
+            throw new IllegalArgumentException("Board and canonical board must be different");
+        }
+
+        canonical.copyFrom(board);
+        transpose(board, transposed);
+        int best = IDENTITY;
+        for (int transform = 1; transform < COUNT; transform++) {
+            candidate.copyFrom((transform & TRANSPOSE) != 0 ? transposed : board);
+            flip(transform, candidate);
+            if (compare(candidate, canonical) < 0) {
+                canonical.copyFrom(candidate);
+                best = transform;
+            }
+        }
+
+        return best;
+    }
+
+
+    /**
+     * Transforms a board.
+     *
+     * @param transform the transform to apply.
+     * @param board     the board to transform.
+     * @param result    the board to store the result in. This may not be the given board.
+     */
+    void apply(int transform, BitBoard board, BitBoard result) {
+        checkSize(board);
+        checkSize(result);
+        if (board == result) {
+            throw new IllegalArgumentException("Board and result must be different");
+        }
+
+        if ((transform & TRANSPOSE) != 0) {
+            transpose(board, result);
+        } else {
+            result.copyFrom(board);
+        }
+        flip(transform, result);
+    }
+
+
+    /**
+     * Finds where a button ends up when a board is transformed.
+     *
+     * @param transform the transform to apply.
+     * @param boardSize the number of buttons per side of the board.
+     * @param button    the button, as row * boardSize + column.
+     * @return where the button is on the transformed board, as row * boardSize + column.
+     */
+    static int move(int transform, int boardSize, int button) {
+        int r = button / boardSize, c = button % boardSize;
+        if ((transform & TRANSPOSE) != 0) {
+            int swap = r;
+            r = c;
+            c = swap;
+        }
+        if ((transform & FLIP_ROWS) != 0) {
+            r = boardSize - 1 - r;
+        }
+        if ((transform & FLIP_COLUMNS) != 0) {
+            c = boardSize - 1 - c;
+        }
+
+        return r * boardSize + c;
+    }
+
+
+    /**
+     * Finds the transform that undoes another. Use this to turn the solution of a canonical board
+     * back into the solution of the original board.
+     *
+     * @param transform a transform.
+     * @return the transform that undoes it.
+     */
+    static int inverse(int transform) {
+        if ((transform & TRANSPOSE) == 0) { //Flips undo themselves
+            return transform;
+        }
+
+        //Transposing swaps which way a flip goes, so (flips after T)^-1 = T (swapped flips)
+        return TRANSPOSE | (transform & FLIP_COLUMNS) << 1 | (transform & FLIP_ROWS) >>> 1;
+    }
+
+
+    // Applies the flips of a transform to a board in place
+    private void flip(int transform, BitBoard board) {
+        long[] bits = board.words();
+        if ((transform & FLIP_ROWS) != 0) {
+            for (int top = 0, bottom = boardSize - 1; top < bottom; top++, bottom--) {
+                for (int w = 0; w < rowWords; w++) {
+                    long swap = bits[top * rowWords + w];
+                    bits[top * rowWords + w] = bits[bottom * rowWords + w];
+                    bits[bottom * rowWords + w] = swap;
+                }
+            }
+        }
+
+        if ((transform & FLIP_COLUMNS) != 0) {
+            int pad = rowWords * 64 - boardSize; //Unused bits at the top of the last word
+            for (int r = 0; r < boardSize; r++) {
+                int offset = r * rowWords;
+                for (int w = 0; w < rowWords; w++) {
+                    row[w] = Long.reverse(bits[offset + rowWords - 1 - w]);
+                }
+
+                //Shift the reversed row down past the reversed padding
+                for (int w = 0; w < rowWords; w++) {
+                    long high = pad != 0 && w + 1 < rowWords ? row[w + 1] << (64 - pad) : 0;
+                    bits[offset + w] = row[w] >>> pad | high;
+                }
+            }
+        }
+    }
+
+
+    // Transposes a board 64x64 bits at a time
+    private void transpose(BitBoard board, BitBoard result) {
+        long[] from = board.words(), to = result.words();
+        for (int blockRow = 0; blockRow < rowWords; blockRow++) {
+            for (int blockCol = 0; blockCol < rowWords; blockCol++) {
+                int rows = Math.min(64, boardSize - blockRow * 64);
+                int cols = Math.min(64, boardSize - blockCol * 64);
+                int span = Math.max(rows, cols) == 1 ? 1 : Integer.highestOneBit(Math.max(rows, cols) - 1) << 1;
+                for (int i = 0; i < span; i++) {
+                    block[i] = i < rows ? from[(blockRow * 64 + i) * rowWords + blockCol] : 0;
+                }
+
+                transpose(block, span);
+
+                for (int i = 0; i < cols; i++) {
+                    to[(blockCol * 64 + i) * rowWords + blockRow] = block[i];
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Transposes the top left span x span bits of a block in place, where bit c of block[r] is
+     * row r, column c, and span is a power of two up to 64. Each round swaps the top right and
+     * bottom left quarters of every 2j x 2j square along the diagonal, for j = span / 2, ..., 2, 1.
+     */
+    private static void transpose(long[] block, int span) {
+        for (int j = span >>> 1; j != 0; j >>>= 1) {
+            long mask = SWAP_MASKS[Integer.numberOfTrailingZeros(j)];
+            for (int k = 0; k < span; k = ((k | j) + 1) & ~j) {
+                long t = ((block[k] >>> j) ^ block[k | j]) & mask;
+                block[k] ^= t << j;
+                block[k | j] ^= t;
+            }
+        }
+    }
+
+
+    // Compares two boards by their longs as unsigned numbers, first long first
+    private static int compare(BitBoard a, BitBoard b) {
+        long[] x = a.words(), y = b.words();
+        for (int w = 0; w < x.length; w++) {
+            if (x[w] != y[w]) {
+                return (x[w] ^ Long.MIN_VALUE) < (y[w] ^ Long.MIN_VALUE) ? -1 : 1;
+            }
+        }
+
+        return 0;
+    }
+
+
+    private void checkSize(BitBoard board) {
+        if (board.size() != boardSize) {
+            throw new IllegalArgumentException("Board is not "+boardSize+"x"+boardSize);
+        }
+    }
+}
\ No newline at end of file
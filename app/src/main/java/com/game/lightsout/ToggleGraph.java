@@ -0,0 +1,221 @@
+package com.game.lightsout;
+
+import java.util.Arrays;
+
+/**
+ * The lights toggled by each vertex of a graph, for playing lights out on maps that aren't grids.
+ * Clicking a vertex flips the lights of its neighbors, and also its own light if it has a loop.
+ * Every vertex has a loop in the usual game; with no loops at all this is the "sigma game".
+ * <p>
+ * The graph is stored in compressed sparse row form: the vertices toggled by vertex v are
+ * adjacent[i] for start[v] &lt;= i &lt; start[v + 1], so it takes one int per vertex and two per
+ * edge, and nothing else. Edges always go both ways, which keeps the toggle matrix symmetric.
+ * <p>
+ * Sets of lights and clicks are packed into longs, with vertex v in bit (v % 64) of word v / 64.
+ * Immutable, so it can be shared between threads.
+ *
+ * @author William Boyles
+ */
+final class ToggleGraph {
+    /**
+     * The number of vertices
+     */
+    private final int vertices;
+    /**
+     * Where the toggles of each vertex start in adjacent, plus where the last one ends
+     */
+    private final int[] start;
+    /**
+     * The vertices toggled by each vertex, in increasing order
+     */
+    private final int[] adjacent;
+
+
+    private ToggleGraph(int vertices, int[] start, int[] adjacent) {
+        this.vertices = vertices;
+        this.start = start;
+        this.adjacent = adjacent;
+    }
+
+
+    /**
+     * Builds a graph from a list of edges. Repeated edges are only counted once, and an edge from
+     * a vertex to itself makes the vertex toggle its own light.
+     *
+     * @param vertices   the number of vertices.
+     * @param from       one end of each edge.
+     * @param to         the other end of each edge.
+     * @param toggleSelf if true, every vertex toggles its own light, as in the usual game.
+     * @return the graph.
+     * @throws IllegalArgumentException if the edge lists differ in length or an edge leaves the
+     *                                  graph.
+     */
+    static ToggleGraph fromEdges(int vertices, int[] from, int[] to, boolean toggleSelf) {
+        if (vertices < 0 || from.length != to.length) {
+            throw new IllegalArgumentException("Invalid graph: "+vertices+" vertices, "+from.length+" and "+to.length+" edge ends");
+        }
+
+        //Count the toggles of each vertex, then fill them in
+        int[] start = new int[vertices + 1];
+        for (int i = 0; i < from.length; i++) {
+            if (from[i] < 0 || from[i] >= vertices || to[i] < 0 || to[i] >= vertices) {
+                throw new IllegalArgumentException("Edge "+from[i]+"-"+to[i]+" is not in the graph");
+            }
+            start[from[i] + 1]++;
+            if (from[i] != to[i]) {
+                start[to[i] + 1]++;
+            }
+        }
+        for (int v = 0; v < vertices; v++) {
+            start[v + 1] += start[v] + (toggleSelf ? 1 : 0);
+        }
+
+        int[] next = Arrays.copyOf(start, vertices);
+        int[] adjacent = new int[start[vertices]];
+        if (toggleSelf) {
+            for (int v = 0; v < vertices; v++) {
+                adjacent[next[v]++] = v;
+            }
+        }
+        for (int i = 0; i < from.length; i++) {
+            adjacent[next[from[i]]++] = to[i];
+            if (from[i] != to[i]) {
+                adjacent[next[to[i]]++] = from[i];
+            }
+        }
+
+        return compact(vertices, start, adjacent);
+    }
+
+
+    /**
+     * Builds the graph of a board, with an edge between each button and every light it toggles.
+     *
+     * @param masks the lights toggled by each button of the board.
+     * @return the graph, whose vertex r * cols + c is button (r, c).
+     */
+    static ToggleGraph of(ToggleMasks masks) {
+        int buttons = masks.rows() * masks.cols();
+        int[] start = new int[buttons + 1];
+        int[] adjacent = new int[buttons * masks.maxToggled()];
+        int[] toggled = new int[masks.maxToggled()];
+        for (int button = 0; button < buttons; button++) {
+            int count = masks.toggledBy(button / masks.cols(), button % masks.cols(), toggled);
+            System.arraycopy(toggled, 0, adjacent, start[button], count);
+            start[button + 1] = start[button] + count;
+        }
+
+        return new ToggleGraph(buttons, start, Arrays.copyOf(adjacent, start[buttons]));
+    }
+
+
+    int vertexCount() {
+        return this.vertices;
+    }
+
+
+    /**
+     * Returns the number of toggles over all vertices, which is twice the number of edges plus
+     * the number of loops. Clicking every vertex once takes this many flips.
+     *
+     * @return the number of toggles.
+     */
+    int toggleCount() {
+        return this.adjacent.length;
+    }
+
+
+    /**
+     * Returns the number of longs in a packed set of lights or clicks.
+     *
+     * @return (vertexCount() + 63) / 64.
+     */
+    int words() {
+        return (vertices + 63) >>> 6;
+    }
+
+
+    /**
+     * Flips the lights toggled by clicking a vertex.
+     *
+     * @param lights the packed lights of the graph.
+     * @param vertex the vertex clicked.
+     */
+    void click(long[] lights, int vertex) {
+        for (int i = start[vertex]; i < start[vertex + 1]; i++) {
+            lights[adjacent[i] >>> 6] ^= 1L << adjacent[i];
+        }
+    }
+
+
+    /**
+     * Finds the lights flipped by a set of clicks.
+     *
+     * @param clicks the packed clicks.
+     * @return the packed lights that the clicks flip, which is the toggle matrix times clicks.
+     */
+    long[] apply(long[] clicks) {
+        long[] lights = new long[words()];
+        for (int v = 0; v < vertices; v++) {
+            if ((clicks[v >>> 6] >>> v & 1) != 0) {
+                click(lights, v);
+            }
+        }
+
+        return lights;
+    }
+
+
+    /**
+     * Multiplies the toggle matrix by 64 vectors at once. Bit j of block[v] is entry v of vector
+     * j, so each edge costs one XOR of a long for all 64 vectors.
+     *
+     * @param block  the vectors to multiply, one long per vertex.
+     * @param result where to store the products, one long per vertex. Must not be block.
+     */
+    void multiply(long[] block, long[] result) {
+        for (int v = 0; v < vertices; v++) {
+            long sum = 0;
+            for (int i = start[v]; i < start[v + 1]; i++) {
+                sum ^= block[adjacent[i]];
+            }
+            result[v] = sum;
+        }
+    }
+
+
+    /**
+     * Builds the dense toggle matrix, whose column v holds the lights toggled by vertex v. Big
+     * matrices are kept outside the heap, so release() it when done.
+     *
+     * @return the toggle matrix of the graph.
+     */
+    BitMatrix toggleMatrix() {
+        BitMatrix toggles = BitMatrix.allocate(vertices, vertices);
+        for (int v = 0; v < vertices; v++) {
+            for (int i = start[v]; i < start[v + 1]; i++) {
+                toggles.set(adjacent[i], v, true);
+            }
+        }
+
+        return toggles;
+    }
+
+
+    // Sorts each vertex's toggles and drops repeated edges
+    private static ToggleGraph compact(int vertices, int[] start, int[] adjacent) {
+        int[] compacted = new int[vertices + 1];
+        int count = 0;
+        for (int v = 0; v < vertices; v++) {
+            Arrays.sort(adjacent, start[v], start[v + 1]);
+            for (int i = start[v]; i < start[v + 1]; i++) {
+                if (i == start[v] || adjacent[i] != adjacent[i - 1]) {
+                    adjacent[count++] = adjacent[i];
+                }
+            }
+            compacted[v + 1] = count;
+        }
+
+        return new ToggleGraph(vertices, compacted, count == adjacent.length ? adjacent : Arrays.copyOf(adjacent, count));
+    }
+}
\ No newline at end of file
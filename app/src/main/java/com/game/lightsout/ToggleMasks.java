@@ -0,0 +1,413 @@
+package com.game.lightsout;
+
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+
+/**
+ * The lights toggled by clicking each button of a board, worked out once for a board's shape and
+ * neighborhood so that clicks never have to check for edges or know which pattern is being
+ * played. A click flips the lights of its neighborhood, and on a torus the neighbors of an edge
+ * button wrap around to the other side of the board.
+ * <p>
+ * Each button has a short list of XOR masks over the words of a BitBoard, one per word it
+ * touches, so a click is a few XORs however the edges are connected. Buttons also have the list
+ * of lights they toggle, for code that works with one light at a time, like the UI. The lists of
+ * every button are stored end to end in flat arrays.
+ * <p>
+ * Immutable, so it can be shared between threads.
+ *
+ * @author William Boyles
+ */
+final class ToggleMasks {
+    /**
+     * The number of rows of the board
+     */
+    private final int rows;
+    /**
+     * The number of columns of the board
+     */
+    private final int cols;
+    /**
+     * How the edges of the board are connected
+     */
+    private final Topology topology;
+    /**
+     * The lights a click toggles, relative to the clicked button
+     */
+    private final Neighborhood neighborhood;
+    /**
+     * The number of longs used to store each row of a BitBoard of this shape
+     */
+    private final int rowWords;
+    /**
+     * The masks of button b are maskWords[i] and masks[i] for maskStart[b] &lt;= i &lt; maskStart[b + 1]
+     */
+    private final int[] maskStart;
+    /**
+     * The index in the BitBoard's words of each mask
+     */
+    private final int[] maskWords;
+    /**
+     * The lights flipped in each mask's word
+     */
+    private final long[] masks;
+    /**
+     * The lights toggled by button b are lights[i] for lightStart[b] &lt;= i &lt; lightStart[b + 1]
+     */
+    private final int[] lightStart;
+    /**
+     * The lights toggled by each button, as row * cols + col, in increasing order
+     */
+    private final int[] lights;
+
+
+    /**
+     * Works out the toggles of every button of a board where clicks toggle the usual plus shape.
+     *
+     * @param rows     the number of rows of the board.
+     * @param cols     the number of columns of the board.
+     * @param topology how the edges of the board are connected.
+     * @throws IllegalArgumentException if the board has no buttons.
+     */
+    ToggleMasks(int rows, int cols, Topology topology) {
+        this(rows, cols, topology, Neighborhood.PLUS);
+    }
+
+
+    /**
+     * Works out the toggles of every button of a board.
+     *
+     * @param rows         the number of rows of the board.
+     * @param cols         the number of columns of the board.
+     * @param topology     how the edges of the board are connected.
+     * @param neighborhood the lights a click toggles, relative to the clicked button.
+     * @throws IllegalArgumentException if the board has no buttons.
+     */
+    ToggleMasks(int rows, int cols, Topology topology, Neighborhood neighborhood) {
+        if (rows <= 0 || cols <= 0) {
+            throw new IllegalArgumentException("Invalid board shape: "+rows+"x"+cols);
+        }
+
+        this.rows = rows;
+        this.cols = cols;
+        this.topology = topology;
+        this.neighborhood = neighborhood;
+        this.rowWords = (cols + 63) >>> 6;
+
+        int buttons = rows * cols;
+        this.lightStart = new int[buttons + 1];
+        this.maskStart = new int[buttons + 1];
+        int size = neighborhood.size();
+        int[] toggled = new int[size * buttons];
+        int[] words = new int[size * buttons];
+        long[] bits = new long[size * buttons];
+        int[] neighbors = new int[size];
+        boolean wrap = topology == Topology.TORUS;
+        int lightCount = 0, maskCount = 0;
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < cols; c++) {
+                int count = 0;
+                for (int i = 0; i < size; i++) {
+                    int row = r + neighborhood.rowOffset(i), col = c + neighborhood.colOffset(i);
+                    if (wrap) {
+                        row = (row % rows + rows) % rows;
+                        col = (col % cols + cols) % cols;
+                    } else if (row < 0 || row >= rows || col < 0 || col >= cols) { //Off the edge
+                        continue;
+                    }
+                    neighbors[count++] = row * cols + col;
+                }
+
+                //Wrapped neighbors can land on the button itself or on each other on small boards,
+                //so each light is only kept once
+                Arrays.sort(neighbors, 0, count);
+                int first = lightCount;
+                for (int i = 0; i < count; i++) {
+                    if (lightCount == first || toggled[lightCount - 1] != neighbors[i]) {
+                        toggled[lightCount++] = neighbors[i];
+                    }
+                }
+
+                //Lights in the same word share a mask
+                int firstMask = maskCount;
+                for (int i = first; i < lightCount; i++) {
+                    int word = toggled[i] / cols * rowWords + (toggled[i] % cols >>> 6);
+                    if (maskCount == firstMask || words[maskCount - 1] != word) {
+                        words[maskCount++] = word;
+                    }
+                    bits[maskCount - 1] |= 1L << (toggled[i] % cols);
+                }
+
+                lightStart[r * cols + c + 1] = lightCount;
+                maskStart[r * cols + c + 1] = maskCount;
+            }
+        }
+
+        this.lights = Arrays.copyOf(toggled, lightCount);
+        this.maskWords = Arrays.copyOf(words, maskCount);
+        this.masks = Arrays.copyOf(bits, maskCount);
+    }
+
+
+    int rows() {
+        return this.rows;
+    }
+
+
+    int cols() {
+        return this.cols;
+    }
+
+
+    Topology topology() {
+        return this.topology;
+    }
+
+
+    Neighborhood neighborhood() {
+        return this.neighborhood;
+    }
+
+
+    /**
+     * Flips the lights toggled by clicking a button of a board of this shape.
+     *
+     * @param board the packed lights of the board, laid out as in BitBoard.words().
+     * @param row   the row of the click.
+     * @param col   the column of the click.
+     */
+    void click(long[] board, int row, int col) {
+        int button = row * cols + col;
+        for (int i = maskStart[button]; i < maskStart[button + 1]; i++) {
+            board[maskWords[i]] ^= masks[i];
+        }
+    }
+
+
+    /**
+     * Moves the lights toggled by clicking a button on to their next state, on a board whose
+     * lights cycle through more than 2 states.
+     *
+     * @param lights the state of each light, row by row.
+     * @param states the number of states each light cycles through.
+     * @param row    the row of the click.
+     * @param col    the column of the click.
+     */
+    void click(byte[] lights, int states, int row, int col) {
+        int button = row * cols + col;
+        for (int i = lightStart[button]; i < lightStart[button + 1]; i++) {
+            int state = (lights[this.lights[i]] & 0xff) + 1;
+            lights[this.lights[i]] = (byte) (state == states ? 0 : state);
+        }
+    }
+
+
+    /**
+     * Lists the lights toggled by clicking a button.
+     *
+     * @param row     the row of the click.
+     * @param col     the column of the click.
+     * @param toggled where to store the lights, as row * cols + col, in increasing order. Must
+     *                hold at least maxToggled() lights.
+     * @return the number of lights stored.
+     */
+    int toggledBy(int row, int col, int[] toggled) {
+        int button = row * cols + col;
+        int count = lightStart[button + 1] - lightStart[button];
+        System.arraycopy(lights, lightStart[button], toggled, 0, count);
+        return count;
+    }
+
+
+    /**
+     * Gets the most lights any button toggles, for sizing the array given to toggledBy().
+     *
+     * @return the most lights toggled by a single click.
+     */
+    int maxToggled() {
+        int max = 0;
+        for (int button = 0; button < rows * cols; button++) {
+            max = Math.max(max, lightStart[button + 1] - lightStart[button]);
+        }
+
+        return max;
+    }
+
+
+    /**
+     * Builds the matrix whose column r * cols + c holds the lights toggled by clicking button
+     * (r, c), where light (r, c) is row r * cols + c. Big matrices are kept outside the heap, so
+     * release() it when done.
+     *
+     * @return the toggle matrix of the board.
+     */
+    BitMatrix toggleMatrix() {
+        int buttons = rows * cols;
+        BitMatrix toggles = BitMatrix.allocate(buttons, buttons);
+        for (int button = 0; button < buttons; button++) {
+            for (int i = lightStart[button]; i < lightStart[button + 1]; i++) {
+                toggles.set(lights[i], button, true);
+            }
+        }
+
+        return toggles;
+    }
+
+
+    /**
+     * Finds some clicks that turn off every light of a board, by reducing [A | lights] where A is
+     * the toggle matrix. This takes O(buttons^3 / 64) time, so it is meant for boards that
+     * don't have a faster solver, like tori and rectangles.
+     *
+     * @param board the board to solve.
+     * @return the clicks of one solution, with no clicks on buttons that aren't pivots.
+     * @throws IllegalArgumentException if the board is the wrong shape or can't be solved.
+     */
+    BitBoard solve(BitBoard board) {
+        if (board.rows() != rows || board.cols() != cols) {
+            throw new IllegalArgumentException("Board is not "+rows+"x"+cols);
+        }
+
+        int buttons = rows * cols;
+        BitMatrix augmented = BitMatrix.allocate(buttons, buttons + 1);
+        try {
+            for (int button = 0; button < buttons; button++) {
+                for (int i = lightStart[button]; i < lightStart[button + 1]; i++) {
+                    augmented.set(lights[i], button, true);
+                }
+            }
+            for (int light = 0; light < buttons; light++) {
+                augmented.set(light, buttons, board.get(light / cols, light % cols));
+            }
+            augmented.reducedRowEchelonFormM4ri();
+
+            BitBoard clicks = new BitBoard(rows, cols);
+            for (int i = 0, col = 0; i < buttons; i++) {
+                while (col < buttons && !augmented.get(i, col)) {
+                    col++;
+                }
+                if (col == buttons) { //No pivots left, so the rest of the rows must be 0 = 0
+                    if (augmented.get(i, buttons)) {
+                        throw new IllegalArgumentException("Board cannot be solved");
+                    }
+                    break;
+                }
+                if (augmented.get(i, buttons)) {
+                    clicks.toggle(col / cols, col % cols);
+                }
+            }
+
+            return clicks;
+        } finally {
+            augmented.release();
+        }
+    }
+
+
+    /**
+     * Inverts the toggle matrix, so that boards of this shape can each be solved with one matrix
+     * product instead of an elimination (solve(BitMatrix, BitBoard)). Making it costs about four
+     * eliminations, so it is for shapes that solve many boards. Big inverses are kept outside the
+     * heap, so release() it when done.
+     *
+     * @return the inverse of the toggle matrix, or null if it has none because some boards of
+     * this shape can't be solved.
+     */
+    BitMatrix inverseToggleMatrix() {
+        BitMatrix toggles = toggleMatrix();
+        if (toggles.rank() < rows * cols) {
+            toggles.release();
+            return null;
+        }
+
+        toggles.invert();
+        return toggles;
+    }
+
+
+    /**
+     * Finds the clicks that turn off every light of a board by multiplying the lights by the
+     * inverse toggle matrix. This takes O(buttons^2 / 64) time.
+     *
+     * @param inverse the inverse toggle matrix, from inverseToggleMatrix().
+     * @param board   the board to solve.
+     * @return the clicks of the only solution.
+     * @throws IllegalArgumentException if the board is the wrong shape.
+     */
+    BitBoard solve(BitMatrix inverse, BitBoard board) {
+        if (board.rows() != rows || board.cols() != cols) {
+            throw new IllegalArgumentException("Board is not "+rows+"x"+cols);
+        }
+
+        int buttons = rows * cols;
+        BitMatrix lights = new BitMatrix(buttons, 1);
+        for (int light = 0; light < buttons; light++) {
+            lights.set(light, 0, board.get(light / cols, light % cols));
+        }
+
+        BitMatrix product = inverse.multiply(lights);
+        BitBoard clicks = new BitBoard(rows, cols);
+        for (int button = 0; button < buttons; button++) {
+            if (product.get(button, 0)) {
+                clicks.toggle(button / cols, button % cols);
+            }
+        }
+        product.release();
+        return clicks;
+    }
+
+
+    /**
+     * Finds a basis of the null patterns by reducing the toggle matrix, for shapes that
+     * NullSpace can't chase. Boards with at least 512 buttons split the reduction between the
+     * shared worker threads.
+     *
+     * @return linearly independent patterns of clicks that change no lights.
+     * @throws CancellationException if the thread is interrupted during the reduction.
+     */
+    BitBoard[] nullBasis() {
+        BitMatrix toggles = toggleMatrix();
+        int rank;
+        try {
+            rank = toggles.reducedRowEchelonFormParallel(); //Big boards are reduced on every core
+        } catch (InterruptedException e) {
+            toggles.release(); //No worker is still writing to it
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Null basis of "+rows+"x"+cols+" "+topology+" cancelled");
+        }
+
+        try {
+            int buttons = rows * cols;
+
+            int[] pivotCols = new int[rank];
+            boolean[] isPivot = new boolean[buttons];
+            for (int i = 0, col = 0; i < rank; i++) {
+                while (!toggles.get(i, col)) {
+                    col++;
+                }
+                pivotCols[i] = col;
+                isPivot[col] = true;
+            }
+
+            //Each free button, plus the pivots that cancel it out
+            BitBoard[] basis = new BitBoard[buttons - rank];
+            for (int free = 0, k = 0; free < buttons; free++) {
+                if (isPivot[free]) {
+                    continue;
+                }
+                BitBoard pattern = new BitBoard(rows, cols);
+                pattern.toggle(free / cols, free % cols);
+                for (int i = 0; i < rank; i++) {
+                    if (toggles.get(i, free)) {
+                        pattern.toggle(pivotCols[i] / cols, pivotCols[i] % cols);
+                    }
+                }
+                basis[k++] = pattern;
+            }
+
+            return basis;
+        } finally {
+            toggles.release();
+        }
+    }
+}
\ No newline at end of file
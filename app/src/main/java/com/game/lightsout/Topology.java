@@ -0,0 +1,18 @@
+package com.game.lightsout;
+
+/**
+ * How the edges of a board are connected.
+ *
+ * @author William Boyles
+ */
+enum Topology {
+    /**
+     * A flat board. Buttons on the edges have fewer neighbors.
+     */
+    PLANE,
+    /**
+     * The left edge wraps around to the right edge and the top edge to the bottom edge, like the
+     * surface of a donut, so every button has the same number of neighbors.
+     */
+    TORUS
+}
\ No newline at end of file
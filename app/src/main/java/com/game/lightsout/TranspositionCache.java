@@ -0,0 +1,143 @@
+package com.game.lightsout;
+
+/**
+ * Remembers the best solutions of boards that have already been solved, keyed by the 64-bit
+ * Zobrist hash of the board. Players often come back to the same board, and looking it up here is
+ * much cheaper than searching the null patterns again. GameBoard stores each board as the one of
+ * its 8 mirror images with the smallest hash, so all 8 share a single slot.
+ * <p>
+ * The cache is a fixed number of slots in plain long arrays. A board always goes in the slot picked
+ * by its hash, replacing whatever was there. There are no locks: a slot's key is stored as the hash
+ * XORed with a checksum of the slot's data, so if two threads write the same slot at once, or a
+ * read sees half of a write, the key won't match and the read is just a miss.
+ *
+ * @author William Boyles
+ */
+final class TranspositionCache {
+    /**
+     * Roughly how much memory each board size's cache takes up, in bytes
+     */
+    private static final int BYTES_PER_SIZE = 256 << 10;
+    /**
+     * The caches of each board size, created on first use. Guarded by the class.
+     */
+    private static TranspositionCache[] caches = new TranspositionCache[0];
+
+    /**
+     * The number of longs in a solution
+     */
+    private final int words;
+    /**
+     * The number of slots minus one. The number of slots is a power of two.
+     */
+    private final int mask;
+    /**
+     * The hash of the board in each slot, XORed with the checksum of its data
+     */
+    private final long[] keys;
+    /**
+     * Each slot's clicks followed by its solution, words + 1 longs per slot
+     */
+    private final long[] data;
+
+
+    /**
+     * Creates an empty cache.
+     *
+     * @param words the number of longs in each solution.
+     * @param slots the number of boards to remember. This is rounded down to a power of two.
+     */
+    TranspositionCache(int words, int slots) {
+        if (words <= 0 || slots <= 0) {
+            throw new IllegalArgumentException("Invalid cache shape: "+words+" words, "+slots+" slots");
+        }
+
+        this.words = words;
+        this.mask = Integer.highestOneBit(slots) - 1;
+        this.keys = new long[mask + 1];
+        this.data = new long[(mask + 1) * (words + 1)];
+    }
+
+
+    /**
+     * Gets the shared cache for a board size.
+     *
+     * @param boardSize the number of buttons per side of the board.
+     * @return the cache of solutions to boards of that size.
+     */
+    static synchronized TranspositionCache forSize(int boardSize) {
+        if (boardSize >= caches.length) {
+            TranspositionCache[] grown = new TranspositionCache[boardSize + 1];
+            System.arraycopy(caches, 0, grown, 0, caches.length);
+            caches = grown;
+        }
+
+        if (caches[boardSize] == null) {
+            int words = new BitBoard(boardSize).words().length;
+            caches[boardSize] = new TranspositionCache(words, Math.max(64, BYTES_PER_SIZE / (8 * (words + 2))));
+        }
+        return caches[boardSize];
+    }
+
+
+    /**
+     * Forgets every board of every size.
+     */
+    static synchronized void clearAll() {
+        caches = new TranspositionCache[0];
+    }
+
+
+    /**
+     * Looks up the best solution of a board.
+     *
+     * @param hash     the Zobrist hash of the board.
+     * @param solution where to copy the solution to. It is overwritten even on a miss.
+     * @return the number of clicks of the solution, or -1 if the board isn't in the cache.
+     */
+    int get(long hash, long[] solution) {
+        int slot = slot(hash);
+        int offset = slot * (words + 1);
+        long clicks = data[offset];
+        long check = SplitMix64.mix64(clicks);
+        for (int i = 0; i < words; i++) {
+            solution[i] = data[offset + 1 + i];
+            check = SplitMix64.mix64(check ^ solution[i]);
+        }
+
+        if (hash == 0 || (keys[slot] ^ check) != hash) {
+            return -1;
+        }
+        return (int) clicks;
+    }
+
+
+    /**
+     * Remembers the best solution of a board.
+     *
+     * @param hash     the Zobrist hash of the board. 0 is never stored.
+     * @param clicks   the number of clicks of the solution.
+     * @param solution the solution, packed into longs.
+     */
+    void put(long hash, int clicks, long[] solution) {
+        if (hash == 0) { //Looks just like an empty slot
+            return;
+        }
+
+        int slot = slot(hash);
+        int offset = slot * (words + 1);
+        data[offset] = clicks;
+        long check = SplitMix64.mix64(clicks);
+        for (int i = 0; i < words; i++) {
+            data[offset + 1 + i] = solution[i];
+            check = SplitMix64.mix64(check ^ solution[i]);
+        }
+        keys[slot] = hash ^ check;
+    }
+
+
+    // The slot of a hash, folding in the high bits
+    private int slot(long hash) {
+        return (int) (hash >>> 32 ^ hash) & mask;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,151 @@
+package com.game.lightsout;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The threads shared by the parts of the engine that split their work between cores. There is one
+ * daemon thread per core, created the first time they are needed and stopped after a minute of
+ * doing nothing. We use a plain thread pool rather than a ForkJoinPool since ForkJoinPool is not
+ * available on all of the Android versions we support.
+ *
+ * @author William Boyles
+ */
+final class Workers {
+    /**
+     * The shared threads, created on first use
+     */
+    private static ThreadPoolExecutor pool;
+
+
+    private Workers() {
+        //Static methods only
+    }
+
+
+    /**
+     * The number of threads in the shared pool, which is the number of cores.
+     *
+     * @return the number of tasks worth running at once.
+     */
+    static int parallelism() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+
+    /**
+     * Gets the shared pool of worker threads.
+     *
+     * @return the shared pool.
+     */
+    static synchronized ExecutorService pool() {
+        if (pool == null) {
+            final AtomicInteger threadCount = new AtomicInteger();
+            pool = new ThreadPoolExecutor(parallelism(), parallelism(), 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "LightsOut-worker-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            pool.allowCoreThreadTimeOut(true);
+        }
+
+        return pool;
+    }
+
+
+    /**
+     * Runs every task and waits for all of them to finish. If a task throws, the exception is
+     * rethrown here once all of the tasks are done.
+     *
+     * @param pool  the threads to run on.
+     * @param tasks the tasks to run.
+     * @throws InterruptedException if the thread is interrupted while waiting. Tasks that have not
+     *                              finished are cancelled.
+     */
+    static <T> void runAll(ExecutorService pool, List<? extends Callable<T>> tasks) throws InterruptedException {
+        for (Future<T> future : pool.invokeAll(tasks)) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new IllegalStateException(cause);
+            }
+        }
+    }
+
+
+    /**
+     * Runs every task and waits for all of them to finish, like runAll(). If the thread is
+     * interrupted, the tasks that have not started are skipped and the ones already running are
+     * waited for, so none of them is still touching shared data when this throws. This is only
+     * meant for short tasks.
+     *
+     * @param pool  the threads to run on.
+     * @param tasks the tasks to run.
+     * @throws InterruptedException if the thread is interrupted while waiting.
+     */
+    static <T> void runAllOrStop(ExecutorService pool, List<? extends Callable<T>> tasks) throws InterruptedException {
+        final CountDownLatch finished = new CountDownLatch(tasks.size());
+        List<AtomicBoolean> started = new ArrayList<>(tasks.size());
+        List<Callable<T>> guarded = new ArrayList<>(tasks.size());
+        for (final Callable<T> task : tasks) {
+            final AtomicBoolean claimed = new AtomicBoolean();
+            started.add(claimed);
+            guarded.add(new Callable<T>() {
+                @Override
+                public T call() throws Exception {
+                    if (!claimed.compareAndSet(false, true)) {
+                        return null; //Skipped after an interrupt
+                    }
+                    try {
+                        return task.call();
+                    } finally {
+                        finished.countDown();
+                    }
+                }
+            });
+        }
+
+        try {
+            runAll(pool, guarded);
+        } catch (InterruptedException e) {
+            for (AtomicBoolean claimed : started) {
+                if (claimed.compareAndSet(false, true)) {
+                    finished.countDown();
+                }
+            }
+
+            boolean waiting = true;
+            while (waiting) {
+                try {
+                    finished.await();
+                    waiting = false;
+                } catch (InterruptedException again) {
+                    //Keep waiting, this thread is already being interrupted
+                }
+            }
+            throw e;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,113 @@
+package com.game.lightsout;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Checks the banded elimination of BandedBitMatrix against NullSpace and the toggle masks.
+ *
+ * @author William Boyles
+ */
+public class BandedBitMatrixTest {
+    /**
+     * Board sizes with many null patterns, which widen the band the most
+     */
+    private static final int[] HIGH_NULLITY_SIZES = {4, 5, 9, 16, 19};
+
+
+    @Test
+    public void solveTurnsOffEveryLight() {
+        for (int size = 1; size <= 30; size++) {
+            ToggleMasks masks = new ToggleMasks(size, size, Topology.PLANE, Neighborhood.PLUS);
+            for (long seed = 0; seed < 3; seed++) {
+                BitBoard lights = new BitBoard(size);
+                Scrambler.scramble(seed, masks, lights, null);
+
+                BitBoard presses = BandedBitMatrix.solve(lights);
+                assertNotNull(presses);
+                click(masks, lights, presses);
+                assertEquals(size+"x"+size+" seed "+seed, 0, lights.popCount());
+            }
+        }
+    }
+
+
+    @Test
+    public void nullityMatchesNullSpace() {
+        for (int size : HIGH_NULLITY_SIZES) {
+            BandedBitMatrix toggles = BandedBitMatrix.toggleMatrix(size);
+            int rank = toggles.rowEchelonForm(null);
+            assertEquals("size "+size, NullSpace.nullity(size), size * size - rank);
+        }
+    }
+
+
+    @Test
+    public void nullPatternsAreNullAndIndependent() {
+        for (int size : HIGH_NULLITY_SIZES) {
+            ToggleMasks masks = new ToggleMasks(size, size, Topology.PLANE, Neighborhood.PLUS);
+            BitBoard[] patterns = BandedBitMatrix.nullPatterns(size);
+            assertEquals(NullSpace.nullity(size), patterns.length);
+
+            BitMatrix stacked = new BitMatrix(patterns.length, size * size);
+            for (int i = 0; i < patterns.length; i++) {
+                BitBoard lights = new BitBoard(size);
+                click(masks, lights, patterns[i]);
+                assertEquals(0, lights.popCount());
+                for (int button = 0; button < size * size; button++) {
+                    stacked.set(i, button, patterns[i].get(button / size, button % size));
+                }
+            }
+            assertEquals("size "+size, patterns.length, stacked.rank());
+        }
+    }
+
+
+    @Test
+    public void unsolvableBoardsReturnNull() {
+        for (int size : HIGH_NULLITY_SIZES) {
+            //A board is solvable only if it shares an even number of lights with every null pattern,
+            //so a single light on any button of a null pattern can't be solved
+            for (BitBoard pattern : NullSpace.basis(size)) {
+                for (int button = 0; button < size * size; button++) {
+                    if (pattern.get(button / size, button % size)) {
+                        BitBoard lights = new BitBoard(size);
+                        lights.toggle(button / size, button % size);
+                        assertNull(size+"x"+size+" button "+button, BandedBitMatrix.solve(lights));
+                        break;
+                    }
+                }
+            }
+
+            //Adding an unsolvable board to a solvable one leaves it unsolvable
+            ToggleMasks masks = new ToggleMasks(size, size, Topology.PLANE, Neighborhood.PLUS);
+            BitBoard lights = new BitBoard(size);
+            Scrambler.scramble(size, masks, lights, null);
+            assertNotNull(BandedBitMatrix.solve(lights));
+            BitBoard pattern = NullSpace.basis(size)[0];
+            for (int button = 0; button < size * size; button++) {
+                if (pattern.get(button / size, button % size)) {
+                    lights.toggle(button / size, button % size);
+                    break;
+                }
+            }
+            assertNull(BandedBitMatrix.solve(lights));
+        }
+    }
+
+
+    // Clicks every pressed button of a board
+    private static void click(ToggleMasks masks, BitBoard lights, BitBoard presses) {
+        int size = lights.size();
+        for (int r = 0; r < size; r++) {
+            for (int c = 0; c < size; c++) {
+                if (presses.get(r, c)) {
+                    masks.click(lights.words(), r, c);
+                }
+            }
+        }
+    }
+}
\ No newline at end of file
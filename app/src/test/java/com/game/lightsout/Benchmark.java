@@ -0,0 +1,68 @@
+package com.game.lightsout;
+
+import org.junit.Assume;
+
+import java.util.Locale;
+
+/**
+ * Times code for the benchmark tests. Benchmarks take a while and their numbers only mean something
+ * on a quiet machine, so they are skipped unless the tests are run with
+ * -Dlightsout.benchmarks=true. Each benchmark is warmed up, then the fastest of a few runs is kept.
+ *
+ * @author William Boyles
+ */
+abstract class Benchmark {
+    /**
+     * The number of timed runs, after warming up
+     */
+    private static final int RUNS = 5;
+    /**
+     * How long to run the work before timing it, so that the JIT has compiled it, in ns
+     */
+    private static final long WARM_UP = 500000000L;
+    /**
+     * Keeps the results of run() so that the JIT can't throw the work away
+     */
+    private int sink;
+
+
+    /**
+     * Skips the calling test unless benchmarks are turned on.
+     */
+    static void assumeEnabled() {
+        Assume.assumeTrue("Benchmarks are off, run with -Dlightsout.benchmarks=true", Boolean.getBoolean("lightsout.benchmarks"));
+    }
+
+
+    /**
+     * Does the work being timed.
+     *
+     * @return anything that depends on the work.
+     */
+    abstract int run();
+
+
+    /**
+     * Times the work and prints the result.
+     *
+     * @param name what is being timed.
+     * @return the fastest run in milliseconds.
+     */
+    double time(String name) {
+        long warmUpEnd = System.nanoTime() + WARM_UP;
+        do {
+            sink += run();
+        } while (System.nanoTime() - warmUpEnd < 0);
+
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < RUNS; i++) {
+            long start = System.nanoTime();
+            sink += run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+
+        double millis = best / 1e6;
+        System.out.println(String.format(Locale.ROOT, "%-48s %10.3f ms", name, millis) + (sink == 42 ? " " : ""));
+        return millis;
+    }
+}
\ No newline at end of file
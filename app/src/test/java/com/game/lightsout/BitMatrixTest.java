@@ -0,0 +1,429 @@
+package com.game.lightsout;
+
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks the operations of BitMatrix, on matrices both on and outside the heap.
+ *
+ * @author William Boyles
+ */
+public class BitMatrixTest {
+    /**
+     * Big enough that [A | I] and the products below are kept outside the heap
+     */
+    private static final int BIG = 2048;
+
+
+    @Test
+    public void bigMultiplyIsOutsideHeapAndMatchesHeap() {
+        BitMatrix a = random(BIG, BIG, 1, false), b = random(BIG, 2 * BIG, 2, false);
+        BitMatrix directA = copy(a, true), directB = copy(b, true);
+
+        BitMatrix product = a.multiply(b), directProduct = directA.multiply(directB);
+        assertTrue(product.isDirect());
+        assertEquals(product, directProduct);
+        assertEquals(product, a.multiply(directB));
+
+        product.release();
+        directProduct.release();
+        directA.release();
+        directB.release();
+    }
+
+
+    @Test
+    public void bigInvertMatchesHeap() {
+        BitMatrix a = invertible(BIG, 3);
+        BitMatrix direct = copy(a, true);
+
+        BitMatrix inverse = a.clone();
+        inverse.invert();
+        direct.invert();
+        assertTrue(direct.isDirect());
+        assertEquals(inverse, direct);
+
+        BitMatrix identity = a.multiply(inverse);
+        assertEquals(BitMatrix.identity(BIG), identity);
+
+        identity.release();
+        direct.release();
+    }
+
+
+    @Test
+    public void releasedMemoryComesBackZeroed() {
+        for (boolean dropSpare : new boolean[]{false, true}) {
+            BitMatrix used = random(BIG, BIG, 5, true);
+            used.release();
+            if (dropSpare) {
+                BitMatrix.releaseSpare();
+            }
+
+            BitMatrix fresh = BitMatrix.direct(BIG, BIG);
+            assertTrue(fresh.isDirect());
+            assertEquals(new BitMatrix(BIG, BIG), fresh);
+            fresh.release();
+        }
+    }
+
+
+    @Test
+    public void smallResultsStayOnHeap() {
+        BitMatrix a = random(64, 64, 4, true);
+        BitMatrix product = a.multiply(a);
+        assertFalse(product.isDirect());
+        assertEquals(product, copy(a, false).multiply(copy(a, false)));
+        a.release();
+    }
+
+
+    @Test
+    public void fourRussiansMatchesPlainAndGenericField() {
+        SplitMix64 random = new SplitMix64(28);
+        Field<Integer> gf2 = new PrimeField(2);
+        for (int trial = 0; trial < 200; trial++) {
+            int rows = 1 + random.nextInt(40), cols = 1 + random.nextInt(90);
+            BitMatrix matrix = random(rows, cols, trial, false);
+            if (trial % 3 == 0) { //Rank deficient
+                int rank = 1 + random.nextInt(Math.min(rows, cols));
+                matrix = random(rows, rank, trial, false).multiply(random(rank, cols, ~trial, false));
+            }
+
+            Matrix<Integer> generic = new Matrix<>(rows, cols, gf2);
+            for (int i = 0; i < rows; i++) {
+                for (int j = 0; j < cols; j++) {
+                    generic.set(i, j, matrix.get(i, j) ? 1 : 0);
+                }
+            }
+            generic.reducedRowEchelonForm();
+            BitMatrix plain = matrix.clone();
+            int rank = plain.reducedRowEchelonForm();
+            for (int i = 0; i < rows; i++) {
+                for (int j = 0; j < cols; j++) {
+                    assertEquals(generic.get(i, j) == 1, plain.get(i, j));
+                }
+            }
+
+            for (int k = 1; k <= 8; k++) {
+                BitMatrix fourRussians = matrix.clone();
+                assertEquals(rank, fourRussians.reducedRowEchelonFormM4ri(k));
+                assertEquals("k = "+k, plain, fourRussians);
+            }
+        }
+    }
+
+
+    @Test
+    public void benchmarkFourRussians() {
+        Benchmark.assumeEnabled();
+        for (final int size : new int[]{1000, 4000}) {
+            final BitMatrix matrix = random(size, size, size, false);
+            new Benchmark() {
+                @Override
+                int run() {
+                    return matrix.clone().reducedRowEchelonForm();
+                }
+            }.time(size+"x"+size+" plain packed RREF");
+            new Benchmark() {
+                @Override
+                int run() {
+                    return matrix.clone().reducedRowEchelonFormM4ri();
+                }
+            }.time(size+"x"+size+" Four Russians RREF");
+        }
+    }
+
+
+    @Test
+    public void packedOperationsMatchGenericField() {
+        SplitMix64 random = new SplitMix64(40);
+        Field<Integer> gf2 = new PrimeField(2);
+        for (int trial = 0; trial < 100; trial++) {
+            int rows = 1 + random.nextInt(40), inner = 1 + random.nextInt(90), cols = 1 + random.nextInt(90);
+            BitMatrix a = random(rows, inner, trial, false), b = random(inner, cols, ~trial, false);
+            assertSameEntries(generic(a, gf2).multiply(generic(b, gf2)), a.multiply(b));
+
+            //Products of thin matrices are rank deficient
+            BitMatrix thin = random(rows, 1 + inner / 8, trial, false).multiply(random(1 + inner / 8, cols, trial + 1, false));
+            for (BitMatrix matrix : new BitMatrix[]{a, thin}) {
+                Matrix<Integer> reduced = generic(matrix, gf2);
+                reduced.reducedRowEchelonForm();
+                int rank = 0;
+                while (rank < matrix.rowCount() && !isZeroRow(reduced, rank)) {
+                    rank++;
+                }
+                assertEquals(rank, matrix.rank());
+            }
+
+            int size = 1 + random.nextInt(70);
+            BitMatrix square = trial % 2 == 0 ? invertible(size, trial) : random(size, size, trial, false);
+            Matrix<Integer> expected = generic(square, gf2);
+            BitMatrix inverse = square.clone();
+            boolean invertible = square.rank() == size;
+            try {
+                expected.invert();
+                assertTrue(invertible);
+                inverse.invert();
+                assertSameEntries(expected, inverse);
+            } catch (IllegalStateException e) {
+                assertFalse(invertible);
+                try {
+                    inverse.invert();
+                    fail("Inverted a singular matrix");
+                } catch (IllegalStateException expectedException) {
+                    assertEquals(square, inverse); //Unchanged
+                }
+            }
+        }
+    }
+
+
+    @Test
+    public void inverseSolvesLikeElimination() {
+        ToggleMasks masks = new ToggleMasks(16, 20, Topology.TORUS); //320 buttons and no null patterns
+        BitMatrix inverse = masks.inverseToggleMatrix();
+        assertNotNull(inverse);
+        for (long seed = 0; seed < 10; seed++) {
+            BitBoard lights = new BitBoard(16, 20);
+            SplitMix64 random = new SplitMix64(seed);
+            for (int r = 0; r < 16; r++) {
+                for (int c = 0; c < 20; c++) {
+                    if (random.nextInt(2) == 1) {
+                        lights.toggle(r, c);
+                    }
+                }
+            }
+            assertEquals(masks.solve(lights), masks.solve(inverse, lights));
+        }
+
+        assertNull(new ToggleMasks(5, 5, Topology.PLANE).inverseToggleMatrix()); //Nullity 2
+    }
+
+
+    @Test
+    public void benchmarkPackedAgainstGenericField() {
+        Benchmark.assumeEnabled();
+        Field<Integer> gf2 = new PrimeField(2);
+        for (int size : new int[]{64, 256}) {
+            final BitMatrix a = invertible(size, size), b = random(size, size, ~size, false);
+            final Matrix<Integer> genericA = generic(a, gf2), genericB = generic(b, gf2);
+            double packed = new Benchmark() {
+                @Override
+                int run() {
+                    return a.multiply(b).rowCount();
+                }
+            }.time(size+"x"+size+" packed multiply");
+            double boxed = new Benchmark() {
+                @Override
+                int run() {
+                    return genericA.multiply(genericB).rowCount();
+                }
+            }.time(size+"x"+size+" Matrix<Integer> multiply");
+            System.out.println("  "+Math.round(boxed / packed)+" times faster");
+
+            packed = new Benchmark() {
+                @Override
+                int run() {
+                    BitMatrix inverse = a.clone();
+                    inverse.invert();
+                    return inverse.rowCount();
+                }
+            }.time(size+"x"+size+" packed invert");
+            boxed = new Benchmark() {
+                @Override
+                int run() {
+                    Matrix<Integer> inverse = genericA.clone();
+                    inverse.invert();
+                    return inverse.rowCount();
+                }
+            }.time(size+"x"+size+" Matrix<Integer> invert");
+            System.out.println("  "+Math.round(boxed / packed)+" times faster");
+
+            packed = new Benchmark() {
+                @Override
+                int run() {
+                    return b.rank();
+                }
+            }.time(size+"x"+size+" packed rank");
+            boxed = new Benchmark() {
+                @Override
+                int run() {
+                    return genericB.clone().determinantAndRef();
+                }
+            }.time(size+"x"+size+" Matrix<Integer> determinantAndRef");
+            System.out.println("  "+Math.round(boxed / packed)+" times faster");
+        }
+    }
+
+
+    @Test
+    public void benchmarkInverseSolve() {
+        Benchmark.assumeEnabled();
+        final ToggleMasks masks = new ToggleMasks(49, 49, Topology.TORUS); //2401 buttons and no null patterns
+        final BitBoard lights = new BitBoard(49, 49);
+        for (int i = 0; i < 49; i++) {
+            lights.toggle(i, (i * 7) % 49);
+        }
+        new Benchmark() {
+            @Override
+            int run() {
+                BitMatrix inverse = masks.inverseToggleMatrix();
+                inverse.release();
+                return inverse.rowCount();
+            }
+        }.time("49x49 torus inverse toggle matrix");
+        final BitMatrix inverse = masks.inverseToggleMatrix();
+        new Benchmark() {
+            @Override
+            int run() {
+                return masks.solve(lights).popCount();
+            }
+        }.time("49x49 torus solve by elimination");
+        new Benchmark() {
+            @Override
+            int run() {
+                return masks.solve(inverse, lights).popCount();
+            }
+        }.time("49x49 torus solve by inverse");
+    }
+
+
+    @Test
+    public void parallelEchelonFormMatchesSequential() throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            BitMatrix[] matrices = {
+                    random(600, 600, 5, false),
+                    random(700, 1500, 6, false),
+                    random(1100, 530, 7, true),
+                    random(640, 300, 8, false).multiply(random(300, 900, 9, false)), //Rank 300 at most
+            };
+            for (BitMatrix matrix : matrices) {
+                BitMatrix sequential = matrix.clone();
+                int rank = sequential.reducedRowEchelonForm();
+
+                for (int parallelism : new int[]{1, 2, 3, 8}) {
+                    BitMatrix parallel = copy(matrix, matrix.isDirect());
+                    assertEquals(rank, parallel.reducedRowEchelonFormParallel(pool, parallelism));
+                    assertEquals(sequential, parallel);
+                    parallel.release();
+                }
+                matrix.release();
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+
+    @Test
+    public void bigNullBasisIsNull() {
+        ToggleMasks masks = new ToggleMasks(24, 24, Topology.TORUS, Neighborhood.PLUS); //576 buttons, reduced in parallel on multi-core machines
+        BitBoard[] basis = masks.nullBasis();
+
+        BitMatrix toggles = masks.toggleMatrix();
+        assertEquals(24 * 24 - toggles.reducedRowEchelonForm(), basis.length);
+        toggles.release();
+
+        byte[] cells = new byte[24 * 24];
+        for (BitBoard pattern : basis) {
+            for (int r = 0; r < 24; r++) {
+                for (int c = 0; c < 24; c++) {
+                    if (pattern.get(r, c)) {
+                        masks.click(cells, 2, r, c);
+                    }
+                }
+            }
+            for (byte cell : cells) {
+                assertEquals(0, cell);
+            }
+        }
+    }
+
+
+    // The same matrix over a generic field
+    static Matrix<Integer> generic(BitMatrix matrix, Field<Integer> field) {
+        Matrix<Integer> generic = new Matrix<>(matrix.rowCount(), matrix.columnCount(), field);
+        for (int i = 0; i < matrix.rowCount(); i++) {
+            for (int j = 0; j < matrix.columnCount(); j++) {
+                generic.set(i, j, matrix.get(i, j) ? 1 : 0);
+            }
+        }
+
+        return generic;
+    }
+
+
+    private static void assertSameEntries(Matrix<Integer> expected, BitMatrix actual) {
+        assertEquals(expected.rowCount(), actual.rowCount());
+        assertEquals(expected.columnCount(), actual.columnCount());
+        for (int i = 0; i < actual.rowCount(); i++) {
+            for (int j = 0; j < actual.columnCount(); j++) {
+                assertEquals(expected.get(i, j) == 1, actual.get(i, j));
+            }
+        }
+    }
+
+
+    private static boolean isZeroRow(Matrix<Integer> matrix, int row) {
+        for (int j = 0; j < matrix.columnCount(); j++) {
+            if (matrix.get(row, j) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    // A random matrix, on or outside the heap
+    static BitMatrix random(int rows, int cols, long seed, boolean direct) {
+        SplitMix64 random = new SplitMix64(seed);
+        BitMatrix matrix = direct ? BitMatrix.direct(rows, cols) : new BitMatrix(rows, cols);
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < cols; j++) {
+                matrix.set(i, j, random.nextInt(2) == 1);
+            }
+        }
+
+        return matrix;
+    }
+
+
+    // A random invertible matrix, made as the product of random unit lower and upper triangular ones
+    static BitMatrix invertible(int size, long seed) {
+        SplitMix64 random = new SplitMix64(seed);
+        BitMatrix lower = new BitMatrix(size, size), upper = new BitMatrix(size, size);
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                lower.set(i, j, i == j || i > j && random.nextInt(2) == 1);
+                upper.set(i, j, i == j || i < j && random.nextInt(2) == 1);
+            }
+        }
+
+        return lower.multiply(upper);
+    }
+
+
+    // A copy of a matrix, on or outside the heap
+    static BitMatrix copy(BitMatrix matrix, boolean direct) {
+        int rows = matrix.rowCount(), cols = matrix.columnCount();
+        BitMatrix copy = direct ? BitMatrix.direct(rows, cols) : new BitMatrix(rows, cols);
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < cols; j++) {
+                copy.set(i, j, matrix.get(i, j));
+            }
+        }
+
+        return copy;
+    }
+}
\ No newline at end of file
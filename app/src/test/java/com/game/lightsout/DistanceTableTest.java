@@ -0,0 +1,176 @@
+package com.game.lightsout;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks the breadth first search of DistanceTable against GameBoardSolver in the normal mode and
+ * a separate search in on lights only mode.
+ *
+ * @author William Boyles
+ */
+public class DistanceTableTest {
+    @Test
+    public void normalDistancesMatchSolver() throws InterruptedException {
+        for (int size = 3; size <= 4; size++) {
+            DistanceTable table = DistanceTable.build(size, false, null, 1);
+            GameBoardSolver solver = new GameBoardSolver(size);
+            ToggleMasks masks = new ToggleMasks(size, size, Topology.PLANE, Neighborhood.PLUS);
+            int[] clickMasks = clickMasks(size);
+
+            for (int state = 0; state < 1 << size * size; state++) {
+                BitBoard lights = unpack(size, state);
+                BitBoard presses;
+                try {
+                    presses = masks.solve(lights);
+                } catch (IllegalArgumentException e) {
+                    assertEquals(DistanceTable.UNREACHABLE, table.distance(state));
+                    assertEquals(DistanceTable.UNREACHABLE, table.solution(state));
+                    continue;
+                }
+
+                boolean[][] clicks = new boolean[size][size];
+                presses.toArray(clicks);
+                int minClicks = BitBoard.fromArray(solver.findBestSolution(clicks)).popCount();
+                assertEquals(size+"x"+size+" state "+state, minClicks, table.distance(state));
+
+                int solution = table.solution(state);
+                assertEquals(minClicks, Integer.bitCount(solution));
+                assertEquals(0, click(state, solution, clickMasks));
+            }
+        }
+    }
+
+
+    @Test
+    public void lightsOnlyDistancesMatchSearch() throws InterruptedException {
+        for (int size = 3; size <= 4; size++) {
+            DistanceTable table = DistanceTable.build(size, true, null, 1);
+            int[] clickMasks = clickMasks(size);
+            int[] expected = lightsOnlyDistances(size, clickMasks);
+
+            for (int state = 0; state < expected.length; state++) {
+                assertEquals(size+"x"+size+" state "+state, expected[state], table.distance(state));
+
+                //Following nextClick() only clicks lights that are on and takes the fewest clicks
+                int lights = state, clicks = 0;
+                for (int b = table.nextClick(lights); b >= 0; b = table.nextClick(lights)) {
+                    assertEquals(1, lights >>> b & 1);
+                    lights ^= clickMasks[b];
+                    clicks++;
+                }
+                if (expected[state] != DistanceTable.UNREACHABLE) {
+                    assertEquals(0, lights);
+                    assertEquals(expected[state], clicks);
+                }
+            }
+        }
+    }
+
+
+    @Test
+    public void savedTablesLoadTheSame() throws IOException, InterruptedException {
+        File file = File.createTempFile("distances", ".bin");
+        try {
+            for (int size = 3; size <= 4; size++) {
+                for (boolean onLightsOnly : new boolean[]{false, true}) {
+                    DistanceTable table = DistanceTable.build(size, onLightsOnly, null, 1);
+                    table.writeTo(file);
+                    DistanceTable loaded = DistanceTable.load(file, size, onLightsOnly);
+
+                    assertEquals(size, loaded.getBoardSize());
+                    assertEquals(onLightsOnly, loaded.isOnLightsOnly());
+                    for (int state = 0; state < 1 << size * size; state++) {
+                        assertEquals(table.distance(state), loaded.distance(state));
+                        assertEquals(table.nextClick(state), loaded.nextClick(state));
+                    }
+
+                    try {
+                        DistanceTable.load(file, size, !onLightsOnly);
+                        fail("Loaded a table for the other mode");
+                    } catch (IOException expected) {
+                        //The header says which mode the table is for
+                    }
+                }
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+
+    // The fewest clicks of lights that are on to solve every board, relaxed until nothing changes
+    private static int[] lightsOnlyDistances(int size, int[] clickMasks) {
+        int[] distances = new int[1 << size * size];
+        Arrays.fill(distances, Integer.MAX_VALUE);
+        distances[0] = 0;
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int state = 1; state < distances.length; state++) {
+                for (int b = 0; b < clickMasks.length; b++) {
+                    int next = state ^ clickMasks[b];
+                    if ((state >>> b & 1) != 0 && distances[next] != Integer.MAX_VALUE
+                            && distances[next] + 1 < distances[state]) {
+                        distances[state] = distances[next] + 1;
+                        changed = true;
+                    }
+                }
+            }
+        }
+
+        for (int state = 0; state < distances.length; state++) {
+            if (distances[state] == Integer.MAX_VALUE) {
+                distances[state] = DistanceTable.UNREACHABLE;
+            }
+        }
+        return distances;
+    }
+
+
+    // The lights toggled by each button, packed like DistanceTable.state()
+    private static int[] clickMasks(int size) {
+        int[] masks = new int[size * size];
+        for (int r = 0; r < size; r++) {
+            for (int c = 0; c < size; c++) {
+                int mask = 1 << (r * size + c);
+                mask |= r > 0 ? 1 << ((r - 1) * size + c) : 0;
+                mask |= r < size - 1 ? 1 << ((r + 1) * size + c) : 0;
+                mask |= c > 0 ? 1 << (r * size + c - 1) : 0;
+                mask |= c < size - 1 ? 1 << (r * size + c + 1) : 0;
+                masks[r * size + c] = mask;
+            }
+        }
+
+        return masks;
+    }
+
+
+    private static int click(int state, int clicks, int[] clickMasks) {
+        for (int b = 0; b < clickMasks.length; b++) {
+            if ((clicks >>> b & 1) != 0) {
+                state ^= clickMasks[b];
+            }
+        }
+
+        return state;
+    }
+
+
+    private static BitBoard unpack(int size, int state) {
+        BitBoard board = new BitBoard(size);
+        for (int b = 0; b < size * size; b++) {
+            if ((state >>> b & 1) != 0) {
+                board.toggle(b / size, b % size);
+            }
+        }
+
+        return board;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,284 @@
+package com.game.lightsout;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the searches of GameBoardSolver against trying every solution in the coset.
+ *
+ * @author William Boyles
+ */
+public class GameBoardSolverTest {
+    /**
+     * Board sizes with between 0 and 16 basis null patterns
+     */
+    private static final int[] SIZES = {1, 2, 3, 4, 5, 6, 9, 11, 16, 17, 19};
+
+
+    @Test
+    public void bestSolutionMatchesBruteForce() {
+        for (int size : SIZES) {
+            GameBoardSolver solver = new GameBoardSolver(size);
+            BitBoard[] basis = NullSpace.basis(size);
+            for (long seed = 0; seed < 3; seed++) {
+                BitBoard presses = randomPresses(size, seed);
+                boolean[][] best = solver.findBestSolution(toArray(presses));
+
+                assertEquals(size+"x"+size+" seed "+seed, bruteForceMinClicks(presses, basis), BitBoard.fromArray(best).popCount());
+                assertSameLights(presses, BitBoard.fromArray(best));
+            }
+        }
+    }
+
+
+    @Test
+    public void timedSearchNeverGetsWorse() {
+        GameBoardSolver solver = new GameBoardSolver(19);
+        BitBoard[] basis = NullSpace.basis(19);
+        for (long seed = 0; seed < 3; seed++) {
+            BitBoard presses = randomPresses(19, seed);
+            BitBoard quick = BitBoard.fromArray(solver.findBestSolution(toArray(presses), 0));
+            assertTrue(quick.popCount() <= presses.popCount());
+            assertSameLights(presses, quick);
+
+            BitBoard finished = BitBoard.fromArray(solver.findBestSolution(toArray(presses), 60000));
+            assertEquals(bruteForceMinClicks(presses, basis), finished.popCount());
+        }
+    }
+
+
+    @Test
+    public void optimalSolutionsMatchBruteForce() {
+        for (int size : SIZES) {
+            GameBoardSolver solver = new GameBoardSolver(size);
+            BitBoard[] basis = NullSpace.basis(size);
+            for (long seed = 0; seed < 3; seed++) {
+                BitBoard presses = randomPresses(size, seed);
+                Set<List<Long>> expected = bruteForceOptimalSolutions(presses, basis);
+
+                GameBoardSolver.OptimalSolutions solutions = solver.optimalSolutions(toArray(presses));
+                Set<List<Long>> walked = new HashSet<>();
+                while (solutions.hasNext()) {
+                    BitBoard solution = solutions.next();
+                    assertEquals(solutions.getMinClicks(), solution.popCount());
+                    assertTrue(size+"x"+size+" seed "+seed+" repeated a solution", walked.add(key(solution)));
+                }
+                assertEquals(size+"x"+size+" seed "+seed, expected, walked);
+            }
+        }
+    }
+
+
+    @Test
+    public void splitIteratorsWalkEachSolutionOnce() {
+        GameBoardSolver solver = new GameBoardSolver(19);
+        BitBoard presses = randomPresses(19, 39);
+        Set<List<Long>> expected = bruteForceOptimalSolutions(presses, NullSpace.basis(19));
+
+        List<GameBoardSolver.OptimalSolutions> parts = new ArrayList<>();
+        parts.add(solver.optimalSolutions(toArray(presses)));
+        for (int round = 0; round < 4; round++) { //Split every part in half, like a fork join pool would
+            for (int i = parts.size() - 1; i >= 0; i--) {
+                GameBoardSolver.OptimalSolutions split = parts.get(i).trySplit();
+                if (split != null) {
+                    parts.add(split);
+                }
+            }
+        }
+        assertEquals(16, parts.size());
+
+        Set<List<Long>> walked = new HashSet<>();
+        for (GameBoardSolver.OptimalSolutions part : parts) {
+            while (part.hasNext()) {
+                assertTrue("two parts walked the same solution", walked.add(key(part.next())));
+            }
+            assertFalse(part.hasNext());
+        }
+        assertEquals(expected, walked);
+    }
+
+
+    @Test
+    public void interruptedBuildStopsQuickly() throws InterruptedException {
+        //Reducing the 14400x14400 toggle matrix of this torus takes seconds
+        final Throwable[] thrown = new Throwable[1];
+        Thread builder = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    new GameBoardSolver(120, 120, Topology.TORUS, Neighborhood.PLUS);
+                } catch (Throwable e) {
+                    thrown[0] = e;
+                }
+            }
+        });
+        builder.start();
+        Thread.sleep(100);
+
+        long interrupted = System.nanoTime();
+        builder.interrupt();
+        builder.join(5000);
+        long stopMillis = (System.nanoTime() - interrupted) / 1000000;
+
+        assertFalse("build is still running", builder.isAlive());
+        assertTrue("build was not cancelled: "+thrown[0], thrown[0] instanceof CancellationException);
+        assertTrue("took "+stopMillis+" ms to stop", stopMillis < 500);
+    }
+
+
+    @Test
+    public void benchmarkSearchAgainstBruteForce() {
+        Benchmark.assumeEnabled();
+        for (int size : new int[]{19, 30}) { //16 and 20 basis null patterns
+            final GameBoardSolver solver = new GameBoardSolver(size);
+            final BitBoard[] basis = NullSpace.basis(size);
+            final BitBoard presses = randomPresses(size, 34);
+            final boolean[][] solution = toArray(presses);
+            new Benchmark() {
+                @Override
+                int run() {
+                    return solver.findBestSolution(solution).length;
+                }
+            }.time(size+"x"+size+" meet in the middle search");
+            new Benchmark() {
+                @Override
+                int run() {
+                    return bruteForceMinClicks(presses, basis);
+                }
+            }.time(size+"x"+size+" all 2^"+basis.length+" solutions");
+        }
+    }
+
+
+    @Test
+    public void benchmarkOptimalSolutions() {
+        Benchmark.assumeEnabled();
+        for (int size : new int[]{19, 30}) {
+            final GameBoardSolver solver = new GameBoardSolver(size);
+            final BitBoard[] basis = NullSpace.basis(size);
+            final boolean[][] solution = toArray(randomPresses(size, 39));
+            new Benchmark() {
+                @Override
+                int run() {
+                    return countOptimalSolutions(solver, solution);
+                }
+            }.time(size+"x"+size+" walk "+countOptimalSolutions(solver, solution)+" best solutions");
+            new Benchmark() {
+                @Override
+                int run() {
+                    return bruteForceOptimalSolutions(BitBoard.fromArray(solution), basis).size();
+                }
+            }.time(size+"x"+size+" collect them from all 2^"+basis.length);
+        }
+    }
+
+
+    // The fewest clicks of the solution plus any sum of the basis, trying all of them
+    static int bruteForceMinClicks(BitBoard solution, BitBoard[] basis) {
+        long[] sum = solution.words().clone();
+        int best = solution.popCount();
+        for (long step = 1; step < 1L << basis.length; step++) {
+            long[] pattern = basis[Long.numberOfTrailingZeros(step)].words(); //Gray code order
+            int weight = 0;
+            for (int i = 0; i < sum.length; i++) {
+                sum[i] ^= pattern[i];
+                weight += Long.bitCount(sum[i]);
+            }
+            best = Math.min(best, weight);
+        }
+
+        return best;
+    }
+
+
+    // Every sum of the solution and the basis with the fewest clicks, trying all of them
+    static Set<List<Long>> bruteForceOptimalSolutions(BitBoard solution, BitBoard[] basis) {
+        int minClicks = bruteForceMinClicks(solution, basis);
+        BitBoard sum = BitBoard.fromArray(toArray(solution));
+        Set<List<Long>> best = new HashSet<>();
+        for (long step = 0; step < 1L << basis.length; step++) {
+            if (step != 0) {
+                long[] pattern = basis[Long.numberOfTrailingZeros(step)].words();
+                for (int i = 0; i < pattern.length; i++) {
+                    sum.words()[i] ^= pattern[i];
+                }
+            }
+            if (sum.popCount() == minClicks) {
+                best.add(key(sum));
+            }
+        }
+
+        return best;
+    }
+
+
+    static int countOptimalSolutions(GameBoardSolver solver, boolean[][] solution) {
+        GameBoardSolver.OptimalSolutions solutions = solver.optimalSolutions(solution);
+        int count = 0;
+        for (; solutions.hasNext(); solutions.next()) {
+            count++;
+        }
+        return count;
+    }
+
+
+    // The words of a board, as a value that can go in a set
+    static List<Long> key(BitBoard board) {
+        List<Long> key = new ArrayList<>();
+        for (long word : board.words()) {
+            key.add(word);
+        }
+        return key;
+    }
+
+
+    // Two sets of presses make the same board
+    static void assertSameLights(BitBoard expected, BitBoard actual) {
+        int rows = expected.rows(), cols = expected.cols();
+        ToggleMasks masks = new ToggleMasks(rows, cols, Topology.PLANE, Neighborhood.PLUS);
+        BitBoard expectedLights = new BitBoard(rows, cols), actualLights = new BitBoard(rows, cols);
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < cols; c++) {
+                if (expected.get(r, c)) {
+                    masks.click(expectedLights.words(), r, c);
+                }
+                if (actual.get(r, c)) {
+                    masks.click(actualLights.words(), r, c);
+                }
+            }
+        }
+        assertArrayEquals(expectedLights.words(), actualLights.words());
+    }
+
+
+    static BitBoard randomPresses(int size, long seed) {
+        SplitMix64 random = new SplitMix64(seed);
+        BitBoard presses = new BitBoard(size);
+        for (int r = 0; r < size; r++) {
+            for (int c = 0; c < size; c++) {
+                if (random.nextInt(2) == 1) {
+                    presses.toggle(r, c);
+                }
+            }
+        }
+
+        return presses;
+    }
+
+
+    static boolean[][] toArray(BitBoard board) {
+        boolean[][] array = new boolean[board.rows()][board.cols()];
+        board.toArray(array);
+        return array;
+    }
+}
\ No newline at end of file
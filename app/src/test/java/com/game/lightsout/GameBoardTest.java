@@ -0,0 +1,250 @@
+package com.game.lightsout;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks the min clicks GameBoard reports for new boards.
+ *
+ * @author William Boyles
+ */
+public class GameBoardTest {
+    @Test
+    public void lightsOnlyMinClicksFromTableAreOptimal() throws InterruptedException {
+        DistanceTable table = readyTable(3, true);
+        GameBoard board = new GameBoard(3, true);
+
+        for (long seed = 0; seed < 20; seed++) {
+            board.newScramble(seed);
+            assertEquals(table.distance(DistanceTable.state(board.getBoard())), board.getMinClicks());
+            assertTrue(board.isMinClicksOptimal());
+        }
+
+        boolean[][] lights = {{true, false, false}, {true, true, false}, {true, false, false}};
+        board.setBoard(lights);
+        assertEquals(1, board.getMinClicks());
+        assertTrue(board.isMinClicksOptimal());
+    }
+
+
+    @Test
+    public void lightsOnlyMinClicksArriveWithTable() throws InterruptedException {
+        File dir = new File(System.getProperty("java.io.tmpdir"), "lightsout-distances-"+System.nanoTime());
+        DistanceTable.prepare(dir, 5, true); //Building takes seconds, longer than the board waits
+
+        GameBoard board = new GameBoard(5, true);
+        final CountDownLatch ready = new CountDownLatch(1);
+        board.setMinClicksListener(new GameBoard.MinClicksListener() {
+            @Override
+            public void minClicksImproved() {
+                ready.countDown();
+            }
+        });
+        board.newScramble(1);
+        int state = DistanceTable.state(board.getBoard());
+        assertEquals(-1, board.getMinClicks());
+        board.click(0, 0); //The min clicks are of the scramble, not the board after these clicks
+
+        assertTrue(ready.await(2, TimeUnit.MINUTES));
+        assertEquals(DistanceTable.cached(5, true).distance(state), board.getMinClicks());
+        assertTrue(board.getMinClicks() > 0);
+
+        for (File file : dir.listFiles()) {
+            assertTrue(file.delete());
+        }
+        assertTrue(dir.delete());
+    }
+
+
+    @Test
+    public void normalMinClicksAreOptimal() {
+        GameBoard board = new GameBoard(4, false);
+
+        for (long seed = 0; seed < 20; seed++) {
+            board.newScramble(seed);
+            board.updateSolution();
+            assertTrue(board.isMinClicksOptimal());
+            assertTrue(board.getMinClicks() > 0);
+        }
+    }
+
+
+    @Test
+    public void setBoardRejectsUnsolvableBoards() {
+        GameBoard board = new GameBoard(5, false);
+        board.newScramble(7);
+        boolean[][] scramble = board.getBoard();
+
+        boolean[][] corner = new boolean[5][5];
+        corner[0][0] = true; //Not in the span of the 5x5 clicks
+        try {
+            board.setBoard(corner);
+            fail("Accepted an unsolvable board");
+        } catch (IllegalArgumentException e) {
+            assertTrue(Arrays.deepEquals(scramble, board.getBoard()));
+        }
+
+        corner[0][1] = true;
+        corner[1][0] = true; //Clicking the corner
+        board.setBoard(corner);
+        assertTrue(Arrays.deepEquals(corner, board.getBoard()));
+    }
+
+
+    @Test
+    public void mirrorImagesShareCachedSolutions() {
+        TranspositionCache.clearAll();
+        GameBoard board = new GameBoard(5, false);
+        board.newScramble(11);
+        board.updateSolution();
+        int minClicks = board.getMinClicks();
+        BitBoard scramble = BitBoard.fromArray(board.getBoard());
+
+        Symmetry symmetry = new Symmetry(5);
+        BitBoard mirror = new BitBoard(5);
+        boolean[][] lights = new boolean[5][5];
+        for (int t = 0; t < Symmetry.COUNT; t++) {
+            symmetry.apply(t, scramble, mirror);
+            mirror.toArray(lights);
+
+            GameBoard mirrored = new GameBoard(5, false);
+            mirrored.setBoard(lights);
+            mirrored.updateSolution();
+            assertNull("transform "+t+" missed the cache", mirrored.getMinClicksStrategy());
+            assertEquals(minClicks, mirrored.getMinClicks());
+        }
+    }
+
+
+    @Test
+    public void hintsFollowBestSolutions() {
+        GameBoard board = new GameBoard(5, false);
+        SplitMix64 random = new SplitMix64(39);
+        for (long seed = 0; seed < 10; seed++) {
+            board.newScramble(seed);
+            board.updateSolution();
+            for (int minClicks = board.getMinClicks(); minClicks > 0; minClicks--) {
+                int hint = board.hint(random);
+                board.click(hint / 5, hint % 5);
+                board.updateSolution();
+                assertEquals(minClicks - 1, board.getMinClicks());
+            }
+            assertTrue(board.isSolved());
+            assertEquals(-1, board.hint(random));
+        }
+    }
+
+
+    @Test
+    public void hintsPickBetweenBestSolutions() {
+        GameBoard board = new GameBoard(4, false); //16 solutions for each board
+        board.newScramble(39);
+        board.updateSolution();
+        BitBoard presses = new ToggleMasks(4, 4, Topology.PLANE).solve(BitBoard.fromArray(board.getBoard()));
+
+        Set<Integer> expected = new HashSet<>();
+        GameBoardSolver.OptimalSolutions solutions = new GameBoardSolver(4).optimalSolutions(GameBoardSolverTest.toArray(presses));
+        int count = 0;
+        while (solutions.hasNext()) {
+            BitBoard solution = solutions.next();
+            for (int b = 0; b < 16; b++) {
+                if (solution.get(b / 4, b % 4)) {
+                    expected.add(b);
+                }
+            }
+            count++;
+        }
+        assertTrue(count > 1);
+
+        Set<Integer> hints = new HashSet<>();
+        SplitMix64 random = new SplitMix64(39);
+        for (int i = 0; i < 1000; i++) {
+            hints.add(board.hint(random));
+        }
+        assertEquals(expected, hints);
+    }
+
+
+    @Test
+    public void loadedTorusBoardsHaveTheirOnlySolution() {
+        ToggleMasks masks = new ToggleMasks(16, 20, Topology.TORUS); //No null patterns, so each board has one solution
+        GameBoard board = new GameBoard(16, 20, Topology.TORUS, Neighborhood.PLUS, false, 2);
+        for (long seed = 0; seed < 10; seed++) { //Later boards are solved with the inverse toggle matrix
+            SplitMix64 random = new SplitMix64(seed);
+            BitBoard lights = new BitBoard(16, 20);
+            for (int r = 0; r < 16; r++) {
+                for (int c = 0; c < 20; c++) {
+                    if (random.nextInt(2) == 1) {
+                        masks.click(lights.words(), r, c);
+                    }
+                }
+            }
+
+            board.setBoard(GameBoardSolverTest.toArray(lights));
+            board.updateSolution();
+            assertEquals(masks.solve(lights).popCount(), board.getMinClicks());
+            if (seed == 4) { //Gives back the inverse, so the next boards make a new one
+                board.release();
+            }
+        }
+        board.release();
+    }
+
+
+    @Test
+    public void threeColorMinClicksAreFewestPresses() {
+        ToggleMasks masks = new ToggleMasks(3, 3, Topology.PLANE);
+        int[] expected = MultiStateSolverTest.bruteForceMinPresses(masks, 3);
+        GameBoard board = new GameBoard(3, false, 3);
+
+        byte[] cells = new byte[9];
+        for (long seed = 0; seed < 20; seed++) {
+            board.newScramble(seed);
+            board.updateSolution();
+            for (int i = 0; i < 9; i++) {
+                cells[i] = (byte) board.getState(i / 3, i % 3);
+            }
+            assertEquals("seed "+seed, expected[MultiStateSolverTest.pack(cells, 3)], board.getMinClicks());
+            assertTrue(board.isMinClicksOptimal());
+        }
+    }
+
+
+    @Test
+    public void cutShortThreeColorSearchIsNotOptimal() {
+        //This board has 20 null patterns over GF(3), too many to try every solution
+        GameBoard board = new GameBoard(6, 6, Topology.TORUS, Neighborhood.BLOCK, false, 3);
+        board.newScramble(1);
+        board.updateSolution();
+        assertTrue(board.getMinClicks() > 0);
+        assertFalse(board.isMinClicksOptimal());
+    }
+
+
+    // Builds a table into a temporary folder and waits until it is cached
+    private static DistanceTable readyTable(int boardSize, boolean onLightsOnly) throws InterruptedException {
+        File dir = new File(System.getProperty("java.io.tmpdir"), "lightsout-distances");
+        DistanceTable.prepare(dir, boardSize, onLightsOnly);
+
+        DistanceTable table = DistanceTable.cached(boardSize, onLightsOnly);
+        for (int i = 0; i < 1000 && table == null; i++) {
+            Thread.sleep(10);
+            table = DistanceTable.cached(boardSize, onLightsOnly);
+        }
+        assertNotNull(table);
+        return table;
+    }
+}
\ No newline at end of file
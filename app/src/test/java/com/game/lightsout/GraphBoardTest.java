@@ -0,0 +1,151 @@
+package com.game.lightsout;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that GraphBoard solves the same boards that eliminating the toggle matrix does, on graphs
+ * small enough to solve densely and on ones big enough for Block Lanczos.
+ *
+ * @author William Boyles
+ */
+public class GraphBoardTest {
+    @Test
+    public void randomGraphsMatchElimination() {
+        SplitMix64 random = new SplitMix64(45);
+        for (int trial = 0; trial < 20; trial++) {
+            int vertices = 1 + random.nextInt(80);
+            int edges = random.nextInt(3 * vertices);
+            int[] from = new int[edges], to = new int[edges];
+            for (int i = 0; i < edges; i++) {
+                from[i] = random.nextInt(vertices);
+                to[i] = random.nextInt(vertices);
+            }
+            ToggleGraph graph = ToggleGraph.fromEdges(vertices, from, to, random.nextInt(2) == 1);
+
+            for (int board = 0; board < 5; board++) {
+                long[] lights = new long[graph.words()];
+                for (int v = 0; v < vertices; v++) {
+                    if (random.nextInt(2) == 1) {
+                        lights[v >>> 6] |= 1L << v;
+                    }
+                }
+                checkAgainstElimination(graph, lights);
+            }
+        }
+    }
+
+
+    @Test
+    public void bigGridMatchesToggleMasks() {
+        int size = 40; //1600 vertices, more than BlockLanczos solves densely
+        ToggleMasks masks = new ToggleMasks(size, size, Topology.PLANE, Neighborhood.PLUS);
+        ToggleGraph graph = ToggleGraph.of(masks);
+        for (long seed = 0; seed < 3; seed++) {
+            BitBoard lights = new BitBoard(size);
+            Scrambler.scramble(seed, masks, lights, null);
+
+            GraphBoard board = new GraphBoard(graph);
+            board.setLights(pack(lights));
+            assertTrue(clears(graph, pack(lights), board.getSolution()));
+            assertTrue(clears(graph, pack(lights), pack(masks.solve(lights))));
+        }
+    }
+
+
+    @Test
+    public void unsolvableLightsAreRejected() {
+        ToggleMasks masks = new ToggleMasks(5, 5, Topology.PLANE, Neighborhood.PLUS);
+        GraphBoard board = new GraphBoard(ToggleGraph.of(masks));
+        long[] corner = new long[1];
+        corner[0] = 1; //Only the top left light, which no 5x5 clicks can turn off alone
+        try {
+            board.setLights(corner);
+            fail("Solved an unsolvable board");
+        } catch (IllegalArgumentException e) {
+            assertTrue(board.isSolved());
+        }
+    }
+
+
+    @Test
+    public void clickingSolutionSolvesScramble() {
+        ToggleGraph graph = ToggleGraph.of(new ToggleMasks(7, 9, Topology.TORUS, Neighborhood.KNIGHT));
+        GraphBoard board = new GraphBoard(graph);
+        board.newScramble(12);
+        assertFalse(board.isSolved());
+
+        long[] solution = board.getSolution();
+        for (int v = 0; v < board.getVertexCount(); v++) {
+            if ((solution[v >>> 6] >>> v & 1) != 0) {
+                board.click(v);
+            }
+        }
+        assertTrue(board.isSolved());
+        assertArrayEquals(new long[graph.words()], board.getSolution());
+    }
+
+
+    // GraphBoard solves exactly the lights that reducing [A | lights] says can be solved
+    private static void checkAgainstElimination(ToggleGraph graph, long[] lights) {
+        int n = graph.vertexCount();
+        BitMatrix toggles = graph.toggleMatrix();
+        BitMatrix augmented = new BitMatrix(n, n + 1);
+        for (int r = 0; r < n; r++) {
+            for (int c = 0; c < n; c++) {
+                augmented.set(r, c, toggles.get(r, c));
+            }
+            augmented.set(r, n, (lights[r >>> 6] >>> r & 1) != 0);
+        }
+        toggles.release();
+        int rank = augmented.reducedRowEchelonForm();
+        boolean solvable = true;
+        for (int r = 0; r < rank; r++) {
+            boolean zeroRow = true;
+            for (int c = 0; c < n && zeroRow; c++) {
+                zeroRow = !augmented.get(r, c);
+            }
+            solvable &= !zeroRow; //0 = 1 can't be solved
+        }
+
+        GraphBoard board = new GraphBoard(graph);
+        try {
+            board.setLights(lights.clone());
+            assertTrue("Solved lights that elimination can't", solvable);
+            assertTrue(clears(graph, lights, board.getSolution()));
+            for (int v = 0; v < n; v++) {
+                assertEquals((lights[v >>> 6] >>> v & 1) != 0, board.isOn(v));
+            }
+        } catch (IllegalArgumentException e) {
+            assertFalse("Couldn't solve lights that elimination can", solvable);
+        }
+    }
+
+
+    private static boolean clears(ToggleGraph graph, long[] lights, long[] clicks) {
+        return Arrays.equals(lights, graph.apply(clicks));
+    }
+
+
+    private static long[] pack(BitBoard board) {
+        int rows = board.rows(), cols = board.cols();
+        long[] packed = new long[(rows * cols + 63) >>> 6];
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < cols; c++) {
+                if (board.get(r, c)) {
+                    int v = r * cols + c;
+                    packed[v >>> 6] |= 1L << v;
+                }
+            }
+        }
+
+        return packed;
+    }
+}
\ No newline at end of file
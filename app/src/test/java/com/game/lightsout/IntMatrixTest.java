@@ -0,0 +1,205 @@
+package com.game.lightsout;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks IntPrimeField and IntMatrix against PrimeField and Matrix&lt;Integer&gt;, which box every
+ * element but compute every result directly.
+ *
+ * @author William Boyles
+ */
+public class IntMatrixTest {
+    /**
+     * The moduli tested, including the largest prime the tables allow
+     */
+    private static final int[] PRIMES = {2, 3, 5, 7, 251};
+
+
+    @Test
+    public void fieldTablesMatchPrimeField() {
+        for (int p : PRIMES) {
+            IntPrimeField tables = new IntPrimeField(p);
+            PrimeField field = new PrimeField(p);
+            for (int x = 0; x < p; x++) {
+                assertEquals(field.negate(x).intValue(), tables.negate(x));
+                if (x != 0) {
+                    assertEquals(field.reciprocal(x).intValue(), tables.reciprocal(x));
+                }
+                for (int y = 0; y < p; y++) {
+                    assertEquals(field.add(x, y).intValue(), tables.add(x, y));
+                    assertEquals(field.subtract(x, y).intValue(), tables.subtract(x, y));
+                    assertEquals(field.multiply(x, y).intValue(), tables.multiply(x, y));
+                }
+            }
+        }
+    }
+
+
+    @Test
+    public void operationsMatchGenericField() {
+        SplitMix64 random = new SplitMix64(41);
+        for (int p : PRIMES) {
+            IntPrimeField tables = new IntPrimeField(p);
+            PrimeField field = new PrimeField(p);
+            for (int trial = 0; trial < 50; trial++) {
+                int rows = 1 + random.nextInt(20), inner = 1 + random.nextInt(20), cols = 1 + random.nextInt(20);
+                IntMatrix a = random(rows, inner, tables, random), b = random(inner, cols, tables, random);
+                assertSameEntries(generic(a, field).multiply(generic(b, field)), a.multiply(b));
+
+                //Products of thin matrices are rank deficient
+                IntMatrix thin = random(rows, 1 + inner / 4, tables, random).multiply(random(1 + inner / 4, cols, tables, random));
+                for (IntMatrix matrix : new IntMatrix[]{b, thin}) {
+                    Matrix<Integer> expected = generic(matrix, field);
+                    expected.reducedRowEchelonForm();
+                    IntMatrix reduced = matrix.clone();
+                    int rank = reduced.reducedRowEchelonForm();
+                    assertSameEntries(expected, reduced);
+                    for (int i = 0; i < reduced.rowCount(); i++) {
+                        assertEquals(i < rank, !isZeroRow(reduced, i));
+                    }
+                }
+
+                int size = 1 + random.nextInt(20);
+                IntMatrix square = random(size, size, tables, random);
+                if (trial % 4 == 0 && size > 1) { //Singular
+                    for (int j = 0; j < size; j++) {
+                        square.set(size - 1, j, square.get(0, j));
+                    }
+                }
+                Matrix<Integer> expected = generic(square, field);
+                IntMatrix inverse = square.clone();
+                try {
+                    expected.invert();
+                    inverse.invert();
+                    assertSameEntries(expected, inverse);
+                } catch (IllegalStateException e) {
+                    try {
+                        inverse.invert();
+                        fail("Inverted a singular matrix over GF("+p+")");
+                    } catch (IllegalStateException expectedException) {
+                        assertEquals(square, inverse); //Unchanged
+                    }
+                }
+            }
+        }
+    }
+
+
+    @Test
+    public void inverseTimesMatrixIsIdentity() {
+        SplitMix64 random = new SplitMix64(41);
+        IntPrimeField gf5 = new IntPrimeField(5);
+        int inverted = 0;
+        for (int trial = 0; trial < 20; trial++) {
+            IntMatrix matrix = random(60, 60, gf5, random);
+            IntMatrix inverse = matrix.clone();
+            try {
+                inverse.invert();
+            } catch (IllegalStateException e) {
+                continue;
+            }
+
+            IntMatrix identity = matrix.multiply(inverse);
+            for (int i = 0; i < 60; i++) {
+                for (int j = 0; j < 60; j++) {
+                    assertEquals(i == j ? 1 : 0, identity.get(i, j));
+                }
+            }
+            inverted++;
+        }
+        assertTrue(inverted > 10); //About 3 in 4 random matrices over GF(5) are invertible
+    }
+
+
+    @Test
+    public void benchmarkAgainstGenericField() {
+        Benchmark.assumeEnabled();
+        SplitMix64 random = new SplitMix64(41);
+        for (int p : new int[]{3, 5}) {
+            for (int size : new int[]{100, 300}) {
+                final IntMatrix matrix = random(size, size, new IntPrimeField(p), random);
+                final Matrix<Integer> generic = generic(matrix, new PrimeField(p));
+                double primitive = new Benchmark() {
+                    @Override
+                    int run() {
+                        return matrix.clone().reducedRowEchelonForm();
+                    }
+                }.time(size+"x"+size+" GF("+p+") IntMatrix RREF");
+                double boxed = new Benchmark() {
+                    @Override
+                    int run() {
+                        Matrix<Integer> reduced = generic.clone();
+                        reduced.reducedRowEchelonForm();
+                        return reduced.rowCount();
+                    }
+                }.time(size+"x"+size+" GF("+p+") Matrix<Integer> RREF");
+                System.out.println("  "+Math.round(boxed / primitive)+" times faster");
+
+                primitive = new Benchmark() {
+                    @Override
+                    int run() {
+                        return matrix.multiply(matrix).rowCount();
+                    }
+                }.time(size+"x"+size+" GF("+p+") IntMatrix multiply");
+                boxed = new Benchmark() {
+                    @Override
+                    int run() {
+                        return generic.multiply(generic).rowCount();
+                    }
+                }.time(size+"x"+size+" GF("+p+") Matrix<Integer> multiply");
+                System.out.println("  "+Math.round(boxed / primitive)+" times faster");
+            }
+        }
+    }
+
+
+    // A matrix of random elements of a field
+    static IntMatrix random(int rows, int cols, IntField field, SplitMix64 random) {
+        IntMatrix matrix = new IntMatrix(rows, cols, field);
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < cols; j++) {
+                matrix.set(i, j, random.nextInt(field.size()));
+            }
+        }
+
+        return matrix;
+    }
+
+
+    // The same matrix over a boxed field
+    static Matrix<Integer> generic(IntMatrix matrix, Field<Integer> field) {
+        Matrix<Integer> generic = new Matrix<>(matrix.rowCount(), matrix.columnCount(), field);
+        for (int i = 0; i < matrix.rowCount(); i++) {
+            for (int j = 0; j < matrix.columnCount(); j++) {
+                generic.set(i, j, matrix.get(i, j));
+            }
+        }
+
+        return generic;
+    }
+
+
+    private static void assertSameEntries(Matrix<Integer> expected, IntMatrix actual) {
+        assertEquals(expected.rowCount(), actual.rowCount());
+        assertEquals(expected.columnCount(), actual.columnCount());
+        for (int i = 0; i < actual.rowCount(); i++) {
+            for (int j = 0; j < actual.columnCount(); j++) {
+                assertEquals(expected.get(i, j).intValue(), actual.get(i, j));
+            }
+        }
+    }
+
+
+    private static boolean isZeroRow(IntMatrix matrix, int row) {
+        for (int j = 0; j < matrix.columnCount(); j++) {
+            if (matrix.get(row, j) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
\ No newline at end of file
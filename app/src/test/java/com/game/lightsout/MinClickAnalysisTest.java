@@ -0,0 +1,116 @@
+package com.game.lightsout;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Checks the histograms of MinClickAnalysis against clicking every set of buttons.
+ *
+ * @author William Boyles
+ */
+public class MinClickAnalysisTest {
+    @Test
+    public void histogramMatchesBruteForce() throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(3);
+        try {
+            for (int size = 1; size <= 4; size++) {
+                long[] expected = bruteForceHistogram(size);
+                for (int parallelism : new int[]{1, 3}) {
+                    assertArrayEquals(size+"x"+size, expected, MinClickAnalysis.histogram(size, pool, parallelism));
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+
+    @Test
+    public void fiveByFiveCountsEverySolvableBoard() throws InterruptedException {
+        long[] histogram = MinClickAnalysis.histogram(5);
+        long total = 0;
+        for (long count : histogram) {
+            total += count;
+        }
+        assertEquals(1L << 23, total); //25 buttons, 2 basis null patterns
+        assertEquals(1, histogram[0]);
+        assertEquals(25, histogram[1]);
+        assertEquals(7350, histogram[15]);
+        for (int c = 16; c < histogram.length; c++) {
+            assertEquals(0, histogram[c]);
+        }
+    }
+
+
+    @Test
+    public void preparedHistogramIsCached() throws InterruptedException {
+        MinClickAnalysis.prepare(3);
+        long[] histogram = MinClickAnalysis.cached(3);
+        for (int i = 0; i < 1000 && histogram == null; i++) {
+            Thread.sleep(10);
+            histogram = MinClickAnalysis.cached(3);
+        }
+        assertNotNull(histogram);
+        assertArrayEquals(bruteForceHistogram(3), histogram);
+
+        assertEquals(0, MinClickAnalysis.percentEasier(histogram, 0));
+        assertEquals(100 * 1 / 512, MinClickAnalysis.percentEasier(histogram, 1)); //Only the dark board
+        assertEquals(100, MinClickAnalysis.percentEasier(histogram, 10));
+    }
+
+
+    @Test
+    public void benchmarkHistogram() throws InterruptedException {
+        Benchmark.assumeEnabled();
+        for (final int size : new int[]{4, 5}) {
+            new Benchmark() {
+                @Override
+                int run() {
+                    try {
+                        return (int) MinClickAnalysis.histogram(size)[0];
+                    } catch (InterruptedException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+            }.time(size+"x"+size+" min click histogram");
+        }
+    }
+
+
+    // Clicks every set of buttons, keeping the fewest clicks that make each board
+    private static long[] bruteForceHistogram(int size) {
+        ToggleMasks masks = new ToggleMasks(size, size, Topology.PLANE, Neighborhood.PLUS);
+        int buttons = size * size;
+        Map<Long, Integer> fewest = new HashMap<>();
+        for (long presses = 0; presses < 1L << buttons; presses++) {
+            BitBoard lights = new BitBoard(size);
+            for (int b = 0; b < buttons; b++) {
+                if ((presses >>> b & 1) != 0) {
+                    masks.click(lights.words(), b / size, b % size);
+                }
+            }
+            long board = 0; //One word per row, packed into one long
+            for (int r = 0; r < size; r++) {
+                board |= lights.words()[r] << (r * size);
+            }
+            Integer known = fewest.get(board);
+            if (known == null || Long.bitCount(presses) < known) {
+                fewest.put(board, Long.bitCount(presses));
+            }
+        }
+
+        long[] histogram = new long[buttons + 1];
+        for (int clicks : fewest.values()) {
+            histogram[clicks]++;
+        }
+        return histogram;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,149 @@
+package com.game.lightsout;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks MultiStateSolver against trying every combination of presses on small boards.
+ *
+ * @author William Boyles
+ */
+public class MultiStateSolverTest {
+    @Test
+    public void solvesLikeBruteForceOverGf3() {
+        checkEveryBoard(new ToggleMasks(1, 1, Topology.PLANE), 3);
+        checkEveryBoard(new ToggleMasks(2, 2, Topology.PLANE), 3);
+        checkEveryBoard(new ToggleMasks(2, 3, Topology.PLANE), 3);
+        checkEveryBoard(new ToggleMasks(3, 3, Topology.PLANE), 3);
+        checkEveryBoard(new ToggleMasks(3, 3, Topology.TORUS), 3);
+        checkEveryBoard(new ToggleMasks(3, 3, Topology.PLANE, Neighborhood.X), 3);
+    }
+
+
+    @Test
+    public void solvesLikeBruteForceOverGf5() {
+        checkEveryBoard(new ToggleMasks(1, 1, Topology.PLANE), 5);
+        checkEveryBoard(new ToggleMasks(2, 2, Topology.PLANE), 5);
+        checkEveryBoard(new ToggleMasks(2, 3, Topology.TORUS), 5);
+        checkEveryBoard(new ToggleMasks(3, 3, Topology.PLANE), 5);
+    }
+
+
+    @Test
+    public void tooManyNullPatternsIsNotExhaustive() {
+        assertTrue(new MultiStateSolver(3, 3).isExhaustive());
+
+        //3^20 combinations are too many to try
+        MultiStateSolver solver = new MultiStateSolver(new ToggleMasks(6, 6, Topology.TORUS, Neighborhood.BLOCK), 3);
+        assertEquals(20, solver.getNullity());
+        assertFalse(solver.isExhaustive());
+    }
+
+
+    /**
+     * Finds the fewest presses that solve every board, by pressing every combination of buttons
+     * from 0 to states - 1 times.
+     *
+     * @param masks  the lights toggled by each button.
+     * @param states the number of states each light cycles through.
+     * @return the fewest presses of each board, indexed by its lights as a number in base states,
+     * or -1 if the board can't be solved.
+     */
+    static int[] bruteForceMinPresses(ToggleMasks masks, int states) {
+        int n = masks.rows() * masks.cols();
+        int boards = pow(states, n);
+        int[] minPresses = new int[boards];
+        Arrays.fill(minPresses, -1);
+
+        byte[] presses = new byte[n], lights = new byte[n], negated = new byte[n];
+        for (int combination = 0; combination < boards; combination++) {
+            unpack(combination, states, presses);
+            Arrays.fill(lights, (byte) 0);
+            int total = 0;
+            for (int b = 0; b < n; b++) {
+                total += presses[b];
+                for (int k = 0; k < presses[b]; k++) {
+                    masks.click(lights, states, b / masks.cols(), b % masks.cols());
+                }
+            }
+
+            //These presses turn the lights they make into their negation back off
+            for (int i = 0; i < n; i++) {
+                negated[i] = (byte) ((states - lights[i]) % states);
+            }
+            int board = pack(negated, states);
+            if (minPresses[board] < 0 || total < minPresses[board]) {
+                minPresses[board] = total;
+            }
+        }
+
+        return minPresses;
+    }
+
+
+    static int pack(byte[] lights, int states) {
+        int index = 0;
+        for (int i = lights.length - 1; i >= 0; i--) {
+            index = index * states + lights[i];
+        }
+
+        return index;
+    }
+
+
+    // Checks the solver on every board of a shape
+    private static void checkEveryBoard(ToggleMasks masks, int states) {
+        int n = masks.rows() * masks.cols();
+        String shape = masks.rows()+"x"+masks.cols()+" over GF("+states+")";
+        MultiStateSolver solver = new MultiStateSolver(masks, states);
+        assertTrue(shape, solver.isExhaustive());
+        int[] expected = bruteForceMinPresses(masks, states);
+
+        byte[] lights = new byte[n], presses = new byte[n];
+        int solvable = 0;
+        for (int board = 0; board < expected.length; board++) {
+            unpack(board, states, lights);
+            assertEquals(shape+" board "+board, expected[board] >= 0, solver.isSolvable(lights));
+            if (expected[board] < 0) {
+                continue;
+            }
+            solvable++;
+
+            int total = solver.findBestSolution(lights, presses);
+            assertEquals(shape+" board "+board, expected[board], total);
+            int sum = 0;
+            for (int b = 0; b < n; b++) {
+                sum += presses[b];
+                for (int k = 0; k < presses[b]; k++) {
+                    masks.click(lights, states, b / masks.cols(), b % masks.cols());
+                }
+            }
+            assertEquals(total, sum);
+            assertEquals(0, pack(lights, states));
+        }
+        assertEquals(shape, pow(states, n - solver.getNullity()), solvable);
+    }
+
+
+    private static void unpack(int index, int states, byte[] lights) {
+        for (int i = 0; i < lights.length; i++) {
+            lights[i] = (byte) (index % states);
+            index /= states;
+        }
+    }
+
+
+    private static int pow(int base, int exponent) {
+        int result = 1;
+        for (int i = 0; i < exponent; i++) {
+            result *= base;
+        }
+
+        return result;
+    }
+}
\ No newline at end of file
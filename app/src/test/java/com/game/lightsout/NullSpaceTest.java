@@ -0,0 +1,100 @@
+package com.game.lightsout;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Checks the polynomial shortcuts of NullSpace against reducing the toggle matrix.
+ *
+ * @author William Boyles
+ */
+public class NullSpaceTest {
+    @Test
+    public void nullityMatchesToggleMatrix() {
+        for (int rows = 1; rows <= 12; rows++) {
+            for (int cols = 1; cols <= 12; cols++) {
+                ToggleMasks masks = new ToggleMasks(rows, cols, Topology.PLANE, Neighborhood.PLUS);
+                assertEquals(rows+"x"+cols, masks.nullBasis().length, NullSpace.nullity(rows, cols));
+            }
+        }
+
+        assertEquals(4, NullSpace.nullity(4));
+        assertEquals(2, NullSpace.nullity(5));
+        assertEquals(0, NullSpace.nullity(6));
+    }
+
+
+    @Test
+    public void nullityOfAnyShapeMatchesNullBasis() {
+        Neighborhood[] neighborhoods = {Neighborhood.PLUS, Neighborhood.X, Neighborhood.BLOCK, Neighborhood.KNIGHT};
+        for (Topology topology : Topology.values()) {
+            for (Neighborhood neighborhood : neighborhoods) {
+                for (int rows = 1; rows <= 10; rows++) {
+                    for (int cols = 1; cols <= 10; cols++) {
+                        ToggleMasks masks = new ToggleMasks(rows, cols, topology, neighborhood);
+                        assertEquals(rows+"x"+cols+" "+topology+" "+neighborhood, masks.nullBasis().length,
+                                NullSpace.nullity(rows, cols, topology, neighborhood));
+                    }
+                }
+            }
+        }
+    }
+
+
+    @Test
+    public void nullityTableMatchesNullity() {
+        int[] table = NullSpace.nullityTable(300);
+        assertEquals(301, table.length);
+        assertEquals(0, table[0]);
+        for (int size = 1; size <= 300; size++) {
+            assertEquals("size "+size, NullSpace.nullity(size), table[size]);
+        }
+    }
+
+
+    @Test
+    public void basisPatternsAreNull() {
+        for (int size = 1; size <= 20; size++) {
+            ToggleMasks masks = new ToggleMasks(size, size, Topology.PLANE, Neighborhood.PLUS);
+            BitBoard[] basis = NullSpace.basis(size);
+            assertEquals(NullSpace.nullity(size), basis.length);
+
+            for (BitBoard pattern : basis) {
+                BitBoard lights = new BitBoard(size);
+                for (int r = 0; r < size; r++) {
+                    for (int c = 0; c < size; c++) {
+                        if (pattern.get(r, c)) {
+                            masks.click(lights.words(), r, c);
+                        }
+                    }
+                }
+                assertEquals(0, lights.popCount());
+            }
+        }
+    }
+
+
+    @Test
+    public void solveMatchesToggleMatrix() {
+        for (int size = 1; size <= 20; size++) {
+            ToggleMasks masks = new ToggleMasks(size, size, Topology.PLANE, Neighborhood.PLUS);
+            for (long seed = 0; seed < 5; seed++) {
+                BitBoard lights = new BitBoard(size);
+                Scrambler.scramble(seed, masks, lights, null);
+
+                BitBoard presses = NullSpace.solve(lights);
+                assertNotNull(presses);
+                for (int r = 0; r < size; r++) {
+                    for (int c = 0; c < size; c++) {
+                        if (presses.get(r, c)) {
+                            masks.click(lights.words(), r, c);
+                        }
+                    }
+                }
+                assertEquals(size+"x"+size+" seed "+seed, 0, lights.popCount());
+            }
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,132 @@
+package com.game.lightsout;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks the replay file format and that ReplayVerifier accepts honest solves and nothing else.
+ *
+ * @author William Boyles
+ */
+public class ReplayTest {
+    /**
+     * A size with no null patterns, so a solution can't solve the board before its last press
+     */
+    private static final int SIZE = 6;
+
+
+    @Test
+    public void roundTrip() throws IOException {
+        Replay.Recorder recorder = new Replay.Recorder();
+        recorder.reset(0x123456789abcdefL, SIZE, true);
+        recorder.press(0, 0, 0);
+        recorder.press(5, 5, 130);
+        recorder.press(2, 3, 100); //Clocks going backwards are clamped
+        recorder.press(4, 1, Integer.MAX_VALUE);
+        Replay replay = recorder.toReplay();
+
+        Replay read = Replay.fromBytes(replay.toBytes());
+        assertEquals(replay.getSeed(), read.getSeed());
+        assertEquals(SIZE, read.getBoardSize());
+        assertTrue(read.isOnLightsOnly());
+        assertEquals(4, read.pressCount());
+        int[] rows = {0, 5, 2, 4}, cols = {0, 5, 3, 1}, times = {0, 130, 130, Integer.MAX_VALUE};
+        for (int i = 0; i < 4; i++) {
+            assertEquals(rows[i], read.getPressRow(i));
+            assertEquals(cols[i], read.getPressCol(i));
+            assertEquals(times[i], read.getPressTime(i));
+        }
+    }
+
+
+    @Test
+    public void rejectsOverflowingVarInts() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.write(new byte[]{'L', 'O', 'R', 1, 0, SIZE});
+            out.writeLong(1);
+            out.write(new byte[]{1, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x17, 0}); //A time past 2^32
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+
+        try {
+            Replay.fromBytes(bytes.toByteArray());
+            fail("Read a time that doesn't fit in an int");
+        } catch (IOException expected) {
+            //Expected
+        }
+    }
+
+
+    @Test
+    public void verifiesHonestSolves() {
+        ReplayVerifier verifier = new ReplayVerifier();
+        for (long seed = 0; seed < 20; seed++) {
+            Replay replay = solve(seed, 0, false);
+            int time = verifier.verify(replay);
+
+            assertEquals(replay.getSolveTime(), time);
+            assertTrue(verifier.verify(replay, time));
+            assertFalse(verifier.verify(replay, time - 1));
+        }
+    }
+
+
+    @Test
+    public void rejectsUnfinishedAndOverlongSolves() {
+        ReplayVerifier verifier = new ReplayVerifier();
+        for (long seed = 0; seed < 20; seed++) {
+            assertEquals(ReplayVerifier.INVALID, verifier.verify(solve(seed, -1, false)));
+            assertEquals(ReplayVerifier.INVALID, verifier.verify(solve(seed, 2, false)));
+        }
+    }
+
+
+    @Test
+    public void rejectsPressesOnLightsOffInLightsOnlyMode() {
+        BitBoard board = new BitBoard(SIZE);
+        Scrambler.scramble(7, board, null);
+        int off = 0;
+        while (board.get(off / SIZE, off % SIZE)) {
+            off++;
+        }
+
+        Replay.Recorder recorder = new Replay.Recorder();
+        recorder.reset(7, SIZE, true);
+        recorder.press(off / SIZE, off % SIZE, 10);
+        assertEquals(ReplayVerifier.INVALID, new ReplayVerifier().verify(recorder.toReplay()));
+    }
+
+
+    // Records a solve of a scramble by pressing the clicks that made it, with some presses dropped
+    // (a negative extra) or the same button pressed twice more at the end
+    private static Replay solve(long seed, int extra, boolean onLightsOnly) {
+        BitBoard presses = new BitBoard(SIZE);
+        Scrambler.scramble(seed, new BitBoard(SIZE), presses);
+
+        Replay.Recorder recorder = new Replay.Recorder();
+        recorder.reset(seed, SIZE, onLightsOnly);
+        int count = presses.popCount() + Math.min(extra, 0), time = 0;
+        for (int b = 0; b < SIZE * SIZE && count > 0; b++) {
+            if (presses.get(b / SIZE, b % SIZE)) {
+                recorder.press(b / SIZE, b % SIZE, time += 150);
+                count--;
+            }
+        }
+        for (int i = 0; i < extra; i++) {
+            recorder.press(0, 0, time += 150);
+        }
+
+        return recorder.toReplay();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,178 @@
+package com.game.lightsout;
+
+import android.content.ComponentCallbacks2;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks which solvers SolverCache keeps, and that each one is only built once. A solver is still
+ * cached if get() returns the same instance as before.
+ *
+ * @author William Boyles
+ */
+public class SolverCacheTest {
+    /**
+     * Square board sizes whose solvers take up different amounts of memory, put in the cache in
+     * this order. The first is much bigger than the rest put together.
+     */
+    private static final int[] SIZES = {30, 19, 16, 9};
+
+
+    @Before
+    public void clearCache() {
+        SolverCache.clear();
+        SolverCache.setBudget(SolverCache.DEFAULT_BUDGET);
+    }
+
+
+    @After
+    public void restoreBudget() {
+        clearCache();
+    }
+
+
+    @Test
+    public void leastRecentlyUsedSolverIsDroppedFirst() {
+        GameBoardSolver big = SolverCache.get(30), middle = SolverCache.get(19), small = SolverCache.get(16);
+        SolverCache.setBudget(big.sizeInBytes() + middle.sizeInBytes() + small.sizeInBytes());
+        assertSame(big, SolverCache.get(30)); //Now the most recently used
+
+        GameBoardSolver smaller = SolverCache.get(9);
+        assertTrue(smaller.sizeInBytes() <= middle.sizeInBytes());
+        assertSame(big, SolverCache.get(30));
+        assertSame(small, SolverCache.get(16));
+        assertSame(smaller, SolverCache.get(9));
+        assertNotSame(middle, SolverCache.get(19));
+    }
+
+
+    @Test
+    public void trimMemoryDropsMoreAtHigherLevels() {
+        //The budget is big enough for all of them at half, but only the small ones at a quarter
+        long total = 0;
+        for (GameBoardSolver solver : fill()) {
+            total += solver.sizeInBytes();
+        }
+        long small = total - SolverCache.get(SIZES[0]).sizeInBytes();
+        long budget = 2 * total + 1;
+        assertTrue(small <= budget / 4 && total > budget / 4);
+
+        int[] levels = {ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN, ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE,
+                ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW, ComponentCallbacks2.TRIM_MEMORY_BACKGROUND,
+                ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL, ComponentCallbacks2.TRIM_MEMORY_MODERATE,
+                ComponentCallbacks2.TRIM_MEMORY_COMPLETE};
+        int[] kept = {4, 4, 3, 3, 0, 0, 0};
+        for (int i = 0; i < levels.length; i++) {
+            SolverCache.setBudget(budget);
+            GameBoardSolver[] solvers = fill();
+            SolverCache.trimMemory(levels[i]);
+
+            //Check the most recently used first, since get() builds the dropped ones again
+            for (int j = SIZES.length - 1; j >= 0; j--) {
+                assertEquals("level "+levels[i]+" size "+SIZES[j], j >= SIZES.length - kept[i], solvers[j] == SolverCache.get(SIZES[j]));
+            }
+        }
+    }
+
+
+    @Test
+    public void concurrentCallersShareOneBuild() throws InterruptedException {
+        //A 60x60 torus takes a few hundred milliseconds to build
+        final CountDownLatch start = new CountDownLatch(1);
+        final GameBoardSolver[] solvers = new GameBoardSolver[4];
+        Thread[] threads = new Thread[solvers.length];
+        for (int i = 0; i < threads.length; i++) {
+            final int index = i;
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    solvers[index] = SolverCache.get(60, 60, Topology.TORUS, Neighborhood.PLUS);
+                }
+            });
+            threads[i].start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertNotNull(solvers[0]);
+        for (GameBoardSolver solver : solvers) {
+            assertSame(solvers[0], solver);
+        }
+        assertSame(solvers[0], SolverCache.get(60, 60, Topology.TORUS, Neighborhood.PLUS));
+    }
+
+
+    @Test
+    public void waitersBuildAgainWhenTheBuilderIsCancelled() throws InterruptedException {
+        //A 90x90 torus takes most of a second to build, so the builder is still busy when interrupted
+        final Object[] results = new Object[2];
+        Thread[] threads = new Thread[2];
+        for (int i = 0; i < threads.length; i++) {
+            final int index = i;
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        results[index] = SolverCache.get(90, 90, Topology.TORUS, Neighborhood.PLUS);
+                    } catch (CancellationException e) {
+                        results[index] = e;
+                    }
+                }
+            });
+        }
+        threads[0].start();
+        Thread.sleep(50);
+        threads[1].start();
+        Thread.sleep(100);
+        threads[0].interrupt();
+        threads[0].join();
+        threads[1].join();
+
+        assertTrue("builder was not cancelled: "+results[0], results[0] instanceof CancellationException);
+        assertTrue("waiter got "+results[1], results[1] instanceof GameBoardSolver);
+        assertSame(results[1], SolverCache.get(90, 90, Topology.TORUS, Neighborhood.PLUS));
+    }
+
+
+    @Test
+    public void interruptedCallerDoesNotRetryForever() {
+        Thread.currentThread().interrupt();
+        try {
+            SolverCache.get(90, 90, Topology.TORUS, Neighborhood.PLUS);
+            fail("Built a solver on an interrupted thread");
+        } catch (CancellationException expected) {
+            assertTrue(Thread.interrupted()); //Also clears the flag for the next test
+        }
+    }
+
+
+    // Builds the solvers of SIZES in order, so the first is the least recently used
+    private static GameBoardSolver[] fill() {
+        SolverCache.clear();
+        GameBoardSolver[] solvers = new GameBoardSolver[SIZES.length];
+        for (int i = 0; i < SIZES.length; i++) {
+            solvers[i] = SolverCache.get(SIZES[i]);
+        }
+
+        return solvers;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,101 @@
+package com.game.lightsout;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that SolverStrategy follows the costs it is given, rather than a fixed order, and that
+ * CostModel measures and saves them.
+ *
+ * @author William Boyles
+ */
+public class SolverStrategyTest {
+    /**
+     * A time per word so large that the strategy using it should never be picked
+     */
+    private static final double SLOW = 1e9;
+
+
+    @Test
+    public void solvingFollowsMeasuredCosts() {
+        CostModel fastChase = new CostModel(1, 1, 1, 1, 1);
+        assertEquals(SolverStrategy.CHASE, forSolving(16, 16, Topology.PLANE, fastChase));
+
+        CostModel slowChase = new CostModel(SLOW, 1, 1, 1, 1);
+        assertEquals(SolverStrategy.BANDED, forSolving(16, 16, Topology.PLANE, slowChase));
+
+        CostModel slowBanded = new CostModel(SLOW, SLOW, 1, 1, 1);
+        assertEquals(SolverStrategy.ELIMINATION, forSolving(16, 16, Topology.PLANE, slowBanded));
+    }
+
+
+    @Test
+    public void solvingOnlyPicksStrategiesThatWork() {
+        CostModel slowElimination = new CostModel(1, 1, SLOW, 1, 1);
+        assertEquals(SolverStrategy.ELIMINATION, forSolving(8, 8, Topology.TORUS, slowElimination));
+        assertEquals(SolverStrategy.CHASE, forSolving(8, 12, Topology.PLANE, slowElimination));
+
+        CostModel slowChase = new CostModel(SLOW, 1, 1, 1, 1);
+        assertEquals(SolverStrategy.ELIMINATION, forSolving(8, 12, Topology.PLANE, slowChase));
+    }
+
+
+    @Test
+    public void minClicksFollowsMeasuredCosts() throws InterruptedException {
+        DistanceTable table = DistanceTable.build(3, false, null, 1);
+        long budget = 250000000;
+
+        CostModel fastTable = new CostModel(1, 1, 1, 0.001, 1);
+        assertEquals(SolverStrategy.TABLE, SolverStrategy.forMinClicks(3, 3, 0, table, fastTable, budget));
+
+        CostModel slowTable = new CostModel(1, 1, 1, SLOW, 1);
+        assertEquals(SolverStrategy.EXACT_SEARCH, SolverStrategy.forMinClicks(3, 3, 0, table, slowTable, budget));
+
+        CostModel slowSearch = new CostModel(1, 1, 1, 1, SLOW);
+        assertEquals(SolverStrategy.TIMED_SEARCH, SolverStrategy.forMinClicks(3, 3, 0, null, slowSearch, budget));
+    }
+
+
+    @Test
+    public void recordsUses() {
+        long uses = SolverStrategy.BANDED.getUses(), nanos = SolverStrategy.BANDED.getUsedNanos();
+        SolverStrategy.BANDED.record(1000);
+
+        assertEquals(uses + 1, SolverStrategy.BANDED.getUses());
+        assertEquals(nanos + 1000, SolverStrategy.BANDED.getUsedNanos());
+        assertTrue(SolverStrategy.metrics().contains("BANDED"));
+    }
+
+
+    @Test
+    public void calibratedModelRoundTrips() throws IOException {
+        CostModel model = CostModel.calibrate();
+        for (long nanos : new long[]{model.chaseNanos(16, 16), model.bandedNanos(16, 8), model.eliminationNanos(16, 16),
+                model.tableNanos(3), model.searchNanos(16, 16, 8)}) {
+            assertTrue(nanos > 0);
+        }
+
+        File file = File.createTempFile("cost-model", null);
+        try {
+            model.writeTo(file);
+            CostModel loaded = CostModel.load(file);
+            assertEquals(model.chaseNanos(100, 100), loaded.chaseNanos(100, 100));
+            assertEquals(model.bandedNanos(100, 0), loaded.bandedNanos(100, 0));
+            assertEquals(model.eliminationNanos(16, 16), loaded.eliminationNanos(16, 16));
+            assertEquals(model.tableNanos(5), loaded.tableNanos(5));
+            assertEquals(model.searchNanos(19, 19, 16), loaded.searchNanos(19, 19, 16));
+        } finally {
+            assertTrue(file.delete());
+        }
+    }
+
+
+    private static SolverStrategy forSolving(int rows, int cols, Topology topology, CostModel model) {
+        return SolverStrategy.forSolving(rows, cols, topology, Neighborhood.PLUS, model);
+    }
+}
\ No newline at end of file
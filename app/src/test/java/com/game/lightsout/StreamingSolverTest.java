@@ -0,0 +1,123 @@
+package com.game.lightsout;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that StreamingSolver solves the boards it scrambles, as judged by its own verify(), and
+ * that it agrees with NullSpace, which chases the same boards in the heap.
+ *
+ * @author William Boyles
+ */
+public class StreamingSolverTest {
+    private File lights;
+    private File presses;
+    private File solution;
+
+
+    @Before
+    public void createFiles() throws IOException {
+        lights = File.createTempFile("lights", ".board");
+        presses = File.createTempFile("presses", ".board");
+        solution = File.createTempFile("solution", ".board");
+    }
+
+
+    @After
+    public void deleteFiles() {
+        assertTrue(lights.delete());
+        assertTrue(presses.delete());
+        assertTrue(solution.delete());
+    }
+
+
+    @Test
+    public void solvesScrambles() throws IOException {
+        int[][] shapes = {{1, 1}, {1, 9}, {7, 1}, {6, 6}, {10, 10}, {33, 64}, {70, 65}, {129, 200}};
+        for (int[] shape : shapes) {
+            int rows = shape[0], cols = shape[1];
+            for (long seed = 0; seed < 3; seed++) {
+                StreamingSolver.scramble(seed, lights, presses, rows, cols);
+                assertTrue(StreamingSolver.verify(lights, presses, rows, cols));
+
+                StreamingSolver.solve(lights, solution, rows, cols);
+                assertTrue(rows+"x"+cols+" seed "+seed, StreamingSolver.verify(lights, solution, rows, cols));
+            }
+        }
+    }
+
+
+    @Test
+    public void verifyRejectsWrongPresses() throws IOException {
+        StreamingSolver.scramble(3, lights, presses, 12, 12);
+        StreamingSolver.scramble(4, solution, null, 12, 12); //Some other presses' lights
+        assertFalse(StreamingSolver.verify(lights, solution, 12, 12));
+    }
+
+
+    @Test
+    public void matchesNullSpace() throws IOException {
+        for (int size : new int[]{5, 6, 17, 64, 100}) {
+            BitBoard board = new BitBoard(size);
+            Scrambler.scramble(size, board, null);
+            write(board, lights);
+
+            StreamingSolver.solve(lights, solution, size, size);
+            BitBoard inHeap = NullSpace.solve(board);
+            write(inHeap, presses);
+            assertTrue(StreamingSolver.verify(lights, presses, size, size));
+            assertTrue(StreamingSolver.verify(lights, solution, size, size));
+            if (NullSpace.nullity(size) == 0) { //The only solution
+                assertArrayEquals(Files.readAllBytes(presses.toPath()), Files.readAllBytes(solution.toPath()));
+            }
+        }
+    }
+
+
+    @Test
+    public void rejectsUnsolvableBoards() throws IOException {
+        BitBoard corner = new BitBoard(5);
+        corner.toggle(0, 0); //No 5x5 clicks turn off the corner alone
+        write(corner, lights);
+        try {
+            StreamingSolver.solve(lights, solution, 5, 5);
+            fail("Solved an unsolvable board");
+        } catch (IllegalArgumentException e) {
+            //Expected
+        }
+    }
+
+
+    @Test(expected = IOException.class)
+    public void rejectsWrongSizeFiles() throws IOException {
+        StreamingSolver.scramble(5, lights, null, 8, 8);
+        StreamingSolver.solve(lights, solution, 9, 8);
+    }
+
+
+    // Writes a board in the file format of StreamingSolver
+    private static void write(BitBoard board, File file) throws IOException {
+        long[] words = board.words();
+        ByteBuffer bytes = ByteBuffer.allocate(8 * words.length).order(ByteOrder.LITTLE_ENDIAN);
+        for (long word : words) {
+            bytes.putLong(word);
+        }
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(bytes.array());
+        }
+    }
+}
\ No newline at end of file
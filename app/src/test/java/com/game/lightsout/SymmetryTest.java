@@ -0,0 +1,83 @@
+package com.game.lightsout;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that the transforms of Symmetry move buttons where Symmetry.move() says they go, so that
+ * hashes and boards agree on which mirror image is which.
+ *
+ * @author William Boyles
+ */
+public class SymmetryTest {
+    @Test
+    public void applyMovesButtonsLikeMove() {
+        Random random = new Random(37);
+        for (int size : new int[]{1, 2, 5, 10, 63, 64, 65, 130}) {
+            Symmetry symmetry = new Symmetry(size);
+            boolean[][] lights = randomLights(size, random);
+            BitBoard board = BitBoard.fromArray(lights);
+            BitBoard result = new BitBoard(size);
+
+            for (int t = 0; t < Symmetry.COUNT; t++) {
+                symmetry.apply(t, board, result);
+                boolean[][] expected = new boolean[size][size];
+                for (int i = 0; i < size * size; i++) {
+                    int moved = Symmetry.move(t, size, i);
+                    expected[moved / size][moved % size] = lights[i / size][i % size];
+                }
+                assertArrayEquals("size "+size+", transform "+t, BitBoard.fromArray(expected).words(), result.words());
+            }
+        }
+    }
+
+
+    @Test
+    public void mirrorImagesShareCanonicalBoard() {
+        Random random = new Random(41);
+        for (int size : new int[]{3, 7, 64, 70}) {
+            Symmetry symmetry = new Symmetry(size);
+            BitBoard board = BitBoard.fromArray(randomLights(size, random));
+            BitBoard canonical = new BitBoard(size), mirror = new BitBoard(size);
+            BitBoard mirrorCanonical = new BitBoard(size), undone = new BitBoard(size);
+            int transform = symmetry.canonicalize(board, canonical);
+
+            for (int t = 0; t < Symmetry.COUNT; t++) {
+                symmetry.apply(t, board, mirror);
+                int mirrorTransform = symmetry.canonicalize(mirror, mirrorCanonical);
+                assertArrayEquals(canonical.words(), mirrorCanonical.words());
+
+                symmetry.apply(Symmetry.inverse(mirrorTransform), mirrorCanonical, undone);
+                assertArrayEquals(mirror.words(), undone.words());
+            }
+            symmetry.apply(Symmetry.inverse(transform), canonical, undone);
+            assertArrayEquals(board.words(), undone.words());
+        }
+    }
+
+
+    @Test
+    public void inverseUndoesTransform() {
+        for (int t = 0; t < Symmetry.COUNT; t++) {
+            for (int i = 0; i < 25; i++) {
+                assertEquals(i, Symmetry.move(Symmetry.inverse(t), 5, Symmetry.move(t, 5, i)));
+            }
+        }
+    }
+
+
+    private static boolean[][] randomLights(int size, Random random) {
+        boolean[][] lights = new boolean[size][size];
+        for (int r = 0; r < size; r++) {
+            for (int c = 0; c < size; c++) {
+                lights[r][c] = random.nextBoolean();
+            }
+        }
+
+        return lights;
+    }
+}
\ No newline at end of file